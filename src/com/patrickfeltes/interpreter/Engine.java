@@ -0,0 +1,38 @@
+package com.patrickfeltes.interpreter;
+
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.data_types.Parallelism;
+import com.patrickfeltes.interpreter.visitors.Environment;
+
+import java.util.Map;
+
+/**
+ * An engine executes a parsed program. All engines share the Environment and data types, so a program
+ * should behave the same no matter which engine runs it.
+ */
+public interface Engine {
+
+    /**
+     * Runs a program.
+     * @param labels the labels of the program, as found by the LabelMarker
+     * @param head the first statement of the program
+     */
+    void interpret(Map<String, Stmt> labels, Stmt head);
+
+    /**
+     * Sets when this engine splits operations on large lists and matrices across threads.
+     * @param parallelism the settings, used by every program the engine runs from then on
+     */
+    void setParallelism(Parallelism parallelism);
+
+    /**
+     * @return the variables of the programs this engine runs, which can be set before running them
+     */
+    Environment getEnvironment();
+
+    /**
+     * Prints how many of the list and matrix assignments this engine has come across were run as in-place updates.
+     */
+    void printInPlaceStats();
+
+}
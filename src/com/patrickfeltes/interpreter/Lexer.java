@@ -22,6 +22,12 @@ public class Lexer {
 
     private static Map<String, TokenType> keywords = new HashMap<>();
 
+    // what can follow the letters of a keyword, as in sin⁻¹(, e^(, x̄, Σx² and Q₁
+    private static final String[] keywordSuffixes = { "⁻¹", "^", "²", "\u0304", "₁", "₃" };
+
+    // commands whose names have spaces or symbols in them, and so are matched whole
+    private static final String[] commands = { "1-Var Stats", "2-Var Stats", "LinReg(ax+b)" };
+
     static {
         keywords.put("and", AND);
         keywords.put("or", OR);
@@ -41,6 +47,7 @@ public class Lexer {
         keywords.put("Return", RETURN);
         keywords.put("Stop", STOP);
         keywords.put("Menu", MENU);
+        keywords.put("seq", SEQ);
 
         keywords.put("Str0", STRING_IDENTIFIER);
         keywords.put("Str1", STRING_IDENTIFIER);
@@ -53,6 +60,52 @@ public class Lexer {
         keywords.put("Str8", STRING_IDENTIFIER);
         keywords.put("Str9", STRING_IDENTIFIER);
         keywords.put("abs", FUNCTION_IDENTIFIER);
+        keywords.put("sub", FUNCTION_IDENTIFIER);
+        keywords.put("length", FUNCTION_IDENTIFIER);
+        keywords.put("inString", FUNCTION_IDENTIFIER);
+        keywords.put("det", FUNCTION_IDENTIFIER);
+        keywords.put("identity", FUNCTION_IDENTIFIER);
+        keywords.put("ref", FUNCTION_IDENTIFIER);
+        keywords.put("rref", FUNCTION_IDENTIFIER);
+        keywords.put("sqrt", FUNCTION_IDENTIFIER);
+        keywords.put("sin", FUNCTION_IDENTIFIER);
+        keywords.put("cos", FUNCTION_IDENTIFIER);
+        keywords.put("tan", FUNCTION_IDENTIFIER);
+        keywords.put("sin⁻¹", FUNCTION_IDENTIFIER);
+        keywords.put("cos⁻¹", FUNCTION_IDENTIFIER);
+        keywords.put("tan⁻¹", FUNCTION_IDENTIFIER);
+        keywords.put("ln", FUNCTION_IDENTIFIER);
+        keywords.put("log", FUNCTION_IDENTIFIER);
+        keywords.put("e^", FUNCTION_IDENTIFIER);
+        keywords.put("int", FUNCTION_IDENTIFIER);
+        keywords.put("iPart", FUNCTION_IDENTIFIER);
+        keywords.put("fPart", FUNCTION_IDENTIFIER);
+        keywords.put("round", FUNCTION_IDENTIFIER);
+        keywords.put("min", FUNCTION_IDENTIFIER);
+        keywords.put("max", FUNCTION_IDENTIFIER);
+        keywords.put("remainder", FUNCTION_IDENTIFIER);
+        keywords.put("gcd", FUNCTION_IDENTIFIER);
+        keywords.put("lcm", FUNCTION_IDENTIFIER);
+        keywords.put("nPr", NPR);
+        keywords.put("nCr", NCR);
+        keywords.put("sum", FUNCTION_IDENTIFIER);
+        keywords.put("prod", FUNCTION_IDENTIFIER);
+        keywords.put("cumSum", FUNCTION_IDENTIFIER);
+        keywords.put("SortA", FUNCTION_IDENTIFIER);
+        keywords.put("SortD", FUNCTION_IDENTIFIER);
+        keywords.put("dim", FUNCTION_IDENTIFIER);
+        keywords.put("Fill", FUNCTION_IDENTIFIER);
+        keywords.put("augment", FUNCTION_IDENTIFIER);
+        keywords.put("ΔList", FUNCTION_IDENTIFIER);
+        keywords.put("mean", FUNCTION_IDENTIFIER);
+        keywords.put("median", FUNCTION_IDENTIFIER);
+        keywords.put("stdDev", FUNCTION_IDENTIFIER);
+
+        // the results of the statistics commands with names longer than a letter
+        for (String name : new String[] { "x\u0304", "Σx", "Σx²", "Sx", "σx", "minX", "Q₁", "Med", "Q₃", "maxX",
+                "Σy", "Σy²", "Sy", "σy", "Σxy", "minY", "maxY", "r²" }) {
+            keywords.put(name, IDENTIFIER);
+        }
     }
 
     public Lexer(String program) {
@@ -80,6 +133,14 @@ public class Lexer {
      * Lexes the next token.
      */
     private void lexToken() {
+        for (String command : commands) {
+            if (source.startsWith(command, startPosition)) {
+                currentPosition = startPosition + command.length();
+                addToken(COMMAND_IDENTIFIER);
+                return;
+            }
+        }
+
         // get the current token, and move the position pointer to the next token
         char c = advance();
 
@@ -87,8 +148,10 @@ public class Lexer {
             case 'L':
                 if (match('₁','₂','₃','₄','₅','₆')) {
                     addToken(LIST_IDENTIFIER);
-                    break;
+                } else {
+                    identifier();
                 }
+                break;
             case '(': addToken(LPAREN); break;
             case ')': addToken(RPAREN); break;
             case '[':
@@ -135,6 +198,16 @@ public class Lexer {
             case '≤': addToken(LTOE); break;
             case '≥': addToken(GTOE); break;
             case '^': addToken(POW); break;
+            case '⁻':
+                if (match('¹')) {
+                    addToken(INVERSE);
+                } else {
+                    Main.error(lineNumber, "Unexpected character.");
+                }
+                break;
+            case 'ᵀ': addToken(TRANSPOSE); break;
+            case '²': addToken(SQUARE); break;
+            case '√': addToken(FUNCTION_IDENTIFIER); break;
             case '!': addToken(match('=') ? NOT_EQUAL : EXCLAMATION); break;
             case '"':
                 string();
@@ -184,7 +257,21 @@ public class Lexer {
 
         String text = source.substring(startPosition, currentPosition);
 
+        for (String suffix : keywordSuffixes) {
+            if (source.startsWith(suffix, currentPosition) && keywords.containsKey(text + suffix)) {
+                currentPosition += suffix.length();
+                addToken(keywords.get(text + suffix));
+                return;
+            }
+        }
+
+        // keywords don't need a space after them, so 5nCr2 is 5 nCr 2
         TokenType type = keywords.get(text);
+        while (type == null && text.length() > 2) {
+            text = text.substring(0, text.length() - 1);
+            type = keywords.get(text);
+            if (type != null) currentPosition = startPosition + text.length();
+        }
         if (type == null) {
             type = IDENTIFIER;
             // set the current position to 1 after the start, so that an identifier can only be one character long
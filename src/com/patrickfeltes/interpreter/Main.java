@@ -2,13 +2,26 @@ package com.patrickfeltes.interpreter;
 
 import com.patrickfeltes.interpreter.ast.Parser;
 import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.compiler.ClosureCompiler;
+import com.patrickfeltes.interpreter.compiler.JvmCompiler;
+import com.patrickfeltes.interpreter.compiler.TieredCompilation;
+import com.patrickfeltes.interpreter.compiler.VirtualMachine;
+import com.patrickfeltes.interpreter.data_types.OffHeapDoubles;
+import com.patrickfeltes.interpreter.data_types.Parallelism;
+import com.patrickfeltes.interpreter.data_types.TiList;
 import com.patrickfeltes.interpreter.errors.RuntimeError;
 import com.patrickfeltes.interpreter.files.FileUtilities;
 import com.patrickfeltes.interpreter.visitors.Interpreter;
 import com.patrickfeltes.interpreter.tokens.Token;
 import com.patrickfeltes.interpreter.tokens.TokenType;
 import com.patrickfeltes.interpreter.visitors.LabelMarker;
+import com.patrickfeltes.interpreter.visitors.NumericMarker;
+import com.patrickfeltes.interpreter.visitors.Optimizer;
+import com.patrickfeltes.interpreter.visitors.VariableResolver;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
@@ -18,28 +31,122 @@ public class Main {
     private static boolean hadError = false;
     private static boolean hadRuntimeError = false;
 
-    private static Interpreter interpreter = new Interpreter();
+    private static Engine engine = new Interpreter();
+    private static boolean optimize = false;
+    private static boolean printInPlaceStats = false;
 
     public static void main(String[] args) {
-        if (args.length == 0) {
+        List<String> filepaths = new ArrayList<>();
+        String engineName = "interpreter";
+        int promotionThreshold = TieredCompilation.DEFAULT_THRESHOLD;
+        boolean printTierStats = false;
+        Parallelism defaults = Parallelism.defaults();
+        long parallelThreshold = defaults.getThreshold();
+        int parallelism = defaults.getParallelism();
+        List<String> mappedLists = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--engine=")) {
+                engineName = arg.substring("--engine=".length());
+            } else if (arg.startsWith("--tier-threshold=")) {
+                promotionThreshold = Integer.parseInt(arg.substring("--tier-threshold=".length()));
+            } else if (arg.equals("--tier-stats")) {
+                printTierStats = true;
+            } else if (arg.startsWith("--parallel-threshold=")) {
+                parallelThreshold = Long.parseLong(arg.substring("--parallel-threshold=".length()));
+            } else if (arg.startsWith("--parallelism=")) {
+                parallelism = Integer.parseInt(arg.substring("--parallelism=".length()));
+            } else if (arg.startsWith("--off-heap-threshold=")) {
+                OffHeapDoubles.setThreshold(Long.parseLong(arg.substring("--off-heap-threshold=".length())));
+            } else if (arg.startsWith("--map-list=")) {
+                mappedLists.add(arg.substring("--map-list=".length()));
+            } else if (arg.equals("--optimize")) {
+                optimize = true;
+            } else if (arg.equals("--in-place-stats")) {
+                printInPlaceStats = true;
+            } else {
+                filepaths.add(arg);
+            }
+        }
+
+        engine = createEngine(engineName, promotionThreshold, printTierStats);
+        if (engine == null) {
+            System.out.println("Unknown engine. Valid engines are: interpreter, closure, bytecode, jvm.");
+            return;
+        }
+        engine.setParallelism(new Parallelism(parallelThreshold, parallelism));
+        for (String mappedList : mappedLists) {
+            if (!mapList(mappedList)) return;
+        }
+
+        if (filepaths.size() == 0) {
             Scanner scanner = new Scanner(System.in);
             while (true) {
                 execute(scanner.nextLine());
             }
-        } else if (args.length == 1) {
-            execute(FileUtilities.readFileToString(args[0]));
+        } else if (filepaths.size() == 1) {
+            execute(FileUtilities.readFileToString(filepaths.get(0)));
         } else {
             System.out.println("Invalid program arguments. Please provide the " +
-                    "filepath to your file relative to this directory as an argument.");
+                    "filepath to your file relative to this directory as an argument, " +
+                    "optionally preceded by --engine=<interpreter|closure|bytecode|jvm>, and for the interpreter " +
+                    "--tier-threshold=<loop iterations before compiling, 0 to never compile>, --tier-stats " +
+                    "and --in-place-stats, " +
+                    "--parallel-threshold=<elements from which list and matrix operations use several threads> " +
+                    "and --parallelism=<most threads used by one operation, 1 to use only one>, " +
+                    "--off-heap-threshold=<elements from which lists are stored off the heap>, " +
+                    "--map-list=L<1-6>=<file of little-endian doubles to map read-only into that list>, " +
+                    "and --optimize to fold constants and remove dead code before running.");
+        }
+    }
+
+    private static Engine createEngine(String name, int promotionThreshold, boolean printTierStats) {
+        switch (name) {
+            case "interpreter": return new Interpreter(promotionThreshold, printTierStats);
+            case "closure": return new ClosureCompiler();
+            case "bytecode": return new VirtualMachine();
+            case "jvm": return new JvmCompiler();
+        }
+        return null;
+    }
+
+    /**
+     * Maps a file of doubles into a list, given as L1=file up to L6=file.
+     * @return false if the list or the file is invalid
+     */
+    private static boolean mapList(String mappedList) {
+        int equals = mappedList.indexOf('=');
+        String list = equals == 2 ? mappedList.substring(0, 2) : "";
+        if (!list.matches("L[1-6]")) {
+            System.out.println("Invalid list to map: " + mappedList + ". Use L1=file up to L6=file.");
+            return false;
         }
+
+        Token name = new Token(TokenType.LIST_IDENTIFIER, "L" + "₁₂₃₄₅₆".charAt(list.charAt(1) - '1'), null, 0);
+        try {
+            engine.getEnvironment().assign(name, new TiList(OffHeapDoubles.map(Paths.get(mappedList.substring(3)))));
+        } catch (IOException e) {
+            System.out.println("Could not map " + mappedList.substring(3) + ": " + e.getMessage());
+            return false;
+        }
+        return true;
     }
 
     public static void execute(String program) {
         List<Token> tokens = new Lexer(program).lexTokens();
         System.out.println(tokens);
         Stmt head = new Parser(tokens).parse();
+        if (optimize) {
+            Optimizer optimizer = new Optimizer();
+            head = optimizer.optimize(head);
+            optimizer.printReport();
+        }
         Map<String, Stmt> labels = new LabelMarker().getLabels(head);
-        interpreter.interpret(labels, head);
+        new VariableResolver().resolve(head);
+        new NumericMarker().markAll(head);
+        engine.interpret(labels, head);
+        if (printInPlaceStats) {
+            engine.printInPlaceStats();
+        }
     }
 
     public static void error(int lineNumber, String message) {
@@ -1,5 +1,6 @@
 package com.patrickfeltes.interpreter.ast;
 
+import com.patrickfeltes.interpreter.functions.Function;
 import com.patrickfeltes.interpreter.tokens.Token;
 import com.patrickfeltes.interpreter.util.Pair;
 
@@ -10,6 +11,9 @@ import java.util.List;
  */
 public abstract class Expr {
 
+    // true if this expression always evaluates to a number, set by the NumericMarker before execution
+    public boolean numeric;
+
     /**
      * The accept method allows us to reroute back to the visit method defined in our visitor
      * @param visitor The class that calls this method
@@ -18,6 +22,14 @@ public abstract class Expr {
      */
     public abstract <R> R accept(Visitor<R> visitor);
 
+    /**
+     * The same as accept, but for visitors that produce unboxed doubles.
+     * Should only be used on expressions that are marked as numeric.
+     * @param visitor The class that calls this method
+     * @return The result of the visit method for the type of this expression defined in the visitor
+     */
+    public abstract double accept(DoubleVisitor visitor);
+
     /**
      * Visitor interface for the Visitor design pattern.
      * Allows us more flexibility in defining the operations that occur for these expression types
@@ -32,6 +44,31 @@ public abstract class Expr {
         R visitVariableExpr(Variable expr);
         R visitLogicalExpr(Logical expr);
         R visitCallExpr(Call expr);
+        R visitSequenceExpr(Sequence expr);
+    }
+
+    /**
+     * Visitor interface for numeric expressions, so that arithmetic can be done without boxing every result.
+     */
+    public interface DoubleVisitor {
+        double visitBinaryExpr(Binary expr);
+        double visitGroupingExpr(Grouping expr);
+        double visitLiteralExpr(Literal expr);
+        double visitUnaryExpr(Unary expr);
+        double visitVariableExpr(Variable expr);
+        double visitLogicalExpr(Logical expr);
+        double visitCallExpr(Call expr);
+        double visitSequenceExpr(Sequence expr);
+    }
+
+    /**
+     * A binary operator implemented for one combination of operand types.
+     * Binary expressions remember the operation they were first evaluated with, so that later evaluations
+     * only have to check that the operand types are still the same.
+     */
+    public interface BinaryOperation {
+        boolean handles(Object left, Object right);
+        Object apply(Object left, Object right);
     }
 
     /**
@@ -41,6 +78,10 @@ public abstract class Expr {
         public final Expr left;
         public final Token operator;
         public final Expr right;
+        // the operation this expression has specialized itself to, if it has only seen one combination of types
+        public BinaryOperation specialization;
+        // set once the operand types have changed, after which the operation is looked up on every evaluation
+        public boolean generic;
 
         public Binary(Expr left, Token operator, Expr right) {
             this.left = left;
@@ -51,6 +92,10 @@ public abstract class Expr {
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitBinaryExpr(this);
         }
+
+        public double accept(DoubleVisitor visitor) {
+            return visitor.visitBinaryExpr(this);
+        }
     }
 
     /**
@@ -66,6 +111,10 @@ public abstract class Expr {
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitGroupingExpr(this);
         }
+
+        public double accept(DoubleVisitor visitor) {
+            return visitor.visitGroupingExpr(this);
+        }
     }
 
     /**
@@ -81,15 +130,27 @@ public abstract class Expr {
 
         public final Object value;
         public final LiteralType type;
+        // the TiList or TiMatrix of a list or matrix literal whose elements are all constant, computed by the
+        // Optimizer; it is shared by every evaluation, so it must never be modified
+        public final Object constant;
 
         public Literal(Object value, LiteralType type) {
+            this(value, type, null);
+        }
+
+        public Literal(Object value, LiteralType type, Object constant) {
             this.value = value;
             this.type = type;
+            this.constant = constant;
         }
 
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitLiteralExpr(this);
         }
+
+        public double accept(DoubleVisitor visitor) {
+            return visitor.visitLiteralExpr(this);
+        }
     }
 
     /**
@@ -107,6 +168,10 @@ public abstract class Expr {
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitUnaryExpr(this);
         }
+
+        public double accept(DoubleVisitor visitor) {
+            return visitor.visitUnaryExpr(this);
+        }
     }
 
     /**
@@ -116,6 +181,8 @@ public abstract class Expr {
         public final Token name;
         public final Expr listIndex;
         public final Pair<Expr, Expr> matrixIndex;
+        // storage slot in the environment, bound by the VariableResolver before execution
+        public int slot = -1;
 
         public Variable(Token name, Expr listIndex, Pair<Expr, Expr> matrixIndex) {
             this.name = name;
@@ -127,6 +194,11 @@ public abstract class Expr {
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitVariableExpr(this);
         }
+
+        @Override
+        public double accept(DoubleVisitor visitor) {
+            return visitor.visitVariableExpr(this);
+        }
     }
 
     /**
@@ -146,6 +218,10 @@ public abstract class Expr {
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitLogicalExpr(this);
         }
+
+        public double accept(DoubleVisitor visitor) {
+            return visitor.visitLogicalExpr(this);
+        }
     }
 
     /**
@@ -154,6 +230,8 @@ public abstract class Expr {
     public static class Call extends Expr {
         public final Token callee;
         public final List<Expr> arguments;
+        // the function called, bound by the VariableResolver before execution
+        public Function function;
 
         public Call(Token callee, List<Expr> arguments) {
             this.callee = callee;
@@ -164,6 +242,45 @@ public abstract class Expr {
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitCallExpr(this);
         }
+
+        @Override
+        public double accept(DoubleVisitor visitor) {
+            return visitor.visitCallExpr(this);
+        }
+    }
+
+    /**
+     * seq(expression,variable,start,end,step): the list of the expression for every value of the variable, from
+     * start to end by step.
+     */
+    public static class Sequence extends Expr {
+        public final Token keyword;
+        public final Expr expression;
+        public final Token name;
+        public final Expr start;
+        public final Expr end;
+        public final Expr step;
+        // storage slot of the variable, bound by the VariableResolver before execution
+        public int slot = -1;
+
+        public Sequence(Token keyword, Expr expression, Token name, Expr start, Expr end, Expr step) {
+            this.keyword = keyword;
+            this.expression = expression;
+            this.name = name;
+            this.start = start;
+            this.end = end;
+            this.step = step;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitSequenceExpr(this);
+        }
+
+        @Override
+        public double accept(DoubleVisitor visitor) {
+            return visitor.visitSequenceExpr(this);
+        }
     }
 
 }
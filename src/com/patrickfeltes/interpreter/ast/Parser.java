@@ -1,6 +1,7 @@
 package com.patrickfeltes.interpreter.ast;
 
 import com.patrickfeltes.interpreter.Main;
+import com.patrickfeltes.interpreter.data_types.TiString;
 import com.patrickfeltes.interpreter.errors.ParseError;
 import com.patrickfeltes.interpreter.tokens.Token;
 import com.patrickfeltes.interpreter.tokens.TokenType;
@@ -56,7 +57,8 @@ public class Parser {
                                     | repeatStatement
                                     | returnStatement
                                     | stopStatement
-                                    | menuStatement ;
+                                    | menuStatement
+                                    | commandStatement ;
 
             exprOrAssignStatement   : expression (STO (IDENTIFIER | STRING_IDENTIFIER | (MATRIX_IDENTIFIER ("(" expression "," expression ")")? | (LIST_IDENTIFIER ("(" expression ")")?))? (EOL | EOF) ;
             dispStatement           : "Disp" expression ("," expression) (EOL | EOF) ;
@@ -71,6 +73,7 @@ public class Parser {
             returnStatement         : "Return" (EOL | EOF) ;
             stopStatement           : "Stop" (EOL | EOF) ;
             menuStatement           :
+            commandStatement        : COMMAND_IDENTIFIER arguments? (EOL | EOF) ;
 
             labelIdentifier         : (IDENTIFIER IDENTIFIER?)
                                     | (NUMBER IDENTIFIER?)
@@ -84,10 +87,14 @@ public class Parser {
             comparison              : addition ((">" | ">=" | "<" | "<=" addition)* ;
             addition                : multiplication (("+" | "-") multiplication)* ;
             multiplication          : unary (("*" | "/") unary)* ;
-            unary                   : (("+" | "-") unary) | exponent ;
-            exponent                : (call "^" exponent) | unary ;
+            unary                   : (("+" | "-") unary) | probability ;
+            probability             : exponent (("nPr" | "nCr") exponent)* ;
+            exponent                : (postfix "^" exponent) | unary ;
+            postfix                 : call ("⁻¹" | "ᵀ" | "!" | "²")* ;
             call                    : FUNCTION_IDENTIFIER "(" arguments? ")"
+                                    | sequence
                                     | primary;
+            sequence                : "seq" "(" expression "," IDENTIFIER "," expression "," expression ("," expression)? ")" ;
             arguments               : expression ( "," expression )* ;
             primary                 : NUMBER
                                     | STRING
@@ -132,6 +139,7 @@ public class Parser {
         if (match(RETURN)) return returnStatement();
         if (match(STOP)) return stopStatement();
         if (match(MENU)) return menuStatement();
+        if (match(COMMAND_IDENTIFIER)) return commandStatement();
 
         return exprOrAssignStatement();
     }
@@ -379,6 +387,23 @@ public class Parser {
         return new Stmt.Stop();
     }
 
+    /**
+     * Parses a command such as 1-Var Stats, which takes its arguments without parentheses, as a call.
+     */
+    private Stmt commandStatement() {
+        Token callee = previous();
+        List<Expr> arguments = new ArrayList<>();
+        if (!check(EOL) && !atEnd()) {
+            arguments = arguments();
+        }
+
+        if (!atEnd()) {
+            eat(EOL, "Expect a new line after the command.");
+        }
+
+        return new Stmt.Expression(new Expr.Call(callee, arguments));
+    }
+
     private Stmt menuStatement() {
         eat(LPAREN, "Expect '(' after Menu.");
         String title = (String)eat(STRING, "Expect a string for the title.").literal;
@@ -517,11 +542,26 @@ public class Parser {
             return new Expr.Unary(operator, right);
         }
 
-        return exponent();
+        return probability();
+    }
+
+    private Expr probability() {
+        Expr expr = exponent();
+
+        // nPr and nCr are called like functions, named by their tokens
+        while (match(NPR, NCR)) {
+            Token operator = previous();
+            List<Expr> arguments = new ArrayList<>();
+            arguments.add(expr);
+            arguments.add(exponent());
+            expr = new Expr.Call(operator, arguments);
+        }
+
+        return expr;
     }
 
     private Expr exponent() {
-        Expr expr = call();
+        Expr expr = postfix();
 
         // if there is a power, we need to call exponent again for right-associativity
         while (match(POW)) {
@@ -533,6 +573,27 @@ public class Parser {
         return expr;
     }
 
+    private Expr postfix() {
+        Expr expr = call();
+
+        // inverse, transpose and factorial are called like functions, named by their tokens
+        while (match(INVERSE, TRANSPOSE, EXCLAMATION, SQUARE)) {
+            Token operator = previous();
+            if (operator.type == SQUARE) {
+                // a square is a power of two, so that it is marked numeric, fused and compiled like one
+                Token power = new Token(POW, operator.lexeme, null, operator.lineNumber);
+                expr = new Expr.Binary(expr, power, new Expr.Literal(2.0, Expr.Literal.LiteralType.DOUBLE));
+                continue;
+            }
+
+            List<Expr> arguments = new ArrayList<>();
+            arguments.add(expr);
+            expr = new Expr.Call(operator, arguments);
+        }
+
+        return expr;
+    }
+
     private Expr call() {
         if (match(FUNCTION_IDENTIFIER)) {
             Token callee = previous();
@@ -545,11 +606,31 @@ public class Parser {
                 arguments = new ArrayList<>();
             }
             return new Expr.Call(callee, arguments);
+        } else if (match(SEQ)) {
+            return sequence();
         } else {
             return primary();
         }
     }
 
+    private Expr sequence() {
+        Token keyword = previous();
+        eat(LPAREN, "Expect '(' after seq.");
+        Expr expression = expression();
+        eat(COMMA, "Expect a comma after the expression.");
+        Token name = eat(IDENTIFIER, "Expect a variable after the expression.");
+        eat(COMMA, "Expect a comma after the variable.");
+        Expr start = expression();
+        eat(COMMA, "Expect a comma after start argument.");
+        Expr end = expression();
+        Expr step = new Expr.Literal(1.0, Expr.Literal.LiteralType.DOUBLE);
+        if (match(COMMA)) {
+            step = expression();
+        }
+        eat(RPAREN, "Expect ')' after seq arguments.");
+        return new Expr.Sequence(keyword, expression, name, start, end, step);
+    }
+
     private List<Expr> arguments() {
         List<Expr> arguments = new ArrayList<>();
         arguments.add(expression());
@@ -565,7 +646,7 @@ public class Parser {
         }
 
         if (match(STRING)) {
-            return new Expr.Literal(previous().literal, Expr.Literal.LiteralType.STRING);
+            return new Expr.Literal(new TiString((String)previous().literal), Expr.Literal.LiteralType.STRING);
         }
 
         if (match(LBRACE)) {
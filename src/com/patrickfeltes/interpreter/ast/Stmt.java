@@ -67,6 +67,8 @@ public abstract class Stmt {
         public final Token name;
         public final Expr listIndex;
         public final Pair<Expr, Expr> matrixIndex;
+        // storage slot in the environment, bound by the VariableResolver before execution
+        public int slot = -1;
 
         public Assign(Expr expression, Token name, Expr listIndex, Pair<Expr, Expr> matrixIndex) {
             this.expression = expression;
@@ -160,6 +162,8 @@ public abstract class Stmt {
         public final Expr end;
         public final Expr step;
         public final Stmt head;
+        // storage slot of the loop variable, bound by the VariableResolver before execution
+        public int slot = -1;
 
         public For(Token name, Expr start, Expr end, Expr step, Stmt head) {
             this.name = name;
@@ -178,6 +182,9 @@ public abstract class Stmt {
     public static class Label extends Stmt {
         public final String label;
 
+        // the If, While, For and Repeat statements around the label, outermost first; set by the LabelMarker
+        public Stmt[] path;
+
         public Label(String label) {
             this.label = label;
         }
@@ -191,6 +198,9 @@ public abstract class Stmt {
     public static class Goto extends Stmt {
         public final String label;
 
+        // set by the LabelMarker, null if the label doesn't exist
+        public Label target;
+
         public Goto(String label) {
             this.label = label;
         }
@@ -235,6 +245,9 @@ public abstract class Stmt {
         public final List<String> options;
         public final List<String> labels;
 
+        // the label of every option, set by the LabelMarker; null where the label doesn't exist
+        public Label[] targets;
+
         public Menu(String title, List<String> options, List<String> labels) {
             this.title = title;
             this.options = options;
@@ -0,0 +1,499 @@
+package com.patrickfeltes.interpreter.compiler;
+
+import com.patrickfeltes.interpreter.ast.Expr;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.errors.RuntimeError;
+import com.patrickfeltes.interpreter.functions.NumericFunction;
+import com.patrickfeltes.interpreter.tokens.Token;
+import com.patrickfeltes.interpreter.visitors.Environment;
+
+import java.util.*;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+import static com.patrickfeltes.interpreter.tokens.TokenType.*;
+
+/**
+ * The bytecode compiler flattens the AST into a chunk of instructions for the virtual machine.
+ * All control flow (If, While, For, Repeat, Goto and Menu) becomes plain jumps, and numeric expressions are
+ * computed directly in registers. Statements that work on lists, matrices and strings, or that do input and output,
+ * are compiled by the ClosureCompiler and called from the chunk.
+ *
+ * Registers are numbered as: the real variables A to Z, then every constant and temporary value of the program.
+ *
+ * A Goto or Menu into a For loop first sets up the counter, end and step of the loop the way the Interpreter does when
+ * it jumps, so that the End of the loop finds them.
+ */
+public class BytecodeCompiler implements Expr.Visitor<Integer>, Stmt.Visitor<Void> {
+
+    private final Environment environment;
+    private final ClosureCompiler closureCompiler;
+
+    private int[] code = new int[64];
+    private int count = 0;
+    private final List<Object> objects = new ArrayList<>();
+
+    private int nextRegister = Environment.NUMBER_SLOTS;
+    private final Map<Double, Integer> constantRegisters = new HashMap<>();
+
+    private final Map<String, Integer> labelAddresses = new HashMap<>();
+    private final List<Integer> gotoAddresses = new ArrayList<>();
+    private final List<String> gotoLabels = new ArrayList<>();
+
+    // the If, While, For and Repeat statements around the statement being compiled, outermost first
+    private final List<Stmt> enclosing = new ArrayList<>();
+    // the registers of the counter, end and step of every For loop, in that order
+    private final Map<Stmt.For, int[]> forRegisters = new IdentityHashMap<>();
+
+    // the register the current expression should be computed into, or -1 if any register will do
+    private int target = -1;
+
+    public BytecodeCompiler(Environment environment, ClosureCompiler closureCompiler) {
+        this.environment = environment;
+        this.closureCompiler = closureCompiler;
+    }
+
+    public Chunk compile(Stmt head) {
+        compileAll(head);
+        emit(OpCode.HALT);
+
+        for (int i = 0; i < gotoAddresses.size(); i++) {
+            int address = gotoAddresses.get(i);
+            Integer label = labelAddresses.get(gotoLabels.get(i));
+            if (label != null) {
+                code[address + 1] = label;
+            } else {
+                code[address] = OpCode.GOTO_MISSING;
+                code[address + 1] = addObject(gotoLabels.get(i));
+            }
+        }
+
+        int[] registers = new int[constantRegisters.size()];
+        double[] constants = new double[constantRegisters.size()];
+        int i = 0;
+        for (Map.Entry<Double, Integer> constant : constantRegisters.entrySet()) {
+            constants[i] = constant.getKey();
+            registers[i] = constant.getValue();
+            i++;
+        }
+
+        return new Chunk(Arrays.copyOf(code, count), objects.toArray(), registers, constants, nextRegister);
+    }
+
+    @Override
+    public Integer visitBinaryExpr(Expr.Binary expr) {
+        int opCode;
+        switch (expr.operator.type) {
+            case PLUS: opCode = OpCode.ADD; break;
+            case MINUS: opCode = OpCode.SUB; break;
+            case MUL: opCode = OpCode.MUL; break;
+            case DIV: opCode = OpCode.DIV; break;
+            case POW: opCode = OpCode.POW; break;
+            case GT: opCode = OpCode.GT; break;
+            case GTOE: opCode = OpCode.GTOE; break;
+            case LT: opCode = OpCode.LT; break;
+            case LTOE: opCode = OpCode.LTOE; break;
+            case EQUAL: opCode = OpCode.EQUAL; break;
+            case NOT_EQUAL: opCode = OpCode.NOT_EQUAL; break;
+            default: return evaluateWithClosure(expr);
+        }
+
+        int destination = destination();
+        int left = compileNumber(expr.left, -1);
+        int right = compileNumber(expr.right, -1);
+        emit(opCode, destination, left, right);
+        return destination;
+    }
+
+    @Override
+    public Integer visitGroupingExpr(Expr.Grouping expr) {
+        return compileNumber(expr.inside, target);
+    }
+
+    @Override
+    public Integer visitLiteralExpr(Expr.Literal expr) {
+        int constant = constantRegister((double)expr.value);
+        if (target < 0) return constant;
+
+        emit(OpCode.MOVE, target, constant);
+        return target;
+    }
+
+    @Override
+    public Integer visitUnaryExpr(Expr.Unary expr) {
+        if (expr.operator.type != MINUS) return compileNumber(expr.right, target);
+
+        int destination = destination();
+        int right = compileNumber(expr.right, -1);
+        emit(OpCode.NEGATE, destination, right);
+        return destination;
+    }
+
+    @Override
+    public Integer visitVariableExpr(Expr.Variable expr) {
+        if (expr.listIndex != null) {
+            int destination = destination();
+            int index = compileIndex(expr.name, expr.listIndex);
+            emit(OpCode.LIST_GET, destination, expr.slot, index, addObject(expr.name));
+            return destination;
+        } else if (expr.matrixIndex != null) {
+            int destination = destination();
+            int row = compileIndex(expr.name, expr.matrixIndex.first);
+            int col = compileIndex(expr.name, expr.matrixIndex.second);
+            emit(OpCode.MATRIX_GET, destination, expr.slot, row, col, addObject(expr.name));
+            return destination;
+        }
+
+        // real variables already live in registers
+        if (target < 0) return expr.slot;
+
+        emit(OpCode.MOVE, target, expr.slot);
+        return target;
+    }
+
+    @Override
+    public Integer visitLogicalExpr(Expr.Logical expr) {
+        int opCode;
+        if (expr.operator.type == AND) {
+            opCode = OpCode.AND;
+        } else if (expr.operator.type == OR) {
+            opCode = OpCode.OR;
+        } else {
+            return evaluateWithClosure(expr);
+        }
+
+        int destination = destination();
+        int left = compileNumber(expr.left, -1);
+        int right = compileNumber(expr.right, -1);
+        emit(opCode, destination, left, right);
+        return destination;
+    }
+
+    @Override
+    public Integer visitCallExpr(Expr.Call expr) {
+        // the NumericMarker has only marked calls of numeric functions with the right number of numbers
+        NumericFunction function = (NumericFunction)expr.function;
+        int destination = destination();
+        int[] arguments = new int[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = compileNumber(expr.arguments.get(i), -1);
+        }
+
+        switch (arguments.length) {
+            case 1:
+                emit(OpCode.CALL1, destination, arguments[0], addObject(function.unary()));
+                break;
+            case 2:
+                emit(OpCode.CALL2, destination, arguments[0], arguments[1], addObject(function.binary()));
+                break;
+            default:
+                emit(OpCode.CALL3, destination, arguments[0], arguments[1], arguments[2],
+                        addObject(function.ternary()));
+                break;
+        }
+        return destination;
+    }
+
+    @Override
+    public Integer visitSequenceExpr(Expr.Sequence expr) {
+        // a seq( is a list, never a number, so the closure compiler reports it
+        return evaluateWithClosure(expr);
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        if (stmt.expression.numeric) {
+            compileNumber(stmt.expression, newRegister());
+        } else {
+            execute(stmt);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitDispStmt(Stmt.Disp stmt) {
+        execute(stmt);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignStmt(Stmt.Assign stmt) {
+        if (!stmt.expression.numeric) {
+            execute(stmt);
+        } else if (stmt.listIndex != null) {
+            int value = compileNumber(stmt.expression, -1);
+            int index = compileIndex(stmt.name, stmt.listIndex);
+            emit(OpCode.LIST_SET, stmt.slot, value, index, addObject(stmt.name));
+        } else if (stmt.matrixIndex != null) {
+            int value = compileNumber(stmt.expression, -1);
+            int row = compileIndex(stmt.name, stmt.matrixIndex.first);
+            int col = compileIndex(stmt.name, stmt.matrixIndex.second);
+            emit(OpCode.MATRIX_SET, stmt.slot, value, row, col, addObject(stmt.name));
+        } else if (Environment.isNumberSlot(stmt.slot)) {
+            // the value is computed straight into the variable's register
+            compileNumber(stmt.expression, stmt.slot);
+        } else {
+            execute(stmt);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitPromptStmt(Stmt.Prompt stmt) {
+        execute(stmt);
+        return null;
+    }
+
+    @Override
+    public Void visitInputStmt(Stmt.Input stmt) {
+        execute(stmt);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        int condition = compileNumber(stmt.condition, -1);
+        int jumpToElse = emitJump(OpCode.JUMP_IF_FALSE, condition);
+        compileBlock(stmt, stmt.thenHead);
+
+        if (stmt.elseHead != null) {
+            int jumpToEnd = emitJump(OpCode.JUMP);
+            patchJump(jumpToElse);
+            compileBlock(stmt, stmt.elseHead);
+            patchJump(jumpToEnd);
+        } else {
+            patchJump(jumpToElse);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = count;
+        int condition = compileNumber(stmt.condition, -1);
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE, condition);
+        compileBlock(stmt, stmt.head);
+        emit(OpCode.JUMP, loopStart);
+        patchJump(exitJump);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        // like the interpreter, end and step are determined once before start is assigned,
+        // and the loop counts with its own counter that is copied into the variable every iteration
+        int[] registers = forRegisters(stmt);
+        int counter = registers[0];
+        int end = compileNumber(stmt.end, registers[1]);
+        int step = compileNumber(stmt.step, registers[2]);
+        if (stmt.start.numeric && Environment.isNumberSlot(stmt.slot)) {
+            compileNumber(stmt.start, stmt.slot);
+        } else {
+            Token name = stmt.name;
+            int slot = stmt.slot;
+            Supplier<Object> start = closureCompiler.compile(stmt.start);
+            emit(OpCode.EXEC, addObject((Runnable) () -> environment.assign(name, slot, start.get())));
+        }
+        emit(OpCode.MOVE, counter, stmt.slot);
+
+        int loopStart = count;
+        int exitJump = emitJump(OpCode.FOR_TEST, counter, end, step);
+        emit(OpCode.MOVE, stmt.slot, counter);
+        compileBlock(stmt, stmt.head);
+        emit(OpCode.ADD, counter, counter, step);
+        emit(OpCode.JUMP, loopStart);
+        patchJump(exitJump);
+        return null;
+    }
+
+    @Override
+    public Void visitLabelStmt(Stmt.Label stmt) {
+        // the first label with a name wins, like in the LabelMarker
+        if (!labelAddresses.containsKey(stmt.label)) {
+            labelAddresses.put(stmt.label, count);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGotoStmt(Stmt.Goto stmt) {
+        emitGoto(stmt.label, stmt.target);
+        return null;
+    }
+
+    @Override
+    public Void visitRepeatStmt(Stmt.Repeat stmt) {
+        int loopStart = count;
+        compileBlock(stmt, stmt.head);
+        int condition = compileNumber(stmt.condition, -1);
+        emit(OpCode.JUMP_IF_FALSE, condition, loopStart);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        emit(OpCode.HALT);
+        return null;
+    }
+
+    @Override
+    public Void visitStopStmt(Stmt.Stop stmt) {
+        emit(OpCode.HALT);
+        return null;
+    }
+
+    @Override
+    public Void visitMenuStmt(Stmt.Menu stmt) {
+        Chunk.Menu menu = new Chunk.Menu(stmt, new int[stmt.labels.size()]);
+        emit(OpCode.MENU, addObject(menu));
+
+        // every option lands on a Goto of its own, which the menu never falls through to
+        for (int i = 0; i < menu.targets.length; i++) {
+            Stmt.Label target = stmt.targets == null ? null : stmt.targets[i];
+            menu.targets[i] = target == null ? -1 : count;
+            if (target != null) emitGoto(stmt.labels.get(i), target);
+        }
+        return null;
+    }
+
+    private void compileAll(Stmt head) {
+        for (Stmt statement = head; statement != null; statement = statement.next()) {
+            statement.accept(this);
+        }
+    }
+
+    private void compileBlock(Stmt owner, Stmt head) {
+        enclosing.add(owner);
+        compileAll(head);
+        enclosing.remove(enclosing.size() - 1);
+    }
+
+    /**
+     * Emits a jump to a label, patched once every label has an address. The jump first sets up every For loop it
+     * enters, as the Interpreter does: the loop counts on from the current value of its variable, with its end and
+     * step evaluated at the jump. Loops around both the jump and the label keep their state, and the other blocks
+     * have none.
+     * @param target the label, or null if the program doesn't have it
+     */
+    private void emitGoto(String label, Stmt.Label target) {
+        if (target != null) {
+            Stmt[] path = target.path;
+            int kept = 0;
+            while (kept < enclosing.size() && kept < path.length && enclosing.get(kept) == path[kept]) {
+                kept++;
+            }
+
+            for (int i = kept; i < path.length; i++) {
+                if (!(path[i] instanceof Stmt.For)) continue;
+                Stmt.For loop = (Stmt.For) path[i];
+                int[] registers = forRegisters(loop);
+                compileNumber(loop.end, registers[1]);
+                compileNumber(loop.step, registers[2]);
+                emit(OpCode.MOVE, registers[0], loop.slot);
+            }
+        }
+
+        gotoAddresses.add(count);
+        gotoLabels.add(label);
+        emit(OpCode.JUMP, -1);
+    }
+
+    private int[] forRegisters(Stmt.For loop) {
+        int[] registers = forRegisters.get(loop);
+        if (registers == null) {
+            registers = new int[] { newRegister(), newRegister(), newRegister() };
+            forRegisters.put(loop, registers);
+        }
+        return registers;
+    }
+
+    /**
+     * Compiles an expression that must produce a number.
+     * @param expr the expression to compile
+     * @param target the register to put the result in, or -1 if any register will do
+     * @return the register that holds the result
+     */
+    private int compileNumber(Expr expr, int target) {
+        int enclosing = this.target;
+        this.target = target;
+        try {
+            if (!expr.numeric) return evaluateWithClosure(expr);
+            return expr.accept(this);
+        } finally {
+            this.target = enclosing;
+        }
+    }
+
+    private int compileIndex(Token name, Expr index) {
+        if (index.numeric) return compileNumber(index, -1);
+
+        Supplier<Object> value = closureCompiler.compile(index);
+        int destination = newRegister();
+        emit(OpCode.EVAL, destination, addObject((DoubleSupplier) () -> {
+            Object result = value.get();
+            if (!(result instanceof Double)) throw new RuntimeError(name, "Index must be a number.");
+            return (double)result;
+        }));
+        return destination;
+    }
+
+    private int evaluateWithClosure(Expr expr) {
+        int destination = destination();
+        emit(OpCode.EVAL, destination, addObject(closureCompiler.compileDouble(expr)));
+        return destination;
+    }
+
+    private void execute(Stmt stmt) {
+        emit(OpCode.EXEC, addObject(stmt.accept(closureCompiler)));
+    }
+
+    private int destination() {
+        return target >= 0 ? target : newRegister();
+    }
+
+    private int newRegister() {
+        return nextRegister++;
+    }
+
+    private int constantRegister(double value) {
+        Integer register = constantRegisters.get(value);
+        if (register == null) {
+            register = newRegister();
+            constantRegisters.put(value, register);
+        }
+        return register;
+    }
+
+    private int addObject(Object object) {
+        objects.add(object);
+        return objects.size() - 1;
+    }
+
+    /**
+     * Emits a jump whose target is not known yet.
+     * @return the address of the jump, to be given to patchJump
+     */
+    private int emitJump(int opCode, int... operands) {
+        int[] instruction = Arrays.copyOf(operands, operands.length + 1);
+        instruction[operands.length] = -1;
+        emit(opCode, instruction);
+        return count - 1;
+    }
+
+    /**
+     * Makes a jump emitted by emitJump land on the next instruction.
+     */
+    private void patchJump(int address) {
+        code[address] = count;
+    }
+
+    private void emit(int opCode, int... operands) {
+        if (count + operands.length + 1 > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, count + operands.length + 1));
+        }
+        code[count++] = opCode;
+        for (int operand : operands) {
+            code[count++] = operand;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.patrickfeltes.interpreter.compiler;
+
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.exceptions.GotoException;
+
+/**
+ * A chunk is a program compiled for the virtual machine.
+ */
+public class Chunk {
+
+    // the instructions, see OpCode
+    public final int[] code;
+    // compiled closures, tokens and menus referenced by instructions
+    public final Object[] objects;
+    // constants live in registers, which are filled in before the code runs
+    public final int[] constantRegisters;
+    public final double[] constants;
+    public final int registerCount;
+
+    public Chunk(int[] code, Object[] objects, int[] constantRegisters, double[] constants, int registerCount) {
+        this.code = code;
+        this.objects = objects;
+        this.constantRegisters = constantRegisters;
+        this.constants = constants;
+        this.registerCount = registerCount;
+    }
+
+    /**
+     * A Menu statement, along with the address of the label behind each option.
+     */
+    public static class Menu {
+        public final Stmt.Menu menu;
+        // -1 if the label doesn't exist
+        public final int[] targets;
+
+        public Menu(Stmt.Menu menu, int[] targets) {
+            this.menu = menu;
+            this.targets = targets;
+        }
+
+        /**
+         * Shows the menu and waits for the user to pick an option.
+         * @return the address of the label of the chosen option
+         */
+        public int chooseTarget(ClosureCompiler closureCompiler) {
+            int option = closureCompiler.chooseMenuOption(menu);
+            if (targets[option] < 0) throw new GotoException(menu.labels.get(option));
+            return targets[option];
+        }
+    }
+}
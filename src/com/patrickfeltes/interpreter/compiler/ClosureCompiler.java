@@ -0,0 +1,918 @@
+package com.patrickfeltes.interpreter.compiler;
+
+import com.patrickfeltes.interpreter.Engine;
+import com.patrickfeltes.interpreter.Lexer;
+import com.patrickfeltes.interpreter.Main;
+import com.patrickfeltes.interpreter.ast.Expr;
+import com.patrickfeltes.interpreter.ast.Parser;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.data_types.Parallelism;
+import com.patrickfeltes.interpreter.data_types.TiList;
+import com.patrickfeltes.interpreter.data_types.TiMatrix;
+import com.patrickfeltes.interpreter.data_types.TiString;
+import com.patrickfeltes.interpreter.errors.RuntimeError;
+import com.patrickfeltes.interpreter.exceptions.GotoException;
+import com.patrickfeltes.interpreter.exceptions.ReturnException;
+import com.patrickfeltes.interpreter.exceptions.StopException;
+import com.patrickfeltes.interpreter.functions.DoubleTernaryOperator;
+import com.patrickfeltes.interpreter.functions.Function;
+import com.patrickfeltes.interpreter.functions.NumericFunction;
+import com.patrickfeltes.interpreter.functions.SequenceFunction;
+import com.patrickfeltes.interpreter.tokens.Token;
+import com.patrickfeltes.interpreter.visitors.BinaryOperations;
+import com.patrickfeltes.interpreter.visitors.Environment;
+import com.patrickfeltes.interpreter.visitors.FusedExpression;
+import com.patrickfeltes.interpreter.visitors.InPlaceUpdate;
+import com.patrickfeltes.interpreter.visitors.InPlaceUpdates;
+import com.patrickfeltes.interpreter.visitors.NumericMarker;
+import com.patrickfeltes.interpreter.visitors.SequenceValues;
+import com.patrickfeltes.interpreter.visitors.VariableResolver;
+
+import java.util.*;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleSupplier;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import static com.patrickfeltes.interpreter.tokens.TokenType.*;
+
+/**
+ * The closure compiler turns the AST into a tree of lambdas before running it.
+ * Every decision that the Interpreter makes on each visit (which node type, which operator, which variable slot)
+ * is made once here, so running the program is only a matter of calling the pre-bound lambdas.
+ * Expressions marked as numeric compile to DoubleSuppliers, so they never box their results.
+ */
+public class ClosureCompiler implements Engine, Expr.Visitor<Supplier<Object>>, Stmt.Visitor<Runnable> {
+
+    private static final double TRUE = 1.0;
+    private static final double FALSE = 0.0;
+
+    private final Scanner userInput = new Scanner(System.in);
+    protected final Environment environment;
+    private final DoubleCompiler doubleCompiler = new DoubleCompiler();
+    private final VariableResolver resolver = new VariableResolver();
+    private final NumericMarker numericMarker = new NumericMarker();
+    private final InPlaceUpdates inPlaceUpdates;
+
+    // where every statement ended up, so that a Goto can resume at a label
+    private final Map<Stmt, Position> positions = new HashMap<>();
+    // the compiled If, While, For and Repeat statements, so that a Goto can enter them partway through
+    private final Map<Stmt, Block> blocks = new HashMap<>();
+
+    public ClosureCompiler() {
+        this(new Environment());
+    }
+
+    public ClosureCompiler(Environment environment) {
+        this(environment, new InPlaceUpdates());
+    }
+
+    ClosureCompiler(Environment environment, InPlaceUpdates inPlaceUpdates) {
+        this.environment = environment;
+        this.inPlaceUpdates = inPlaceUpdates;
+    }
+
+    @Override
+    public void interpret(Map<String, Stmt> labels, Stmt head) {
+        Parallelism previous = environment.getParallelism().enter();
+        try {
+            Runnable[] program = compileAll(head);
+            Stmt.Label label = null;
+            while (true) {
+                try {
+                    if (label == null) {
+                        runAll(program);
+                    } else {
+                        resume(label, 0);
+                    }
+                    return;
+                } catch (RuntimeError error) {
+                    Main.runtimeError(error);
+                    return;
+                } catch (GotoException ex) {
+                    // no loop around the jump holds the label, so every block the jump was in is left
+                    if (ex.target == null) throw ex;
+                    label = ex.target;
+                } catch (ReturnException ex) {
+                    return;
+                } catch (StopException ex) {
+                    return;
+                }
+            }
+        } finally {
+            Parallelism.restore(previous);
+        }
+    }
+
+    @Override
+    public void setParallelism(Parallelism parallelism) {
+        environment.setParallelism(parallelism);
+    }
+
+    @Override
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    @Override
+    public void printInPlaceStats() {
+        inPlaceUpdates.printStats();
+    }
+
+    /**
+     * Compiles a chain of statements into an array of closures, one per statement.
+     * @param head the first statement of the chain
+     * @return the compiled statements, in order
+     */
+    public Runnable[] compileAll(Stmt head) {
+        List<Stmt> statements = new ArrayList<>();
+        for (Stmt statement = head; statement != null; statement = statement.next()) {
+            statements.add(statement);
+        }
+
+        Runnable[] block = new Runnable[statements.size()];
+        for (int i = 0; i < block.length; i++) {
+            Stmt statement = statements.get(i);
+            positions.put(statement, new Position(block, i));
+            block[i] = statement.accept(this);
+            if (block[i] instanceof Block) blocks.put(statement, (Block) block[i]);
+        }
+        return block;
+    }
+
+    /**
+     * Compiles an expression to a closure producing its value.
+     * @param expr the expression to compile
+     * @return the compiled expression
+     */
+    public Supplier<Object> compile(Expr expr) {
+        if (expr.numeric) {
+            DoubleSupplier value = compileDouble(expr);
+            return value::getAsDouble;
+        }
+        return expr.accept(this);
+    }
+
+    /**
+     * Compiles an expression that must produce a number to a closure producing an unboxed double.
+     * @param expr the expression to compile
+     * @return the compiled expression
+     */
+    public DoubleSupplier compileDouble(Expr expr) {
+        if (expr.numeric) return expr.accept(doubleCompiler);
+
+        Supplier<Object> value = expr.accept(this);
+        return () -> (double)value.get();
+    }
+
+    @Override
+    public Supplier<Object> visitBinaryExpr(Expr.Binary expr) {
+        // a list or matrix expression with several operators runs as one pass over the elements
+        FusedExpression fused = FusedExpression.of(expr, false);
+        if (fused == null) fused = FusedExpression.of(expr, true);
+        if (fused != null && fused.getOperations() > 1) {
+            List<Supplier<Object>> leaves = new ArrayList<>();
+            for (Expr leaf : fused.getLeaves()) {
+                leaves.add(compile(leaf));
+            }
+            FusedExpression expression = fused;
+            IntFunction<Object> evaluator = leaf -> leaves.get(leaf).get();
+            return () -> expression.evaluate(evaluator);
+        }
+
+        Supplier<Object> left = compile(expr.left);
+        Supplier<Object> right = compile(expr.right);
+        Token operator = expr.operator;
+
+        // when both operand types are known ahead of time the operation is picked now, otherwise on first use
+        Class<?> leftType = staticType(expr.left);
+        Class<?> rightType = staticType(expr.right);
+        Expr.BinaryOperation known = leftType != null && rightType != null
+                ? BinaryOperations.specialize(operator, leftType, rightType) : null;
+
+        return new Supplier<Object>() {
+            private Expr.BinaryOperation operation = known;
+
+            @Override
+            public Object get() {
+                Object leftValue = left.get();
+                Object rightValue = right.get();
+                if (operation != null && operation.handles(leftValue, rightValue)) {
+                    return operation.apply(leftValue, rightValue);
+                }
+
+                Expr.BinaryOperation found = BinaryOperations.specialize(operator, leftValue, rightValue);
+                if (found == null) {
+                    throw new RuntimeError(operator, "'" + operator.lexeme + "' is not defined for these types.");
+                }
+                operation = found;
+                return found.apply(leftValue, rightValue);
+            }
+        };
+    }
+
+    @Override
+    public Supplier<Object> visitGroupingExpr(Expr.Grouping expr) {
+        return compile(expr.inside);
+    }
+
+    @Override
+    public Supplier<Object> visitLiteralExpr(Expr.Literal expr) {
+        if (expr.constant instanceof TiList) {
+            // a copy sharing the elements, so that a command changing the list in place can't change the constant
+            TiList constant = (TiList)expr.constant;
+            return () -> new TiList(constant);
+        } else if (expr.constant != null) {
+            Object constant = expr.constant;
+            return () -> constant;
+        } else if (expr.type == Expr.Literal.LiteralType.LIST) {
+            DoubleSupplier[] elements = compileDoubles((List<Expr>)expr.value);
+            return () -> {
+                double[] list = new double[elements.length];
+                for (int i = 0; i < list.length; i++) {
+                    list[i] = elements[i].getAsDouble();
+                }
+                return new TiList(list);
+            };
+        } else if (expr.type == Expr.Literal.LiteralType.MATRIX) {
+            List<List<Expr>> rows = (List<List<Expr>>)expr.value;
+            DoubleSupplier[][] entries = new DoubleSupplier[rows.size()][];
+            for (int r = 0; r < entries.length; r++) {
+                entries[r] = compileDoubles(rows.get(r));
+            }
+            return () -> {
+                List<List<Double>> matrix = new ArrayList<>(entries.length);
+                for (DoubleSupplier[] row : entries) {
+                    List<Double> values = new ArrayList<>(row.length);
+                    for (DoubleSupplier entry : row) {
+                        values.add(entry.getAsDouble());
+                    }
+                    matrix.add(values);
+                }
+                return new TiMatrix(matrix);
+            };
+        }
+
+        Object value = expr.value;
+        return () -> value;
+    }
+
+    @Override
+    public Supplier<Object> visitUnaryExpr(Expr.Unary expr) {
+        Supplier<Object> right = compile(expr.right);
+        if (expr.operator.type == MINUS) {
+            return () -> -(double)right.get();
+        }
+        return right;
+    }
+
+    @Override
+    public Supplier<Object> visitVariableExpr(Expr.Variable expr) {
+        Token name = expr.name;
+        int slot = expr.slot;
+
+        if (expr.listIndex != null) {
+            DoubleSupplier index = compileIndex(name, expr.listIndex);
+            return () -> environment.getListIndex(name, slot, index.getAsDouble());
+        } else if (expr.matrixIndex != null) {
+            DoubleSupplier row = compileIndex(name, expr.matrixIndex.first);
+            DoubleSupplier col = compileIndex(name, expr.matrixIndex.second);
+            return () -> environment.getMatrixIndex(name, slot, row.getAsDouble(), col.getAsDouble());
+        }
+
+        return () -> environment.get(name, slot);
+    }
+
+    @Override
+    public Supplier<Object> visitLogicalExpr(Expr.Logical expr) {
+        Supplier<Object> left = compile(expr.left);
+        Supplier<Object> right = compile(expr.right);
+        Token operator = expr.operator;
+        if (operator.type != AND && operator.type != OR) {
+            return () -> {
+                throw new RuntimeError(operator, "Unexpected logical operator.");
+            };
+        }
+
+        boolean and = operator.type == AND;
+        return () -> {
+            Object leftValue = left.get();
+            Object rightValue = right.get();
+            if (!(leftValue instanceof Double && rightValue instanceof Double)) {
+                throw new RuntimeError(operator, "Expect numbers in logical operation");
+            }
+
+            boolean leftTrue = (double)leftValue != FALSE;
+            boolean rightTrue = (double)rightValue != FALSE;
+            return (and ? leftTrue && rightTrue : leftTrue || rightTrue) ? TRUE : FALSE;
+        };
+    }
+
+    @Override
+    public Supplier<Object> visitCallExpr(Expr.Call expr) {
+        Token callee = expr.callee;
+        Function function = Environment.functionOf(expr);
+        if (function instanceof SequenceFunction && expr.arguments.size() == 1
+                && expr.arguments.get(0) instanceof Expr.Sequence) {
+            // the values of the seq( go straight into the function, without being stored in a list
+            SequenceFunction sequenceFunction = (SequenceFunction)function;
+            Supplier<SequenceValues> sequence = compileSequence((Expr.Sequence)expr.arguments.get(0));
+            return () -> {
+                SequenceValues values = sequence.get();
+                try {
+                    return sequenceFunction.applyToValues(values);
+                } finally {
+                    values.close();
+                }
+            };
+        }
+
+        List<Supplier<Object>> arguments = new ArrayList<>();
+        for (Expr argument : expr.arguments) {
+            arguments.add(compile(argument));
+        }
+
+        return () -> {
+            List<Object> values = new ArrayList<>(arguments.size());
+            for (Supplier<Object> argument : arguments) {
+                values.add(argument.get());
+            }
+            return function.call(callee, this, values);
+        };
+    }
+
+    @Override
+    public Supplier<Object> visitSequenceExpr(Expr.Sequence expr) {
+        Supplier<SequenceValues> sequence = compileSequence(expr);
+        return () -> sequence.get().toList();
+    }
+
+    /**
+     * Compiles a seq( into a closure giving its values one at a time. The expression is compiled once, to a double
+     * if it is known to be a number, and then evaluated for every value of the variable.
+     * @param expr the seq( to compile
+     * @return a closure that starts the sequence, evaluating its bounds, every time it is called
+     */
+    public Supplier<SequenceValues> compileSequence(Expr.Sequence expr) {
+        DoubleSupplier expression;
+        if (expr.expression.numeric) {
+            expression = compileDouble(expr.expression);
+        } else {
+            Supplier<Object> value = compile(expr.expression);
+            Token keyword = expr.keyword;
+            expression = () -> {
+                Object result = value.get();
+                if (!(result instanceof Double)) throw new RuntimeError(keyword, "Expect a number.");
+                return (double)result;
+            };
+        }
+        DoubleSupplier start = compileDouble(expr.start);
+        DoubleSupplier end = compileDouble(expr.end);
+        DoubleSupplier step = compileDouble(expr.step);
+
+        // same evaluation order as For: end and step are determined before start
+        return () -> {
+            double endValue = end.getAsDouble();
+            double stepValue = step.getAsDouble();
+            return new SequenceValues(environment, expr, expression, start.getAsDouble(), endValue, stepValue);
+        };
+    }
+
+    @Override
+    public Runnable visitExpressionStmt(Stmt.Expression stmt) {
+        Supplier<Object> expression = compile(stmt.expression);
+        return expression::get;
+    }
+
+    @Override
+    public Runnable visitDispStmt(Stmt.Disp stmt) {
+        List<Supplier<Object>> expressions = new ArrayList<>();
+        for (Expr expression : stmt.expressions) {
+            expressions.add(compile(expression));
+        }
+
+        return () -> {
+            for (Supplier<Object> expression : expressions) {
+                System.out.println(expression.get().toString());
+            }
+        };
+    }
+
+    @Override
+    public Runnable visitAssignStmt(Stmt.Assign stmt) {
+        Token name = stmt.name;
+        int slot = stmt.slot;
+
+        if (stmt.listIndex != null) {
+            Supplier<Object> value = compile(stmt.expression);
+            Supplier<Object> index = compile(stmt.listIndex);
+            return () -> environment.assignListIndex(name, slot, value.get(), index.get());
+        } else if (stmt.matrixIndex != null) {
+            Supplier<Object> value = compile(stmt.expression);
+            Supplier<Object> row = compile(stmt.matrixIndex.first);
+            Supplier<Object> col = compile(stmt.matrixIndex.second);
+            return () -> environment.assignMatrixIndex(name, slot, value.get(), row.get(), col.get());
+        } else if (stmt.expression.numeric && Environment.isNumberSlot(slot)) {
+            DoubleSupplier value = compileDouble(stmt.expression);
+            return () -> environment.assignNumber(slot, value.getAsDouble());
+        }
+
+        InPlaceUpdate update = inPlaceUpdates.of(stmt);
+        if (update != null) {
+            List<Supplier<Object>> leaves = new ArrayList<>();
+            for (Expr leaf : update.getLeaves()) {
+                leaves.add(compile(leaf));
+            }
+            IntFunction<Object> evaluator = leaf -> leaves.get(leaf).get();
+            return () -> update.run(evaluator);
+        }
+
+        Supplier<Object> value = compile(stmt.expression);
+        return () -> environment.assign(name, slot, value.get());
+    }
+
+    @Override
+    public Runnable visitPromptStmt(Stmt.Prompt stmt) {
+        return () -> {
+            for (Token name : stmt.names) {
+                handleUserInput(name.lexeme + "?", name);
+            }
+        };
+    }
+
+    @Override
+    public Runnable visitInputStmt(Stmt.Input stmt) {
+        return () -> handleUserInput(stmt.prompt, stmt.name);
+    }
+
+    @Override
+    public Runnable visitIfStmt(Stmt.If stmt) {
+        DoubleSupplier condition = compileDouble(stmt.condition);
+        Runnable[] thenBlock = compileAll(stmt.thenHead);
+        Runnable[] elseBlock = compileAll(stmt.elseHead);
+
+        return new Block() {
+            @Override
+            public void run() {
+                if (condition.getAsDouble() != FALSE) {
+                    runAll(thenBlock);
+                } else {
+                    runAll(elseBlock);
+                }
+            }
+
+            @Override
+            public void enter(Stmt.Label label, int level) {
+                resume(label, level);
+            }
+        };
+    }
+
+    @Override
+    public Runnable visitWhileStmt(Stmt.While stmt) {
+        DoubleSupplier condition = compileDouble(stmt.condition);
+        Runnable[] body = compileAll(stmt.head);
+
+        return new Block() {
+            @Override
+            public void run() {
+                loop(null, 0);
+            }
+
+            @Override
+            public void enter(Stmt.Label label, int level) {
+                loop(label, level);
+            }
+
+            // the first iteration starts at the label, if there is one, without checking the condition
+            private void loop(Stmt.Label label, int level) {
+                while (label != null || condition.getAsDouble() != FALSE) {
+                    try {
+                        runBody(body, label, level);
+                        label = null;
+                    } catch (GotoException jump) {
+                        level = levelInside(jump, stmt);
+                        label = jump.target;
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    public Runnable visitForStmt(Stmt.For stmt) {
+        Token name = stmt.name;
+        int slot = stmt.slot;
+        Supplier<Object> start = compile(stmt.start);
+        DoubleSupplier end = compileDouble(stmt.end);
+        DoubleSupplier step = compileDouble(stmt.step);
+        Runnable[] body = compileAll(stmt.head);
+
+        // same evaluation order as the interpreter: end and step are determined once, before start is assigned
+        return new Block() {
+            @Override
+            public void run() {
+                double endValue = end.getAsDouble();
+                double stepValue = step.getAsDouble();
+                environment.assign(name, slot, start.get());
+                loop(environment.getNumber(slot), endValue, stepValue, null, 0);
+            }
+
+            // a For loop entered by a jump counts on from the current value of its variable
+            @Override
+            public void enter(Stmt.Label label, int level) {
+                double endValue = end.getAsDouble();
+                double stepValue = step.getAsDouble();
+                loop(environment.getNumber(slot), endValue, stepValue, label, level);
+            }
+
+            // the first iteration starts at the label, if there is one, without checking or assigning the counter
+            private void loop(double counter, double endValue, double stepValue, Stmt.Label label, int level) {
+                while (true) {
+                    if (label == null) {
+                        if (!(stepValue > 0 ? counter <= endValue : stepValue < 0 && counter >= endValue)) return;
+                        environment.assignNumber(slot, counter);
+                    }
+
+                    try {
+                        runBody(body, label, level);
+                        label = null;
+                    } catch (GotoException jump) {
+                        // the same iteration goes on from the label
+                        level = levelInside(jump, stmt);
+                        label = jump.target;
+                        continue;
+                    }
+                    counter += stepValue;
+                }
+            }
+        };
+    }
+
+    @Override
+    public Runnable visitLabelStmt(Stmt.Label stmt) {
+        return () -> {};
+    }
+
+    @Override
+    public Runnable visitGotoStmt(Stmt.Goto stmt) {
+        String label = stmt.label;
+        Stmt.Label target = stmt.target;
+        return () -> {
+            throw new GotoException(label, target);
+        };
+    }
+
+    @Override
+    public Runnable visitRepeatStmt(Stmt.Repeat stmt) {
+        DoubleSupplier condition = compileDouble(stmt.condition);
+        Runnable[] body = compileAll(stmt.head);
+
+        return new Block() {
+            @Override
+            public void run() {
+                loop(null, 0);
+            }
+
+            @Override
+            public void enter(Stmt.Label label, int level) {
+                loop(label, level);
+            }
+
+            // the first iteration starts at the label, if there is one
+            private void loop(Stmt.Label label, int level) {
+                while (true) {
+                    try {
+                        runBody(body, label, level);
+                        label = null;
+                    } catch (GotoException jump) {
+                        level = levelInside(jump, stmt);
+                        label = jump.target;
+                        continue;
+                    }
+                    if (condition.getAsDouble() != FALSE) return;
+                }
+            }
+        };
+    }
+
+    @Override
+    public Runnable visitReturnStmt(Stmt.Return stmt) {
+        return () -> {
+            throw new ReturnException();
+        };
+    }
+
+    @Override
+    public Runnable visitStopStmt(Stmt.Stop stmt) {
+        return () -> {
+            throw new StopException();
+        };
+    }
+
+    @Override
+    public Runnable visitMenuStmt(Stmt.Menu stmt) {
+        return () -> {
+            int option = chooseMenuOption(stmt);
+            throw new GotoException(stmt.labels.get(option), stmt.targets == null ? null : stmt.targets[option]);
+        };
+    }
+
+    /**
+     * Shows a menu and waits for the user to pick an option.
+     * @param stmt the menu to show
+     * @return the index of the chosen option
+     */
+    public int chooseMenuOption(Stmt.Menu stmt) {
+        int input;
+        do {
+            System.out.println(stmt.title);
+            for (int i = 0; i < stmt.options.size(); i++) {
+                System.out.println((i + 1) + ":" + stmt.options.get(i));
+            }
+            System.out.print("Enter a number: ");
+            input = userInput.nextInt();
+        } while (input <= 0 || input > stmt.options.size());
+
+        return input - 1;
+    }
+
+    private void handleUserInput(String prompt, Token name) {
+        String input;
+        do {
+            System.out.print(prompt);
+            input = userInput.nextLine();
+        } while (input.length() == 0);
+
+        Expr expression = new Parser(new Lexer(input).lexTokens()).expression();
+        resolver.resolve(expression);
+        numericMarker.mark(expression);
+        environment.assign(name, compile(expression).get());
+    }
+
+    protected static void runAll(Runnable[] block) {
+        for (Runnable statement : block) {
+            statement.run();
+        }
+    }
+
+    private static void runAll(Runnable[] block, int from) {
+        for (int i = from; i < block.length; i++) {
+            block[i].run();
+        }
+    }
+
+    /**
+     * Runs the body of a loop, or the rest of it from a label inside it.
+     * @param level the position in the path of the label of the block just inside the loop
+     */
+    private void runBody(Runnable[] body, Stmt.Label label, int level) {
+        if (label == null) {
+            runAll(body);
+        } else {
+            resume(label, level);
+        }
+    }
+
+    /**
+     * Runs a program on from a label the way the Interpreter jumps: the blocks on the path of the label from level on
+     * are entered partway through, as if they had been run from the top, and each goes on as it normally would once
+     * the code after the label is done. What comes after the block at level runs too, up to the end of the block
+     * around it.
+     * @param level the position in the path of the label of the outermost block to enter
+     */
+    private void resume(Stmt.Label label, int level) {
+        Stmt[] path = label.path;
+        if (level == path.length) {
+            Position position = positions.get(label);
+            runAll(position.block, position.index);
+            return;
+        }
+
+        Stmt block = path[level];
+        blocks.get(block).enter(label, level + 1);
+        Position position = positions.get(block);
+        runAll(position.block, position.index + 1);
+    }
+
+    /**
+     * Finds out whether a loop keeps running after a jump made inside it, which it does when the label is inside it
+     * too, like in the Interpreter.
+     * @return the position in the path of the label of the block just inside the loop
+     * @throws GotoException the jump again, if the label is outside the loop
+     */
+    protected static int levelInside(GotoException jump, Stmt loop) {
+        if (jump.target != null) {
+            Stmt[] path = jump.target.path;
+            for (int i = 0; i < path.length; i++) {
+                if (path[i] == loop) return i + 1;
+            }
+        }
+        throw jump;
+    }
+
+    private DoubleSupplier[] compileDoubles(List<Expr> expressions) {
+        DoubleSupplier[] compiled = new DoubleSupplier[expressions.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = compileDouble(expressions.get(i));
+        }
+        return compiled;
+    }
+
+    private DoubleSupplier compileIndex(Token name, Expr index) {
+        if (index.numeric) return compileDouble(index);
+
+        Supplier<Object> value = index.accept(this);
+        return () -> {
+            Object result = value.get();
+            if (!(result instanceof Double)) throw new RuntimeError(name, "Index must be a number.");
+            return (double)result;
+        };
+    }
+
+    /**
+     * Finds the type an expression is guaranteed to have, if it can be known before running it.
+     * @param expr the expression
+     * @return the class of the value of the expression, or null if it is unknown
+     */
+    protected Class<?> staticType(Expr expr) {
+        if (expr.numeric) return Double.class;
+        if (expr instanceof Expr.Grouping) return staticType(((Expr.Grouping) expr).inside);
+        if (expr instanceof Expr.Variable) {
+            Expr.Variable variable = (Expr.Variable) expr;
+            if (variable.listIndex == null && variable.matrixIndex == null) return Environment.typeOfSlot(variable.slot);
+        }
+        if (expr instanceof Expr.Sequence) return TiList.class;
+        if (expr instanceof Expr.Literal) {
+            switch (((Expr.Literal) expr).type) {
+                case STRING: return TiString.class;
+                case LIST: return TiList.class;
+                case MATRIX: return TiMatrix.class;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A compiled If, While, For or Repeat, which a Goto can enter partway through.
+     */
+    private interface Block extends Runnable {
+        /**
+         * Runs the block from a label inside it, and then on as the block would.
+         * @param level the position in the path of the label of the block just inside this one
+         */
+        void enter(Stmt.Label label, int level);
+    }
+
+    /**
+     * A compiled statement's location, so that execution can resume there.
+     */
+    private static class Position {
+        final Runnable[] block;
+        final int index;
+
+        Position(Runnable[] block, int index) {
+            this.block = block;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Compiles numeric expressions to closures that produce unboxed doubles.
+     * The operator of every binary expression is picked here, not when the closure runs.
+     */
+    private class DoubleCompiler implements Expr.Visitor<DoubleSupplier> {
+
+        @Override
+        public DoubleSupplier visitBinaryExpr(Expr.Binary expr) {
+            DoubleSupplier left = compileDouble(expr.left);
+            DoubleSupplier right = compileDouble(expr.right);
+
+            switch (expr.operator.type) {
+                case PLUS: return () -> left.getAsDouble() + right.getAsDouble();
+                case MINUS: return () -> left.getAsDouble() - right.getAsDouble();
+                case MUL: return () -> left.getAsDouble() * right.getAsDouble();
+                case DIV: return () -> left.getAsDouble() / right.getAsDouble();
+                case POW: return () -> Math.pow(left.getAsDouble(), right.getAsDouble());
+                case GT: return () -> (left.getAsDouble() > right.getAsDouble()) ? TRUE : FALSE;
+                case GTOE: return () -> (left.getAsDouble() >= right.getAsDouble()) ? TRUE : FALSE;
+                case LT: return () -> (left.getAsDouble() < right.getAsDouble()) ? TRUE : FALSE;
+                case LTOE: return () -> (left.getAsDouble() <= right.getAsDouble()) ? TRUE : FALSE;
+                case EQUAL: return () -> (left.getAsDouble() == right.getAsDouble()) ? TRUE : FALSE;
+                case NOT_EQUAL: return () -> (left.getAsDouble() != right.getAsDouble()) ? TRUE : FALSE;
+            }
+
+            Token operator = expr.operator;
+            return () -> {
+                throw new RuntimeError(operator, "Unexpected binary operator.");
+            };
+        }
+
+        @Override
+        public DoubleSupplier visitGroupingExpr(Expr.Grouping expr) {
+            return compileDouble(expr.inside);
+        }
+
+        @Override
+        public DoubleSupplier visitLiteralExpr(Expr.Literal expr) {
+            double value = (double)expr.value;
+            return () -> value;
+        }
+
+        @Override
+        public DoubleSupplier visitUnaryExpr(Expr.Unary expr) {
+            DoubleSupplier right = compileDouble(expr.right);
+            if (expr.operator.type == MINUS) {
+                return () -> -right.getAsDouble();
+            }
+            return right;
+        }
+
+        @Override
+        public DoubleSupplier visitVariableExpr(Expr.Variable expr) {
+            Token name = expr.name;
+            int slot = expr.slot;
+
+            if (expr.listIndex != null) {
+                DoubleSupplier index = compileIndex(name, expr.listIndex);
+                return () -> environment.getListIndex(name, slot, index.getAsDouble());
+            } else if (expr.matrixIndex != null) {
+                DoubleSupplier row = compileIndex(name, expr.matrixIndex.first);
+                DoubleSupplier col = compileIndex(name, expr.matrixIndex.second);
+                return () -> environment.getMatrixIndex(name, slot, row.getAsDouble(), col.getAsDouble());
+            }
+
+            return () -> environment.getNumber(slot);
+        }
+
+        @Override
+        public DoubleSupplier visitLogicalExpr(Expr.Logical expr) {
+            DoubleSupplier left = compileDouble(expr.left);
+            DoubleSupplier right = compileDouble(expr.right);
+
+            if (expr.operator.type == AND) {
+                return () -> {
+                    // both sides are always evaluated, like the interpreter does
+                    double leftValue = left.getAsDouble();
+                    double rightValue = right.getAsDouble();
+                    return (leftValue != FALSE && rightValue != FALSE) ? TRUE : FALSE;
+                };
+            } else if (expr.operator.type == OR) {
+                return () -> {
+                    double leftValue = left.getAsDouble();
+                    double rightValue = right.getAsDouble();
+                    return (leftValue != FALSE || rightValue != FALSE) ? TRUE : FALSE;
+                };
+            }
+
+            Token operator = expr.operator;
+            return () -> {
+                throw new RuntimeError(operator, "Unexpected logical operator.");
+            };
+        }
+
+        @Override
+        public DoubleSupplier visitCallExpr(Expr.Call expr) {
+            if (expr.numeric) {
+                // the arguments are numbers and the function is numeric, so its operator is called directly
+                NumericFunction function = (NumericFunction)expr.function;
+                DoubleSupplier first = compileDouble(expr.arguments.get(0));
+                switch (expr.arguments.size()) {
+                    case 1: {
+                        DoubleUnaryOperator operator = function.unary();
+                        return () -> operator.applyAsDouble(first.getAsDouble());
+                    }
+                    case 2: {
+                        DoubleBinaryOperator operator = function.binary();
+                        DoubleSupplier second = compileDouble(expr.arguments.get(1));
+                        return () -> operator.applyAsDouble(first.getAsDouble(), second.getAsDouble());
+                    }
+                    default: {
+                        DoubleTernaryOperator operator = function.ternary();
+                        DoubleSupplier second = compileDouble(expr.arguments.get(1));
+                        DoubleSupplier third = compileDouble(expr.arguments.get(2));
+                        return () -> operator.applyAsDouble(first.getAsDouble(), second.getAsDouble(),
+                                third.getAsDouble());
+                    }
+                }
+            }
+
+            Supplier<Object> call = ClosureCompiler.this.visitCallExpr(expr);
+            Token callee = expr.callee;
+            return () -> {
+                Object value = call.get();
+                if (!(value instanceof Double)) throw new RuntimeError(callee, "Expect a number.");
+                return (double)value;
+            };
+        }
+
+        @Override
+        public DoubleSupplier visitSequenceExpr(Expr.Sequence expr) {
+            Token keyword = expr.keyword;
+            return () -> {
+                throw new RuntimeError(keyword, "Expect a number.");
+            };
+        }
+    }
+}
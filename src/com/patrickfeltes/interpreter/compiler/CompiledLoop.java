@@ -0,0 +1,61 @@
+package com.patrickfeltes.interpreter.compiler;
+
+import com.patrickfeltes.interpreter.exceptions.GotoException;
+
+/**
+ * A loop compiled by the OptimizingCompiler, which the Interpreter can either start or hand over in the middle of.
+ * It stays valid until the compiled code deoptimizes.
+ */
+public class CompiledLoop {
+
+    /**
+     * Continues a For loop from the given state.
+     */
+    interface ForResumption {
+        void resume(double counter, double end, double step);
+    }
+
+    final TieredCompilation.LoopProfile profile;
+    boolean valid = true;
+
+    // runs the loop statement from the start, which for While and Repeat is also how the loop continues
+    Runnable entry;
+    ForResumption forResumption;
+
+    CompiledLoop(TieredCompilation.LoopProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Runs the whole loop statement.
+     */
+    public void enter() {
+        profile.compiledEntries++;
+        run(entry);
+    }
+
+    /**
+     * Continues a While or Repeat loop after an iteration the interpreter has just finished.
+     */
+    public void resume() {
+        run(entry);
+    }
+
+    /**
+     * Continues a For loop after an iteration the interpreter has just finished.
+     * @param counter the value of the loop variable for the next iteration
+     */
+    public void resumeFor(double counter, double end, double step) {
+        run(() -> forResumption.resume(counter, end, step));
+    }
+
+    // the interpreter takes over when a jump leaves the loop, and has to count the loop as hot again to come back
+    private void run(Runnable code) {
+        try {
+            code.run();
+        } catch (GotoException jump) {
+            profile.exitedByJump();
+            throw jump;
+        }
+    }
+}
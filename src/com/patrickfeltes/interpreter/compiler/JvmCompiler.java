@@ -0,0 +1,694 @@
+package com.patrickfeltes.interpreter.compiler;
+
+import com.patrickfeltes.interpreter.Engine;
+import com.patrickfeltes.interpreter.Main;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.data_types.Parallelism;
+import com.patrickfeltes.interpreter.errors.RuntimeError;
+import com.patrickfeltes.interpreter.exceptions.ReturnException;
+import com.patrickfeltes.interpreter.exceptions.StopException;
+import com.patrickfeltes.interpreter.visitors.Environment;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The JVM compiler turns a program into a JVM class, so that the JVM's own JIT compiler optimizes the TI-BASIC
+ * program rather than the loop of an interpreter. The program is first compiled to a chunk by the BytecodeCompiler,
+ * and every instruction of the chunk is then translated to JVM bytecode: temporary registers and constants become
+ * local variables, arithmetic becomes dadd, dmul, ..., and jumps, including Goto and Menu, become JVM branches.
+ * The variables A to Z stay in the environment, since the closures called by EVAL and EXEC work on them.
+ *
+ * Programs too large for a single JVM method are run on the VirtualMachine instead.
+ */
+public class JvmCompiler implements Engine {
+
+    /**
+     * The interface implemented by every generated class.
+     */
+    public interface Program {
+        void run(double[] variables, Object[] objects, Environment environment, ClosureCompiler closureCompiler);
+    }
+
+    // keeps every branch offset within the signed 16 bits of goto and if<cond>
+    private static final int MAX_CODE_LENGTH = Short.MAX_VALUE;
+    private static final int MAX_STACK = 16;
+
+    private static final String CLASS_NAME = "com/patrickfeltes/interpreter/compiler/CompiledProgram";
+    private static final String PROGRAM = "com/patrickfeltes/interpreter/compiler/JvmCompiler$Program";
+    private static final String ENVIRONMENT = "com/patrickfeltes/interpreter/visitors/Environment";
+    private static final String CLOSURE_COMPILER = "com/patrickfeltes/interpreter/compiler/ClosureCompiler";
+    private static final String MENU = "com/patrickfeltes/interpreter/compiler/Chunk$Menu";
+    private static final String TOKEN = "com/patrickfeltes/interpreter/tokens/Token";
+    private static final String TERNARY_OPERATOR = "com/patrickfeltes/interpreter/functions/DoubleTernaryOperator";
+    private static final String GOTO_EXCEPTION = "com/patrickfeltes/interpreter/exceptions/GotoException";
+    private static final String RUN_DESCRIPTOR =
+            "([D[Ljava/lang/Object;L" + ENVIRONMENT + ";L" + CLOSURE_COMPILER + ";)V";
+
+    // the locals of the generated run method
+    private static final int VARIABLES = 1;
+    private static final int OBJECTS = 2;
+    private static final int ENVIRONMENT_LOCAL = 3;
+    private static final int CLOSURE_COMPILER_LOCAL = 4;
+    private static final int FIRST_REGISTER_LOCAL = 5;
+
+    // the JVM instructions used by the generated code
+    private static final int ICONST_0 = 0x03;
+    private static final int DCONST_0 = 0x0e;
+    private static final int DCONST_1 = 0x0f;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int DLOAD = 0x18;
+    private static final int ALOAD = 0x19;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int DALOAD = 0x31;
+    private static final int AALOAD = 0x32;
+    private static final int DSTORE = 0x39;
+    private static final int DASTORE = 0x52;
+    private static final int DUP = 0x59;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DDIV = 0x6f;
+    private static final int DNEG = 0x77;
+    private static final int DCMPL = 0x97;
+    private static final int DCMPG = 0x98;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IFLT = 0x9b;
+    private static final int IFGE = 0x9c;
+    private static final int IFGT = 0x9d;
+    private static final int IFLE = 0x9e;
+    private static final int GOTO = 0xa7;
+    private static final int LOOKUPSWITCH = 0xab;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int NEW = 0xbb;
+    private static final int ATHROW = 0xbf;
+    private static final int CHECKCAST = 0xc0;
+    private static final int WIDE = 0xc4;
+
+    private final Environment environment;
+    private final ClosureCompiler closureCompiler;
+    private final VirtualMachine virtualMachine;
+
+    public JvmCompiler() {
+        this(new Environment());
+    }
+
+    public JvmCompiler(Environment environment) {
+        this.environment = environment;
+        this.closureCompiler = new ClosureCompiler(environment);
+        this.virtualMachine = new VirtualMachine(environment, closureCompiler);
+    }
+
+    @Override
+    public void interpret(Map<String, Stmt> labels, Stmt head) {
+        Parallelism previous = environment.getParallelism().enter();
+        try {
+            Chunk chunk = new BytecodeCompiler(environment, closureCompiler).compile(head);
+            Program program = compile(chunk);
+            try {
+                if (program != null) {
+                    program.run(environment.registers(Environment.NUMBER_SLOTS), chunk.objects, environment, closureCompiler);
+                } else {
+                    virtualMachine.run(chunk);
+                }
+            } catch (RuntimeError error) {
+                Main.runtimeError(error);
+            } catch (ReturnException | StopException ex) {
+                // the program is over
+            }
+        } finally {
+            Parallelism.restore(previous);
+        }
+    }
+
+    @Override
+    public void setParallelism(Parallelism parallelism) {
+        environment.setParallelism(parallelism);
+    }
+
+    @Override
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    @Override
+    public void printInPlaceStats() {
+        closureCompiler.printInPlaceStats();
+    }
+
+    /**
+     * Translates a chunk to a JVM class and loads it.
+     * @return the loaded program, or null if the chunk doesn't fit in a JVM method
+     */
+    public static Program compile(Chunk chunk) {
+        byte[] bytes = new Translation(chunk).toClassFile();
+        if (bytes == null) return null;
+
+        try {
+            return (Program) define(bytes).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not load the compiled program.", e);
+        }
+    }
+
+    /**
+     * Loads a generated class as a hidden class when running on Java 15 or later, so that it can be unloaded as soon
+     * as the program is done with it. Older JVMs get a class loader of their own for every program.
+     */
+    private static Class<?> define(byte[] bytes) throws ReflectiveOperationException {
+        Method defineHiddenClass;
+        Object noOptions;
+        try {
+            // looked up reflectively, since this project is built for Java 8
+            Class<?> classOption = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            noOptions = Array.newInstance(classOption, 0);
+            defineHiddenClass = MethodHandles.Lookup.class.getMethod("defineHiddenClass",
+                    byte[].class, boolean.class, noOptions.getClass());
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return new ProgramLoader().define(bytes);
+        }
+
+        try {
+            MethodHandles.Lookup lookup = (MethodHandles.Lookup) defineHiddenClass.invoke(MethodHandles.lookup(),
+                    bytes, true, noOptions);
+            return lookup.lookupClass();
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw e;
+        }
+    }
+
+    private static class ProgramLoader extends ClassLoader {
+        ProgramLoader() {
+            super(JvmCompiler.class.getClassLoader());
+        }
+
+        Class<?> define(byte[] bytes) {
+            return defineClass(null, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * The translation of one chunk into the run method of a class.
+     */
+    private static class Translation {
+        private final Chunk chunk;
+        private final ClassFile classFile = new ClassFile(CLASS_NAME, "java/lang/Object", PROGRAM);
+
+        private byte[] code = new byte[256];
+        private int length = 0;
+
+        // labels 0 to chunk.code.length - 1 are the addresses of the chunk, the rest are local to an instruction
+        private int[] labels;
+        private int labelCount;
+
+        // branches whose targets are patched in once every label is known
+        private int[] fixups = new int[64];
+        private int fixupCount = 0;
+
+        Translation(Chunk chunk) {
+            this.chunk = chunk;
+            this.labels = new int[chunk.code.length + 16];
+            Arrays.fill(labels, -1);
+            this.labelCount = chunk.code.length;
+        }
+
+        /**
+         * @return the class file, or null if the program is too large for one method
+         */
+        byte[] toClassFile() {
+            int maxLocals = registerLocal(chunk.registerCount);
+            if (maxLocals > 0xFFFF) return null;
+
+            translate();
+            if (length > MAX_CODE_LENGTH) return null;
+            patchBranches();
+
+            classFile.addMethod(ClassFile.ACC_PUBLIC, "run", RUN_DESCRIPTOR, Arrays.copyOf(code, length),
+                    MAX_STACK, maxLocals);
+            classFile.addMethod(ClassFile.ACC_PUBLIC, "<init>", "()V", constructor(), 1, 1);
+            return classFile.toBytes();
+        }
+
+        private byte[] constructor() {
+            int objectInit = classFile.methodRef("java/lang/Object", "<init>", "()V");
+            return new byte[] {
+                    (byte) ALOAD_0,
+                    (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit,
+                    (byte) RETURN
+            };
+        }
+
+        private void translate() {
+            int[] ops = chunk.code;
+
+            // every register starts out defined, as the verifier requires, and the constants are loaded once
+            for (int register = Environment.NUMBER_SLOTS; register < chunk.registerCount; register++) {
+                emit(DCONST_0);
+                emitLocal(DSTORE, registerLocal(register));
+            }
+            for (int i = 0; i < chunk.constants.length; i++) {
+                emit(LDC2_W);
+                emitShort(classFile.doubleConstant(chunk.constants[i]));
+                emitLocal(DSTORE, registerLocal(chunk.constantRegisters[i]));
+            }
+
+            int pc = 0;
+            while (pc < ops.length) {
+                labels[pc] = length;
+                if (length > MAX_CODE_LENGTH) return;
+
+                switch (ops[pc]) {
+                    case OpCode.MOVE:
+                        beginStore(ops[pc + 1]);
+                        load(ops[pc + 2]);
+                        endStore(ops[pc + 1]);
+                        pc += 3;
+                        break;
+                    case OpCode.ADD: arithmetic(ops, pc, DADD); pc += 4; break;
+                    case OpCode.SUB: arithmetic(ops, pc, DSUB); pc += 4; break;
+                    case OpCode.MUL: arithmetic(ops, pc, DMUL); pc += 4; break;
+                    case OpCode.DIV: arithmetic(ops, pc, DDIV); pc += 4; break;
+                    case OpCode.POW:
+                        beginStore(ops[pc + 1]);
+                        load(ops[pc + 2]);
+                        load(ops[pc + 3]);
+                        emitInvoke(INVOKESTATIC, classFile.methodRef("java/lang/Math", "pow", "(DD)D"));
+                        endStore(ops[pc + 1]);
+                        pc += 4;
+                        break;
+                    // the comparisons branch to false exactly where javac would, so NaN behaves the same as in Java
+                    case OpCode.GT: comparison(ops, pc, DCMPL, IFLE); pc += 4; break;
+                    case OpCode.GTOE: comparison(ops, pc, DCMPL, IFLT); pc += 4; break;
+                    case OpCode.LT: comparison(ops, pc, DCMPG, IFGE); pc += 4; break;
+                    case OpCode.LTOE: comparison(ops, pc, DCMPG, IFGT); pc += 4; break;
+                    case OpCode.EQUAL: comparison(ops, pc, DCMPL, IFNE); pc += 4; break;
+                    case OpCode.NOT_EQUAL: comparison(ops, pc, DCMPL, IFEQ); pc += 4; break;
+                    case OpCode.AND: {
+                        int isFalse = newLabel();
+                        int end = newLabel();
+                        beginStore(ops[pc + 1]);
+                        load(ops[pc + 2]);
+                        branchIfZero(IFEQ, isFalse);
+                        load(ops[pc + 3]);
+                        branchIfZero(IFEQ, isFalse);
+                        emit(DCONST_1);
+                        branch(GOTO, end);
+                        mark(isFalse);
+                        emit(DCONST_0);
+                        mark(end);
+                        endStore(ops[pc + 1]);
+                        pc += 4;
+                        break;
+                    }
+                    case OpCode.OR: {
+                        int isTrue = newLabel();
+                        int end = newLabel();
+                        beginStore(ops[pc + 1]);
+                        load(ops[pc + 2]);
+                        branchIfZero(IFNE, isTrue);
+                        load(ops[pc + 3]);
+                        branchIfZero(IFNE, isTrue);
+                        emit(DCONST_0);
+                        branch(GOTO, end);
+                        mark(isTrue);
+                        emit(DCONST_1);
+                        mark(end);
+                        endStore(ops[pc + 1]);
+                        pc += 4;
+                        break;
+                    }
+                    case OpCode.NEGATE:
+                        beginStore(ops[pc + 1]);
+                        load(ops[pc + 2]);
+                        emit(DNEG);
+                        endStore(ops[pc + 1]);
+                        pc += 3;
+                        break;
+                    case OpCode.JUMP:
+                        branch(GOTO, ops[pc + 1]);
+                        pc += 2;
+                        break;
+                    case OpCode.JUMP_IF_FALSE:
+                        load(ops[pc + 1]);
+                        branchIfZero(IFEQ, ops[pc + 2]);
+                        pc += 3;
+                        break;
+                    case OpCode.FOR_TEST: {
+                        // step > 0 ? counter <= end : step < 0 && counter >= end
+                        int counter = ops[pc + 1];
+                        int end = ops[pc + 2];
+                        int step = ops[pc + 3];
+                        int exit = ops[pc + 4];
+                        int notIncreasing = newLabel();
+                        int inside = newLabel();
+                        load(step);
+                        emit(DCONST_0);
+                        emit(DCMPL);
+                        branch(IFLE, notIncreasing);
+                        load(counter);
+                        load(end);
+                        emit(DCMPG);
+                        branch(IFGT, exit);
+                        branch(GOTO, inside);
+                        mark(notIncreasing);
+                        load(step);
+                        emit(DCONST_0);
+                        emit(DCMPG);
+                        branch(IFGE, exit);
+                        load(counter);
+                        load(end);
+                        emit(DCMPL);
+                        branch(IFLT, exit);
+                        mark(inside);
+                        pc += 5;
+                        break;
+                    }
+                    case OpCode.LIST_GET:
+                        beginStore(ops[pc + 1]);
+                        loadEnvironmentAndToken(ops[pc + 4]);
+                        pushInt(ops[pc + 2]);
+                        load(ops[pc + 3]);
+                        emitInvoke(INVOKEVIRTUAL, classFile.methodRef(ENVIRONMENT, "getListIndex",
+                                "(L" + TOKEN + ";ID)D"));
+                        endStore(ops[pc + 1]);
+                        pc += 5;
+                        break;
+                    case OpCode.LIST_SET:
+                        loadEnvironmentAndToken(ops[pc + 4]);
+                        pushInt(ops[pc + 1]);
+                        load(ops[pc + 2]);
+                        load(ops[pc + 3]);
+                        emitInvoke(INVOKEVIRTUAL, classFile.methodRef(ENVIRONMENT, "assignListIndex",
+                                "(L" + TOKEN + ";IDD)V"));
+                        pc += 5;
+                        break;
+                    case OpCode.MATRIX_GET:
+                        beginStore(ops[pc + 1]);
+                        loadEnvironmentAndToken(ops[pc + 5]);
+                        pushInt(ops[pc + 2]);
+                        load(ops[pc + 3]);
+                        load(ops[pc + 4]);
+                        emitInvoke(INVOKEVIRTUAL, classFile.methodRef(ENVIRONMENT, "getMatrixIndex",
+                                "(L" + TOKEN + ";IDD)D"));
+                        endStore(ops[pc + 1]);
+                        pc += 6;
+                        break;
+                    case OpCode.MATRIX_SET:
+                        loadEnvironmentAndToken(ops[pc + 5]);
+                        pushInt(ops[pc + 1]);
+                        load(ops[pc + 2]);
+                        load(ops[pc + 3]);
+                        load(ops[pc + 4]);
+                        emitInvoke(INVOKEVIRTUAL, classFile.methodRef(ENVIRONMENT, "assignMatrixIndex",
+                                "(L" + TOKEN + ";IDDD)V"));
+                        pc += 6;
+                        break;
+                    case OpCode.EVAL:
+                        beginStore(ops[pc + 1]);
+                        loadObject(ops[pc + 2], "java/util/function/DoubleSupplier");
+                        emitInvokeInterface(classFile.interfaceMethodRef("java/util/function/DoubleSupplier",
+                                "getAsDouble", "()D"), 1);
+                        endStore(ops[pc + 1]);
+                        pc += 3;
+                        break;
+                    case OpCode.EXEC:
+                        loadObject(ops[pc + 1], "java/lang/Runnable");
+                        emitInvokeInterface(classFile.interfaceMethodRef("java/lang/Runnable", "run", "()V"), 1);
+                        pc += 2;
+                        break;
+                    case OpCode.MENU:
+                        menu((Chunk.Menu) chunk.objects[ops[pc + 1]], ops[pc + 1]);
+                        pc += 2;
+                        break;
+                    case OpCode.GOTO_MISSING: {
+                        emit(NEW);
+                        emitShort(classFile.classRef(GOTO_EXCEPTION));
+                        emit(DUP);
+                        loadObject(ops[pc + 1], "java/lang/String");
+                        emitInvoke(INVOKESPECIAL, classFile.methodRef(GOTO_EXCEPTION, "<init>",
+                                "(Ljava/lang/String;)V"));
+                        emit(ATHROW);
+                        pc += 2;
+                        break;
+                    }
+                    case OpCode.CALL1:
+                        call(ops, pc, 1, "java/util/function/DoubleUnaryOperator");
+                        pc += 4;
+                        break;
+                    case OpCode.CALL2:
+                        call(ops, pc, 2, "java/util/function/DoubleBinaryOperator");
+                        pc += 5;
+                        break;
+                    case OpCode.CALL3:
+                        call(ops, pc, 3, TERNARY_OPERATOR);
+                        pc += 6;
+                        break;
+                    case OpCode.HALT:
+                        emit(RETURN);
+                        pc += 1;
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown opcode " + ops[pc] + " at " + pc + ".");
+                }
+            }
+        }
+
+        private void arithmetic(int[] ops, int pc, int instruction) {
+            beginStore(ops[pc + 1]);
+            load(ops[pc + 2]);
+            load(ops[pc + 3]);
+            emit(instruction);
+            endStore(ops[pc + 1]);
+        }
+
+        /**
+         * Calls the operator of a numeric function with its arguments in registers, through its functional interface.
+         */
+        private void call(int[] ops, int pc, int arity, String operatorInterface) {
+            beginStore(ops[pc + 1]);
+            loadObject(ops[pc + 2 + arity], operatorInterface);
+            StringBuilder descriptor = new StringBuilder("(");
+            for (int i = 0; i < arity; i++) {
+                load(ops[pc + 2 + i]);
+                descriptor.append('D');
+            }
+            descriptor.append(")D");
+            // the operator and two slots for each double
+            emitInvokeInterface(classFile.interfaceMethodRef(operatorInterface, "applyAsDouble",
+                    descriptor.toString()), 1 + 2 * arity);
+            endStore(ops[pc + 1]);
+        }
+
+        private void comparison(int[] ops, int pc, int compare, int branchToFalse) {
+            int isFalse = newLabel();
+            int end = newLabel();
+            beginStore(ops[pc + 1]);
+            load(ops[pc + 2]);
+            load(ops[pc + 3]);
+            emit(compare);
+            branch(branchToFalse, isFalse);
+            emit(DCONST_1);
+            branch(GOTO, end);
+            mark(isFalse);
+            emit(DCONST_0);
+            mark(end);
+            endStore(ops[pc + 1]);
+        }
+
+        /**
+         * Asks the user for an option, then switches on the address of the chosen label.
+         */
+        private void menu(Chunk.Menu menu, int object) {
+            loadObject(object, MENU);
+            emitLocal(ALOAD, CLOSURE_COMPILER_LOCAL);
+            emitInvoke(INVOKEVIRTUAL, classFile.methodRef(MENU, "chooseTarget", "(L" + CLOSURE_COMPILER + ";)I"));
+
+            TreeSet<Integer> targets = new TreeSet<>();
+            for (int target : menu.targets) {
+                if (target >= 0) targets.add(target);
+            }
+
+            int done = newLabel();
+            int start = length;
+            emit(LOOKUPSWITCH);
+            while (length % 4 != 0) emit(0);
+            wideBranch(start, done);
+            emitInt(targets.size());
+            for (int target : targets) {
+                emitInt(target);
+                wideBranch(start, target);
+            }
+            // chooseTarget has already thrown for a missing label, so this is never reached
+            mark(done);
+            emit(RETURN);
+        }
+
+        private void loadEnvironmentAndToken(int object) {
+            emitLocal(ALOAD, ENVIRONMENT_LOCAL);
+            loadObject(object, TOKEN);
+        }
+
+        private void loadObject(int object, String type) {
+            emitLocal(ALOAD, OBJECTS);
+            pushInt(object);
+            emit(AALOAD);
+            emit(CHECKCAST);
+            emitShort(classFile.classRef(type));
+        }
+
+        private void load(int register) {
+            if (register < Environment.NUMBER_SLOTS) {
+                emitLocal(ALOAD, VARIABLES);
+                pushInt(register);
+                emit(DALOAD);
+            } else {
+                emitLocal(DLOAD, registerLocal(register));
+            }
+        }
+
+        /**
+         * Pushes the array and index that a store to a variable needs below the value. Temporary registers need nothing.
+         */
+        private void beginStore(int register) {
+            if (register < Environment.NUMBER_SLOTS) {
+                emitLocal(ALOAD, VARIABLES);
+                pushInt(register);
+            }
+        }
+
+        private void endStore(int register) {
+            if (register < Environment.NUMBER_SLOTS) {
+                emit(DASTORE);
+            } else {
+                emitLocal(DSTORE, registerLocal(register));
+            }
+        }
+
+        private static int registerLocal(int register) {
+            // doubles take two local slots
+            return FIRST_REGISTER_LOCAL + 2 * (register - Environment.NUMBER_SLOTS);
+        }
+
+        private void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                emit(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                emit(BIPUSH);
+                emit(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                emit(SIPUSH);
+                emitShort(value);
+            } else {
+                emit(LDC_W);
+                emitShort(classFile.integer(value));
+            }
+        }
+
+        private void branchIfZero(int instruction, int label) {
+            emit(DCONST_0);
+            emit(DCMPL);
+            branch(instruction, label);
+        }
+
+        private int newLabel() {
+            if (labelCount == labels.length) {
+                labels = Arrays.copyOf(labels, labels.length * 2);
+                Arrays.fill(labels, labelCount, labels.length, -1);
+            }
+            return labelCount++;
+        }
+
+        private void mark(int label) {
+            labels[label] = length;
+        }
+
+        private void branch(int instruction, int label) {
+            addFixup(length, length + 1, label, false);
+            emit(instruction);
+            emitShort(0);
+        }
+
+        private void wideBranch(int instructionStart, int label) {
+            addFixup(instructionStart, length, label, true);
+            emitInt(0);
+        }
+
+        private void addFixup(int instructionStart, int offsetAt, int label, boolean wide) {
+            if (fixupCount + 3 > fixups.length) fixups = Arrays.copyOf(fixups, fixups.length * 2);
+            fixups[fixupCount++] = instructionStart;
+            fixups[fixupCount++] = wide ? -offsetAt - 1 : offsetAt;
+            fixups[fixupCount++] = label;
+        }
+
+        private void patchBranches() {
+            for (int i = 0; i < fixupCount; i += 3) {
+                int instructionStart = fixups[i];
+                int offsetAt = fixups[i + 1];
+                int offset = labels[fixups[i + 2]] - instructionStart;
+                if (offsetAt < 0) {
+                    offsetAt = -offsetAt - 1;
+                    code[offsetAt] = (byte) (offset >> 24);
+                    code[offsetAt + 1] = (byte) (offset >> 16);
+                    code[offsetAt + 2] = (byte) (offset >> 8);
+                    code[offsetAt + 3] = (byte) offset;
+                } else {
+                    code[offsetAt] = (byte) (offset >> 8);
+                    code[offsetAt + 1] = (byte) offset;
+                }
+            }
+        }
+
+        private void emitInvoke(int instruction, int method) {
+            emit(instruction);
+            emitShort(method);
+        }
+
+        private void emitInvokeInterface(int method, int argumentSlots) {
+            emit(INVOKEINTERFACE);
+            emitShort(method);
+            emit(argumentSlots);
+            emit(0);
+        }
+
+        private void emitLocal(int instruction, int local) {
+            if (local > 0xFF) {
+                emit(WIDE);
+                emit(instruction);
+                emitShort(local);
+            } else {
+                emit(instruction);
+                emit(local);
+            }
+        }
+
+        private void emit(int value) {
+            if (length == code.length) code = Arrays.copyOf(code, code.length * 2);
+            code[length++] = (byte) value;
+        }
+
+        private void emitShort(int value) {
+            emit(value >> 8);
+            emit(value);
+        }
+
+        private void emitInt(int value) {
+            emitShort(value >> 16);
+            emitShort(value);
+        }
+    }
+}
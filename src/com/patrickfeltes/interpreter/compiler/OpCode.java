@@ -0,0 +1,66 @@
+package com.patrickfeltes.interpreter.compiler;
+
+/**
+ * The instructions of the virtual machine.
+ * Each instruction is an opcode followed by its operands in the code array. Operands named d, a, b, ... are
+ * register numbers; registers 0 to 25 are the real variables A to Z.
+ */
+public class OpCode {
+
+    // d = a
+    public static final int MOVE = 0;
+
+    // d = a (op) b
+    public static final int ADD = 1;
+    public static final int SUB = 2;
+    public static final int MUL = 3;
+    public static final int DIV = 4;
+    public static final int POW = 5;
+    public static final int GT = 6;
+    public static final int GTOE = 7;
+    public static final int LT = 8;
+    public static final int LTOE = 9;
+    public static final int EQUAL = 10;
+    public static final int NOT_EQUAL = 11;
+    public static final int AND = 12;
+    public static final int OR = 13;
+
+    // d = -a
+    public static final int NEGATE = 14;
+
+    // jump target
+    public static final int JUMP = 15;
+    // jump a target: jumps if register a is false
+    public static final int JUMP_IF_FALSE = 16;
+
+    // for_test counter end step target: leaves the loop by jumping to target once counter is past end
+    public static final int FOR_TEST = 17;
+
+    // list_get d slot index token
+    public static final int LIST_GET = 18;
+    // list_set slot value index token
+    public static final int LIST_SET = 19;
+    // matrix_get d slot row col token
+    public static final int MATRIX_GET = 20;
+    // matrix_set slot value row col token
+    public static final int MATRIX_SET = 21;
+
+    // eval d object: d = the value of the compiled numeric expression in the object pool
+    public static final int EVAL = 22;
+    // exec object: runs the compiled statement in the object pool
+    public static final int EXEC = 23;
+
+    // menu object: shows the menu in the object pool and jumps to the chosen label
+    public static final int MENU = 24;
+    // goto_missing object: a Goto to a label that doesn't exist
+    public static final int GOTO_MISSING = 25;
+
+    // call1 d a object, call2 d a b object, call3 d a b c object: d = the operator in the object pool applied to the
+    // arguments, the DoubleUnaryOperator, DoubleBinaryOperator or DoubleTernaryOperator of a numeric function
+    public static final int CALL1 = 26;
+    public static final int CALL2 = 27;
+    public static final int CALL3 = 28;
+
+    public static final int HALT = 29;
+
+}
@@ -0,0 +1,212 @@
+package com.patrickfeltes.interpreter.compiler;
+
+import com.patrickfeltes.interpreter.ast.Expr;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.exceptions.DeoptimizationException;
+import com.patrickfeltes.interpreter.exceptions.GotoException;
+import com.patrickfeltes.interpreter.tokens.Token;
+import com.patrickfeltes.interpreter.visitors.Environment;
+import com.patrickfeltes.interpreter.visitors.Interpreter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * The optimizing compiler is the second tier of TieredCompilation. It compiles one hot loop like the ClosureCompiler
+ * does, except that:
+ * - binary expressions whose operand types can't be known ahead of time assume the types the Interpreter has seen,
+ *   and deoptimize the loop when they see anything else
+ * - once the loop has been deoptimized, every compiled statement and loop hands the rest of its work back to the
+ *   interpreter, so execution drops back to the interpreter without running anything twice
+ * - statements that do input or output are left to the interpreter, which owns the console
+ * - a jump to a label inside a compiled loop leaves the rest of that iteration to the interpreter, after which the
+ *   loop goes on compiled
+ */
+class OptimizingCompiler extends ClosureCompiler {
+
+    private static final double FALSE = 0.0;
+
+    private final Interpreter interpreter;
+    private final TieredCompilation tiers;
+
+    private CompiledLoop loop;
+
+    OptimizingCompiler(Environment environment, Interpreter interpreter, TieredCompilation tiers) {
+        super(environment, interpreter.getInPlaceUpdates());
+        this.interpreter = interpreter;
+        this.tiers = tiers;
+    }
+
+    CompiledLoop compileLoop(TieredCompilation.LoopProfile profile) {
+        loop = new CompiledLoop(profile);
+        Stmt statement = profile.loop();
+        loop.entry = guard(statement, statement.accept(this));
+
+        if (statement instanceof Stmt.For) {
+            Stmt.For stmt = (Stmt.For) statement;
+            Runnable[] body = compileAll(stmt.head);
+            loop.forResumption = (counter, end, step) -> runFor(stmt, body, counter, end, step);
+        }
+        return loop;
+    }
+
+    /**
+     * Compiles a block so that every statement falls back to the interpreter once the loop has been deoptimized.
+     */
+    @Override
+    public Runnable[] compileAll(Stmt head) {
+        List<Runnable> block = new ArrayList<>();
+        for (Stmt statement = head; statement != null; statement = statement.next()) {
+            if (statement instanceof Stmt.Disp || statement instanceof Stmt.Input
+                    || statement instanceof Stmt.Prompt || statement instanceof Stmt.Menu) {
+                Stmt io = statement;
+                block.add(() -> interpreter.execute(io));
+            } else {
+                block.add(guard(statement, statement.accept(this)));
+            }
+        }
+        return block.toArray(new Runnable[0]);
+    }
+
+    @Override
+    public Supplier<Object> visitBinaryExpr(Expr.Binary expr) {
+        Expr.BinaryOperation profiled = expr.specialization;
+        if (profiled == null || expr.generic || (staticType(expr.left) != null && staticType(expr.right) != null)) {
+            return super.visitBinaryExpr(expr);
+        }
+
+        Supplier<Object> left = compile(expr.left);
+        Supplier<Object> right = compile(expr.right);
+        return () -> {
+            Object leftValue = left.get();
+            Object rightValue = right.get();
+            if (profiled.handles(leftValue, rightValue)) {
+                return profiled.apply(leftValue, rightValue);
+            }
+
+            // neither the interpreter nor the next compilation will assume these types again
+            expr.specialization = null;
+            expr.generic = true;
+            tiers.deoptimize(loop);
+            throw new DeoptimizationException();
+        };
+    }
+
+    @Override
+    public Runnable visitWhileStmt(Stmt.While stmt) {
+        DoubleSupplier condition = compileDouble(stmt.condition);
+        Runnable[] body = compileAll(stmt.head);
+
+        return () -> {
+            while (condition.getAsDouble() != FALSE) {
+                runIteration(stmt, body);
+                if (!loop.valid) {
+                    interpreter.resumeWhile(stmt);
+                    return;
+                }
+            }
+        };
+    }
+
+    @Override
+    public Runnable visitForStmt(Stmt.For stmt) {
+        Token name = stmt.name;
+        int slot = stmt.slot;
+        Supplier<Object> start = compile(stmt.start);
+        DoubleSupplier end = compileDouble(stmt.end);
+        DoubleSupplier step = compileDouble(stmt.step);
+        Runnable[] body = compileAll(stmt.head);
+
+        return () -> {
+            double endValue = end.getAsDouble();
+            double stepValue = step.getAsDouble();
+            environment.assign(name, slot, start.get());
+            runFor(stmt, body, environment.getNumber(slot), endValue, stepValue);
+        };
+    }
+
+    @Override
+    public Runnable visitRepeatStmt(Stmt.Repeat stmt) {
+        DoubleSupplier condition = compileDouble(stmt.condition);
+        Runnable[] body = compileAll(stmt.head);
+
+        return () -> {
+            while (true) {
+                runIteration(stmt, body);
+
+                double conditionValue;
+                try {
+                    conditionValue = condition.getAsDouble();
+                } catch (DeoptimizationException ex) {
+                    // the body has already run, so only the condition is left to the interpreter
+                    conditionValue = interpreter.evaluateCondition(stmt.condition);
+                }
+                if (conditionValue != FALSE) return;
+
+                if (!loop.valid) {
+                    interpreter.resumeRepeat(stmt);
+                    return;
+                }
+            }
+        };
+    }
+
+    private void runFor(Stmt.For stmt, Runnable[] body, double counter, double end, double step) {
+        boolean increasing = step > 0;
+        if (!increasing && !(step < 0)) return;
+
+        for (double i = counter; increasing ? i <= end : i >= end; i += step) {
+            environment.assignNumber(stmt.slot, i);
+            runIteration(stmt, body);
+            if (!loop.valid) {
+                interpreter.resumeFor(stmt, i + step, end, step);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs one iteration of a compiled loop. A jump to a label inside the loop stays in it, with the interpreter
+     * running the rest of the iteration from the label; any other jump leaves the loop.
+     */
+    private void runIteration(Stmt loop, Runnable[] body) {
+        GotoException jump;
+        try {
+            runAll(body);
+            return;
+        } catch (GotoException ex) {
+            jump = ex;
+        }
+
+        while (true) {
+            int level = levelInside(jump, loop);
+            try {
+                interpreter.resumeAt(jump.target, level);
+                return;
+            } catch (GotoException ex) {
+                jump = ex;
+            }
+        }
+    }
+
+    /**
+     * Runs a compiled statement, unless the loop has been deoptimized, in which case the interpreter runs it.
+     * A statement that deoptimizes has not had any effect yet, so the interpreter runs it again from the start.
+     */
+    private Runnable guard(Stmt statement, Runnable compiled) {
+        return () -> {
+            if (!loop.valid) {
+                interpreter.execute(statement);
+                return;
+            }
+
+            try {
+                compiled.run();
+            } catch (DeoptimizationException ex) {
+                interpreter.execute(statement);
+            }
+        };
+    }
+}
@@ -0,0 +1,141 @@
+package com.patrickfeltes.interpreter.compiler;
+
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.visitors.Environment;
+import com.patrickfeltes.interpreter.visitors.Interpreter;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tiered compilation lets the Interpreter start running a program right away, and only compile the loops that turn
+ * out to be hot. The interpreter counts the iterations of every While, For and Repeat. Once a loop reaches the
+ * promotion threshold, it is compiled by the OptimizingCompiler and the rest of the loop runs as compiled code,
+ * starting from the next iteration. If the compiled code finds out that an assumption it was compiled under is wrong,
+ * it is thrown away and the interpreter takes over again. A compiled loop that a jump leaves stays compiled, but the
+ * interpreter only hands the loop back to it once it is hot again.
+ */
+public class TieredCompilation {
+
+    public static final int DEFAULT_THRESHOLD = 1000;
+
+    private final Interpreter interpreter;
+    private final Environment environment;
+    private final int threshold;
+
+    private final Map<Stmt, LoopProfile> profiles = new IdentityHashMap<>();
+    // the same profiles, in the order their loops first ran
+    private final List<LoopProfile> ordered = new ArrayList<>();
+
+    /**
+     * @param threshold the number of interpreted iterations after which a loop is compiled, or 0 to never compile
+     */
+    public TieredCompilation(Interpreter interpreter, Environment environment, int threshold) {
+        this.interpreter = interpreter;
+        this.environment = environment;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Finds the profile of a loop, which the interpreter keeps while running the loop.
+     * @param loop a While, For or Repeat statement
+     */
+    public LoopProfile profile(Stmt loop) {
+        LoopProfile profile = profiles.get(loop);
+        if (profile == null) {
+            profile = new LoopProfile(loop, profiles.size() + 1);
+            profiles.put(loop, profile);
+            ordered.add(profile);
+        }
+        return profile;
+    }
+
+    /**
+     * Counts one interpreted iteration of a loop, and compiles the loop once it is hot.
+     * @return the compiled loop that should run the rest of the iterations, or null to keep interpreting
+     */
+    public CompiledLoop countIteration(LoopProfile profile) {
+        profile.interpretedIterations++;
+        if (threshold <= 0 || ++profile.iterationsSinceDeoptimization < threshold) return null;
+
+        if (profile.compiled == null) {
+            profile.compiled = new OptimizingCompiler(environment, interpreter, this).compileLoop(profile);
+            profile.promotions++;
+        }
+        return profile.compiled;
+    }
+
+    /**
+     * Throws away a compiled loop. The loop has to become hot again before it is compiled again, without the
+     * assumption that failed.
+     */
+    void deoptimize(CompiledLoop loop) {
+        if (!loop.valid) return;
+
+        loop.valid = false;
+        LoopProfile profile = loop.profile;
+        profile.deoptimizations++;
+        profile.iterationsSinceDeoptimization = 0;
+        if (profile.compiled == loop) {
+            profile.compiled = null;
+        }
+    }
+
+    public void printStats() {
+        System.out.println("Tiered compilation, promotion threshold " + threshold + ":");
+        for (LoopProfile profile : ordered) {
+            System.out.println("  " + profile);
+        }
+    }
+
+    /**
+     * The counters of a single loop.
+     */
+    public static class LoopProfile {
+        private final Stmt loop;
+        // loops are numbered in the order they first run
+        private final int number;
+
+        private long interpretedIterations = 0;
+        private int iterationsSinceDeoptimization = 0;
+        private int promotions = 0;
+        private int deoptimizations = 0;
+        private int jumpExits = 0;
+        long compiledEntries = 0;
+
+        private CompiledLoop compiled;
+
+        LoopProfile(Stmt loop, int number) {
+            this.loop = loop;
+            this.number = number;
+        }
+
+        Stmt loop() {
+            return loop;
+        }
+
+        void exitedByJump() {
+            jumpExits++;
+            iterationsSinceDeoptimization = 0;
+        }
+
+        /**
+         * @return the compiled loop, or null if the loop is interpreted
+         */
+        public CompiledLoop compiled() {
+            return compiled;
+        }
+
+        @Override
+        public String toString() {
+            String name = loop.getClass().getSimpleName();
+            if (loop instanceof Stmt.For) name += "(" + ((Stmt.For) loop).name.lexeme + ")";
+
+            return "loop " + number + " " + name + ": " + interpretedIterations + " interpreted iterations, "
+                    + promotions + " promotions, " + deoptimizations + " deoptimizations, "
+                    + jumpExits + " jump exits, " + compiledEntries + " compiled entries";
+        }
+    }
+}
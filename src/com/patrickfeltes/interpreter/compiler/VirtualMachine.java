@@ -0,0 +1,215 @@
+package com.patrickfeltes.interpreter.compiler;
+
+import com.patrickfeltes.interpreter.Engine;
+import com.patrickfeltes.interpreter.Main;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.data_types.Parallelism;
+import com.patrickfeltes.interpreter.errors.RuntimeError;
+import com.patrickfeltes.interpreter.exceptions.GotoException;
+import com.patrickfeltes.interpreter.exceptions.ReturnException;
+import com.patrickfeltes.interpreter.exceptions.StopException;
+import com.patrickfeltes.interpreter.functions.DoubleTernaryOperator;
+import com.patrickfeltes.interpreter.tokens.Token;
+import com.patrickfeltes.interpreter.visitors.Environment;
+
+import java.util.Map;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleSupplier;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * The virtual machine runs programs compiled to a chunk by the BytecodeCompiler.
+ * Jumps, including Goto and Menu, only change the program counter, so they cost no more than any other instruction.
+ */
+public class VirtualMachine implements Engine {
+
+    private static final double TRUE = 1.0;
+    private static final double FALSE = 0.0;
+
+    private final Environment environment;
+    private final ClosureCompiler closureCompiler;
+
+    public VirtualMachine() {
+        this(new Environment());
+    }
+
+    public VirtualMachine(Environment environment) {
+        this(environment, new ClosureCompiler(environment));
+    }
+
+    public VirtualMachine(Environment environment, ClosureCompiler closureCompiler) {
+        this.environment = environment;
+        this.closureCompiler = closureCompiler;
+    }
+
+    @Override
+    public void interpret(Map<String, Stmt> labels, Stmt head) {
+        Parallelism previous = environment.getParallelism().enter();
+        try {
+            Chunk chunk = new BytecodeCompiler(environment, closureCompiler).compile(head);
+            try {
+                run(chunk);
+            } catch (RuntimeError error) {
+                Main.runtimeError(error);
+            } catch (ReturnException | StopException ex) {
+                // the program is over
+            }
+        } finally {
+            Parallelism.restore(previous);
+        }
+    }
+
+    @Override
+    public void setParallelism(Parallelism parallelism) {
+        environment.setParallelism(parallelism);
+    }
+
+    @Override
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    @Override
+    public void printInPlaceStats() {
+        closureCompiler.printInPlaceStats();
+    }
+
+    public void run(Chunk chunk) {
+        double[] r = environment.registers(chunk.registerCount);
+        for (int i = 0; i < chunk.constants.length; i++) {
+            r[chunk.constantRegisters[i]] = chunk.constants[i];
+        }
+
+        int[] code = chunk.code;
+        Object[] objects = chunk.objects;
+        int pc = 0;
+
+        while (true) {
+            switch (code[pc]) {
+                case OpCode.MOVE:
+                    r[code[pc + 1]] = r[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case OpCode.ADD:
+                    r[code[pc + 1]] = r[code[pc + 2]] + r[code[pc + 3]];
+                    pc += 4;
+                    break;
+                case OpCode.SUB:
+                    r[code[pc + 1]] = r[code[pc + 2]] - r[code[pc + 3]];
+                    pc += 4;
+                    break;
+                case OpCode.MUL:
+                    r[code[pc + 1]] = r[code[pc + 2]] * r[code[pc + 3]];
+                    pc += 4;
+                    break;
+                case OpCode.DIV:
+                    r[code[pc + 1]] = r[code[pc + 2]] / r[code[pc + 3]];
+                    pc += 4;
+                    break;
+                case OpCode.POW:
+                    r[code[pc + 1]] = Math.pow(r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case OpCode.GT:
+                    r[code[pc + 1]] = r[code[pc + 2]] > r[code[pc + 3]] ? TRUE : FALSE;
+                    pc += 4;
+                    break;
+                case OpCode.GTOE:
+                    r[code[pc + 1]] = r[code[pc + 2]] >= r[code[pc + 3]] ? TRUE : FALSE;
+                    pc += 4;
+                    break;
+                case OpCode.LT:
+                    r[code[pc + 1]] = r[code[pc + 2]] < r[code[pc + 3]] ? TRUE : FALSE;
+                    pc += 4;
+                    break;
+                case OpCode.LTOE:
+                    r[code[pc + 1]] = r[code[pc + 2]] <= r[code[pc + 3]] ? TRUE : FALSE;
+                    pc += 4;
+                    break;
+                case OpCode.EQUAL:
+                    r[code[pc + 1]] = r[code[pc + 2]] == r[code[pc + 3]] ? TRUE : FALSE;
+                    pc += 4;
+                    break;
+                case OpCode.NOT_EQUAL:
+                    r[code[pc + 1]] = r[code[pc + 2]] != r[code[pc + 3]] ? TRUE : FALSE;
+                    pc += 4;
+                    break;
+                case OpCode.AND:
+                    r[code[pc + 1]] = r[code[pc + 2]] != FALSE && r[code[pc + 3]] != FALSE ? TRUE : FALSE;
+                    pc += 4;
+                    break;
+                case OpCode.OR:
+                    r[code[pc + 1]] = r[code[pc + 2]] != FALSE || r[code[pc + 3]] != FALSE ? TRUE : FALSE;
+                    pc += 4;
+                    break;
+                case OpCode.NEGATE:
+                    r[code[pc + 1]] = -r[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case OpCode.JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case OpCode.JUMP_IF_FALSE:
+                    pc = r[code[pc + 1]] == FALSE ? code[pc + 2] : pc + 3;
+                    break;
+                case OpCode.FOR_TEST: {
+                    double counter = r[code[pc + 1]];
+                    double end = r[code[pc + 2]];
+                    double step = r[code[pc + 3]];
+                    boolean inside = step > 0 ? counter <= end : step < 0 && counter >= end;
+                    pc = inside ? pc + 5 : code[pc + 4];
+                    break;
+                }
+                case OpCode.LIST_GET:
+                    r[code[pc + 1]] = environment.getListIndex((Token) objects[code[pc + 4]], code[pc + 2], r[code[pc + 3]]);
+                    pc += 5;
+                    break;
+                case OpCode.LIST_SET:
+                    environment.assignListIndex((Token) objects[code[pc + 4]], code[pc + 1], r[code[pc + 2]], r[code[pc + 3]]);
+                    pc += 5;
+                    break;
+                case OpCode.MATRIX_GET:
+                    r[code[pc + 1]] = environment.getMatrixIndex((Token) objects[code[pc + 5]], code[pc + 2],
+                            r[code[pc + 3]], r[code[pc + 4]]);
+                    pc += 6;
+                    break;
+                case OpCode.MATRIX_SET:
+                    environment.assignMatrixIndex((Token) objects[code[pc + 5]], code[pc + 1], r[code[pc + 2]],
+                            r[code[pc + 3]], r[code[pc + 4]]);
+                    pc += 6;
+                    break;
+                case OpCode.EVAL:
+                    r[code[pc + 1]] = ((DoubleSupplier) objects[code[pc + 2]]).getAsDouble();
+                    pc += 3;
+                    break;
+                case OpCode.EXEC:
+                    ((Runnable) objects[code[pc + 1]]).run();
+                    pc += 2;
+                    break;
+                case OpCode.MENU:
+                    pc = ((Chunk.Menu) objects[code[pc + 1]]).chooseTarget(closureCompiler);
+                    break;
+                case OpCode.GOTO_MISSING:
+                    throw new GotoException((String) objects[code[pc + 1]]);
+                case OpCode.CALL1:
+                    r[code[pc + 1]] = ((DoubleUnaryOperator) objects[code[pc + 3]]).applyAsDouble(r[code[pc + 2]]);
+                    pc += 4;
+                    break;
+                case OpCode.CALL2:
+                    r[code[pc + 1]] = ((DoubleBinaryOperator) objects[code[pc + 4]]).applyAsDouble(r[code[pc + 2]],
+                            r[code[pc + 3]]);
+                    pc += 5;
+                    break;
+                case OpCode.CALL3:
+                    r[code[pc + 1]] = ((DoubleTernaryOperator) objects[code[pc + 5]]).applyAsDouble(r[code[pc + 2]],
+                            r[code[pc + 3]], r[code[pc + 4]]);
+                    pc += 6;
+                    break;
+                case OpCode.HALT:
+                    return;
+                default:
+                    throw new IllegalStateException("Unknown opcode " + code[pc] + " at " + pc + ".");
+            }
+        }
+    }
+}
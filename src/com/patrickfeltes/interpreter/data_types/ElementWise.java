@@ -0,0 +1,113 @@
+package com.patrickfeltes.interpreter.data_types;
+
+/**
+ * ElementWise holds the loops behind the element-wise list and matrix operations.
+ * Every loop goes through plain arrays with nothing but the operation in its body, which is the shape the JIT turns
+ * into SIMD instructions, so each of them works on several elements per instruction once it is compiled.
+ * The results are exactly the same as doing the operations one element at a time.
+ * Each loop covers positions from to to, so that Parallelism can split a large operation across threads.
+ */
+public class ElementWise {
+
+    private ElementWise() { }
+
+    // out[i] = a[i] + b[i]
+    public static void add(double[] a, double[] b, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = a[i] + b[i];
+        }
+    }
+
+    // out[i] = a[i] - b[i]
+    public static void sub(double[] a, double[] b, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = a[i] - b[i];
+        }
+    }
+
+    // out[i] = a[i] * b[i]
+    public static void mul(double[] a, double[] b, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = a[i] * b[i];
+        }
+    }
+
+    // out[i] = a[i] / b[i]
+    public static void div(double[] a, double[] b, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = a[i] / b[i];
+        }
+    }
+
+    // out[i] = factor * a[i]
+    public static void scale(double[] a, double factor, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = factor * a[i];
+        }
+    }
+
+    // out[i] = number + a[i]
+    public static void addScalar(double[] a, double number, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = number + a[i];
+        }
+    }
+
+    // out[i] = a[i] - number
+    public static void subScalar(double[] a, double number, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = a[i] - number;
+        }
+    }
+
+    // out[i] = number - a[i]
+    public static void subFromScalar(double[] a, double number, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = number - a[i];
+        }
+    }
+
+    // out[i] = a[i] / number
+    public static void divScalar(double[] a, double number, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = a[i] / number;
+        }
+    }
+
+    // out[i] = number / a[i]
+    public static void divIntoScalar(double[] a, double number, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = number / a[i];
+        }
+    }
+
+    // out[i] = a[i] ^ b[i]
+    public static void pow(double[] a, double[] b, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = Math.pow(a[i], b[i]);
+        }
+    }
+
+    // out[i] = a[i] ^ number
+    public static void powScalar(double[] a, double number, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = Math.pow(a[i], number);
+        }
+    }
+
+    // out[i] = number ^ a[i]
+    public static void powOfScalar(double[] a, double number, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = Math.pow(number, a[i]);
+        }
+    }
+
+    // a[from] + ... + a[to - 1], added up in order
+    public static double sum(double[] a, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += a[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,154 @@
+package com.patrickfeltes.interpreter.data_types;
+
+/**
+ * The LU factorization of a square matrix with partial pivoting: the rows of the matrix, reordered by the pivots,
+ * are the product of a unit lower triangular matrix L and an upper triangular matrix U.
+ * A factorization never changes once it is made, so a matrix keeps it for as long as its entries stay the same.
+ */
+class LuFactorization {
+
+    // a pivot this small next to the largest entry of the matrix is taken to be zero, as rounding has left it behind
+    private static final double SINGULAR_TOLERANCE = 1e-12;
+
+    /*
+        L and U are stored together in one array, row after row: U on and above the diagonal, and L below it, without
+        its diagonal of ones.
+     */
+    private final double[] lu;
+    private final int size;
+    // the row of the matrix that each row of the factorization came from
+    private final int[] pivots;
+    // 1 for an even number of row swaps, -1 for an odd number
+    private final int pivotSign;
+    private final boolean singular;
+
+    // worked out the first time it is asked for
+    private double[] inverse;
+
+    LuFactorization(double[] entries, int size) {
+        this.size = size;
+        this.lu = entries.clone();
+        this.pivots = new int[size];
+        for (int i = 0; i < size; i++) {
+            pivots[i] = i;
+        }
+
+        double largest = 0;
+        for (double entry : entries) {
+            largest = Math.max(largest, Math.abs(entry));
+        }
+        double tolerance = SINGULAR_TOLERANCE * largest;
+
+        int sign = 1;
+        boolean singular = false;
+        for (int k = 0; k < size; k++) {
+            // the largest entry left in the column keeps the multipliers at most 1
+            int pivot = k;
+            for (int i = k + 1; i < size; i++) {
+                if (Math.abs(lu[i * size + k]) > Math.abs(lu[pivot * size + k])) pivot = i;
+            }
+            if (pivot != k) {
+                swapRows(lu, size, pivot, k);
+                int row = pivots[pivot];
+                pivots[pivot] = pivots[k];
+                pivots[k] = row;
+                sign = -sign;
+            }
+
+            double diagonal = lu[k * size + k];
+            if (Math.abs(diagonal) <= tolerance) {
+                // nothing is left to eliminate in this column
+                singular = true;
+                continue;
+            }
+
+            for (int i = k + 1; i < size; i++) {
+                double factor = lu[i * size + k] / diagonal;
+                lu[i * size + k] = factor;
+                if (factor == 0) continue;
+                for (int j = k + 1; j < size; j++) {
+                    lu[i * size + j] -= factor * lu[k * size + j];
+                }
+            }
+        }
+
+        this.pivotSign = sign;
+        this.singular = singular;
+    }
+
+    static void swapRows(double[] entries, int cols, int row1, int row2) {
+        for (int c = 0; c < cols; c++) {
+            double entry = entries[row1 * cols + c];
+            entries[row1 * cols + c] = entries[row2 * cols + c];
+            entries[row2 * cols + c] = entry;
+        }
+    }
+
+    boolean isSingular() {
+        return singular;
+    }
+
+    double det() {
+        if (singular) return 0;
+
+        double det = pivotSign;
+        for (int i = 0; i < size; i++) {
+            det *= lu[i * size + i];
+        }
+        return det;
+    }
+
+    /**
+     * Solves the matrix times x equals b for x, where b has size rows and cols columns, stored row after row.
+     * The factorization must not be singular.
+     */
+    double[] solve(double[] b, int cols) {
+        double[] x = new double[size * cols];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(b, pivots[i] * cols, x, i * cols, cols);
+        }
+
+        // forward substitution with L, whole rows at a time
+        for (int i = 0; i < size; i++) {
+            for (int k = 0; k < i; k++) {
+                double factor = lu[i * size + k];
+                if (factor == 0) continue;
+                for (int c = 0; c < cols; c++) {
+                    x[i * cols + c] -= factor * x[k * cols + c];
+                }
+            }
+        }
+
+        // back substitution with U
+        for (int i = size - 1; i >= 0; i--) {
+            for (int k = i + 1; k < size; k++) {
+                double factor = lu[i * size + k];
+                if (factor == 0) continue;
+                for (int c = 0; c < cols; c++) {
+                    x[i * cols + c] -= factor * x[k * cols + c];
+                }
+            }
+            double diagonal = lu[i * size + i];
+            for (int c = 0; c < cols; c++) {
+                x[i * cols + c] /= diagonal;
+            }
+        }
+
+        return x;
+    }
+
+    /**
+     * Gives the entries of the inverse, row after row. They must not be written to.
+     * The factorization must not be singular.
+     */
+    double[] inverse() {
+        if (inverse == null) {
+            double[] identity = new double[size * size];
+            for (int i = 0; i < size; i++) {
+                identity[i * size + i] = 1;
+            }
+            inverse = solve(identity, size);
+        }
+        return inverse;
+    }
+}
@@ -0,0 +1,161 @@
+package com.patrickfeltes.interpreter.data_types;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Storage for doubles outside the Java heap, for lists far bigger than the calculator allows. Keeping them out of
+ * the heap means the garbage collector never has to copy or scan them.
+ *
+ * The storage is either allocated directly, and freed once nothing uses it, or mapped from a file of doubles. Mapped
+ * files are read-only, and mapping the same file again gives the same storage, so any number of environments can
+ * use one dataset without copying it; the operating system shares the pages with other processes mapping it too.
+ * A file of doubles is every double in order, eight bytes each, little-endian, with nothing before or after.
+ */
+public class OffHeapDoubles {
+
+    // lists from this many elements are stored off the heap, unless changed by setThreshold
+    public static final long DEFAULT_THRESHOLD = 1 << 22;
+
+    private static final Map<Path, OffHeapDoubles> mappedFiles = new ConcurrentHashMap<>();
+    private static volatile long threshold = DEFAULT_THRESHOLD;
+
+    private final DoubleBuffer buffer;
+    private final int capacity;
+    private final boolean readOnly;
+
+    private OffHeapDoubles(DoubleBuffer buffer, boolean readOnly) {
+        this.buffer = buffer;
+        this.capacity = buffer.capacity();
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Allocates storage for a number of doubles, all 0.
+     */
+    public static OffHeapDoubles allocate(int capacity) {
+        if (capacity > Integer.MAX_VALUE / Double.BYTES) {
+            throw new IllegalArgumentException("Too many elements to store off the heap: " + capacity);
+        }
+        ByteBuffer bytes = ByteBuffer.allocateDirect(capacity * Double.BYTES).order(ByteOrder.nativeOrder());
+        return new OffHeapDoubles(bytes.asDoubleBuffer(), false);
+    }
+
+    /**
+     * Maps a file of doubles, read-only. A file that is already mapped is not mapped again.
+     */
+    public static OffHeapDoubles map(Path file) throws IOException {
+        Path path = file.toRealPath();
+        OffHeapDoubles mapped = mappedFiles.get(path);
+        if (mapped != null) return mapped;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size % Double.BYTES != 0) {
+                throw new IOException(path + " is not a file of doubles: its size is not a multiple of 8 bytes.");
+            }
+            if (size > (long) Integer.MAX_VALUE / Double.BYTES * Double.BYTES) {
+                throw new IOException(path + " has too many doubles for one list.");
+            }
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            mapped = new OffHeapDoubles(bytes.asDoubleBuffer(), true);
+        }
+
+        OffHeapDoubles previous = mappedFiles.putIfAbsent(path, mapped);
+        return previous != null ? previous : mapped;
+    }
+
+    /**
+     * Writes doubles to a file that can then be mapped.
+     */
+    public static void save(Path file, double[] values, int count) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(count * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asDoubleBuffer().put(values, 0, count);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * @return true if a list of this many elements should be stored off the heap
+     */
+    public static boolean isWanted(long elements) {
+        return elements >= threshold;
+    }
+
+    public static long getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Sets the number of elements from which lists are stored off the heap, for every environment.
+     */
+    public static void setThreshold(long threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("The off-heap threshold must be at least 1.");
+        }
+        OffHeapDoubles.threshold = threshold;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return true if this is a mapped file, which has to be copied before it is written to
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public double get(int index) {
+        return buffer.get(index);
+    }
+
+    public void set(int index, double value) {
+        buffer.put(index, value);
+    }
+
+    /**
+     * Copies count doubles, starting at from, into the array starting at at.
+     */
+    public void read(int from, double[] into, int at, int count) {
+        // a view of its own, so that threads reading other parts at the same time don't move its position
+        DoubleBuffer view = buffer.duplicate();
+        view.position(from);
+        view.get(into, at, count);
+    }
+
+    /**
+     * Copies count doubles from the array, starting at at, into this storage starting at from.
+     */
+    public void write(int from, double[] values, int at, int count) {
+        DoubleBuffer view = buffer.duplicate();
+        view.position(from);
+        view.put(values, at, count);
+    }
+
+    /**
+     * Allocates new storage holding the first count doubles of this one.
+     */
+    public OffHeapDoubles copy(int count, int capacity) {
+        OffHeapDoubles copy = allocate(capacity);
+        double[] chunk = new double[Math.min(count, 1 << 12)];
+        for (int i = 0; i < count; i += chunk.length) {
+            int length = Math.min(chunk.length, count - i);
+            read(i, chunk, 0, length);
+            copy.write(i, chunk, 0, length);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,174 @@
+package com.patrickfeltes.interpreter.data_types;
+
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallelism decides when operations on large lists and matrices are split across the threads of the common
+ * ForkJoinPool. Operations on fewer elements than the threshold, and every operation when the parallelism is 1, run
+ * on the calling thread.
+ *
+ * Every engine has its own settings, which are made current on the thread running the engine's program, so that the
+ * operations of the data types can find them without being passed an engine.
+ *
+ * Splitting never changes a result: element-wise operations write each element the same way no matter which thread
+ * does it, and sums always add up the same fixed blocks in the same order.
+ */
+public class Parallelism {
+
+    public static final int DEFAULT_THRESHOLD = 1 << 16;
+    // the number of elements added up on their own before the sums of the blocks are added together
+    public static final int SUM_BLOCK = 1 << 12;
+
+    public static final Parallelism SERIAL = new Parallelism(Integer.MAX_VALUE, 1);
+
+    private static final ThreadLocal<Parallelism> current = ThreadLocal.withInitial(Parallelism::defaults);
+
+    private final long threshold;
+    private final int parallelism;
+
+    /**
+     * @param threshold the number of elements from which operations are split
+     * @param parallelism the most pieces an operation is split into, 1 to never split
+     */
+    public Parallelism(long threshold, int parallelism) {
+        if (threshold < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("The threshold and parallelism must be positive.");
+        }
+        this.threshold = threshold;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return the default settings: split operations on 65536 elements or more across every thread of the pool
+     */
+    public static Parallelism defaults() {
+        return new Parallelism(DEFAULT_THRESHOLD, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * @return the settings of the engine running on this thread
+     */
+    public static Parallelism current() {
+        return current.get();
+    }
+
+    /**
+     * Makes these settings current on this thread.
+     * @return the settings that were current before, to be given back to restore once the engine is done
+     */
+    public Parallelism enter() {
+        Parallelism previous = current.get();
+        current.set(this);
+        return previous;
+    }
+
+    public static void restore(Parallelism previous) {
+        current.set(previous);
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * A range of the units of an operation, such as elements or rows.
+     */
+    public interface Range {
+        void run(int from, int to);
+    }
+
+    /**
+     * @param elements the number of elements the operation works on
+     * @param units the number of units the operation can be split into
+     * @return how many pieces the operation is split into
+     */
+    public int pieces(long elements, int units) {
+        if (elements < threshold || parallelism == 1) return 1;
+        return Math.max(1, Math.min(parallelism, units));
+    }
+
+    /**
+     * Runs an operation over units 0 to units, split into contiguous ranges that run in parallel when the operation
+     * is big enough. Returns once every range has run.
+     * @param elements the number of elements the operation works on
+     * @param units the number of units the operation can be split into
+     * @param body runs the operation on a range of units
+     */
+    public void forEach(long elements, int units, Range body) {
+        int pieces = pieces(elements, units);
+        if (pieces == 1) {
+            body.run(0, units);
+            return;
+        }
+
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[pieces];
+        for (int i = 0; i < pieces; i++) {
+            int from = (int) ((long) units * i / pieces);
+            int to = (int) ((long) units * (i + 1) / pieces);
+            tasks[i] = new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    body.run(from, to);
+                }
+            };
+        }
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    /**
+     * Adds up the first count values. The values are added up in blocks of SUM_BLOCK, and then the sums of the
+     * blocks are added up in order, so the result is the same however the blocks are split.
+     */
+    public double sum(double[] values, int count) {
+        return sum(values, 0, count);
+    }
+
+    /**
+     * Adds up the values from position from to position to, in blocks of SUM_BLOCK starting at from.
+     */
+    public double sum(double[] values, int from, int to) {
+        int count = to - from;
+        int blocks = (count + SUM_BLOCK - 1) / SUM_BLOCK;
+        if (blocks <= 1) return ElementWise.sum(values, from, to);
+
+        double[] sums = new double[blocks];
+        forEach(count, blocks, (first, last) -> {
+            for (int block = first; block < last; block++) {
+                int start = from + block * SUM_BLOCK;
+                sums[block] = ElementWise.sum(values, start, Math.min(to, start + SUM_BLOCK));
+            }
+        });
+
+        double sum = sums[0];
+        for (int block = 1; block < blocks; block++) {
+            sum += sums[block];
+        }
+        return sum;
+    }
+
+    /**
+     * Adds up values given one at a time, such as values that are never stored, in the same blocks as sum adds up
+     * an array. The result is exactly what sum gives for the array of the values.
+     */
+    public static double sum(PrimitiveIterator.OfDouble values) {
+        double sum = 0;
+        double block = 0;
+        int count = 0;
+        while (values.hasNext()) {
+            block += values.nextDouble();
+            if (++count == SUM_BLOCK) {
+                sum += block;
+                block = 0;
+                count = 0;
+            }
+        }
+        return count > 0 ? sum + block : sum;
+    }
+}
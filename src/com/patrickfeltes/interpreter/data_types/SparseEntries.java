@@ -0,0 +1,277 @@
+package com.patrickfeltes.interpreter.data_types;
+
+import java.util.Arrays;
+
+/**
+ * The entries of a matrix that is mostly zeros, in compressed sparse row form: only the entries that aren't 0 are
+ * stored, row after row, each with its column, and rowStarts[r] is where row r starts among them.
+ *
+ * Products skip the zeros, but still add up the products for each entry in the same order as the textbook
+ * row-times-column loop, so as long as every entry is finite the result is exactly the same as multiplying the
+ * dense matrices. Leaving out a product with 0 only makes a difference if the other factor is infinite or NaN.
+ */
+class SparseEntries {
+
+    private final int rows;
+    private final int cols;
+    private int[] rowStarts;
+    private int[] columns;
+    private double[] values;
+
+    private SparseEntries(int rows, int cols, int[] rowStarts, int[] columns, double[] values) {
+        this.rows = rows;
+        this.cols = cols;
+        this.rowStarts = rowStarts;
+        this.columns = columns;
+        this.values = values;
+    }
+
+    /**
+     * Compresses dense entries, stored row after row, of which nonZeros aren't 0.
+     */
+    static SparseEntries of(double[] entries, int rows, int cols, int nonZeros) {
+        int[] rowStarts = new int[rows + 1];
+        int[] columns = new int[nonZeros];
+        double[] values = new double[nonZeros];
+        int count = 0;
+        for (int r = 0; r < rows; r++) {
+            rowStarts[r] = count;
+            for (int c = 0; c < cols; c++) {
+                double entry = entries[r * cols + c];
+                if (entry != 0) {
+                    columns[count] = c;
+                    values[count++] = entry;
+                }
+            }
+        }
+        rowStarts[rows] = count;
+        return new SparseEntries(rows, cols, rowStarts, columns, values);
+    }
+
+    static int countNonZeros(double[] entries) {
+        int count = 0;
+        for (double entry : entries) {
+            if (entry != 0) count++;
+        }
+        return count;
+    }
+
+    int nonZeros() {
+        return rowStarts[rows];
+    }
+
+    boolean allFinite() {
+        for (int i = 0; i < nonZeros(); i++) {
+            if (!Double.isFinite(values[i])) return false;
+        }
+        return true;
+    }
+
+    static boolean allFinite(double[] entries) {
+        for (double entry : entries) {
+            if (!Double.isFinite(entry)) return false;
+        }
+        return true;
+    }
+
+    double[] toDense() {
+        double[] entries = new double[rows * cols];
+        for (int r = 0; r < rows; r++) {
+            for (int i = rowStarts[r]; i < rowStarts[r + 1]; i++) {
+                entries[r * cols + columns[i]] = values[i];
+            }
+        }
+        return entries;
+    }
+
+    SparseEntries copy() {
+        return new SparseEntries(rows, cols, rowStarts.clone(), Arrays.copyOf(columns, nonZeros()),
+                Arrays.copyOf(values, nonZeros()));
+    }
+
+    // where the entry is among those of its row, or where it would be inserted, as Arrays.binarySearch gives it
+    private int find(int row, int col) {
+        return Arrays.binarySearch(columns, rowStarts[row], rowStarts[row + 1], col);
+    }
+
+    double get(int row, int col) {
+        int i = find(row, col);
+        return i >= 0 ? values[i] : 0;
+    }
+
+    void set(int row, int col, double value) {
+        int i = find(row, col);
+        int count = nonZeros();
+        if (i >= 0) {
+            if (value != 0) {
+                values[i] = value;
+                return;
+            }
+            System.arraycopy(columns, i + 1, columns, i, count - i - 1);
+            System.arraycopy(values, i + 1, values, i, count - i - 1);
+            for (int r = row + 1; r <= rows; r++) rowStarts[r]--;
+        } else if (value != 0) {
+            i = -i - 1;
+            if (count == columns.length) {
+                columns = Arrays.copyOf(columns, Math.max(8, count * 2));
+                values = Arrays.copyOf(values, columns.length);
+            }
+            System.arraycopy(columns, i, columns, i + 1, count - i);
+            System.arraycopy(values, i, values, i + 1, count - i);
+            columns[i] = col;
+            values[i] = value;
+            for (int r = row + 1; r <= rows; r++) rowStarts[r]++;
+        }
+    }
+
+    SparseEntries scale(double factor) {
+        double[] scaled = new double[nonZeros()];
+        for (int i = 0; i < scaled.length; i++) {
+            scaled[i] = factor * values[i];
+        }
+        return compact(rows, cols, rowStarts.clone(), Arrays.copyOf(columns, scaled.length), scaled);
+    }
+
+    /**
+     * Adds, or subtracts, two sparse matrices of the same size, row by row, going through the entries of both rows
+     * in order of their columns.
+     */
+    static SparseEntries combine(SparseEntries left, SparseEntries right, boolean subtract) {
+        int rows = left.rows;
+        int[] rowStarts = new int[rows + 1];
+        int[] columns = new int[left.nonZeros() + right.nonZeros()];
+        double[] values = new double[columns.length];
+        int count = 0;
+        for (int r = 0; r < rows; r++) {
+            rowStarts[r] = count;
+            int i = left.rowStarts[r];
+            int j = right.rowStarts[r];
+            int leftEnd = left.rowStarts[r + 1];
+            int rightEnd = right.rowStarts[r + 1];
+            while (i < leftEnd || j < rightEnd) {
+                int leftCol = i < leftEnd ? left.columns[i] : Integer.MAX_VALUE;
+                int rightCol = j < rightEnd ? right.columns[j] : Integer.MAX_VALUE;
+                // the same operation on the same two numbers as the dense matrices, with 0 for a missing entry
+                double a = leftCol <= rightCol ? left.values[i++] : 0;
+                double b = rightCol <= leftCol ? right.values[j++] : 0;
+                columns[count] = Math.min(leftCol, rightCol);
+                values[count++] = subtract ? a - b : a + b;
+            }
+        }
+        rowStarts[rows] = count;
+        return compact(rows, left.cols, rowStarts, columns, values);
+    }
+
+    /**
+     * Multiplies rows from to to of this matrix by a dense matrix with cols columns, into the same rows of a dense
+     * result.
+     */
+    void multiplyDense(double[] right, int cols, double[] result, int from, int to) {
+        for (int r = from; r < to; r++) {
+            int out = r * cols;
+            for (int i = rowStarts[r]; i < rowStarts[r + 1]; i++) {
+                double factor = values[i];
+                int row = columns[i] * cols;
+                for (int c = 0; c < cols; c++) {
+                    result[out + c] += factor * right[row + c];
+                }
+            }
+        }
+    }
+
+    /**
+     * Multiplies rows from to to of a dense matrix with inner columns by this matrix, into the same rows of a dense
+     * result.
+     */
+    void multipliedByDense(double[] left, int inner, double[] result, int from, int to) {
+        for (int r = from; r < to; r++) {
+            int out = r * cols;
+            for (int k = 0; k < inner; k++) {
+                double factor = left[r * inner + k];
+                if (factor == 0) continue;
+                for (int i = rowStarts[k]; i < rowStarts[k + 1]; i++) {
+                    result[out + columns[i]] += factor * values[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Multiplies two sparse matrices one row of the result at a time, adding the rows of the right matrix into a
+     * dense row that keeps track of which of its entries were touched.
+     */
+    static SparseEntries multiply(SparseEntries left, SparseEntries right) {
+        int rows = left.rows;
+        int cols = right.cols;
+        double[] row = new double[cols];
+        // touchedIn[c] is one more than the last row in which column c was touched
+        int[] touchedIn = new int[cols];
+        int[] touched = new int[cols];
+
+        int[] rowStarts = new int[rows + 1];
+        int[] columns = new int[Math.max(8, left.nonZeros() + right.nonZeros())];
+        double[] values = new double[columns.length];
+        int count = 0;
+        for (int r = 0; r < rows; r++) {
+            rowStarts[r] = count;
+            int touchedCount = 0;
+            for (int i = left.rowStarts[r]; i < left.rowStarts[r + 1]; i++) {
+                double factor = left.values[i];
+                int k = left.columns[i];
+                for (int j = right.rowStarts[k]; j < right.rowStarts[k + 1]; j++) {
+                    int c = right.columns[j];
+                    if (touchedIn[c] != r + 1) {
+                        touchedIn[c] = r + 1;
+                        touched[touchedCount++] = c;
+                        row[c] = 0;
+                    }
+                    row[c] += factor * right.values[j];
+                }
+            }
+
+            Arrays.sort(touched, 0, touchedCount);
+            if (count + touchedCount > columns.length) {
+                columns = Arrays.copyOf(columns, Math.max(count + touchedCount, columns.length * 2));
+                values = Arrays.copyOf(values, columns.length);
+            }
+            for (int t = 0; t < touchedCount; t++) {
+                columns[count] = touched[t];
+                values[count++] = row[touched[t]];
+            }
+        }
+        rowStarts[rows] = count;
+        return compact(rows, cols, rowStarts, columns, values);
+    }
+
+    /**
+     * Drops the entries that came out as 0.
+     */
+    private static SparseEntries compact(int rows, int cols, int[] rowStarts, int[] columns, double[] values) {
+        int count = 0;
+        int start = 0;
+        for (int r = 0; r < rows; r++) {
+            int end = rowStarts[r + 1];
+            rowStarts[r] = count;
+            for (int i = start; i < end; i++) {
+                if (values[i] != 0) {
+                    columns[count] = columns[i];
+                    values[count++] = values[i];
+                }
+            }
+            start = end;
+        }
+        rowStarts[rows] = count;
+        return new SparseEntries(rows, cols, rowStarts, columns, values);
+    }
+
+    void appendTo(StringBuilder builder, int row) {
+        int i = rowStarts[row];
+        for (int c = 0; c < cols; c++) {
+            if (i < rowStarts[row + 1] && columns[i] == c) {
+                builder.append(values[i++]).append(" ");
+            } else {
+                builder.append(0.0).append(" ");
+            }
+        }
+    }
+}
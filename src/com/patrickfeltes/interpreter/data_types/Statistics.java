@@ -0,0 +1,387 @@
+package com.patrickfeltes.interpreter.data_types;
+
+import com.patrickfeltes.interpreter.errors.RuntimeError;
+import com.patrickfeltes.interpreter.tokens.Token;
+
+import java.util.Arrays;
+
+/**
+ * The statistics of lists, as 1-Var Stats, 2-Var Stats and LinReg( find them.
+ *
+ * Means and deviations are found in one pass with Welford's updates, which stay accurate when the values are far
+ * from 0 compared to how much they vary, where Σx² - (Σx)²/n loses every digit. A list is cut into blocks of
+ * Parallelism.SUM_BLOCK elements whose moments are found on their own, in parallel for large lists, and then merged
+ * in order, so the results are the same however the work is split.
+ *
+ * Medians and quartiles are found by selection, in linear time, instead of by sorting the list.
+ *
+ * Every element can be given a frequency, a whole number of times it counts, as with the frequency lists of the
+ * calculator. Elements with a frequency of 0 are left out.
+ */
+public class Statistics {
+
+    private static final int BLOCK = Parallelism.SUM_BLOCK;
+
+    private Statistics() { }
+
+    /**
+     * The moments of the values of one list.
+     */
+    public static class Moments {
+        // the number of values, counting each as many times as its frequency
+        public double n;
+        public double mean;
+        // the sum of the squared differences from the mean
+        public double deviations;
+        public double sum;
+        public double sumOfSquares;
+        public double min = Double.POSITIVE_INFINITY;
+        public double max = Double.NEGATIVE_INFINITY;
+
+        void add(double value, double frequency) {
+            n += frequency;
+            double delta = value - mean;
+            mean += delta * frequency / n;
+            deviations += frequency * delta * (value - mean);
+            sum += frequency * value;
+            sumOfSquares += frequency * value * value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        /**
+         * Adds the values of other, as if they came after the values of this.
+         */
+        void merge(Moments other) {
+            double total = n + other.n;
+            double delta = other.mean - mean;
+            mean += delta * other.n / total;
+            deviations += other.deviations + delta * delta * n * other.n / total;
+            n = total;
+            sum += other.sum;
+            sumOfSquares += other.sumOfSquares;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+
+        // Sx and stdDev(, with n - 1 degrees of freedom
+        public double sampleStdDev() {
+            return Math.sqrt(deviations / (n - 1));
+        }
+
+        // σx
+        public double populationStdDev() {
+            return Math.sqrt(deviations / n);
+        }
+    }
+
+    /**
+     * The moments of pairs of values from two lists, with the sum of the products of their differences from the
+     * means that links them.
+     */
+    public static class CoMoments {
+        public final Moments x = new Moments();
+        public final Moments y = new Moments();
+        public double codeviations;
+        public double sumOfProducts;
+
+        void add(double xValue, double yValue, double frequency) {
+            double xDelta = xValue - x.mean;
+            x.add(xValue, frequency);
+            y.add(yValue, frequency);
+            codeviations += frequency * xDelta * (yValue - y.mean);
+            sumOfProducts += frequency * xValue * yValue;
+        }
+
+        void merge(CoMoments other) {
+            double total = x.n + other.x.n;
+            if (total == 0) return;
+            codeviations += other.codeviations
+                    + (other.x.mean - x.mean) * (other.y.mean - y.mean) * x.n * other.x.n / total;
+            sumOfProducts += other.sumOfProducts;
+            x.merge(other.x);
+            y.merge(other.y);
+        }
+
+        // the slope a of the least-squares line y=ax+b
+        public double slope() {
+            return codeviations / x.deviations;
+        }
+
+        public double intercept() {
+            return y.mean - slope() * x.mean;
+        }
+
+        // the correlation coefficient r
+        public double correlation() {
+            return codeviations / Math.sqrt(x.deviations * y.deviations);
+        }
+    }
+
+    /**
+     * Finds the moments of a list.
+     * @param frequencies how many times each element counts, or null for once each
+     */
+    public static Moments moments(TiList list, TiList frequencies, Token operator) {
+        if (frequencies != null) TiList.checkDimensions(list, frequencies, operator);
+
+        Moments[] blocks = new Moments[(list.size() + BLOCK - 1) / BLOCK];
+        Parallelism.current().forEach(list.size(), blocks.length, (from, to) -> {
+            double[] values = new double[BLOCK];
+            double[] weights = new double[BLOCK];
+            for (int block = from; block < to; block++) {
+                int count = read(list, frequencies, block, values, weights, operator);
+                Moments moments = new Moments();
+                for (int i = 0; i < count; i++) {
+                    if (weights[i] != 0) moments.add(values[i], weights[i]);
+                }
+                blocks[block] = moments;
+            }
+        });
+
+        Moments moments = new Moments();
+        for (Moments block : blocks) {
+            if (block.n != 0) moments.merge(block);
+        }
+        return moments;
+    }
+
+    /**
+     * Finds the moments of the pairs of elements at the same positions of two lists.
+     * @param frequencies how many times each pair counts, or null for once each
+     */
+    public static CoMoments coMoments(TiList xList, TiList yList, TiList frequencies, Token operator) {
+        TiList.checkDimensions(xList, yList, operator);
+        if (frequencies != null) TiList.checkDimensions(xList, frequencies, operator);
+
+        CoMoments[] blocks = new CoMoments[(xList.size() + BLOCK - 1) / BLOCK];
+        Parallelism.current().forEach(xList.size(), blocks.length, (from, to) -> {
+            double[] xValues = new double[BLOCK];
+            double[] yValues = new double[BLOCK];
+            double[] weights = new double[BLOCK];
+            for (int block = from; block < to; block++) {
+                int count = read(xList, frequencies, block, xValues, weights, operator);
+                yList.read(block * BLOCK, yValues, 0, count);
+                CoMoments moments = new CoMoments();
+                for (int i = 0; i < count; i++) {
+                    if (weights[i] != 0) moments.add(xValues[i], yValues[i], weights[i]);
+                }
+                blocks[block] = moments;
+            }
+        });
+
+        CoMoments moments = new CoMoments();
+        for (CoMoments block : blocks) {
+            moments.merge(block);
+        }
+        return moments;
+    }
+
+    /**
+     * Reads a block of a list, and of its frequencies, checking that they are whole numbers that aren't negative.
+     * @return the number of elements in the block
+     */
+    private static int read(TiList list, TiList frequencies, int block, double[] values, double[] weights,
+                            Token operator) {
+        int start = block * BLOCK;
+        int count = Math.min(BLOCK, list.size() - start);
+        list.read(start, values, 0, count);
+        if (frequencies == null) {
+            Arrays.fill(weights, 0, count, 1);
+            return count;
+        }
+
+        frequencies.read(start, weights, 0, count);
+        checkFrequencies(weights, count, operator);
+        return count;
+    }
+
+    private static void checkFrequencies(double[] frequencies, int count, Token operator) {
+        for (int i = 0; i < count; i++) {
+            double frequency = frequencies[i];
+            if (!(frequency >= 0) || frequency != Math.floor(frequency) || Double.isInfinite(frequency)) {
+                throw new RuntimeError(operator, "Frequencies must be whole numbers that aren't negative.");
+            }
+        }
+    }
+
+    /**
+     * Finds the first quartile, the median and the third quartile the way 1-Var Stats does: the quartiles are the
+     * medians of the values below and above the median, leaving the median itself out if there is an odd number of
+     * values. There must be at least one value.
+     * @param frequencies how many times each element counts, or null for once each
+     * @return Q₁, Med and Q₃
+     */
+    public static double[] quartiles(TiList list, TiList frequencies, Token operator) {
+        OrderStatistics order = orderStatistics(list, frequencies, operator);
+        long n = order.count();
+        long half = n / 2;
+        double median = order.median(0, n);
+        if (half == 0) return new double[] { median, median, median };
+        return new double[] { order.median(0, half), median, order.median(n - half, n) };
+    }
+
+    /**
+     * Finds the median of the values. There must be at least one value.
+     * @param frequencies how many times each element counts, or null for once each
+     */
+    public static double median(TiList list, TiList frequencies, Token operator) {
+        OrderStatistics order = orderStatistics(list, frequencies, operator);
+        return order.median(0, order.count());
+    }
+
+    private static OrderStatistics orderStatistics(TiList list, TiList frequencies, Token operator) {
+        OrderStatistics order;
+        if (frequencies == null) {
+            order = new Selection(list.copyOfElements());
+        } else {
+            TiList.checkDimensions(list, frequencies, operator);
+            double[] weights = frequencies.copyOfElements();
+            checkFrequencies(weights, weights.length, operator);
+            order = new Weighted(list.copyOfElements(), weights);
+        }
+
+        if (order.count() == 0) throw new RuntimeError(operator, "The list must not be empty.");
+        return order;
+    }
+
+    /**
+     * Finds the values at ranks of the sorted values, without necessarily sorting them.
+     */
+    private static abstract class OrderStatistics {
+
+        abstract long count();
+
+        // the value at a zero-based rank
+        abstract double at(long rank);
+
+        // the median of the values of ranks from to to
+        double median(long from, long to) {
+            long count = to - from;
+            double lower = at(from + (count - 1) / 2);
+            double upper = at(from + count / 2);
+            return lower == upper ? lower : (lower + upper) / 2;
+        }
+    }
+
+    /**
+     * Order statistics by selection. Every rank found partitions the values around it, so ranks asked for in
+     * increasing order each only look at the values above the last one.
+     */
+    private static class Selection extends OrderStatistics {
+        private final double[] values;
+        // the values before this position are the smallest ones, so a later rank only has to look after it
+        private int settled = 0;
+        // the rank that was found last, which is still in place
+        private int last = -1;
+
+        Selection(double[] values) {
+            this.values = values;
+        }
+
+        @Override
+        long count() {
+            return values.length;
+        }
+
+        @Override
+        double at(long rank) {
+            int k = (int) rank;
+            if (k != last) {
+                if (k >= settled) {
+                    select(values, settled, values.length, k);
+                    settled = k + 1;
+                } else {
+                    select(values, 0, settled, k);
+                }
+                last = k;
+            }
+            return values[k];
+        }
+    }
+
+    /**
+     * Order statistics of values that count as many times as their frequencies, found by walking the values in
+     * sorted order.
+     */
+    private static class Weighted extends OrderStatistics {
+        private final double[] values;
+        private final double[] frequencies;
+        private final int[] order;
+        private final long count;
+
+        Weighted(double[] values, double[] frequencies) {
+            this.values = values;
+            this.frequencies = frequencies;
+            this.order = TiList.sortedOrder(values, values.length, false);
+            long count = 0;
+            for (double frequency : frequencies) {
+                count += (long) frequency;
+            }
+            this.count = count;
+        }
+
+        @Override
+        long count() {
+            return count;
+        }
+
+        @Override
+        double at(long rank) {
+            long seen = 0;
+            for (int position : order) {
+                seen += (long) frequencies[position];
+                if (rank < seen) return values[position];
+            }
+            throw new IndexOutOfBoundsException("Rank " + rank + " of " + count);
+        }
+    }
+
+    /**
+     * Moves the value of rank k among the values from to to into position k, with every value before it no greater
+     * and every value after it no smaller, in the order of Double.compare. This is quickselect with the median of
+     * three values as pivot, which sorts what is left instead if it takes too many rounds, so it never goes quadratic.
+     */
+    static void select(double[] values, int from, int to, int k) {
+        int rounds = 2 * (32 - Integer.numberOfLeadingZeros(to - from));
+        while (to - from > 16) {
+            if (rounds-- == 0) break;
+
+            int middle = (from + to) >>> 1;
+            if (Double.compare(values[middle], values[from]) < 0) swap(values, middle, from);
+            if (Double.compare(values[to - 1], values[from]) < 0) swap(values, to - 1, from);
+            if (Double.compare(values[to - 1], values[middle]) < 0) swap(values, to - 1, middle);
+            double pivot = values[middle];
+
+            // three-way partition: smaller values before lt, equal ones from lt to gt, greater ones after gt
+            int lt = from;
+            int gt = to - 1;
+            int i = from;
+            while (i <= gt) {
+                int comparison = Double.compare(values[i], pivot);
+                if (comparison < 0) {
+                    swap(values, lt++, i++);
+                } else if (comparison > 0) {
+                    swap(values, i, gt--);
+                } else {
+                    i++;
+                }
+            }
+
+            if (k < lt) {
+                to = lt;
+            } else if (k > gt) {
+                from = gt + 1;
+            } else {
+                return;
+            }
+        }
+        Arrays.sort(values, from, to);
+    }
+
+    private static void swap(double[] values, int i, int j) {
+        double value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+}
@@ -3,210 +3,646 @@ package com.patrickfeltes.interpreter.data_types;
 import com.patrickfeltes.interpreter.errors.RuntimeError;
 import com.patrickfeltes.interpreter.tokens.Token;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A TI list, stored as unboxed doubles. The array can be bigger than the list, so that appending one element at a
+ * time only copies the list a logarithmic number of times.
+ * Copies of a list share its array until either of them is written to, which is when the one being written to
+ * makes its own copy.
+ * Element-wise operations on large lists are split across threads, as decided by Parallelism.
+ * Lists of OffHeapDoubles.isWanted elements, and lists of mapped files, are stored off the heap instead of in an
+ * array. Operations on them go through their elements a chunk at a time, so they are never copied onto the heap.
+ */
 public class TiList {
 
-    private List<Double> list;
+    private static final int MINIMUM_CAPACITY = 8;
+    // how many elements of lists stored off the heap are worked on at a time
+    private static final int CHUNK = 1 << 10;
+    // how many positions sortedOrder sorts by insertion before it starts merging
+    private static final int SORT_RUN = 32;
+
+    // exactly one of these holds the elements
+    private double[] elements;
+    private OffHeapDoubles offHeap;
+    private int size;
+    // true if another list may be using the same elements, or they are in a read-only file
+    private boolean shared = false;
 
     public TiList() {
-        this.list = null;
+        this(new double[0]);
     }
 
     public TiList(List<Double> list) {
-        this.list = new ArrayList<>();
-        // to avoid reference issues if storing one list into another
-        for (Double item : list) {
-            this.list.add(item.doubleValue());
+        this.size = list.size();
+        if (OffHeapDoubles.isWanted(size)) {
+            this.offHeap = OffHeapDoubles.allocate(size);
+        } else {
+            this.elements = new double[size];
         }
+        for (int i = 0; i < size; i++) {
+            set(i, list.get(i));
+        }
+    }
+
+    /**
+     * Creates a list that holds every element of the array. The list uses the array, so it must not be changed after.
+     */
+    public TiList(double[] elements) {
+        this.elements = elements;
+        this.size = elements.length;
+    }
+
+    /**
+     * Creates a list that holds every element of storage off the heap, such as a mapped file. The list uses the
+     * storage, and copies it before writing to it if it is read-only.
+     */
+    public TiList(OffHeapDoubles offHeap) {
+        this.offHeap = offHeap;
+        this.size = offHeap.capacity();
+        this.shared = offHeap.isReadOnly();
     }
 
     public TiList(TiList list) {
-        this.list = new ArrayList<>();
-        // to avoid reference issues if storing one list into another
-        for (Double item : list.list) {
-            this.list.add(item.doubleValue());
-        }
+        // to avoid reference issues if storing one list into another, the array is copied before either list changes
+        this.elements = list.elements;
+        this.offHeap = list.offHeap;
+        this.size = list.size;
+        this.shared = true;
+        list.shared = true;
+    }
+
+    /**
+     * Creates a list of a size, stored off the heap if it is big enough, for an operation to write.
+     */
+    private static TiList ofSize(int size) {
+        return OffHeapDoubles.isWanted(size) ? new TiList(OffHeapDoubles.allocate(size)) : new TiList(new double[size]);
     }
 
     // ti lists are one-indexed
     public double get(double index) {
-        return this.list.get((int)index - 1);
+        int i = (int)index - 1;
+        return elements != null ? elements[i] : offHeap.get(i);
     }
 
     public void setIndex(double index, double value) {
-        this.list.set((int)index - 1, value);
+        if (shared) unshare();
+        set((int)index - 1, value);
+    }
+
+    private void set(int i, double value) {
+        if (elements != null) {
+            elements[i] = value;
+        } else {
+            offHeap.set(i, value);
+        }
     }
 
     public void add(double value) {
-        this.list.add(value);
+        int capacity = elements != null ? elements.length : offHeap.capacity();
+        if (size == capacity) {
+            grow(Math.max(MINIMUM_CAPACITY, size * 2));
+        } else if (shared) {
+            unshare();
+        }
+        set(size++, value);
+    }
+
+    private void grow(int capacity) {
+        if (elements == null) {
+            offHeap = offHeap.copy(size, capacity);
+        } else if (OffHeapDoubles.isWanted(capacity)) {
+            offHeap = copyOffHeap(elements, size, capacity);
+            elements = null;
+        } else {
+            elements = Arrays.copyOf(elements, capacity);
+        }
+        shared = false;
+    }
+
+    private static OffHeapDoubles copyOffHeap(double[] elements, int size, int capacity) {
+        OffHeapDoubles copy = OffHeapDoubles.allocate(capacity);
+        copy.write(0, elements, 0, size);
+        return copy;
+    }
+
+    private void unshare() {
+        if (elements != null) {
+            elements = Arrays.copyOf(elements, elements.length);
+        } else {
+            offHeap = offHeap.copy(size, offHeap.capacity());
+        }
+        shared = false;
     }
 
     public int size() {
-        return this.list.size();
+        return size;
+    }
+
+    /**
+     * @return true if the elements are stored off the heap, so that elements() can't give them
+     */
+    public boolean isOffHeap() {
+        return elements == null;
+    }
+
+    /**
+     * Gives direct access to the elements, for operations that go through a whole list at once.
+     * The array can be longer than the list, and must not be written to. It is null if the list is stored off the
+     * heap, in which case read gives the elements instead.
+     */
+    public double[] elements() {
+        return elements;
+    }
+
+    /**
+     * Gives direct access to the elements, for operations that write a whole list at once. The array can be longer
+     * than the list, and stops being shared with copies of this list. It is null if the list is stored off the heap.
+     */
+    public double[] writableElements() {
+        if (shared) unshare();
+        return elements;
+    }
+
+    /**
+     * Gives direct access to the storage of a list stored off the heap, for operations that write a whole list at
+     * once. It stops being shared with copies of this list.
+     */
+    public OffHeapDoubles writableOffHeap() {
+        if (shared) unshare();
+        return offHeap;
+    }
+
+    /**
+     * Copies count elements, starting at the zero-based position from, into the array starting at at.
+     */
+    public void read(int from, double[] into, int at, int count) {
+        if (elements != null) {
+            System.arraycopy(elements, from, into, at, count);
+        } else {
+            offHeap.read(from, into, at, count);
+        }
+    }
+
+    private void write(int from, double[] values, int at, int count) {
+        if (elements != null) {
+            System.arraycopy(values, at, elements, from, count);
+        } else {
+            offHeap.write(from, values, at, count);
+        }
     }
 
     public String toString() {
         StringBuilder builder = new StringBuilder();
         builder.append("{");
 
-        for (double item : list) {
-            builder.append(item).append(",");
+        for (int i = 0; i < size; i++) {
+            builder.append(elements != null ? elements[i] : offHeap.get(i)).append(",");
         }
 
-        builder.deleteCharAt(builder.length() - 1);
+        if (size > 0) builder.deleteCharAt(builder.length() - 1);
         builder.append("}");
         return builder.toString();
     }
 
-    public static TiList add(TiList list1, TiList list2, Token operator) {
-        if (list1.list.size() != list2.list.size()) {
+    static void checkDimensions(TiList list1, TiList list2, Token operator) {
+        if (list1.size != list2.size) {
             throw new RuntimeError(operator, "The dimensions of these lists are not the same.");
         }
+    }
 
-        List<Double> newList = new ArrayList<>();
+    // the shapes of the loops in ElementWise
+    private interface ListLoop {
+        void run(double[] a, double[] b, double[] out, int from, int to);
+    }
 
-        for (int i = 0; i < list1.list.size(); i++) {
-            newList.add(list1.list.get(i) + list2.list.get(i));
+    private interface ScalarLoop {
+        void run(double[] a, double number, double[] out, int from, int to);
+    }
+
+    private static TiList combine(TiList list1, TiList list2, Token operator, ListLoop loop) {
+        checkDimensions(list1, list2, operator);
+
+        int size = list1.size;
+        TiList result = ofSize(size);
+        if (result.elements != null && list1.elements != null && list2.elements != null) {
+            Parallelism.current().forEach(size, size,
+                    (from, to) -> loop.run(list1.elements, list2.elements, result.elements, from, to));
+        } else {
+            Parallelism.current().forEach(size, size, (from, to) -> {
+                double[] a = new double[CHUNK];
+                double[] b = new double[CHUNK];
+                double[] out = new double[CHUNK];
+                for (int i = from; i < to; i += CHUNK) {
+                    int count = Math.min(CHUNK, to - i);
+                    list1.read(i, a, 0, count);
+                    list2.read(i, b, 0, count);
+                    loop.run(a, b, out, 0, count);
+                    result.write(i, out, 0, count);
+                }
+            });
         }
 
-        return new TiList(newList);
+        return result;
     }
 
-    public static TiList sub(TiList list1, TiList list2, Token operator) {
-        if (list1.list.size() != list2.list.size()) {
-            throw new RuntimeError(operator, "The dimensions of these lists are not the same.");
+    private static TiList combine(TiList list, double number, ScalarLoop loop) {
+        int size = list.size;
+        TiList result = ofSize(size);
+        if (result.elements != null && list.elements != null) {
+            Parallelism.current().forEach(size, size,
+                    (from, to) -> loop.run(list.elements, number, result.elements, from, to));
+        } else {
+            Parallelism.current().forEach(size, size, (from, to) -> {
+                double[] a = new double[CHUNK];
+                double[] out = new double[CHUNK];
+                for (int i = from; i < to; i += CHUNK) {
+                    int count = Math.min(CHUNK, to - i);
+                    list.read(i, a, 0, count);
+                    loop.run(a, number, out, 0, count);
+                    result.write(i, out, 0, count);
+                }
+            });
         }
 
-        List<Double> newList = new ArrayList<>();
+        return result;
+    }
 
-        for (int i = 0; i < list1.list.size(); i++) {
-            newList.add(list1.list.get(i) - list2.list.get(i));
-        }
+    public static TiList add(TiList list1, TiList list2, Token operator) {
+        return combine(list1, list2, operator, ElementWise::add);
+    }
 
-        return new TiList(newList);
+    public static TiList sub(TiList list1, TiList list2, Token operator) {
+        return combine(list1, list2, operator, ElementWise::sub);
     }
 
     public static TiList mul(TiList list1, TiList list2, Token operator) {
-        if (list1.list.size() != list2.list.size()) {
-            throw new RuntimeError(operator, "The dimensions of these lists are not the same.");
-        }
+        return combine(list1, list2, operator, ElementWise::mul);
+    }
 
-        List<Double> newList = new ArrayList<>();
+    public static TiList div(TiList list1, TiList list2, Token operator) {
+        return combine(list1, list2, operator, ElementWise::div);
+    }
 
-        for (int i = 0; i < list1.list.size(); i++) {
-            newList.add(list1.list.get(i) * list2.list.get(i));
-        }
+    public static TiList pow(TiList list1, TiList list2, Token operator) {
+        return combine(list1, list2, operator, ElementWise::pow);
+    }
 
-        return new TiList(newList);
+    public static TiList scale(TiList list, double factor) {
+        return combine(list, factor, ElementWise::scale);
     }
 
-    public static TiList div(TiList list1, TiList list2, Token operator) {
-        if (list1.list.size() != list2.list.size()) {
-            throw new RuntimeError(operator, "The dimensions of these lists are not the same.");
-        }
+    public static TiList addScalar(TiList list, double number) {
+        return combine(list, number, ElementWise::addScalar);
+    }
 
-        List<Double> newList = new ArrayList<>();
+    public static TiList subScalar(TiList list, double number) {
+        return combine(list, number, ElementWise::subScalar);
+    }
 
-        for (int i = 0; i < list1.list.size(); i++) {
-            newList.add(list1.list.get(i) / list2.list.get(i));
-        }
+    public static TiList subList(TiList list, double number) {
+        return combine(list, number, ElementWise::subFromScalar);
+    }
 
-        return new TiList(newList);
+    public static TiList divScalar(TiList list, double number) {
+        return combine(list, number, ElementWise::divScalar);
     }
 
-    public static TiList pow(TiList list1, TiList list2, Token operator) {
-        if (list1.list.size() != list2.list.size()) {
-            throw new RuntimeError(operator, "The dimensions of these lists are not the same.");
-        }
+    public static TiList divList(TiList list, double number) {
+        return combine(list, number, ElementWise::divIntoScalar);
+    }
 
-        List<Double> newList = new ArrayList<>();
+    public static TiList powScalar(TiList list, double number) {
+        return combine(list, number, ElementWise::powScalar);
+    }
 
-        for (int i = 0; i < list1.list.size(); i++) {
-            newList.add(Math.pow(list1.list.get(i), list2.list.get(i)));
-        }
+    public static TiList powList(TiList list, double number) {
+        return combine(list, number, ElementWise::powOfScalar);
+    }
 
-        return new TiList(newList);
+    /**
+     * Applies an operation, such as a built-in function, to every element.
+     */
+    public static TiList apply(TiList list, DoubleUnaryOperator operation) {
+        return combine(list, 0, (a, number, out, from, to) -> {
+            for (int i = from; i < to; i++) {
+                out[i] = operation.applyAsDouble(a[i]);
+            }
+        });
     }
 
-    public static TiList scale(TiList list, double factor) {
-        List<Double> newList = new ArrayList<>();
+    /**
+     * Applies an operation to the elements at the same position of two lists of the same size.
+     */
+    public static TiList apply(TiList list1, TiList list2, Token operator, DoubleBinaryOperator operation) {
+        return combine(list1, list2, operator, (a, b, out, from, to) -> {
+            for (int i = from; i < to; i++) {
+                out[i] = operation.applyAsDouble(a[i], b[i]);
+            }
+        });
+    }
 
-        for (int i = 0; i < list.list.size(); i++) {
-            newList.add(factor * list.list.get(i));
-        }
+    /**
+     * Applies an operation to every element, as its first operand, and a number.
+     */
+    public static TiList apply(TiList list, double number, DoubleBinaryOperator operation) {
+        return combine(list, number, (a, n, out, from, to) -> {
+            for (int i = from; i < to; i++) {
+                out[i] = operation.applyAsDouble(a[i], n);
+            }
+        });
+    }
 
-        return new TiList(newList);
+    /**
+     * Applies an operation to a number and every element, as its second operand.
+     */
+    public static TiList apply(double number, TiList list, DoubleBinaryOperator operation) {
+        return combine(list, number, (a, n, out, from, to) -> {
+            for (int i = from; i < to; i++) {
+                out[i] = operation.applyAsDouble(n, a[i]);
+            }
+        });
     }
 
-    public static TiList addScalar(TiList list, double number) {
-        List<Double> newList = new ArrayList<>();
+    // the smallest element of a list that isn't empty
+    public static double min(TiList list) {
+        return reduce(list, Math::min);
+    }
+
+    // the largest element of a list that isn't empty
+    public static double max(TiList list) {
+        return reduce(list, Math::max);
+    }
 
-        for (int i = 0; i < list.list.size(); i++) {
-            newList.add(number + list.list.get(i));
+    private static double reduce(TiList list, DoubleBinaryOperator operation) {
+        double result = list.get(1);
+        if (list.elements != null) {
+            for (int i = 1; i < list.size; i++) {
+                result = operation.applyAsDouble(result, list.elements[i]);
+            }
+            return result;
         }
 
-        return new TiList(newList);
+        double[] chunk = new double[CHUNK];
+        for (int i = 0; i < list.size; i += CHUNK) {
+            int count = Math.min(CHUNK, list.size - i);
+            list.read(i, chunk, 0, count);
+            for (int j = 0; j < count; j++) {
+                result = operation.applyAsDouble(result, chunk[j]);
+            }
+        }
+        return result;
     }
 
-    public static TiList subScalar(TiList list, double number) {
-        List<Double> newList = new ArrayList<>();
+    /**
+     * Adds up the elements from the zero-based position from to the position to, in the same blocks as
+     * Parallelism.sum wherever the list is stored.
+     */
+    public static double sum(TiList list, int from, int to) {
+        if (list.elements != null) return Parallelism.current().sum(list.elements, from, to);
+
+        double[] block = new double[Parallelism.SUM_BLOCK];
+        PrimitiveIterator.OfDouble values = new PrimitiveIterator.OfDouble() {
+            private int next = from;
+
+            @Override
+            public boolean hasNext() {
+                return next < to;
+            }
+
+            @Override
+            public double nextDouble() {
+                int at = (next - from) % block.length;
+                if (at == 0) list.read(next, block, 0, Math.min(block.length, to - next));
+                next++;
+                return block[at];
+            }
+        };
+        return Parallelism.sum(values);
+    }
 
-        for (int i = 0; i < list.list.size(); i++) {
-            newList.add(list.list.get(i) - number);
+    // the product of the elements from the zero-based position from to the position to, multiplied in order
+    public static double prod(TiList list, int from, int to) {
+        double product = 1;
+        double[] chunk = new double[CHUNK];
+        for (int i = from; i < to; i += CHUNK) {
+            int count = Math.min(CHUNK, to - i);
+            list.read(i, chunk, 0, count);
+            for (int j = 0; j < count; j++) {
+                product *= chunk[j];
+            }
         }
+        return product;
+    }
 
-        return new TiList(newList);
+    // the list of the sums of the first one, two, ... elements
+    public static TiList cumSum(TiList list) {
+        TiList result = ofSize(list.size);
+        double sum = 0;
+        double[] chunk = new double[CHUNK];
+        for (int i = 0; i < list.size; i += CHUNK) {
+            int count = Math.min(CHUNK, list.size - i);
+            list.read(i, chunk, 0, count);
+            for (int j = 0; j < count; j++) {
+                sum += chunk[j];
+                chunk[j] = sum;
+            }
+            result.write(i, chunk, 0, count);
+        }
+        return result;
     }
 
-    public static TiList subList(TiList list, double number) {
-        List<Double> newList = new ArrayList<>();
+    /**
+     * Sets every element to a value, in place.
+     */
+    public void fill(double value) {
+        if (shared) unshare();
+        if (elements != null) {
+            Arrays.fill(elements, 0, size, value);
+            return;
+        }
 
-        for (int i = 0; i < list.list.size(); i++) {
-            newList.add(number - list.list.get(i));
+        double[] chunk = new double[Math.min(CHUNK, size)];
+        Arrays.fill(chunk, value);
+        for (int i = 0; i < size; i += CHUNK) {
+            write(i, chunk, 0, Math.min(CHUNK, size - i));
         }
+    }
 
-        return new TiList(newList);
+    // the list of the elements of one list followed by those of another
+    public static TiList augment(TiList list1, TiList list2) {
+        TiList result = ofSize(list1.size + list2.size);
+        copy(list1, result, 0);
+        copy(list2, result, list1.size);
+        return result;
     }
 
-    public static TiList divScalar(TiList list, double number) {
-        List<Double> newList = new ArrayList<>();
+    // copies every element of a list into another, starting at the zero-based position at
+    private static void copy(TiList from, TiList to, int at) {
+        if (to.elements != null) {
+            from.read(0, to.elements, at, from.size);
+            return;
+        }
 
-        for (int i = 0; i < list.list.size(); i++) {
-            newList.add(list.list.get(i) / number);
+        double[] chunk = new double[CHUNK];
+        for (int i = 0; i < from.size; i += CHUNK) {
+            int count = Math.min(CHUNK, from.size - i);
+            from.read(i, chunk, 0, count);
+            to.write(at + i, chunk, 0, count);
         }
+    }
 
-        return new TiList(newList);
+    // the list of the differences between each element and the one before it, one shorter than the list
+    public static TiList deltaList(TiList list) {
+        TiList result = ofSize(list.size - 1);
+        double[] chunk = new double[CHUNK + 1];
+        for (int i = 0; i < result.size; i += CHUNK) {
+            int count = Math.min(CHUNK, result.size - i);
+            list.read(i, chunk, 0, count + 1);
+            for (int j = 0; j < count; j++) {
+                chunk[j] = chunk[j + 1] - chunk[j];
+            }
+            result.write(i, chunk, 0, count);
+        }
+        return result;
     }
 
-    public static TiList divList(TiList list, double number) {
-        List<Double> newList = new ArrayList<>();
+    /**
+     * Sorts the list in place, in ascending or descending order, with NaN after every number in ascending order.
+     * Lists big enough for the current Parallelism to split are sorted with Arrays.parallelSort.
+     * Lists stored off the heap are sorted on the heap and written back.
+     */
+    public void sort(boolean descending) {
+        if (shared) unshare();
+        double[] values = elements != null ? elements : copyOfElements();
+        if (Parallelism.current().pieces(size, size) > 1) {
+            Arrays.parallelSort(values, 0, size);
+        } else {
+            Arrays.sort(values, 0, size);
+        }
+        if (descending) {
+            for (int i = 0, j = size - 1; i < j; i++, j--) {
+                double value = values[i];
+                values[i] = values[j];
+                values[j] = value;
+            }
+        }
+        if (elements == null) write(0, values, 0, size);
+    }
 
-        for (int i = 0; i < list.list.size(); i++) {
-            newList.add(number / list.list.get(i));
+    /**
+     * Sorts a list in place, and puts the elements of its companion lists in the same order, so that the elements
+     * that were at the same position in every list stay together. Elements that are equal keep their order.
+     * The order is found once, as a permutation of the positions, and then applied to every list.
+     */
+    public static void sort(TiList keys, List<TiList> companions, boolean descending, Token operator) {
+        for (TiList companion : companions) {
+            checkDimensions(keys, companion, operator);
         }
 
-        return new TiList(newList);
+        int[] order = sortedOrder(keys.copyOfElements(), keys.size, descending);
+        // a list given twice must only be sorted once
+        Set<TiList> sorted = Collections.newSetFromMap(new IdentityHashMap<>());
+        sorted.add(keys);
+        keys.permute(order);
+        for (TiList companion : companions) {
+            if (sorted.add(companion)) companion.permute(order);
+        }
     }
 
-    public static TiList powScalar(TiList list, double number) {
-        List<Double> newList = new ArrayList<>();
+    double[] copyOfElements() {
+        double[] values = new double[size];
+        read(0, values, 0, size);
+        return values;
+    }
+
+    // puts the element at order[i] at position i, for every i
+    private void permute(int[] order) {
+        double[] values = copyOfElements();
+        double[] permuted = new double[size];
+        for (int i = 0; i < size; i++) {
+            permuted[i] = values[order[i]];
+        }
+        if (shared) unshare();
+        write(0, permuted, 0, size);
+    }
 
-        for (int i = 0; i < list.list.size(); i++) {
-            newList.add(Math.pow(list.list.get(i), number));
+    /**
+     * Finds the order that sorts keys with a stable merge sort of their positions: runs of SORT_RUN positions are
+     * sorted by insertion, then merged into runs twice as long on every pass. The runs, and the merges of a pass, are
+     * independent of each other, so they are split across threads like any other operation on a large list.
+     * @return the positions of the keys, in sorted order
+     */
+    static int[] sortedOrder(double[] keys, int size, boolean descending) {
+        int[] positions = new int[size];
+        for (int i = 0; i < size; i++) {
+            positions[i] = i;
         }
 
-        return new TiList(newList);
+        Parallelism parallelism = Parallelism.current();
+        int runs = (size + SORT_RUN - 1) / SORT_RUN;
+        parallelism.forEach(size, runs, (from, to) -> {
+            for (int run = from; run < to; run++) {
+                insertionSort(keys, positions, run * SORT_RUN, Math.min(size, (run + 1) * SORT_RUN), descending);
+            }
+        });
+
+        // every pass merges from one array into the other
+        int[] order = positions;
+        int[] merged = new int[size];
+        for (long width = SORT_RUN; width < size; width *= 2) {
+            int[] in = order;
+            int[] out = merged;
+            long length = width;
+            int pairs = (int) ((size + 2 * width - 1) / (2 * width));
+            parallelism.forEach(size, pairs, (from, to) -> {
+                for (int pair = from; pair < to; pair++) {
+                    long start = 2 * length * pair;
+                    merge(keys, in, out, (int) start, (int) Math.min(size, start + length),
+                            (int) Math.min(size, start + 2 * length), descending);
+                }
+            });
+            merged = in;
+            order = out;
+        }
+        return order;
     }
 
-    public static TiList powList(TiList list, double number) {
-        List<Double> newList = new ArrayList<>();
+    // true if a has to come before b, so that equal keys keep their order
+    private static boolean before(double a, double b, boolean descending) {
+        int comparison = Double.compare(a, b);
+        return descending ? comparison > 0 : comparison < 0;
+    }
 
-        for (int i = 0; i < list.list.size(); i++) {
-            newList.add(Math.pow(number, list.list.get(i)));
+    private static void insertionSort(double[] keys, int[] order, int from, int to, boolean descending) {
+        for (int i = from + 1; i < to; i++) {
+            int position = order[i];
+            int j = i;
+            while (j > from && before(keys[position], keys[order[j - 1]], descending)) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = position;
         }
+    }
 
-        return new TiList(newList);
+    // merges the sorted positions from to middle and middle to end of in into the same place in out
+    private static void merge(double[] keys, int[] in, int[] out, int from, int middle, int end, boolean descending) {
+        int i = from;
+        int j = middle;
+        for (int k = from; k < end; k++) {
+            if (j < end && (i == middle || before(keys[in[j]], keys[in[i]], descending))) {
+                out[k] = in[j++];
+            } else {
+                out[k] = in[i++];
+            }
+        }
     }
 }
@@ -5,47 +5,135 @@ import com.patrickfeltes.interpreter.tokens.Token;
 
 import java.util.List;
 
+/**
+ * A TI matrix, stored as one array of unboxed doubles, row after row. Copies of a matrix share its entries until
+ * either of them is written to, which is when the one being written to makes its own copy.
+ * Operations on large matrices are split across threads, as decided by Parallelism.
+ * The LU factorization behind det and the inverse is kept until the matrix is written to, so using them again on an
+ * unchanged matrix doesn't factor it again.
+ * Large matrices that are mostly zeros are stored as SparseEntries instead, and switch back to dense storage once
+ * enough of their entries aren't 0. Sparse matrices don't keep the sign of their zeros, which all read as 0.
+ */
 public class TiMatrix {
 
-    private double[][] matrix;
+    /*
+        The multiplication works through the right matrix a panel of PANEL_COLS columns at a time, copied so that the
+        panel is contiguous, and through the panel BLOCK_ROWS rows at a time, so that the part of the panel in use
+        stays in the cache while every row of the left matrix goes through it.
+     */
+    private static final int PANEL_COLS = 256;
+    private static final int BLOCK_ROWS = 128;
+
+    // matrices with fewer entries than this are always dense
+    private static final int SPARSE_MIN_ENTRIES = 1 << 12;
+    // a matrix is stored sparse if at most this part of its entries aren't 0, and dense again above DENSE_DENSITY
+    private static final double SPARSE_DENSITY = 0.1;
+    private static final double DENSE_DENSITY = 0.3;
+
+    // exactly one of these holds the entries
+    private double[] entries;
+    private SparseEntries sparse;
     private int rows;
     private int cols;
+    // true if another matrix may be using the same entries
+    private boolean shared = false;
+    // the factorization of the entries, if it has been needed since they last changed
+    private LuFactorization lu;
 
     public TiMatrix(List<List<Double>> entries) {
         if (entries.size() == 0) {
+            this.entries = new double[0];
             return;
         }
 
         this.rows = entries.size();
         this.cols = entries.get(0).size();
-        matrix = new double[rows][cols];
+        this.entries = new double[rows * cols];
         for (int r = 0; r < rows; r++) {
             for (int c = 0; c < cols; c++) {
-                matrix[r][c] = entries.get(r).get(c);
+                this.entries[r * cols + c] = entries.get(r).get(c);
             }
         }
+        pack();
     }
 
     public TiMatrix(double[][] matrix) {
-        this.matrix = matrix;
         this.rows = matrix.length;
         this.cols = matrix[0].length;
+        this.entries = new double[rows * cols];
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(matrix[r], 0, entries, r * cols, cols);
+        }
+        pack();
+    }
+
+    /**
+     * Creates a matrix that holds the entries of the array, row after row. The matrix uses the array, so it must not
+     * be changed after.
+     */
+    public TiMatrix(int rows, int cols, double[] entries) {
+        this(rows, cols, entries, true);
+    }
+
+    private TiMatrix(int rows, int cols, double[] entries, boolean pack) {
+        this.rows = rows;
+        this.cols = cols;
+        this.entries = entries;
+        if (pack) pack();
+    }
+
+    private TiMatrix(int rows, int cols, SparseEntries sparse) {
+        this.rows = rows;
+        this.cols = cols;
+        this.sparse = sparse;
+        if (sparse.nonZeros() > DENSE_DENSITY * rows * cols) unpack();
+    }
+
+    /**
+     * Stores the matrix sparse if it is big enough and few enough of its entries aren't 0.
+     */
+    private void pack() {
+        int size = entries.length;
+        if (size < SPARSE_MIN_ENTRIES) return;
+
+        int nonZeros = SparseEntries.countNonZeros(entries);
+        if (nonZeros <= SPARSE_DENSITY * size) {
+            sparse = SparseEntries.of(entries, rows, cols, nonZeros);
+            entries = null;
+        }
+    }
+
+    private void unpack() {
+        entries = sparse.toDense();
+        sparse = null;
+    }
+
+    /**
+     * @return true if the matrix is stored sparse
+     */
+    public boolean isSparse() {
+        return sparse != null;
+    }
+
+    // the entries, row after row, copied out of the sparse form if need be; they must not be written to
+    private static double[] dense(TiMatrix matrix) {
+        return matrix.sparse != null ? matrix.sparse.toDense() : matrix.entries;
     }
 
     public TiMatrix(TiMatrix matrix) {
-        this.matrix = new double[matrix.rows][matrix.cols];
+        // to avoid reference issues if storing one matrix into another, the entries are copied before either changes
+        this.entries = matrix.entries;
+        this.sparse = matrix.sparse;
         this.rows = matrix.rows;
         this.cols = matrix.cols;
-
-        for (int r = 0; r < matrix.rows; r++) {
-            for (int c = 0; c < matrix.cols; c++) {
-                this.matrix[r][c] = matrix.matrix[r][c];
-            }
-        }
+        this.lu = matrix.lu;
+        this.shared = true;
+        matrix.shared = true;
     }
 
     public double get(double r, double c) {
-        return matrix[(int)r - 1][(int)c - 1];
+        if (sparse != null) return sparse.get((int)r - 1, (int)c - 1);
+        return entries[((int)r - 1) * cols + (int)c - 1];
     }
 
     public String toString() {
@@ -53,8 +141,12 @@ public class TiMatrix {
         builder.append("[");
         for (int r = 0; r < rows; r++) {
             builder.append("[");
-            for (int c = 0; c < cols; c++) {
-                builder.append(matrix[r][c]).append(" ");
+            if (sparse != null) {
+                sparse.appendTo(builder, r);
+            } else {
+                for (int c = 0; c < cols; c++) {
+                    builder.append(entries[r * cols + c]).append(" ");
+                }
             }
             builder.deleteCharAt(builder.length() - 1).append("]\n");
         }
@@ -70,69 +162,308 @@ public class TiMatrix {
         return cols;
     }
 
+    /**
+     * Gives direct access to the entries, row after row, for operations that go through a whole matrix at once.
+     * They must not be written to. A sparse matrix gives a dense copy of its entries.
+     */
+    public double[] entries() {
+        return dense(this);
+    }
+
+    /**
+     * Gives direct access to the entries, row after row, for operations that write a whole matrix at once. They stop
+     * being shared with copies of this matrix, and a sparse matrix becomes dense.
+     */
+    public double[] writableEntries() {
+        if (shared) unshare();
+        if (sparse != null) unpack();
+        lu = null;
+        return entries;
+    }
+
     public void setIndex(double row, double col, double value) {
-        this.matrix[(int)row - 1][(int)col - 1] = value;
+        if (shared) unshare();
+        lu = null;
+        if (sparse != null) {
+            sparse.set((int)row - 1, (int)col - 1, value);
+            if (sparse.nonZeros() > DENSE_DENSITY * rows * cols) unpack();
+            return;
+        }
+        this.entries[((int)row - 1) * cols + (int)col - 1] = value;
     }
 
-    public static TiMatrix add(TiMatrix matrix1, TiMatrix matrix2, Token operator) {
+    private void unshare() {
+        if (sparse != null) {
+            sparse = sparse.copy();
+        } else {
+            entries = entries.clone();
+        }
+        shared = false;
+    }
+
+    private static void checkDimensions(TiMatrix matrix1, TiMatrix matrix2, Token operator) {
         if (matrix1.rows != matrix2.rows || matrix1.cols != matrix2.cols) {
             throw new RuntimeError(operator, "The dimensions of these matrices are not the same.");
         }
+    }
 
-        double[][] newMatrix = new double[matrix1.rows][matrix1.cols];
-
-        for (int r = 0; r < matrix1.rows; r++) {
-            for (int c = 0; c < matrix1.cols; c++) {
-                newMatrix[r][c] = matrix1.matrix[r][c] + matrix2.matrix[r][c];
-            }
+    public static TiMatrix add(TiMatrix matrix1, TiMatrix matrix2, Token operator) {
+        checkDimensions(matrix1, matrix2, operator);
+        if (matrix1.sparse != null && matrix2.sparse != null) {
+            return new TiMatrix(matrix1.rows, matrix1.cols, SparseEntries.combine(matrix1.sparse, matrix2.sparse, false));
         }
 
-        return new TiMatrix(newMatrix);
+        double[] left = dense(matrix1);
+        double[] right = dense(matrix2);
+        double[] result = new double[matrix1.rows * matrix1.cols];
+        Parallelism.current().forEach(result.length, result.length,
+                (from, to) -> ElementWise.add(left, right, result, from, to));
+
+        return new TiMatrix(matrix1.rows, matrix1.cols, result);
     }
 
     public static TiMatrix sub(TiMatrix matrix1, TiMatrix matrix2, Token operator) {
-        if (matrix1.rows != matrix2.rows || matrix1.cols != matrix2.cols) {
-            throw new RuntimeError(operator, "The dimensions of these matrices are not the same.");
+        checkDimensions(matrix1, matrix2, operator);
+        if (matrix1.sparse != null && matrix2.sparse != null) {
+            return new TiMatrix(matrix1.rows, matrix1.cols, SparseEntries.combine(matrix1.sparse, matrix2.sparse, true));
         }
 
-        double[][] newMatrix = new double[matrix1.rows][matrix1.cols];
+        double[] left = dense(matrix1);
+        double[] right = dense(matrix2);
+        double[] result = new double[matrix1.rows * matrix1.cols];
+        Parallelism.current().forEach(result.length, result.length,
+                (from, to) -> ElementWise.sub(left, right, result, from, to));
 
-        for (int r = 0; r < matrix1.rows; r++) {
-            for (int c = 0; c < matrix1.cols; c++) {
-                newMatrix[r][c] = matrix1.matrix[r][c] - matrix2.matrix[r][c];
-            }
-        }
-
-        return new TiMatrix(newMatrix);
+        return new TiMatrix(matrix1.rows, matrix1.cols, result);
     }
 
+    /**
+     * Multiplies two matrices. Every entry of the result adds up its products in the same order as the textbook
+     * row-times-column loop, so the result is exactly the same, but the right matrix is read row by row out of
+     * contiguous panels instead of down its columns. Large products are split across threads by rows of the result.
+     * Products with a sparse matrix skip its zeros, unless an infinite or NaN entry means a product with 0 matters.
+     */
     public static TiMatrix mul(TiMatrix matrix1, TiMatrix matrix2, Token operator) {
         if (matrix1.cols != matrix2.rows) {
             throw new RuntimeError(operator, "The dimensions of these matrices are not the same.");
         }
 
-        double[][] newMatrix = new double[matrix1.rows][matrix2.cols];
+        int rows = matrix1.rows;
+        int inner = matrix1.cols;
+        int cols = matrix2.cols;
+        SparseEntries left = matrix1.sparse;
+        SparseEntries right = matrix2.sparse;
 
-        for (int i = 0; i < matrix1.rows; i++) {
-            for (int j = 0; j < matrix2.cols; j++) {
-                double sum = 0;
-                for (int k = 0; k < matrix1.cols; k++) {
-                    sum += matrix1.matrix[i][k] * matrix2.matrix[k][j];
-                }
-                newMatrix[i][j] = sum;
+        if (left != null && right != null && left.allFinite() && right.allFinite()) {
+            return new TiMatrix(rows, cols, SparseEntries.multiply(left, right));
+        }
+        if (left != null && right == null && SparseEntries.allFinite(matrix2.entries)) {
+            double[] result = new double[rows * cols];
+            Parallelism.current().forEach((long) left.nonZeros() * cols, rows,
+                    (from, to) -> left.multiplyDense(matrix2.entries, cols, result, from, to));
+            return new TiMatrix(rows, cols, result);
+        }
+        if (left == null && right != null && right.allFinite() && SparseEntries.allFinite(matrix1.entries)) {
+            double[] result = new double[rows * cols];
+            Parallelism.current().forEach((long) rows * right.nonZeros(), rows,
+                    (from, to) -> right.multipliedByDense(matrix1.entries, inner, result, from, to));
+            return new TiMatrix(rows, cols, result);
+        }
+
+        double[] leftEntries = dense(matrix1);
+        double[] result = new double[rows * cols];
+        double[][] panels = panels(dense(matrix2), inner, cols);
+
+        // each product of two entries counts as an element
+        Parallelism.current().forEach((long) rows * inner * cols, rows,
+                (from, to) -> multiply(leftEntries, panels, result, inner, cols, from, to));
+
+        return new TiMatrix(rows, cols, result);
+    }
+
+    /**
+     * Copies the columns of a matrix into panels of PANEL_COLS columns, each stored row after row. A matrix with no
+     * more columns than that is already its only panel.
+     */
+    private static double[][] panels(double[] matrix, int rows, int cols) {
+        if (cols <= PANEL_COLS) return new double[][] { matrix };
+
+        double[][] panels = new double[(cols + PANEL_COLS - 1) / PANEL_COLS][];
+        for (int p = 0; p < panels.length; p++) {
+            int first = p * PANEL_COLS;
+            int width = Math.min(PANEL_COLS, cols - first);
+            panels[p] = new double[rows * width];
+            for (int r = 0; r < rows; r++) {
+                System.arraycopy(matrix, r * cols + first, panels[p], r * width, width);
             }
         }
+        return panels;
+    }
+
+    /**
+     * Computes rows from to to of the product of left, which has inner columns, and the matrix split into panels.
+     */
+    private static void multiply(double[] left, double[][] panels, double[] result, int inner, int cols,
+                                 int from, int to) {
+        for (int p = 0; p < panels.length; p++) {
+            double[] panel = panels[p];
+            int first = p * PANEL_COLS;
+            int width = Math.min(PANEL_COLS, cols - first);
 
-        return new TiMatrix(newMatrix);
+            for (int block = 0; block < inner; block += BLOCK_ROWS) {
+                int end = Math.min(inner, block + BLOCK_ROWS);
+                for (int r = from; r < to; r++) {
+                    int out = r * cols + first;
+                    int k = block;
+                    // four rows of the panel at a time, added to each entry one after the other as in the textbook loop
+                    for (; k + 4 <= end; k += 4) {
+                        double factor0 = left[r * inner + k];
+                        double factor1 = left[r * inner + k + 1];
+                        double factor2 = left[r * inner + k + 2];
+                        double factor3 = left[r * inner + k + 3];
+                        int row = k * width;
+                        for (int c = 0; c < width; c++) {
+                            double sum = result[out + c];
+                            sum += factor0 * panel[row + c];
+                            sum += factor1 * panel[row + width + c];
+                            sum += factor2 * panel[row + 2 * width + c];
+                            sum += factor3 * panel[row + 3 * width + c];
+                            result[out + c] = sum;
+                        }
+                    }
+                    for (; k < end; k++) {
+                        double factor = left[r * inner + k];
+                        int row = k * width;
+                        for (int c = 0; c < width; c++) {
+                            result[out + c] += factor * panel[row + c];
+                        }
+                    }
+                }
+            }
+        }
     }
 
     public static TiMatrix scale(TiMatrix matrix, double factor) {
-        double[][] newMatrix = new double[matrix.rows][matrix.cols];
+        // every 0 stays 0 unless the factor is infinite or NaN
+        if (matrix.sparse != null && Double.isFinite(factor)) {
+            return new TiMatrix(matrix.rows, matrix.cols, matrix.sparse.scale(factor));
+        }
+
+        double[] entries = dense(matrix);
+        double[] result = new double[entries.length];
+        Parallelism.current().forEach(result.length, result.length,
+                (from, to) -> ElementWise.scale(entries, factor, result, from, to));
+
+        return new TiMatrix(matrix.rows, matrix.cols, result);
+    }
+
+    public static TiMatrix identity(int size) {
+        double[] result = new double[size * size];
+        for (int i = 0; i < size; i++) {
+            result[i * size + i] = 1;
+        }
+        return new TiMatrix(size, size, result);
+    }
+
+    public static TiMatrix transpose(TiMatrix matrix) {
+        double[] entries = dense(matrix);
+        double[] result = new double[entries.length];
         for (int r = 0; r < matrix.rows; r++) {
             for (int c = 0; c < matrix.cols; c++) {
-                newMatrix[r][c] = factor * matrix.matrix[r][c];
+                result[c * matrix.rows + r] = entries[r * matrix.cols + c];
             }
         }
-        return new TiMatrix(newMatrix);
+        return new TiMatrix(matrix.cols, matrix.rows, result);
+    }
+
+    private LuFactorization lu(Token callee) {
+        if (rows != cols) {
+            throw new RuntimeError(callee, "The matrix must be square.");
+        }
+        if (lu == null) {
+            lu = new LuFactorization(dense(this), rows);
+        }
+        return lu;
+    }
+
+    public static double det(TiMatrix matrix, Token callee) {
+        return matrix.lu(callee).det();
+    }
+
+    /**
+     * Inverts a matrix. The inverse is kept with the factorization, so inverting an unchanged matrix again only
+     * copies it, and only once either copy is written to.
+     */
+    public static TiMatrix inverse(TiMatrix matrix, Token callee) {
+        LuFactorization lu = matrix.lu(callee);
+        if (lu.isSingular()) {
+            throw new RuntimeError(callee, "The matrix is singular.");
+        }
+
+        TiMatrix inverse = new TiMatrix(matrix.rows, matrix.cols, lu.inverse(), false);
+        inverse.shared = true;
+        return inverse;
+    }
+
+    /**
+     * Gives the row echelon form of a matrix: Gaussian elimination with partial pivoting, with every leading entry
+     * divided down to 1.
+     */
+    public static TiMatrix ref(TiMatrix matrix) {
+        return eliminate(matrix, false);
+    }
+
+    /**
+     * Gives the reduced row echelon form of a matrix, where each leading 1 is also the only entry in its column
+     * that isn't 0.
+     */
+    public static TiMatrix rref(TiMatrix matrix) {
+        return eliminate(matrix, true);
+    }
+
+    private static TiMatrix eliminate(TiMatrix matrix, boolean reduced) {
+        int rows = matrix.rows;
+        int cols = matrix.cols;
+        double[] result = matrix.sparse != null ? matrix.sparse.toDense() : matrix.entries.clone();
+
+        double largest = 0;
+        for (double entry : result) {
+            largest = Math.max(largest, Math.abs(entry));
+        }
+        // entries this small next to the largest are what rounding leaves behind of a 0
+        double tolerance = 1e-12 * largest;
+
+        int row = 0;
+        for (int col = 0; col < cols && row < rows; col++) {
+            int pivot = row;
+            for (int r = row + 1; r < rows; r++) {
+                if (Math.abs(result[r * cols + col]) > Math.abs(result[pivot * cols + col])) pivot = r;
+            }
+            if (Math.abs(result[pivot * cols + col]) <= tolerance) {
+                for (int r = row; r < rows; r++) {
+                    result[r * cols + col] = 0;
+                }
+                continue;
+            }
+            if (pivot != row) LuFactorization.swapRows(result, cols, pivot, row);
+
+            double leading = result[row * cols + col];
+            for (int c = col; c < cols; c++) {
+                result[row * cols + c] /= leading;
+            }
+            result[row * cols + col] = 1;
+
+            for (int r = reduced ? 0 : row + 1; r < rows; r++) {
+                double factor = result[r * cols + col];
+                if (r == row || factor == 0) continue;
+                for (int c = col + 1; c < cols; c++) {
+                    result[r * cols + c] -= factor * result[row * cols + c];
+                }
+                result[r * cols + col] = 0;
+            }
+            row++;
+        }
+
+        return new TiMatrix(rows, cols, result);
     }
 }
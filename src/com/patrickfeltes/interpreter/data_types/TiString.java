@@ -0,0 +1,131 @@
+package com.patrickfeltes.interpreter.data_types;
+
+import java.util.Arrays;
+
+/**
+ * A TI string. A string is a view of part of a buffer of characters, and concatenating a string that ends where its
+ * buffer ends appends to the buffer instead of copying it, so building a string up with Str1+"X"→Str1 takes amortized
+ * constant time per concatenation. Strings never change: the old string still only sees the characters it had, and a
+ * string whose buffer has been appended to by another concatenation is copied instead.
+ * Substrings are views of the same buffer, and lengths and searches work on the buffer directly.
+ */
+public class TiString {
+
+    private static final int MINIMUM_CAPACITY = 16;
+
+    private static class Buffer {
+        char[] chars;
+        // how many characters of the array are used by some string
+        int length;
+
+        Buffer(char[] chars, int length) {
+            this.chars = chars;
+            this.length = length;
+        }
+    }
+
+    private final Buffer buffer;
+    private final int start;
+    private final int length;
+    // the characters as a String, made the first time they are needed
+    private String string;
+
+    public TiString(String string) {
+        this.buffer = new Buffer(string.toCharArray(), string.length());
+        this.start = 0;
+        this.length = string.length();
+        this.string = string;
+    }
+
+    private TiString(Buffer buffer, int start, int length) {
+        this.buffer = buffer;
+        this.start = start;
+        this.length = length;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    // ti strings are one-indexed
+    public char charAt(int index) {
+        return buffer.chars[start + index - 1];
+    }
+
+    public static TiString concat(TiString left, TiString right) {
+        if (right.length == 0) return left;
+        if (left.length == 0) return right;
+
+        int length = left.length + right.length;
+        Buffer buffer = left.buffer;
+        if (left.start + left.length == buffer.length) {
+            // nothing has been appended after the left string yet, so the right one can go there
+            if (buffer.length + right.length > buffer.chars.length) {
+                buffer.chars = Arrays.copyOf(buffer.chars, Math.max(MINIMUM_CAPACITY, 2 * (buffer.length + right.length)));
+            }
+            System.arraycopy(right.buffer.chars, right.start, buffer.chars, buffer.length, right.length);
+            buffer.length += right.length;
+            return new TiString(buffer, left.start, length);
+        }
+
+        char[] chars = new char[Math.max(MINIMUM_CAPACITY, 2 * length)];
+        System.arraycopy(left.buffer.chars, left.start, chars, 0, left.length);
+        System.arraycopy(right.buffer.chars, right.start, chars, left.length, right.length);
+        return new TiString(new Buffer(chars, length), 0, length);
+    }
+
+    /**
+     * Gives the part of the string of a length, starting at the one-indexed position begin. The part must be within
+     * the string.
+     */
+    public TiString sub(int begin, int length) {
+        if (begin == 1 && length == this.length) return this;
+        return new TiString(buffer, start + begin - 1, length);
+    }
+
+    /**
+     * Finds a string in this one, looking from the one-indexed position from.
+     * @return the one-indexed position where it starts, or 0 if it isn't found
+     */
+    public int indexOf(TiString search, int from) {
+        char[] chars = buffer.chars;
+        char[] searchChars = search.buffer.chars;
+        int last = start + length - search.length;
+        for (int i = start + Math.max(from, 1) - 1; i <= last; i++) {
+            int j = 0;
+            while (j < search.length && chars[i + j] == searchChars[search.start + j]) j++;
+            if (j == search.length) return i - start + 1;
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        if (string == null) {
+            string = new String(buffer.chars, start, length);
+        }
+        return string;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof TiString)) return false;
+
+        TiString string = (TiString) other;
+        if (length != string.length) return false;
+        for (int i = 0; i < length; i++) {
+            if (buffer.chars[start + i] != string.buffer.chars[string.start + i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer.chars[start + i];
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,10 @@
+package com.patrickfeltes.interpreter.exceptions;
+
+/**
+ * A deoptimization exception is thrown by compiled code when an assumption it was compiled under turns out to be wrong.
+ * It is thrown before the statement that made the assumption has any effect, so that the interpreter can run
+ * that statement again from the start.
+ */
+public class DeoptimizationException extends RuntimeException {
+
+}
@@ -1,16 +1,28 @@
 package com.patrickfeltes.interpreter.exceptions;
 
+import com.patrickfeltes.interpreter.ast.Stmt;
+
 /**
  * A goto exception is used to come out the deep recursive call when traversing the AST
  * This allows us to jump to a new node of the AST more easily, specifically in a catch block
  * for the GotoException.
+ * The Interpreter jumps without it, but compiled code still uses it to leave the code it is in. It is thrown
+ * once per jump, so it doesn't fill in a stack trace.
  */
 public class GotoException extends RuntimeException {
 
     public final String label;
+    // the label jumped to, or null if the program doesn't have it
+    public final Stmt.Label target;
 
     public GotoException(String label) {
+        this(label, null);
+    }
+
+    public GotoException(String label, Stmt.Label target) {
+        super(label, null, false, false);
         this.label = label;
+        this.target = target;
     }
 
 }
@@ -0,0 +1,11 @@
+package com.patrickfeltes.interpreter.functions;
+
+/**
+ * An operation on three doubles that gives a double, the three-argument counterpart of DoubleBinaryOperator.
+ */
+@FunctionalInterface
+public interface DoubleTernaryOperator {
+
+    double applyAsDouble(double first, double second, double third);
+
+}
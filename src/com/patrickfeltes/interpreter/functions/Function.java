@@ -1,6 +1,8 @@
 package com.patrickfeltes.interpreter.functions;
 
-import com.patrickfeltes.interpreter.visitors.Interpreter;
+import com.patrickfeltes.interpreter.Engine;
+import com.patrickfeltes.interpreter.errors.RuntimeError;
+import com.patrickfeltes.interpreter.tokens.Token;
 
 import java.util.List;
 
@@ -9,15 +11,16 @@ public abstract class Function {
     protected abstract boolean hasCorrectArguments(List<Object> arguments);
 
     // this is what should be called when calling a function
-    public final Object call(Interpreter interpreter, List<Object> arguments) {
-        // TODO: throw runtime exception with first paren as token
-        if (!hasCorrectArguments(arguments)) return null;
+    public final Object call(Token callee, Engine engine, List<Object> arguments) {
+        if (!hasCorrectArguments(arguments)) {
+            throw new RuntimeError(callee, "Invalid arguments for '" + callee.lexeme + "'.");
+        }
 
-        return functionImplementation(interpreter, arguments);
+        return functionImplementation(callee, engine, arguments);
     }
 
     // this is where the subclass function implementation will go
-    protected Object functionImplementation(Interpreter interpreter, List<Object> arguments) {
+    protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
         return null;
     }
 
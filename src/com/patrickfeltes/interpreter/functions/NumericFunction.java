@@ -0,0 +1,115 @@
+package com.patrickfeltes.interpreter.functions;
+
+import com.patrickfeltes.interpreter.Engine;
+import com.patrickfeltes.interpreter.data_types.TiList;
+import com.patrickfeltes.interpreter.tokens.Token;
+
+import java.util.List;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A function of one to three numbers that gives a number, with an operator for each number of arguments it takes.
+ * It can be called like any other function, but the engines apply its operator to the numbers directly when every
+ * argument of a call is known to be a number, without putting them in a list or boxing them and the result.
+ *
+ * Functions of one or two arguments also work element by element on lists: a list and a number, or two lists of
+ * the same size, give the list of the operator applied to every element.
+ */
+public class NumericFunction extends Function {
+
+    // the operators for one, two and three arguments, null for the numbers of arguments the function doesn't take
+    private final DoubleUnaryOperator unary;
+    private final DoubleBinaryOperator binary;
+    private final DoubleTernaryOperator ternary;
+
+    protected NumericFunction(DoubleUnaryOperator unary, DoubleBinaryOperator binary, DoubleTernaryOperator ternary) {
+        this.unary = unary;
+        this.binary = binary;
+        this.ternary = ternary;
+    }
+
+    public static NumericFunction unary(DoubleUnaryOperator operator) {
+        return new NumericFunction(operator, null, null);
+    }
+
+    public static NumericFunction binary(DoubleBinaryOperator operator) {
+        return new NumericFunction(null, operator, null);
+    }
+
+    public static NumericFunction ternary(DoubleTernaryOperator operator) {
+        return new NumericFunction(null, null, operator);
+    }
+
+    /**
+     * A function with an optional second argument, such as round( and log(.
+     */
+    public static NumericFunction unaryOrBinary(DoubleUnaryOperator unary, DoubleBinaryOperator binary) {
+        return new NumericFunction(unary, binary, null);
+    }
+
+    /**
+     * @return true if the function takes this many numbers
+     */
+    public boolean hasArity(int arity) {
+        switch (arity) {
+            case 1: return unary != null;
+            case 2: return binary != null;
+            case 3: return ternary != null;
+            default: return false;
+        }
+    }
+
+    public DoubleUnaryOperator unary() {
+        return unary;
+    }
+
+    public DoubleBinaryOperator binary() {
+        return binary;
+    }
+
+    public DoubleTernaryOperator ternary() {
+        return ternary;
+    }
+
+    @Override
+    protected boolean hasCorrectArguments(List<Object> arguments) {
+        if (!hasArity(arguments.size())) return false;
+
+        boolean lists = false;
+        for (Object argument : arguments) {
+            if (argument instanceof TiList) {
+                lists = true;
+            } else if (!(argument instanceof Double)) {
+                return false;
+            }
+        }
+        return !lists || arguments.size() < 3;
+    }
+
+    @Override
+    protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+        switch (arguments.size()) {
+            case 1: {
+                Object value = arguments.get(0);
+                if (value instanceof TiList) return TiList.apply((TiList)value, unary);
+                return unary.applyAsDouble((double)value);
+            }
+            case 2: {
+                Object left = arguments.get(0);
+                Object right = arguments.get(1);
+                if (left instanceof TiList && right instanceof TiList) {
+                    return TiList.apply((TiList)left, (TiList)right, callee, binary);
+                } else if (left instanceof TiList) {
+                    return TiList.apply((TiList)left, (double)right, binary);
+                } else if (right instanceof TiList) {
+                    return TiList.apply((double)left, (TiList)right, binary);
+                }
+                return binary.applyAsDouble((double)left, (double)right);
+            }
+            default:
+                return ternary.applyAsDouble((double)arguments.get(0), (double)arguments.get(1),
+                        (double)arguments.get(2));
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.patrickfeltes.interpreter.functions;
+
+import java.util.PrimitiveIterator;
+
+/**
+ * A function of a list that can also be given the values of a seq( one at a time, as they are made. The engines call
+ * it that way when its only argument is a seq(, so that sum(seq(I²,I,1,10⁶)) never makes the list of a million
+ * squares.
+ */
+public abstract class SequenceFunction extends Function {
+
+    /**
+     * Gives exactly what calling the function with the list of the values would give.
+     */
+    public abstract Object applyToValues(PrimitiveIterator.OfDouble values);
+
+}
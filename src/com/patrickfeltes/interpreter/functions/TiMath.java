@@ -0,0 +1,125 @@
+package com.patrickfeltes.interpreter.functions;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * TiMath holds the built-in functions of numbers that Java's Math doesn't have, the way the calculator defines them.
+ * Like the arithmetic operators, they give NaN instead of failing for arguments outside their domain, such as the
+ * factorial of a negative number or gcd( of a fraction.
+ */
+public class TiMath {
+
+    // round( without a number of decimals rounds to this many
+    public static final int DEFAULT_DECIMALS = 9;
+    private static final int MAX_DECIMALS = 9;
+
+    // every factorial that fits in a double, 170! being the last
+    private static final double[] factorials = new double[171];
+
+    static {
+        factorials[0] = 1;
+        for (int i = 1; i < factorials.length; i++) {
+            factorials[i] = factorials[i - 1] * i;
+        }
+    }
+
+    private TiMath() { }
+
+    private static boolean isWhole(double x) {
+        return x == Math.floor(x) && !Double.isInfinite(x);
+    }
+
+    // the integer part, rounded towards 0: iPart(-2.5) is -2
+    public static double iPart(double x) {
+        // adding 0 turns the -0 of iPart(-0.5) into 0
+        return (x < 0 ? Math.ceil(x) : Math.floor(x)) + 0.0;
+    }
+
+    // the fractional part, with the sign of x: fPart(-2.5) is -0.5
+    public static double fPart(double x) {
+        return x - iPart(x);
+    }
+
+    /**
+     * Rounds to a number of decimals from 0 to 9, halves away from 0, as if x were the decimal number it is shown as,
+     * so round(1.005,2) is 1.01 even though the double closest to 1.005 is slightly smaller.
+     */
+    public static double round(double x, double decimals) {
+        if (!isWhole(decimals) || decimals < 0 || decimals > MAX_DECIMALS) return Double.NaN;
+        if (Double.isNaN(x) || Double.isInfinite(x)) return x;
+
+        double scale = Math.pow(10, decimals);
+        double scaled = Math.abs(x) * scale;
+        // beyond 2^52 every double is already whole
+        if (scaled >= 0x1p52) return x;
+
+        double fraction = scaled - Math.floor(scaled);
+        if (Math.abs(fraction - 0.5) < 1e-6) {
+            // close to a half, where the binary error of x decides which way it goes, so round the decimal instead
+            return BigDecimal.valueOf(x).setScale((int)decimals, RoundingMode.HALF_UP).doubleValue();
+        }
+        return Math.copySign(Math.floor(scaled + 0.5) / scale, x) + 0.0;
+    }
+
+    public static double round(double x) {
+        return round(x, DEFAULT_DECIMALS);
+    }
+
+    // the remainder of a division, with the sign of the dividend, and the dividend itself for a divisor of 0
+    public static double remainder(double dividend, double divisor) {
+        if (divisor == 0) return dividend;
+        return dividend % divisor;
+    }
+
+    // the greatest common divisor of two whole numbers that aren't negative
+    public static double gcd(double a, double b) {
+        if (!isWhole(a) || !isWhole(b) || a < 0 || b < 0) return Double.NaN;
+        while (b != 0) {
+            double next = a % b;
+            a = b;
+            b = next;
+        }
+        return a;
+    }
+
+    // the least common multiple of two whole numbers that aren't negative
+    public static double lcm(double a, double b) {
+        double gcd = gcd(a, b);
+        if (Double.isNaN(gcd)) return gcd;
+        if (gcd == 0) return 0;
+        return a / gcd * b;
+    }
+
+    // n!, for whole numbers n from 0, infinite from 171!
+    public static double factorial(double n) {
+        if (!isWhole(n) || n < 0) return Double.NaN;
+        return n < factorials.length ? factorials[(int)n] : Double.POSITIVE_INFINITY;
+    }
+
+    // n nPr r: the number of ways to pick r of n things in order, 0 if r is more than n
+    public static double permutations(double n, double r) {
+        if (!isWhole(n) || !isWhole(r) || n < 0 || r < 0) return Double.NaN;
+        if (r > n) return 0;
+
+        double result = 1;
+        for (double i = n - r + 1; i <= n && !Double.isInfinite(result); i++) {
+            result *= i;
+        }
+        return result;
+    }
+
+    // n nCr r: the number of ways to pick r of n things in any order, 0 if r is more than n
+    public static double combinations(double n, double r) {
+        if (!isWhole(n) || !isWhole(r) || n < 0 || r < 0) return Double.NaN;
+        if (r > n) return 0;
+
+        r = Math.min(r, n - r);
+        double result = 1;
+        // after step i the result is n-r+i choose i, a whole number, so every division is exact until it gets huge
+        for (double i = 1; i <= r && !Double.isInfinite(result); i++) {
+            result = result * (n - r + i) / i;
+        }
+        return Math.rint(result);
+    }
+}
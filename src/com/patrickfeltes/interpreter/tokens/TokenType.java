@@ -10,6 +10,7 @@ public enum TokenType {
     EQUAL, NOT_EQUAL, GT, LT, GTOE, LTOE,
     LPAREN, RPAREN, LBRACKET, RBRACKET,
     LBRACE, RBRACE, STORE, COMMA,
+    INVERSE, TRANSPOSE, SQUARE, NPR, NCR,
 
     // different types
     NUMBER,
@@ -19,11 +20,12 @@ public enum TokenType {
     MATRIX_IDENTIFIER,
     STRING_IDENTIFIER,
     FUNCTION_IDENTIFIER,
+    COMMAND_IDENTIFIER,
 
     // keywords
     DISP, AND, OR, XOR, WHILE, FOR, IF,
     ELSE, THEN, PROMPT, INPUT, END, GOTO, LBL,
-    REPEAT, RETURN, STOP, MENU,
+    REPEAT, RETURN, STOP, MENU, SEQ,
 
     // ends
     EOL, EOF
@@ -0,0 +1,158 @@
+package com.patrickfeltes.interpreter.visitors;
+
+import com.patrickfeltes.interpreter.ast.Expr;
+import com.patrickfeltes.interpreter.data_types.TiList;
+import com.patrickfeltes.interpreter.data_types.TiMatrix;
+import com.patrickfeltes.interpreter.data_types.TiString;
+import com.patrickfeltes.interpreter.tokens.Token;
+
+import java.util.function.BiFunction;
+
+/**
+ * BinaryOperations picks the implementation of a binary operator for the types of its operands.
+ * The result is cached on the Expr.Binary node by the interpreter, so this lookup only happens when the types change.
+ */
+public class BinaryOperations {
+
+    private static final double TRUE = 1.0;
+    private static final double FALSE = 0.0;
+
+    /**
+     * Finds the operation for an operator applied to operands of these types.
+     * @param operator the operator token, also used to report dimension errors
+     * @param left the evaluated left operand
+     * @param right the evaluated right operand
+     * @return the operation, or null if the operator is not defined for these types
+     */
+    public static Expr.BinaryOperation specialize(Token operator, Object left, Object right) {
+        if (left == null || right == null) return null;
+
+        return specialize(operator, left.getClass(), right.getClass());
+    }
+
+    /**
+     * Finds the operation for an operator applied to operands of these types.
+     * Used when the operand types are known before the expression is evaluated.
+     * @param operator the operator token, also used to report dimension errors
+     * @param leftType the class of the left operand
+     * @param rightType the class of the right operand
+     * @return the operation, or null if the operator is not defined for these types
+     */
+    public static Expr.BinaryOperation specialize(Token operator, Class<?> leftType, Class<?> rightType) {
+        boolean numbers = leftType == Double.class && rightType == Double.class;
+
+        switch (operator.type) {
+            case PLUS:
+                if (numbers) {
+                    return operation(leftType, rightType, (l, r) -> (double)l + (double)r);
+                } else if (leftType == TiString.class && rightType == TiString.class) {
+                    return operation(leftType, rightType, (l, r) -> TiString.concat((TiString)l, (TiString)r));
+                } else if (leftType == TiMatrix.class && rightType == TiMatrix.class) {
+                    return operation(leftType, rightType, (l, r) -> TiMatrix.add((TiMatrix)l, (TiMatrix)r, operator));
+                } else if (leftType == TiList.class && rightType == TiList.class) {
+                    return operation(leftType, rightType, (l, r) -> TiList.add((TiList)l, (TiList)r, operator));
+                } else if (leftType == TiList.class && rightType == Double.class) {
+                    return operation(leftType, rightType, (l, r) -> TiList.addScalar((TiList)l, (double)r));
+                } else if (leftType == Double.class && rightType == TiList.class) {
+                    return operation(leftType, rightType, (l, r) -> TiList.addScalar((TiList)r, (double)l));
+                }
+                return null;
+            case MINUS:
+                if (numbers) {
+                    return operation(leftType, rightType, (l, r) -> (double)l - (double)r);
+                } else if (leftType == TiMatrix.class && rightType == TiMatrix.class) {
+                    return operation(leftType, rightType, (l, r) -> TiMatrix.sub((TiMatrix)l, (TiMatrix)r, operator));
+                } else if (leftType == TiList.class && rightType == TiList.class) {
+                    return operation(leftType, rightType, (l, r) -> TiList.sub((TiList)l, (TiList)r, operator));
+                } else if (leftType == TiList.class && rightType == Double.class) {
+                    return operation(leftType, rightType, (l, r) -> TiList.subScalar((TiList)l, (double)r));
+                } else if (leftType == Double.class && rightType == TiList.class) {
+                    return operation(leftType, rightType, (l, r) -> TiList.subList((TiList)r, (double)l));
+                }
+                return null;
+            case MUL:
+                if (numbers) {
+                    return operation(leftType, rightType, (l, r) -> (double)l * (double)r);
+                } else if (leftType == TiMatrix.class && rightType == TiMatrix.class) {
+                    return operation(leftType, rightType, (l, r) -> TiMatrix.mul((TiMatrix)l, (TiMatrix)r, operator));
+                } else if (leftType == TiList.class && rightType == TiList.class) {
+                    return operation(leftType, rightType, (l, r) -> TiList.mul((TiList)l, (TiList)r, operator));
+                } else if (leftType == TiMatrix.class && rightType == Double.class) {
+                    return operation(leftType, rightType, (l, r) -> TiMatrix.scale((TiMatrix)l, (double)r));
+                } else if (leftType == Double.class && rightType == TiMatrix.class) {
+                    return operation(leftType, rightType, (l, r) -> TiMatrix.scale((TiMatrix)r, (double)l));
+                } else if (leftType == TiList.class && rightType == Double.class) {
+                    return operation(leftType, rightType, (l, r) -> TiList.scale((TiList)l, (double)r));
+                } else if (leftType == Double.class && rightType == TiList.class) {
+                    return operation(leftType, rightType, (l, r) -> TiList.scale((TiList)r, (double)l));
+                }
+                return null;
+            case DIV:
+                if (numbers) {
+                    return operation(leftType, rightType, (l, r) -> (double)l / (double)r);
+                } else if (leftType == TiList.class && rightType == TiList.class) {
+                    return operation(leftType, rightType, (l, r) -> TiList.div((TiList)l, (TiList)r, operator));
+                } else if (leftType == TiList.class && rightType == Double.class) {
+                    return operation(leftType, rightType, (l, r) -> TiList.divScalar((TiList)l, (double)r));
+                } else if (leftType == Double.class && rightType == TiList.class) {
+                    return operation(leftType, rightType, (l, r) -> TiList.divList((TiList)r, (double)l));
+                }
+                return null;
+            case POW:
+                if (numbers) {
+                    return operation(leftType, rightType, (l, r) -> Math.pow((double)l, (double)r));
+                } else if (leftType == TiList.class && rightType == TiList.class) {
+                    return operation(leftType, rightType, (l, r) -> TiList.pow((TiList)l, (TiList)r, operator));
+                } else if (leftType == TiList.class && rightType == Double.class) {
+                    return operation(leftType, rightType, (l, r) -> TiList.powScalar((TiList)l, (double)r));
+                } else if (leftType == Double.class && rightType == TiList.class) {
+                    return operation(leftType, rightType, (l, r) -> TiList.powList((TiList)r, (double)l));
+                }
+                return null;
+            case GT:
+                return numbers ? operation(leftType, rightType, (l, r) -> ((double)l > (double)r) ? TRUE : FALSE) : null;
+            case GTOE:
+                return numbers ? operation(leftType, rightType, (l, r) -> ((double)l >= (double)r) ? TRUE : FALSE) : null;
+            case LT:
+                return numbers ? operation(leftType, rightType, (l, r) -> ((double)l < (double)r) ? TRUE : FALSE) : null;
+            case LTOE:
+                return numbers ? operation(leftType, rightType, (l, r) -> ((double)l <= (double)r) ? TRUE : FALSE) : null;
+            case EQUAL:
+                return numbers ? operation(leftType, rightType, (l, r) -> ((double)l == (double)r) ? TRUE : FALSE) : null;
+            case NOT_EQUAL:
+                return numbers ? operation(leftType, rightType, (l, r) -> ((double)l != (double)r) ? TRUE : FALSE) : null;
+        }
+
+        return null;
+    }
+
+    private static Expr.BinaryOperation operation(Class<?> leftType, Class<?> rightType,
+                                                  BiFunction<Object, Object, Object> function) {
+        return new Specialized(leftType, rightType, function);
+    }
+
+    /**
+     * An operation guarded by the exact classes of the operands it was created for.
+     */
+    private static class Specialized implements Expr.BinaryOperation {
+        private final Class<?> leftType;
+        private final Class<?> rightType;
+        private final BiFunction<Object, Object, Object> function;
+
+        Specialized(Class<?> leftType, Class<?> rightType, BiFunction<Object, Object, Object> function) {
+            this.leftType = leftType;
+            this.rightType = rightType;
+            this.function = function;
+        }
+
+        @Override
+        public boolean handles(Object left, Object right) {
+            return left != null && right != null && left.getClass() == leftType && right.getClass() == rightType;
+        }
+
+        @Override
+        public Object apply(Object left, Object right) {
+            return function.apply(left, right);
+        }
+    }
+}
@@ -1,93 +1,664 @@
 package com.patrickfeltes.interpreter.visitors;
 
+import com.patrickfeltes.interpreter.Engine;
+import com.patrickfeltes.interpreter.ast.Expr;
+import com.patrickfeltes.interpreter.data_types.Parallelism;
+import com.patrickfeltes.interpreter.data_types.Statistics;
 import com.patrickfeltes.interpreter.data_types.TiList;
 import com.patrickfeltes.interpreter.data_types.TiMatrix;
+import com.patrickfeltes.interpreter.data_types.TiString;
 import com.patrickfeltes.interpreter.errors.RuntimeError;
 import com.patrickfeltes.interpreter.functions.Function;
+import com.patrickfeltes.interpreter.functions.NumericFunction;
+import com.patrickfeltes.interpreter.functions.SequenceFunction;
+import com.patrickfeltes.interpreter.functions.TiMath;
 import com.patrickfeltes.interpreter.tokens.Token;
 
 import java.util.*;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.ToDoubleFunction;
 
 public class Environment {
 
-    private final Map<String, Object> values = new HashMap<>();
-    private final Set<String> numberVariables = new HashSet<>();
-    private final Set<String> listVariables = new HashSet<>();
-    private final Set<String> matrixVariables = new HashSet<>();
-    private final Set<String> stringNames = new HashSet<>();
-
-    private final Map<String, Function> functions = new HashMap<>();
-
-    public Environment() {
-        defineVariables();
-        defineFunctions();
-    }
-
-    private void defineVariables() {
+    /*
+        Every variable lives in a fixed slot, so that the interpreter never has to look a variable up by name.
+        Slots are laid out as: the 26 real variables, then the lists, the matrices, the strings and finally the
+        results of the statistics commands, which programs can read but not store to.
+     */
+    public static final int NUMBER_SLOTS = 26;
+    public static final int LIST_SLOTS = 6;
+    public static final int MATRIX_SLOTS = 10;
+    public static final int STRING_SLOTS = 10;
+
+    private static final int LIST_OFFSET = NUMBER_SLOTS;
+    private static final int MATRIX_OFFSET = LIST_OFFSET + LIST_SLOTS;
+    private static final int STRING_OFFSET = MATRIX_OFFSET + MATRIX_SLOTS;
+    private static final int STATISTIC_OFFSET = STRING_OFFSET + STRING_SLOTS;
+
+    // the results of 1-Var Stats, 2-Var Stats and LinReg(ax+b)
+    private static final String[] STATISTICS = {
+            "x̄", "Σx", "Σx²", "Sx", "σx", "n", "minX", "Q₁", "Med", "Q₃", "maxX",
+            "ȳ", "Σy", "Σy²", "Sy", "σy", "Σxy", "minY", "maxY", "a", "b", "r", "r²"
+    };
+    private static final int SLOT_COUNT = STATISTIC_OFFSET + STATISTICS.length;
+
+    private static final Map<String, Integer> slots = new HashMap<>();
+    private static final Map<String, Function> functions = new HashMap<>();
+
+    static {
         // letter variables
         String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
         for (int i = 0; i < alphabet.length(); i++) {
-            numberVariables.add("" + alphabet.charAt(i));
-            values.put("" + alphabet.charAt(i), 0.0);
+            slots.put("" + alphabet.charAt(i), i);
+        }
+
+        // lists
+        String listNumbers = "₁₂₃₄₅₆";
+        for (int i = 0; i < listNumbers.length(); i++) {
+            slots.put("L" + listNumbers.charAt(i), LIST_OFFSET + i);
         }
 
         // matrices
         String matrixNames = "ABCDEFGHIJ";
         for (int i = 0; i < matrixNames.length(); i++) {
-            String name = "[" + matrixNames.charAt(i) + "]";
-            matrixVariables.add(name);
-            values.put(name, null);
+            slots.put("[" + matrixNames.charAt(i) + "]", MATRIX_OFFSET + i);
         }
 
-        // lists
-        listVariables.add("L₁");
-        listVariables.add("L₂");
-        listVariables.add("L₃");
-        listVariables.add("L₄");
-        listVariables.add("L₅");
-        listVariables.add("L₆");
-        for (String string : listVariables) {
-            values.put(string, null);
+        // strings
+        for (int i = 0; i < STRING_SLOTS; i++) {
+            slots.put("Str" + i, STRING_OFFSET + i);
         }
 
-        // strings
-        for (int i = 0; i < 10; i++) {
-            String name = "Str" + i;
-            stringNames.add(name);
-            values.put(name, null);
+        // statistics results
+        for (int i = 0; i < STATISTICS.length; i++) {
+            slots.put(STATISTICS[i], STATISTIC_OFFSET + i);
         }
+
+        defineFunctions();
+    }
+
+    private double[] numbers = new double[NUMBER_SLOTS];
+    private final TiList[] lists = new TiList[LIST_SLOTS];
+    private final TiMatrix[] matrices = new TiMatrix[MATRIX_SLOTS];
+    private final TiString[] strings = new TiString[STRING_SLOTS];
+    // null until a statistics command has found them
+    private final Double[] statistics = new Double[STATISTICS.length];
+
+
+    // when the engine using this environment splits operations on large lists and matrices across threads
+    private Parallelism parallelism = Parallelism.defaults();
+
+    /**
+     * Finds the storage slot of a variable.
+     * @param name the token naming the variable
+     * @return the slot of the variable, or -1 if there is no variable with that name
+     */
+    public static int slotOf(Token name) {
+        Integer slot = slots.get(name.lexeme);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Finds the function a call calls. Functions don't keep any state, so every environment shares them.
+     * @param callee the token naming the function
+     * @return the function, or null if there is no function with that name
+     */
+    public static Function functionOf(Token callee) {
+        return functions.get(callee.lexeme);
+    }
+
+    /**
+     * Gives the function of a call, bound by the VariableResolver, or looked up by name if it hasn't been resolved.
+     */
+    public static Function functionOf(Expr.Call call) {
+        return call.function != null ? call.function : functionOf(call.callee);
+    }
+
+    public static boolean isNumberSlot(int slot) {
+        return slot >= 0 && slot < LIST_OFFSET;
     }
 
-    private void defineFunctions() {
-        functions.put("abs", new Function() {
+    /**
+     * Gives the type of the values stored in a slot.
+     * @param slot the slot of a variable
+     * @return the class of the values of that variable, or null if the slot is invalid
+     */
+    public static Class<?> typeOfSlot(int slot) {
+        if (slot < 0 || slot >= SLOT_COUNT) return null;
+        if (slot < LIST_OFFSET) return Double.class;
+        if (slot < MATRIX_OFFSET) return TiList.class;
+        if (slot < STRING_OFFSET) return TiMatrix.class;
+        if (slot < STATISTIC_OFFSET) return TiString.class;
+        return Double.class;
+    }
+
+    private static void defineFunctions() {
+        functions.put("abs", NumericFunction.unary(Math::abs));
+        functions.put("sqrt", NumericFunction.unary(Math::sqrt));
+        functions.put("√", functions.get("sqrt"));
+        // angles are in radians
+        functions.put("sin", NumericFunction.unary(Math::sin));
+        functions.put("cos", NumericFunction.unary(Math::cos));
+        functions.put("tan", NumericFunction.unary(Math::tan));
+        functions.put("sin⁻¹", NumericFunction.unary(Math::asin));
+        functions.put("cos⁻¹", NumericFunction.unary(Math::acos));
+        functions.put("tan⁻¹", NumericFunction.unary(Math::atan));
+        functions.put("ln", NumericFunction.unary(Math::log));
+        functions.put("log", NumericFunction.unaryOrBinary(Math::log10, (x, base) -> Math.log(x) / Math.log(base)));
+        functions.put("e^", NumericFunction.unary(Math::exp));
+        functions.put("int", NumericFunction.unary(Math::floor));
+        functions.put("iPart", NumericFunction.unary(TiMath::iPart));
+        functions.put("fPart", NumericFunction.unary(TiMath::fPart));
+        functions.put("round", NumericFunction.unaryOrBinary(TiMath::round, TiMath::round));
+        functions.put("remainder", NumericFunction.binary(TiMath::remainder));
+        functions.put("gcd", NumericFunction.binary(TiMath::gcd));
+        functions.put("lcm", NumericFunction.binary(TiMath::lcm));
+        functions.put("min", extremeFunction(Math::min, TiList::min));
+        functions.put("max", extremeFunction(Math::max, TiList::max));
+        // nPr and nCr go between their arguments, and ! after its argument, but they are called like functions
+        functions.put("nPr", NumericFunction.binary(TiMath::permutations));
+        functions.put("nCr", NumericFunction.binary(TiMath::combinations));
+        functions.put("!", NumericFunction.unary(TiMath::factorial));
+
+        functions.put("sub", new Function() {
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                return arguments.size() == 3 && arguments.get(0) instanceof TiString
+                        && arguments.get(1) instanceof Double && arguments.get(2) instanceof Double;
+            }
+
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                TiString string = (TiString)arguments.get(0);
+                double begin = (double)arguments.get(1);
+                double length = (double)arguments.get(2);
+                if (begin != Math.floor(begin) || length != Math.floor(length)
+                        || begin < 1 || length < 0 || begin + length - 1 > string.length()) {
+                    throw new RuntimeError(callee, "The part of the string is out of range.");
+                }
+                return string.sub((int)begin, (int)length);
+            }
+        });
+
+        functions.put("length", new Function() {
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                return arguments.size() == 1 && arguments.get(0) instanceof TiString;
+            }
+
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                return (double)((TiString)arguments.get(0)).length();
+            }
+        });
+
+        functions.put("inString", new Function() {
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                if (arguments.size() != 2 && arguments.size() != 3) return false;
+                if (!(arguments.get(0) instanceof TiString) || !(arguments.get(1) instanceof TiString)) return false;
+
+                return arguments.size() == 2 || arguments.get(2) instanceof Double;
+            }
+
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                int start = arguments.size() == 3 ? (int)(double)arguments.get(2) : 1;
+                return (double)((TiString)arguments.get(0)).indexOf((TiString)arguments.get(1), start);
+            }
+        });
+
+        functions.put("det", new Function() {
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                return arguments.size() == 1 && arguments.get(0) instanceof TiMatrix;
+            }
+
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                return TiMatrix.det((TiMatrix)arguments.get(0), callee);
+            }
+        });
+
+        functions.put("identity", new Function() {
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                return arguments.size() == 1 && arguments.get(0) instanceof Double;
+            }
+
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                double size = (double)arguments.get(0);
+                if (size < 1 || size != Math.floor(size)) {
+                    throw new RuntimeError(callee, "The size of an identity matrix must be a positive whole number.");
+                }
+                return TiMatrix.identity((int)size);
+            }
+        });
+
+        functions.put("ref", new Function() {
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                return arguments.size() == 1 && arguments.get(0) instanceof TiMatrix;
+            }
+
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                return TiMatrix.ref((TiMatrix)arguments.get(0));
+            }
+        });
+
+        functions.put("rref", new Function() {
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                return arguments.size() == 1 && arguments.get(0) instanceof TiMatrix;
+            }
+
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                return TiMatrix.rref((TiMatrix)arguments.get(0));
+            }
+        });
+
+        functions.put("sum", new SequenceFunction() {
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                return isListWithRange(arguments);
+            }
+
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                int[] range = rangeOf(callee, arguments);
+                return TiList.sum((TiList)arguments.get(0), range[0], range[1]);
+            }
+
+            @Override
+            public Object applyToValues(PrimitiveIterator.OfDouble values) {
+                return Parallelism.sum(values);
+            }
+        });
+
+        functions.put("prod", new SequenceFunction() {
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                return isListWithRange(arguments);
+            }
+
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                int[] range = rangeOf(callee, arguments);
+                return TiList.prod((TiList)arguments.get(0), range[0], range[1]);
+            }
+
+            @Override
+            public Object applyToValues(PrimitiveIterator.OfDouble values) {
+                double product = 1;
+                while (values.hasNext()) {
+                    product *= values.nextDouble();
+                }
+                return product;
+            }
+        });
+
+        functions.put("cumSum", new SequenceFunction() {
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                return arguments.size() == 1 && arguments.get(0) instanceof TiList;
+            }
+
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                return TiList.cumSum((TiList)arguments.get(0));
+            }
+
+            @Override
+            public Object applyToValues(PrimitiveIterator.OfDouble values) {
+                TiList sums = new TiList();
+                double sum = 0;
+                while (values.hasNext()) {
+                    sum += values.nextDouble();
+                    sums.add(sum);
+                }
+                return sums;
+            }
+        });
+
+        functions.put("SortA", sortFunction(false));
+        functions.put("SortD", sortFunction(true));
+
+        functions.put("dim", new Function() {
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                return arguments.size() == 1
+                        && (arguments.get(0) instanceof TiList || arguments.get(0) instanceof TiMatrix);
+            }
+
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                Object value = arguments.get(0);
+                if (value instanceof TiList) return (double)((TiList)value).size();
+                TiMatrix matrix = (TiMatrix)value;
+                return new TiList(new double[] { matrix.getRows(), matrix.getCols() });
+            }
+        });
+
+        functions.put("Fill", new Function() {
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                return arguments.size() == 2 && arguments.get(0) instanceof Double && arguments.get(1) instanceof TiList;
+            }
+
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                TiList list = (TiList)arguments.get(1);
+                list.fill((double)arguments.get(0));
+                return list;
+            }
+        });
+
+        functions.put("augment", new Function() {
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                return arguments.size() == 2 && arguments.get(0) instanceof TiList && arguments.get(1) instanceof TiList;
+            }
+
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                return TiList.augment((TiList)arguments.get(0), (TiList)arguments.get(1));
+            }
+        });
+
+        functions.put("ΔList", new Function() {
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                return arguments.size() == 1 && arguments.get(0) instanceof TiList;
+            }
+
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                TiList list = (TiList)arguments.get(0);
+                if (list.size() < 2) throw new RuntimeError(callee, "The list must have at least two elements.");
+                return TiList.deltaList(list);
+            }
+        });
+
+        functions.put("mean", listStatistic((callee, list, frequencies) -> {
+            Statistics.Moments moments = Statistics.moments(list, frequencies, callee);
+            if (moments.n == 0) throw new RuntimeError(callee, "The list must not be empty.");
+            return moments.mean;
+        }));
+        functions.put("median", listStatistic((callee, list, frequencies) ->
+                Statistics.median(list, frequencies, callee)));
+        functions.put("stdDev", listStatistic((callee, list, frequencies) -> {
+            Statistics.Moments moments = Statistics.moments(list, frequencies, callee);
+            if (moments.n < 2) throw new RuntimeError(callee, "The list must have at least two elements.");
+            return moments.sampleStdDev();
+        }));
+
+        // the statistics commands store their results in the statistics variables, such as x̄ and Sx
+        functions.put("1-Var Stats", new Function() {
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                return arguments.size() <= 2 && allLists(arguments);
+            }
+
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                Environment environment = engine.getEnvironment();
+                TiList list = arguments.isEmpty() ? environment.defaultList(callee, 0) : (TiList)arguments.get(0);
+                TiList frequencies = arguments.size() > 1 ? (TiList)arguments.get(1) : null;
+
+                Statistics.Moments x = Statistics.moments(list, frequencies, callee);
+                if (x.n == 0) throw new RuntimeError(callee, "The list must not be empty.");
+                double[] quartiles = Statistics.quartiles(list, frequencies, callee);
+
+                environment.setStatistics(x, "x");
+                environment.setStatistic("Q₁", quartiles[0]);
+                environment.setStatistic("Med", quartiles[1]);
+                environment.setStatistic("Q₃", quartiles[2]);
+                return null;
+            }
+        });
+
+        functions.put("2-Var Stats", twoVariableStatistics(false));
+        functions.put("LinReg(ax+b)", twoVariableStatistics(true));
+
+        // the postfix operators are called like functions, with what they follow as their argument
+        functions.put("⁻¹", new Function() {
             protected boolean hasCorrectArguments(List<Object> arguments) {
                 if (arguments.size() != 1) return false;
-                if (!(arguments.get(0) instanceof Double)) return false;
+                Object value = arguments.get(0);
+                return value instanceof Double || value instanceof TiList || value instanceof TiMatrix;
+            }
 
-                return true;
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                Object value = arguments.get(0);
+                if (value instanceof TiMatrix) return TiMatrix.inverse((TiMatrix)value, callee);
+                if (value instanceof TiList) return TiList.divList((TiList)value, 1);
+                return 1 / (double)value;
+            }
+        });
+
+        functions.put("ᵀ", new Function() {
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                return arguments.size() == 1 && arguments.get(0) instanceof TiMatrix;
             }
 
             @Override
-            protected Object functionImplementation(Interpreter interpreter, List<Object> arguments) {
-                return Math.abs((double)arguments.get(0));
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                return TiMatrix.transpose((TiMatrix)arguments.get(0));
             }
         });
     }
 
-    public Object callFunction(String callee, Interpreter interpreter, List<Object> arguments) {
-        return functions.get(callee).call(interpreter, arguments);
+    /**
+     * min( and max( of two numbers or lists work element by element, but of a single list they give its smallest or
+     * largest element.
+     */
+    private static NumericFunction extremeFunction(DoubleBinaryOperator operator, ToDoubleFunction<TiList> ofList) {
+        return new NumericFunction(null, operator, null) {
+            @Override
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                return isListOfElements(arguments) || super.hasCorrectArguments(arguments);
+            }
+
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                if (isListOfElements(arguments)) return ofList.applyAsDouble((TiList)arguments.get(0));
+                return super.functionImplementation(callee, engine, arguments);
+            }
+
+            private boolean isListOfElements(List<Object> arguments) {
+                return arguments.size() == 1 && arguments.get(0) instanceof TiList
+                        && ((TiList)arguments.get(0)).size() > 0;
+            }
+        };
+    }
+
+    private interface ListStatistic {
+        double of(Token callee, TiList list, TiList frequencies);
+    }
+
+    /**
+     * mean(, median( and stdDev( take a list and, optionally, how many times each of its elements counts.
+     */
+    private static Function listStatistic(ListStatistic statistic) {
+        return new Function() {
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                return (arguments.size() == 1 || arguments.size() == 2) && allLists(arguments);
+            }
+
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                TiList frequencies = arguments.size() > 1 ? (TiList)arguments.get(1) : null;
+                return statistic.of(callee, (TiList)arguments.get(0), frequencies);
+            }
+        };
+    }
+
+    /**
+     * 2-Var Stats and LinReg(ax+b) take an x list and a y list, L₁ and L₂ if they aren't given, and optionally the
+     * frequencies of the pairs. LinReg(ax+b) also fits the least-squares line y=ax+b to the pairs.
+     */
+    private static Function twoVariableStatistics(boolean regression) {
+        return new Function() {
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                return arguments.size() != 1 && arguments.size() <= 3 && allLists(arguments);
+            }
+
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                Environment environment = engine.getEnvironment();
+                TiList xList = arguments.isEmpty() ? environment.defaultList(callee, 0) : (TiList)arguments.get(0);
+                TiList yList = arguments.isEmpty() ? environment.defaultList(callee, 1) : (TiList)arguments.get(1);
+                TiList frequencies = arguments.size() > 2 ? (TiList)arguments.get(2) : null;
+
+                Statistics.CoMoments moments = Statistics.coMoments(xList, yList, frequencies, callee);
+                if (moments.x.n == 0) throw new RuntimeError(callee, "The list must not be empty.");
+                if (regression && moments.x.n < 2) {
+                    throw new RuntimeError(callee, "The list must have at least two elements.");
+                }
+
+                environment.setStatistics(moments.x, "x");
+                environment.setStatistics(moments.y, "y");
+                environment.setStatistic("Σxy", moments.sumOfProducts);
+                if (regression) {
+                    double r = moments.correlation();
+                    environment.setStatistic("a", moments.slope());
+                    environment.setStatistic("b", moments.intercept());
+                    environment.setStatistic("r", r);
+                    environment.setStatistic("r²", r * r);
+                }
+                return null;
+            }
+        };
+    }
+
+    private static boolean allLists(List<Object> arguments) {
+        for (Object argument : arguments) {
+            if (!(argument instanceof TiList)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * SortA( and SortD( sort a list in place, and put any more lists given in the same order as the first.
+     */
+    private static Function sortFunction(boolean descending) {
+        return new Function() {
+            protected boolean hasCorrectArguments(List<Object> arguments) {
+                return !arguments.isEmpty() && allLists(arguments);
+            }
+
+            @Override
+            protected Object functionImplementation(Token callee, Engine engine, List<Object> arguments) {
+                TiList keys = (TiList)arguments.get(0);
+                if (arguments.size() == 1) {
+                    keys.sort(descending);
+                } else {
+                    List<TiList> companions = new ArrayList<>();
+                    for (Object companion : arguments.subList(1, arguments.size())) {
+                        companions.add((TiList)companion);
+                    }
+                    TiList.sort(keys, companions, descending, callee);
+                }
+                return keys;
+            }
+        };
+    }
+
+    // a list, optionally followed by the one-indexed positions of the first and last elements to use
+    private static boolean isListWithRange(List<Object> arguments) {
+        if (arguments.isEmpty() || arguments.size() > 3 || !(arguments.get(0) instanceof TiList)) return false;
+        for (int i = 1; i < arguments.size(); i++) {
+            if (!(arguments.get(i) instanceof Double)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the elements a function such as sum( uses: all of them, or from the start given as the second argument
+     * to the end given as the third, or to the end of the list.
+     * @return the zero-based positions of the first element and one past the last
+     */
+    private static int[] rangeOf(Token callee, List<Object> arguments) {
+        int size = ((TiList)arguments.get(0)).size();
+        double start = arguments.size() > 1 ? (double)arguments.get(1) : 1;
+        double end = arguments.size() > 2 ? (double)arguments.get(2) : size;
+        if (start != Math.floor(start) || end != Math.floor(end) || start < 1 || end > size || start > end + 1) {
+            throw new RuntimeError(callee, "The part of the list is out of range.");
+        }
+        return new int[] { (int)start - 1, (int)end };
+    }
+
+    public Parallelism getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(Parallelism parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public Object callFunction(Token callee, Engine engine, List<Object> arguments) {
+        return functionOf(callee).call(callee, engine, arguments);
     }
 
     public Object get(Token name) {
-        if (values.containsKey(name.lexeme)) return values.get(name.lexeme);
+        return get(name, slotOf(name));
+    }
+
+    public Object get(Token name, int slot) {
+        if (slot < 0 || slot >= SLOT_COUNT) {
+            throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        }
+
+        if (slot < LIST_OFFSET) return numbers[slot];
+        if (slot < MATRIX_OFFSET) return lists[slot - LIST_OFFSET];
+        if (slot < STRING_OFFSET) return matrices[slot - MATRIX_OFFSET];
+        if (slot < STATISTIC_OFFSET) return strings[slot - STRING_OFFSET];
 
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        Double statistic = statistics[slot - STATISTIC_OFFSET];
+        if (statistic == null) throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        return statistic;
     }
 
-    public Object getListIndex(Token name, Object index) {
+    /**
+     * Stores a result of a statistics command.
+     * @param name the name of the result, such as x̄
+     */
+    public void setStatistic(String name, double value) {
+        statistics[slots.get(name) - STATISTIC_OFFSET] = value;
+    }
+
+    // stores the statistics of one variable, x or y
+    private void setStatistics(Statistics.Moments moments, String variable) {
+        setStatistic(variable.equals("x") ? "x̄" : "ȳ", moments.mean);
+        setStatistic("Σ" + variable, moments.sum);
+        setStatistic("Σ" + variable + "²", moments.sumOfSquares);
+        setStatistic("S" + variable, moments.sampleStdDev());
+        setStatistic("σ" + variable, moments.populationStdDev());
+        setStatistic("n", moments.n);
+        setStatistic("min" + variable.toUpperCase(), moments.min);
+        setStatistic("max" + variable.toUpperCase(), moments.max);
+    }
+
+    // the list a statistics command uses when it isn't given one, L₁ for index 0
+    private TiList defaultList(Token callee, int index) {
+        TiList list = lists[index];
+        if (list == null) throw new RuntimeError(callee, "Undefined variable 'L" + (char)('₁' + index) + "'.");
+        return list;
+    }
+
+    /**
+     * Gives compiled code direct access to the real variables. The storage is grown so that everything after
+     * the real variables can be used by the compiled code as its own registers.
+     * @param count the total number of registers needed, including the real variables
+     * @return the registers, the first of which are the real variables A to Z
+     */
+    public double[] registers(int count) {
+        if (numbers.length < count) {
+            numbers = Arrays.copyOf(numbers, count);
+        }
+        return numbers;
+    }
+
+    public double getNumber(int slot) {
+        return numbers[slot];
+    }
+
+    public Object getListIndex(Token name, int slot, Object index) {
         if (!(index instanceof Double)) throw new RuntimeError(name, "Index must be a number.");
-        double indexNumber = (double)index;
-        TiList list = ((TiList) values.get(name.lexeme));
+        return getListIndex(name, slot, (double)index);
+    }
+
+    public double getListIndex(Token name, int slot, double indexNumber) {
+        TiList list = lists[slot - LIST_OFFSET];
         if (indexNumber <= 0 || indexNumber > list.size()) {
             throw new RuntimeError(name, "Index is out of range for this list.");
         }
@@ -95,13 +666,14 @@ public class Environment {
         return list.get(indexNumber);
     }
 
-    public Object getMatrixIndex(Token name, Object row, Object col) {
+    public Object getMatrixIndex(Token name, int slot, Object row, Object col) {
         if (!(row instanceof Double)) throw new RuntimeError(name, "Col must be a number.");
         if (!(col instanceof Double)) throw new RuntimeError(name, "Row must be a number.");
+        return getMatrixIndex(name, slot, (double)row, (double)col);
+    }
 
-        double rowNumber = (double)row;
-        double colNumber = (double)col;
-        TiMatrix matrix = ((TiMatrix)values.get(name.lexeme));
+    public double getMatrixIndex(Token name, int slot, double rowNumber, double colNumber) {
+        TiMatrix matrix = matrices[slot - MATRIX_OFFSET];
 
         if (rowNumber <= 0 || colNumber <= 0 || rowNumber > matrix.getRows() || colNumber > matrix.getCols()) {
             throw new RuntimeError(name, "Row and/or column is out of range for this matrix.");
@@ -111,66 +683,70 @@ public class Environment {
     }
 
     public void assign(Token name, Object value) {
-        if (numberVariables.contains(name.lexeme)) {
-            if (!(value instanceof Double)) throw new RuntimeError(name, "Cannot assign a non-number to a number variable.");
-            values.put(name.lexeme, value);
-            return;
-        }
+        assign(name, slotOf(name), value);
+    }
+
+    public void assign(Token name, int slot, Object value) {
+        if (slot < 0 || slot >= SLOT_COUNT) throw new RuntimeError(name, "Invalid type.");
 
-        if (listVariables.contains(name.lexeme)) {
+        if (slot < LIST_OFFSET) {
+            if (!(value instanceof Double)) throw new RuntimeError(name, "Cannot assign a non-number to a number variable.");
+            numbers[slot] = (double)value;
+        } else if (slot < MATRIX_OFFSET) {
             if (!(value instanceof TiList)) throw new RuntimeError(name, "Cannot assign a non-list to a list variable.");
             // need to copy to avoid same reference across lists
-            values.put(name.lexeme, new TiList((TiList)value));
-            return;
-        }
-
-        if (matrixVariables.contains(name.lexeme)) {
+            lists[slot - LIST_OFFSET] = new TiList((TiList)value);
+        } else if (slot < STRING_OFFSET) {
             if (!(value instanceof TiMatrix)) throw new RuntimeError(name, "Cannot assign a non-matrix to a matrix variable.");
             // need to copy to avoid same reference across matrices
-            values.put(name.lexeme, new TiMatrix((TiMatrix)value));
-            return;
-        }
-
-        if (stringNames.contains(name.lexeme)) {
-            if (!(value instanceof String)) throw new RuntimeError(name, "Cannot assign a non-string to a string variable.");
-            values.put(name.lexeme, value.toString());
-            return;
+            matrices[slot - MATRIX_OFFSET] = new TiMatrix((TiMatrix)value);
+        } else if (slot < STATISTIC_OFFSET) {
+            if (!(value instanceof TiString)) throw new RuntimeError(name, "Cannot assign a non-string to a string variable.");
+            // strings never change, so they can be shared
+            strings[slot - STRING_OFFSET] = (TiString)value;
+        } else {
+            throw new RuntimeError(name, "Cannot assign to the result of a statistics command.");
         }
+    }
 
-        throw new RuntimeError(name, "Invalid type.");
+    public void assignNumber(int slot, double value) {
+        numbers[slot] = value;
     }
 
-    public void assignListIndex(Token name, Object value, Object index) {
+    public void assignListIndex(Token name, int slot, Object value, Object index) {
         if (!(value instanceof Double)) throw new RuntimeError(name, "Cannot assign a non-number to a list element.");
         if (!(index instanceof Double)) throw new RuntimeError(name, "Index must be a number.");
+        assignListIndex(name, slot, (double)value, (double)index);
+    }
 
-        double indexNumber = (double)index;
-        TiList list = ((TiList) values.get(name.lexeme));
+    public void assignListIndex(Token name, int slot, double value, double indexNumber) {
+        TiList list = lists[slot - LIST_OFFSET];
         if (indexNumber <= 0 || indexNumber > list.size() + 1) {
             throw new RuntimeError(name, "Index is out of range for this list.");
         }
 
         if (indexNumber == list.size() + 1) {
-            list.add((double)value);
+            list.add(value);
         } else {
-            list.setIndex(indexNumber, (double)value);
+            list.setIndex(indexNumber, value);
         }
     }
 
-    public void assignMatrixIndex(Token name, Object value, Object row, Object col) {
+    public void assignMatrixIndex(Token name, int slot, Object value, Object row, Object col) {
         if (!(value instanceof Double)) throw new RuntimeError(name, "Cannot assign a non-number to a matrix element.");
         if (!(row instanceof Double)) throw new RuntimeError(name, "Row must be a number.");
         if (!(col instanceof Double)) throw new RuntimeError(name, "Col must be a number.");
+        assignMatrixIndex(name, slot, (double)value, (double)row, (double)col);
+    }
 
-        double rowNumber = (double)row;
-        double colNumber = (double)col;
-        TiMatrix matrix = ((TiMatrix) values.get(name.lexeme));
+    public void assignMatrixIndex(Token name, int slot, double value, double rowNumber, double colNumber) {
+        TiMatrix matrix = matrices[slot - MATRIX_OFFSET];
 
         if (rowNumber <= 0 || colNumber <= 0 || rowNumber > matrix.getRows() || colNumber > matrix.getCols()) {
             throw new RuntimeError(name, "Row and/or column is out of range for this matrix.");
         }
 
-        matrix.setIndex(rowNumber, colNumber, (double)value);
+        matrix.setIndex(rowNumber, colNumber, value);
     }
 
 }
@@ -0,0 +1,506 @@
+package com.patrickfeltes.interpreter.visitors;
+
+import com.patrickfeltes.interpreter.ast.Expr;
+import com.patrickfeltes.interpreter.data_types.OffHeapDoubles;
+import com.patrickfeltes.interpreter.data_types.Parallelism;
+import com.patrickfeltes.interpreter.data_types.TiList;
+import com.patrickfeltes.interpreter.data_types.TiMatrix;
+import com.patrickfeltes.interpreter.errors.RuntimeError;
+import com.patrickfeltes.interpreter.tokens.Token;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static com.patrickfeltes.interpreter.tokens.TokenType.MINUS;
+import static com.patrickfeltes.interpreter.tokens.TokenType.MUL;
+import static com.patrickfeltes.interpreter.tokens.TokenType.PLUS;
+
+/**
+ * A fused expression evaluates a whole element-wise list or matrix expression, such as (L₁-L₂)^2/L₃, in one pass
+ * over the elements. Evaluating it one operator at a time builds a full list for every operator; instead, only the
+ * leaves of the expression (its list variables, list literals and numbers) are evaluated, and the operators then run
+ * a chunk of elements at a time, so the only list built is the result.
+ *
+ * The leaves are evaluated in the same order as they would be one operator at a time, and an operator with operands
+ * of the wrong type or size throws the same RuntimeError, so the two can't be told apart.
+ */
+public class FusedExpression {
+
+    // how many elements each operator works on at a time
+    private static final int CHUNK = 256;
+
+    private final boolean matrix;
+    private final Operation root;
+    private final List<Expr> leaves = new ArrayList<>();
+    private final List<Leaf> leafElements = new ArrayList<>();
+    private int operations = 0;
+
+    private FusedExpression(Expr expr, boolean matrix) {
+        this.matrix = matrix;
+        Element compiled = compile(expr);
+        this.root = compiled instanceof Operation ? (Operation) compiled : null;
+    }
+
+    /**
+     * Finds the fused form of an element-wise expression.
+     * @param expr the expression
+     * @param matrix true to fuse an expression over matrices, false for lists
+     * @return the fused expression, or null if the expression isn't an element-wise operator over lists or matrices
+     */
+    public static FusedExpression of(Expr expr, boolean matrix) {
+        if (expr.numeric) return null;
+
+        FusedExpression fused = new FusedExpression(expr, matrix);
+        return fused.root != null ? fused : null;
+    }
+
+    /**
+     * @return the expressions that have to be evaluated to evaluate this one, in the order they are evaluated
+     */
+    public List<Expr> getLeaves() {
+        return Collections.unmodifiableList(leaves);
+    }
+
+    /**
+     * @return the number of operators that are fused, which is the number of lists or matrices saved, plus one
+     */
+    public int getOperations() {
+        return operations;
+    }
+
+    /**
+     * Evaluates the expression.
+     * @param evaluator evaluates the leaf at an index of getLeaves()
+     * @return the resulting TiList or TiMatrix
+     */
+    public Object evaluate(IntFunction<Object> evaluator) {
+        bind(evaluator);
+
+        if (!matrix && OffHeapDoubles.isWanted(root.cols)) {
+            OffHeapDoubles elements = OffHeapDoubles.allocate(root.cols);
+            write(elements);
+            return new TiList(elements);
+        }
+
+        double[] elements = new double[root.rows * root.cols];
+        write(elements);
+        return matrix ? new TiMatrix(root.rows, root.cols, elements) : new TiList(elements);
+    }
+
+    /**
+     * Evaluates every leaf and checks the types and sizes of the operands of every operator.
+     * After this, the result can be written.
+     */
+    void bind(IntFunction<Object> evaluator) {
+        root.bind(evaluator);
+    }
+
+    /**
+     * @return the value the leaf at an index of getLeaves() had when the expression was last bound
+     */
+    Object valueOf(int leaf) {
+        return leafElements.get(leaf).value();
+    }
+
+    /**
+     * Writes the elements of the result of the last bound expression, the entries of a matrix row after row.
+     * Every operator reads its operands before writing, so the elements can belong to one of the operands.
+     * Large results are split across threads, each with its own copy of the operators, since they keep the values
+     * in between in buffers.
+     */
+    void write(double[] out) {
+        int count = root.rows * root.cols;
+        Parallelism parallelism = Parallelism.current();
+        boolean split = parallelism.pieces(count, count) > 1;
+        parallelism.forEach(count, count, (from, to) -> writeRange(split ? root.copy() : root, out, from, to));
+    }
+
+    private static void writeRange(Operation operation, double[] out, int from, int to) {
+        for (int i = from; i < to; i += CHUNK) {
+            operation.into(out, i, i, Math.min(CHUNK, to - i));
+        }
+    }
+
+    /**
+     * Writes the elements of the result of the last bound expression into a list stored off the heap, a chunk at a
+     * time.
+     */
+    void write(OffHeapDoubles out) {
+        int count = root.rows * root.cols;
+        Parallelism parallelism = Parallelism.current();
+        boolean split = parallelism.pieces(count, count) > 1;
+        parallelism.forEach(count, count, (from, to) -> {
+            Operation operation = split ? root.copy() : root;
+            double[] chunk = new double[CHUNK];
+            for (int i = from; i < to; i += CHUNK) {
+                int length = Math.min(CHUNK, to - i);
+                operation.into(chunk, 0, i, length);
+                out.write(i, chunk, 0, length);
+            }
+        });
+    }
+
+    /**
+     * Compiles an expression into elements, or returns null if the expression is not element-wise.
+     */
+    private Element compile(Expr expr) {
+        if (expr.numeric) {
+            return leaf(expr, new Scalar(leaves.size()));
+        } else if (expr instanceof Expr.Grouping) {
+            return compile(((Expr.Grouping) expr).inside);
+        } else if (expr instanceof Expr.Variable) {
+            Expr.Variable variable = (Expr.Variable) expr;
+            if (variable.listIndex != null || variable.matrixIndex != null) return null;
+            if (Environment.typeOfSlot(variable.slot) != (matrix ? TiMatrix.class : TiList.class)) return null;
+            return leaf(expr, new Operand(leaves.size(), matrix));
+        } else if (expr instanceof Expr.Literal) {
+            Expr.Literal.LiteralType type = ((Expr.Literal) expr).type;
+            if (type != (matrix ? Expr.Literal.LiteralType.MATRIX : Expr.Literal.LiteralType.LIST)) return null;
+            return leaf(expr, new Operand(leaves.size(), matrix));
+        } else if (expr instanceof Expr.Binary) {
+            return compileBinary((Expr.Binary) expr);
+        }
+
+        return null;
+    }
+
+    private Element leaf(Expr expr, Leaf element) {
+        leaves.add(expr);
+        leafElements.add(element);
+        return element;
+    }
+
+    private Element compileBinary(Expr.Binary expr) {
+        Element left = compile(expr.left);
+        if (left == null) return null;
+        Element right = compile(expr.right);
+        if (right == null) return null;
+
+        // matrices only have element-wise addition, subtraction and scaling
+        if (matrix) {
+            boolean scaling = expr.operator.type == MUL && (left instanceof Scalar) != (right instanceof Scalar);
+            boolean elementWise = (expr.operator.type == PLUS || expr.operator.type == MINUS)
+                    && !(left instanceof Scalar) && !(right instanceof Scalar);
+            if (!scaling && !elementWise) return null;
+        }
+
+        // every operation is done on the same two numbers as in BinaryOperations, so the results are exactly the same
+        Token operator = expr.operator;
+        operations++;
+        switch (operator.type) {
+            case PLUS: return new Sum(operator, left, right, matrix);
+            case MINUS: return new Difference(operator, left, right, matrix);
+            case MUL: return new Product(operator, left, right, matrix);
+            case DIV: return new Quotient(operator, left, right, matrix);
+            case POW: return new Power(operator, left, right, matrix);
+        }
+        operations--;
+        return null;
+    }
+
+    /**
+     * A part of the expression, which gives its values for a range of positions. The entries of a matrix are in
+     * order, row after row, and a list is a single row.
+     */
+    private static abstract class Element {
+        // the size of the values, or 0 for a number; a list is one row
+        int rows;
+        int cols;
+        // false if the value is not of a type any operator here works on
+        boolean valid;
+        // where the values given by the last call to values start in the array
+        int offset;
+
+        abstract void bind(IntFunction<Object> evaluator);
+
+        /**
+         * @return an element that gives the same values once this one is bound, and can be used on another thread
+         */
+        abstract Element copy();
+
+        /**
+         * Gives the values at positions from to from + count, which start at offset in the
+         * returned array.
+         */
+        abstract double[] values(int from, int count);
+    }
+
+    private static abstract class Leaf extends Element {
+        final int index;
+
+        Leaf(int index) {
+            this.index = index;
+        }
+
+        abstract Object value();
+    }
+
+    private static class Scalar extends Leaf {
+        double value;
+        double[] filled = new double[CHUNK];
+
+        Scalar(int index) {
+            super(index);
+        }
+
+        @Override
+        void bind(IntFunction<Object> evaluator) {
+            value = (double) evaluator.apply(index);
+            Arrays.fill(filled, value);
+            valid = true;
+        }
+
+        @Override
+        Object value() {
+            return value;
+        }
+
+        @Override
+        Element copy() {
+            // the buffer is only read once it is filled
+            Scalar copy = new Scalar(index);
+            copy.value = value;
+            copy.filled = filled;
+            copy.valid = valid;
+            return copy;
+        }
+
+        @Override
+        double[] values(int from, int count) {
+            offset = 0;
+            return filled;
+        }
+    }
+
+    private static class Operand extends Leaf {
+        final boolean matrix;
+        Object value;
+        double[] elements;
+        // a list stored off the heap, which is read a chunk at a time into the buffer instead
+        TiList offHeap;
+        double[] buffer;
+
+        Operand(int index, boolean matrix) {
+            super(index);
+            this.matrix = matrix;
+        }
+
+        @Override
+        void bind(IntFunction<Object> evaluator) {
+            value = evaluator.apply(index);
+            if (matrix && value instanceof TiMatrix) {
+                TiMatrix operand = (TiMatrix) value;
+                rows = operand.getRows();
+                cols = operand.getCols();
+                elements = operand.entries();
+                valid = true;
+            } else if (!matrix && value instanceof TiList) {
+                TiList operand = (TiList) value;
+                rows = 1;
+                cols = operand.size();
+                elements = operand.elements();
+                offHeap = operand.isOffHeap() ? operand : null;
+                valid = true;
+            } else {
+                valid = false;
+            }
+        }
+
+        @Override
+        Object value() {
+            return value;
+        }
+
+        @Override
+        Element copy() {
+            Operand copy = new Operand(index, matrix);
+            copy.value = value;
+            copy.rows = rows;
+            copy.cols = cols;
+            copy.elements = elements;
+            copy.offHeap = offHeap;
+            copy.valid = valid;
+            return copy;
+        }
+
+        @Override
+        double[] values(int from, int count) {
+            if (offHeap == null) {
+                offset = from;
+                return elements;
+            }
+
+            if (buffer == null) buffer = new double[CHUNK];
+            offHeap.read(from, buffer, 0, count);
+            offset = 0;
+            return buffer;
+        }
+    }
+
+    /**
+     * An operator, which works through its operands a chunk at a time, so that each operator is a simple loop and
+     * the values in between stay in the cache. The values of lists and matrices are read where they are stored.
+     */
+    private static abstract class Operation extends Element {
+        final Token operator;
+        final Element left;
+        final Element right;
+        final boolean matrix;
+        final double[] buffer = new double[CHUNK];
+
+        Operation(Token operator, Element left, Element right, boolean matrix) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+            this.matrix = matrix;
+        }
+
+        @Override
+        void bind(IntFunction<Object> evaluator) {
+            left.bind(evaluator);
+            right.bind(evaluator);
+            if (!left.valid || !right.valid) {
+                throw new RuntimeError(operator, "'" + operator.lexeme + "' is not defined for these types.");
+            }
+
+            boolean leftScalar = left instanceof Scalar;
+            boolean rightScalar = right instanceof Scalar;
+            if (!leftScalar && !rightScalar && (left.rows != right.rows || left.cols != right.cols)) {
+                throw new RuntimeError(operator, matrix
+                        ? "The dimensions of these matrices are not the same."
+                        : "The dimensions of these lists are not the same.");
+            }
+
+            Element sized = leftScalar ? right : left;
+            rows = sized.rows;
+            cols = sized.cols;
+            valid = true;
+        }
+
+        @Override
+        Operation copy() {
+            Operation copy = with(left.copy(), right.copy());
+            copy.rows = rows;
+            copy.cols = cols;
+            copy.valid = valid;
+            return copy;
+        }
+
+        /**
+         * @return the same operator, on other operands
+         */
+        abstract Operation with(Element left, Element right);
+
+        @Override
+        double[] values(int from, int count) {
+            into(buffer, 0, from, count);
+            offset = 0;
+            return buffer;
+        }
+
+        /**
+         * Writes the values at positions from to from + count into out, starting at at.
+         * Each value is written after the values at the same position in the operands are read.
+         */
+        void into(double[] out, int at, int from, int count) {
+            double[] leftValues = left.values(from, count);
+            double[] rightValues = right.values(from, count);
+            combine(leftValues, left.offset, rightValues, right.offset, out, at, count);
+        }
+
+        abstract void combine(double[] l, int lo, double[] r, int ro, double[] out, int at, int count);
+    }
+
+    private static class Sum extends Operation {
+        Sum(Token operator, Element left, Element right, boolean matrix) {
+            super(operator, left, right, matrix);
+        }
+
+        @Override
+        Operation with(Element left, Element right) {
+            return new Sum(operator, left, right, matrix);
+        }
+
+        @Override
+        void combine(double[] l, int lo, double[] r, int ro, double[] out, int at, int count) {
+            for (int i = 0; i < count; i++) {
+                out[at + i] = l[lo + i] + r[ro + i];
+            }
+        }
+    }
+
+    private static class Difference extends Operation {
+        Difference(Token operator, Element left, Element right, boolean matrix) {
+            super(operator, left, right, matrix);
+        }
+
+        @Override
+        Operation with(Element left, Element right) {
+            return new Difference(operator, left, right, matrix);
+        }
+
+        @Override
+        void combine(double[] l, int lo, double[] r, int ro, double[] out, int at, int count) {
+            for (int i = 0; i < count; i++) {
+                out[at + i] = l[lo + i] - r[ro + i];
+            }
+        }
+    }
+
+    private static class Product extends Operation {
+        Product(Token operator, Element left, Element right, boolean matrix) {
+            super(operator, left, right, matrix);
+        }
+
+        @Override
+        Operation with(Element left, Element right) {
+            return new Product(operator, left, right, matrix);
+        }
+
+        @Override
+        void combine(double[] l, int lo, double[] r, int ro, double[] out, int at, int count) {
+            for (int i = 0; i < count; i++) {
+                out[at + i] = l[lo + i] * r[ro + i];
+            }
+        }
+    }
+
+    private static class Quotient extends Operation {
+        Quotient(Token operator, Element left, Element right, boolean matrix) {
+            super(operator, left, right, matrix);
+        }
+
+        @Override
+        Operation with(Element left, Element right) {
+            return new Quotient(operator, left, right, matrix);
+        }
+
+        @Override
+        void combine(double[] l, int lo, double[] r, int ro, double[] out, int at, int count) {
+            for (int i = 0; i < count; i++) {
+                out[at + i] = l[lo + i] / r[ro + i];
+            }
+        }
+    }
+
+    private static class Power extends Operation {
+        Power(Token operator, Element left, Element right, boolean matrix) {
+            super(operator, left, right, matrix);
+        }
+
+        @Override
+        Operation with(Element left, Element right) {
+            return new Power(operator, left, right, matrix);
+        }
+
+        @Override
+        void combine(double[] l, int lo, double[] r, int ro, double[] out, int at, int count) {
+            for (int i = 0; i < count; i++) {
+                out[at + i] = Math.pow(l[lo + i], r[ro + i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.patrickfeltes.interpreter.visitors;
+
+import com.patrickfeltes.interpreter.ast.Expr;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.data_types.TiList;
+import com.patrickfeltes.interpreter.data_types.TiMatrix;
+
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * An in-place update runs a statement that stores an element-wise expression back into one of its own operands,
+ * such as L₁*2+1->L₁ or [A]+[B]->[A]. Instead of building a list or matrix for the result and then copying it into
+ * the variable, the expression is fused and written straight into the storage of the variable it is stored to.
+ * This is safe because every element of the result only depends on the elements at the same position.
+ */
+public class InPlaceUpdate {
+
+    private final boolean matrix;
+    private final FusedExpression expression;
+    // the index of the leaf that is the variable being stored to
+    private final int target;
+
+    private long runs = 0;
+
+    private InPlaceUpdate(boolean matrix, FusedExpression expression, int target) {
+        this.matrix = matrix;
+        this.expression = expression;
+        this.target = target;
+    }
+
+    /**
+     * Finds the in-place form of an assignment.
+     * @return the update, or null if the statement doesn't store an element-wise expression into one of its operands
+     */
+    static InPlaceUpdate of(Stmt.Assign stmt) {
+        if (stmt.listIndex != null || stmt.matrixIndex != null) return null;
+
+        Class<?> type = Environment.typeOfSlot(stmt.slot);
+        if (type != TiList.class && type != TiMatrix.class) return null;
+
+        boolean matrix = type == TiMatrix.class;
+        FusedExpression expression = FusedExpression.of(stmt.expression, matrix);
+        if (expression == null) return null;
+
+        List<Expr> leaves = expression.getLeaves();
+        for (int i = 0; i < leaves.size(); i++) {
+            Expr leaf = leaves.get(i);
+            if (leaf instanceof Expr.Variable && ((Expr.Variable) leaf).slot == stmt.slot) {
+                return new InPlaceUpdate(matrix, expression, i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the expressions that have to be evaluated to run the update, in the order they are evaluated
+     */
+    public List<Expr> getLeaves() {
+        return expression.getLeaves();
+    }
+
+    long getRuns() {
+        return runs;
+    }
+
+    /**
+     * Runs the statement in place. The operands are checked exactly as when the statement is run the usual way, and
+     * nothing is changed if that throws.
+     * @param evaluator evaluates the leaf at an index of getLeaves()
+     */
+    public void run(IntFunction<Object> evaluator) {
+        expression.bind(evaluator);
+
+        // the variable being stored to is one of the operands, so it was checked to have the size of the result
+        Object result = expression.valueOf(target);
+        if (matrix) {
+            expression.write(((TiMatrix) result).writableEntries());
+        } else if (((TiList) result).isOffHeap()) {
+            expression.write(((TiList) result).writableOffHeap());
+        } else {
+            expression.write(((TiList) result).writableElements());
+        }
+
+        runs++;
+    }
+}
@@ -0,0 +1,45 @@
+package com.patrickfeltes.interpreter.visitors;
+
+import com.patrickfeltes.interpreter.ast.Stmt;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The in-place forms of the list and matrix assignments an engine has run or compiled, each found once.
+ * The Interpreter and the loops it compiles share one set, so an assignment is counted once whichever runs it.
+ */
+public class InPlaceUpdates {
+
+    // null for the assignments that have no in-place form
+    private final Map<Stmt.Assign, InPlaceUpdate> updates = new IdentityHashMap<>();
+
+    /**
+     * Finds the in-place form of an assignment.
+     * @return the update, or null if the assignment has to build its result and store it
+     */
+    public InPlaceUpdate of(Stmt.Assign stmt) {
+        if (stmt.listIndex != null || stmt.matrixIndex != null || Environment.isNumberSlot(stmt.slot)) return null;
+
+        if (!updates.containsKey(stmt)) {
+            updates.put(stmt, InPlaceUpdate.of(stmt));
+        }
+        return updates.get(stmt);
+    }
+
+    /**
+     * Prints how many of the list and matrix assignments were run as in-place updates.
+     */
+    public void printStats() {
+        int statements = 0;
+        long runs = 0;
+        for (InPlaceUpdate update : updates.values()) {
+            if (update == null) continue;
+            statements++;
+            runs += update.getRuns();
+        }
+
+        System.out.println("In-place updates: " + statements + " of " + updates.size()
+                + " list and matrix assignments, run in place " + runs + " times");
+    }
+}
@@ -1,24 +1,34 @@
 package com.patrickfeltes.interpreter.visitors;
 
+import com.patrickfeltes.interpreter.Engine;
 import com.patrickfeltes.interpreter.Lexer;
 import com.patrickfeltes.interpreter.Main;
 import com.patrickfeltes.interpreter.ast.Expr;
 import com.patrickfeltes.interpreter.ast.Stmt;
 import com.patrickfeltes.interpreter.ast.Parser;
+import com.patrickfeltes.interpreter.compiler.ClosureCompiler;
+import com.patrickfeltes.interpreter.compiler.CompiledLoop;
+import com.patrickfeltes.interpreter.compiler.TieredCompilation;
+import com.patrickfeltes.interpreter.data_types.Parallelism;
 import com.patrickfeltes.interpreter.data_types.TiList;
 import com.patrickfeltes.interpreter.data_types.TiMatrix;
 import com.patrickfeltes.interpreter.errors.RuntimeError;
 import com.patrickfeltes.interpreter.exceptions.GotoException;
 import com.patrickfeltes.interpreter.exceptions.ReturnException;
 import com.patrickfeltes.interpreter.exceptions.StopException;
+import com.patrickfeltes.interpreter.functions.Function;
+import com.patrickfeltes.interpreter.functions.NumericFunction;
+import com.patrickfeltes.interpreter.functions.SequenceFunction;
 import com.patrickfeltes.interpreter.tokens.Token;
 
 import java.util.*;
+import java.util.function.Supplier;
 
 import static com.patrickfeltes.interpreter.tokens.TokenType.AND;
+import static com.patrickfeltes.interpreter.tokens.TokenType.MINUS;
 import static com.patrickfeltes.interpreter.tokens.TokenType.OR;
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+public class Interpreter implements Engine, Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     private Scanner userInput = new Scanner(System.in);
 
@@ -26,117 +36,122 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     private final double FALSE = 0.0;
 
     private Environment environment = new Environment();
+    private final VariableResolver resolver = new VariableResolver();
+    private final NumericMarker numericMarker = new NumericMarker();
+    private final DoubleEvaluator doubleEvaluator = new DoubleEvaluator();
+    private final TieredCompilation tiers;
+    private final boolean printTierStats;
+    // the in-place form of every list and matrix assignment that has run
+    private final InPlaceUpdates inPlaceUpdates = new InPlaceUpdates();
+    // the fused form of every list and matrix expression that has run, null for those that have none
+    private final Map<Expr.Binary, FusedExpression> fusedExpressions = new IdentityHashMap<>();
+    // every seq( that has run, compiled once so that its expression isn't walked again for every value
+    private final Map<Expr.Sequence, Supplier<SequenceValues>> sequences = new IdentityHashMap<>();
+    private ClosureCompiler sequenceCompiler;
+
+    // the blocks that are running, outermost first: the If, While, For or Repeat each belongs to,
+    // and the counter, end and step of For loops
+    private Stmt[] blocks = new Stmt[16];
+    private TieredCompilation.LoopProfile[] profiles = new TieredCompilation.LoopProfile[16];
+    private double[] counters = new double[16];
+    private double[] ends = new double[16];
+    private double[] steps = new double[16];
+    private int depth = 0;
+
+    // the statement to run after the current one, changed by statements that start a block or jump
+    private Stmt next;
+    // how many statements the interpreter is running for compiled code
+    private int nested = 0;
+
+    public Interpreter() {
+        this(TieredCompilation.DEFAULT_THRESHOLD, false);
+    }
+
+    /**
+     * @param promotionThreshold the number of iterations after which a loop is compiled, or 0 to only ever interpret
+     * @param printTierStats whether to print the loop counters and tier transitions once the program is done
+     */
+    public Interpreter(int promotionThreshold, boolean printTierStats) {
+        this.tiers = new TieredCompilation(this, environment, promotionThreshold);
+        this.printTierStats = printTierStats;
+    }
 
+    @Override
     public void interpret(Map<String, Stmt> labels, Stmt head) {
-        Stmt statement = head;
-        while (statement != null) {
-            try {
-                executeSingleStatement(statement);
-                statement = statement.next();
-            } catch (RuntimeError error) {
-                Main.runtimeError(error);
-                statement = null;
-            } catch (GotoException ex) {
-                Stmt target = labels.get(ex.label);
-                if (target == null) throw ex;
-                statement = target;
-            } catch (ReturnException ex) {
-                // TODO: should leave subprogram ONLY. once subprogram implemented
-                statement = null;
-            } catch (StopException ex) {
-                statement = null;
+        Parallelism previous = environment.getParallelism().enter();
+        try {
+            depth = 0;
+            Stmt statement = head;
+            while (statement != null) {
+                try {
+                    run(0, statement);
+                    statement = null;
+                } catch (RuntimeError error) {
+                    Main.runtimeError(error);
+                    statement = null;
+                } catch (GotoException ex) {
+                    // jumps made by compiled code end up here, since compiled code can't jump on its own
+                    Stmt target = labels.get(ex.label);
+                    if (target == null) throw ex;
+                    statement = jump((Stmt.Label) target);
+                } catch (ReturnException ex) {
+                    // TODO: should leave subprogram ONLY. once subprogram implemented
+                    statement = null;
+                } catch (StopException ex) {
+                    statement = null;
+                }
             }
+
+            if (printTierStats) {
+                tiers.printStats();
+            }
+        } finally {
+            Parallelism.restore(previous);
         }
     }
 
+    @Override
+    public void setParallelism(Parallelism parallelism) {
+        environment.setParallelism(parallelism);
+    }
+
+    @Override
+    public Environment getEnvironment() {
+        return environment;
+    }
+
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
+        if (expr.numeric) return evaluateDouble(expr);
+
+        FusedExpression fused = fusedExpression(expr);
+        if (fused != null) {
+            List<Expr> leaves = fused.getLeaves();
+            return fused.evaluate(leaf -> evaluate(leaves.get(leaf)));
+        }
+
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
-        switch (expr.operator.type) {
-            case PLUS:
-                if (areNumbers(left, right)) {
-                    return (double)left + (double)right;
-                } else if (areStrings(left, right)) {
-                    return left.toString() + right.toString();
-                } else if (areMatrices(left, right)) {
-                    return TiMatrix.add((TiMatrix)left, (TiMatrix)right, expr.operator);
-                } else if (areLists(left, right)) {
-                    return TiList.add((TiList)left, (TiList)right, expr.operator);
-                } else if (areLists(left) && areNumbers(right)) {
-                    return TiList.addScalar((TiList)left, (double)right);
-                } else if (areLists(right) && areNumbers(left)) {
-                    return TiList.addScalar((TiList)right, (double)left);
-                }
-                throw new RuntimeError(expr.operator, "'+' is not defined for these types.");
-            case MINUS:
-                if (areNumbers(left, right)) {
-                    return (double)left - (double)right;
-                } else if (areMatrices(left, right)) {
-                    return TiMatrix.sub((TiMatrix)left, (TiMatrix)right, expr.operator);
-                } else if (areLists(left, right)) {
-                    return TiList.sub((TiList)left, (TiList)right, expr.operator);
-                } else if (areLists(left) && areNumbers(right)) {
-                    return TiList.subScalar((TiList)left, (double)right);
-                } else if (areLists(right) && areNumbers(left)) {
-                    return TiList.subList((TiList)right, (double)left);
-                }
-                throw new RuntimeError(expr.operator, "'-' is not defined for these types.");
-            case MUL:
-                if (areNumbers(left, right)) {
-                    return (double)left * (double)right;
-                } else if (areMatrices(left, right)) {
-                    return TiMatrix.mul((TiMatrix)left, (TiMatrix)right, expr.operator);
-                } else if (areLists(left, right)) {
-                    return TiList.mul((TiList)left, (TiList)right, expr.operator);
-                } else if (areMatrices(left) && areNumbers(right)) {
-                    return TiMatrix.scale((TiMatrix)left, (double)right);
-                } else if (areNumbers(left) && areMatrices(right)) {
-                    return TiMatrix.scale((TiMatrix)right, (double)left);
-                } else if (areLists(left) && areNumbers(right)) {
-                    return TiList.scale((TiList)left, (double)right);
-                } else if (areLists(right) && areNumbers(left)) {
-                    return TiList.scale((TiList)right, (double)left);
-                }
-                throw new RuntimeError(expr.operator, "'*' is not defined for these types.");
-            case DIV:
-                if (areNumbers(left, right)) {
-                    return (double)left / (double)right;
-                } else if (areLists(left, right)) {
-                    return TiList.div((TiList)left, (TiList)right, expr.operator);
-                } else if (areLists(left) && areNumbers(right)) {
-                    return TiList.divScalar((TiList)left, (double)right);
-                } else if (areLists(right) && areNumbers(left)) {
-                    return TiList.divList((TiList)right, (double)left);
-                }
-                throw new RuntimeError(expr.operator, "'/' is not defined for these types.");
-            case POW:
-                if (areNumbers(left, right)) {
-                    return Math.pow((double)left, (double)right);
-                } else if (areLists(left, right)) {
-                    return TiList.pow((TiList)left, (TiList)right, expr.operator);
-                } else if (areLists(left) && areNumbers(right)) {
-                    return TiList.powScalar((TiList)left, (double)right);
-                } else if (areLists(right) && areNumbers(left)) {
-                    return TiList.powList((TiList)right, (double)left);
-                }
-                throw new RuntimeError(expr.operator, "'^' is not defined for these types.");
-            case GT:
-                return ((double)left > (double)right) ? TRUE : FALSE;
-            case GTOE:
-                return ((double)left >= (double)right) ? TRUE : FALSE;
-            case LT:
-                return ((double)left < (double)right) ? TRUE : FALSE;
-            case LTOE:
-                return ((double)left <= (double)right) ? TRUE : FALSE;
-            case EQUAL:
-                return ((double)(left) == (double)right) ? TRUE : FALSE;
-            case NOT_EQUAL:
-                return ((double)left != (double)right) ? TRUE : FALSE;
+        Expr.BinaryOperation operation = expr.specialization;
+        if (operation != null && operation.handles(left, right)) {
+            return operation.apply(left, right);
         }
 
-        return null;
+        operation = BinaryOperations.specialize(expr.operator, left, right);
+        if (operation == null) {
+            throw new RuntimeError(expr.operator, "'" + expr.operator.lexeme + "' is not defined for these types.");
+        }
+
+        // the first types seen are cached on the node; once they change, the node falls back to the generic lookup
+        if (expr.specialization == null && !expr.generic) {
+            expr.specialization = operation;
+        } else {
+            expr.specialization = null;
+            expr.generic = true;
+        }
+
+        return operation.apply(left, right);
     }
 
     @Override
@@ -147,10 +162,16 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitLiteralExpr(Expr.Literal expr) {
         // TODO: throw error if expressions don't eval to doubles
-        if (expr.type == Expr.Literal.LiteralType.LIST) {
-            List<Double> list = new ArrayList<>();
-            for (Expr expression : (List<Expr>)expr.value) {
-                list.add((double)evaluate(expression));
+        if (expr.constant instanceof TiList) {
+            // a copy sharing the elements, so that a command changing the list in place can't change the constant
+            return new TiList((TiList)expr.constant);
+        } else if (expr.constant != null) {
+            return expr.constant;
+        } else if (expr.type == Expr.Literal.LiteralType.LIST) {
+            List<Expr> elements = (List<Expr>)expr.value;
+            double[] list = new double[elements.size()];
+            for (int i = 0; i < list.length; i++) {
+                list[i] = (double)evaluate(elements.get(i));
             }
 
             return new TiList(list);
@@ -172,6 +193,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
+        if (expr.numeric) return evaluateDouble(expr);
+
         Object right = evaluate(expr.right);
 
         switch (expr.operator.type) {
@@ -188,17 +211,19 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Object visitVariableExpr(Expr.Variable expr) {
         if (expr.listIndex != null) {
             // a list index is specified
-            return environment.getListIndex(expr.name, evaluate(expr.listIndex));
+            return environment.getListIndex(expr.name, expr.slot, evaluate(expr.listIndex));
         } else if(expr.matrixIndex != null) {
             // a matrix index is specified
-            return environment.getMatrixIndex(expr.name, evaluate(expr.matrixIndex.first), evaluate(expr.matrixIndex.second));
+            return environment.getMatrixIndex(expr.name, expr.slot, evaluate(expr.matrixIndex.first), evaluate(expr.matrixIndex.second));
         } else {
-            return environment.get(expr.name);
+            return environment.get(expr.name, expr.slot);
         }
     }
 
     @Override
     public Object visitLogicalExpr(Expr.Logical expr) {
+        if (expr.numeric) return evaluateDouble(expr);
+
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
@@ -220,14 +245,44 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitCallExpr(Expr.Call expr) {
-        String callee = expr.callee.lexeme;
+        Token callee = expr.callee;
+        Function function = Environment.functionOf(expr);
+        if (function instanceof SequenceFunction && expr.arguments.size() == 1
+                && expr.arguments.get(0) instanceof Expr.Sequence) {
+            // the values of the seq( go straight into the function, without being stored in a list
+            SequenceValues values = sequence((Expr.Sequence)expr.arguments.get(0));
+            try {
+                return ((SequenceFunction)function).applyToValues(values);
+            } finally {
+                values.close();
+            }
+        }
 
         List<Object> arguments = new ArrayList<>();
         for (Expr argument : expr.arguments) {
             arguments.add(evaluate(argument));
         }
 
-        return environment.callFunction(callee, this, arguments);
+        return function.call(callee, this, arguments);
+    }
+
+    @Override
+    public Object visitSequenceExpr(Expr.Sequence expr) {
+        return sequence(expr).toList();
+    }
+
+    /**
+     * Starts a seq(. Its expression is evaluated once for every value of the variable, so it is compiled by a
+     * closure compiler sharing this environment the first time the seq( runs.
+     */
+    private SequenceValues sequence(Expr.Sequence expr) {
+        Supplier<SequenceValues> sequence = sequences.get(expr);
+        if (sequence == null) {
+            if (sequenceCompiler == null) sequenceCompiler = new ClosureCompiler(environment);
+            sequence = sequenceCompiler.compileSequence(expr);
+            sequences.put(expr, sequence);
+        }
+        return sequence.get();
     }
 
     @Override
@@ -246,18 +301,60 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitAssignStmt(Stmt.Assign stmt) {
+        if (stmt.expression.numeric) {
+            // numbers can be stored without ever being boxed
+            if (stmt.listIndex != null && stmt.listIndex.numeric) {
+                environment.assignListIndex(stmt.name, stmt.slot, evaluateDouble(stmt.expression), evaluateDouble(stmt.listIndex));
+                return null;
+            } else if (stmt.listIndex == null && stmt.matrixIndex == null && Environment.isNumberSlot(stmt.slot)) {
+                environment.assignNumber(stmt.slot, evaluateDouble(stmt.expression));
+                return null;
+            }
+        }
+
+        InPlaceUpdate update = inPlaceUpdates.of(stmt);
+        if (update != null) {
+            List<Expr> leaves = update.getLeaves();
+            update.run(leaf -> evaluate(leaves.get(leaf)));
+            return null;
+        }
+
         Object value = evaluate(stmt.expression);
         // an index was specified
         if (stmt.listIndex != null) {
-            environment.assignListIndex(stmt.name, value, evaluate(stmt.listIndex));
+            environment.assignListIndex(stmt.name, stmt.slot, value, evaluate(stmt.listIndex));
         } else if (stmt.matrixIndex != null) {
-            environment.assignMatrixIndex(stmt.name, value, evaluate(stmt.matrixIndex.first), evaluate(stmt.matrixIndex.second));
+            environment.assignMatrixIndex(stmt.name, stmt.slot, value, evaluate(stmt.matrixIndex.first), evaluate(stmt.matrixIndex.second));
         } else {
-            environment.assign(stmt.name, value);
+            environment.assign(stmt.name, stmt.slot, value);
         }
         return null;
     }
 
+    /**
+     * Finds the fused form of a list or matrix expression, if it has more than one operator to fuse.
+     */
+    private FusedExpression fusedExpression(Expr.Binary expr) {
+        if (!fusedExpressions.containsKey(expr)) {
+            FusedExpression fused = FusedExpression.of(expr, false);
+            if (fused == null) fused = FusedExpression.of(expr, true);
+            fusedExpressions.put(expr, fused != null && fused.getOperations() > 1 ? fused : null);
+        }
+        return fusedExpressions.get(expr);
+    }
+
+    /**
+     * @return the in-place forms of the list and matrix assignments, which the loops this compiles use as well
+     */
+    public InPlaceUpdates getInPlaceUpdates() {
+        return inPlaceUpdates;
+    }
+
+    @Override
+    public void printInPlaceStats() {
+        inPlaceUpdates.printStats();
+    }
+
     @Override
     public Void visitPromptStmt(Stmt.Prompt stmt) {
         for (Token name : stmt.names) {
@@ -275,13 +372,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitIfStmt(Stmt.If stmt) {
-        Object value = evaluate(stmt.condition);
         // TODO: throw error if this is not a double, need a token to throw with it, so maybe pass the if token into Stmt.If
-        double doubleValue = (double)value;
-        if (isTrue(doubleValue)) {
-            executeAllStatements(stmt.thenHead);
-        } else {
-            executeAllStatements(stmt.elseHead);
+        Stmt block = isTrue(evaluateCondition(stmt.condition)) ? stmt.thenHead : stmt.elseHead;
+        if (block != null) {
+            push(stmt, null, 0, 0, 0);
+            next = block;
         }
 
         return null;
@@ -289,46 +384,79 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitWhileStmt(Stmt.While stmt) {
-        // TODO: throw error if this is not a double
-        double conditionValue = (double)evaluate(stmt.condition);
-
-        while (isTrue(conditionValue)) {
-            executeAllStatements(stmt.head);
-            conditionValue = (double)evaluate(stmt.condition);
+        TieredCompilation.LoopProfile profile = tiers.profile(stmt);
+        if (profile.compiled() != null) {
+            profile.compiled().enter();
+        } else if (isTrue(evaluateCondition(stmt.condition))) {
+            // TODO: throw error if this is not a double
+            push(stmt, profile, 0, 0, 0);
+            next = stmt.head;
         }
 
         return null;
     }
 
+    /**
+     * Continues a While loop from its condition, when compiled code hands the loop back to the interpreter.
+     */
+    public void resumeWhile(Stmt.While stmt) {
+        execute(stmt);
+    }
+
     @Override
     public Void visitForStmt(Stmt.For stmt) {
+        TieredCompilation.LoopProfile profile = tiers.profile(stmt);
+        if (profile.compiled() != null) {
+            profile.compiled().enter();
+            return null;
+        }
+
         /*
             Odd behavior of for loop: both the end and step variables are determined before
             start is assigned to the loop variable
             They are only determined once, before the loop starts
          */
-        double end = (double)evaluate(stmt.end);
-        double step = (double)evaluate(stmt.step);
+        double end = evaluateCondition(stmt.end);
+        double step = evaluateCondition(stmt.step);
         // assign starting value to the loop variable
-        environment.assign(stmt.name, evaluate(stmt.start));
+        environment.assign(stmt.name, stmt.slot, evaluate(stmt.start));
 
-        if (step > 0) {
-            for (double i = (double)environment.get(stmt.name); i <= end; i += step) {
-                environment.assign(stmt.name, i);
-                executeAllStatements(stmt.head);
-            }
-        } else if (step < 0) {
-            for (double i = (double)environment.get(stmt.name); i >= end; i += step) {
-                environment.assign(stmt.name, i);
-                executeAllStatements(stmt.head);
-            }
-        } else {
+        startFor(stmt, profile, environment.getNumber(stmt.slot), end, step);
+        return null;
+    }
+
+    /**
+     * Continues a For loop, when compiled code hands the loop back to the interpreter.
+     * @param counter the value of the loop variable for the next iteration
+     */
+    public void resumeFor(Stmt.For stmt, double counter, double end, double step) {
+        Stmt enclosingNext = next;
+        int base = depth;
+        nested++;
+        try {
+            next = null;
+            startFor(stmt, tiers.profile(stmt), counter, end, step);
+            run(base, next);
+        } finally {
+            nested--;
+            depth = base;
+            next = enclosingNext;
+        }
+    }
+
+    private void startFor(Stmt.For stmt, TieredCompilation.LoopProfile profile, double counter, double end, double step) {
+        if (!(step > 0) && !(step < 0)) {
             // TODO: figure out how to throw runtime exceptions for statements?
             // need a token to throw?
             //throw new RuntimeError()
+            return;
         }
 
-        return null;
+        if (inForRange(counter, end, step)) {
+            environment.assignNumber(stmt.slot, counter);
+            push(stmt, profile, counter, end, step);
+            next = stmt.head;
+        }
     }
 
     @Override
@@ -339,19 +467,43 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitGotoStmt(Stmt.Goto stmt) {
-        throw new GotoException(stmt.label);
+        // a Goto run on behalf of compiled code has to leave the compiled code first
+        if (stmt.target == null || nested > 0) throw new GotoException(stmt.label, stmt.target);
+
+        next = jump(stmt.target);
+        return null;
     }
 
     @Override
     public Void visitRepeatStmt(Stmt.Repeat stmt) {
-        do {
-            executeAllStatements(stmt.head);
-            // execute code until condition is true
-        } while ((double)evaluate(stmt.condition) == FALSE);
+        TieredCompilation.LoopProfile profile = tiers.profile(stmt);
+        if (profile.compiled() != null) {
+            profile.compiled().enter();
+        } else {
+            push(stmt, profile, 0, 0, 0);
+            next = stmt.head;
+        }
 
         return null;
     }
 
+    /**
+     * Continues a Repeat loop from its body, when compiled code hands the loop back to the interpreter.
+     */
+    public void resumeRepeat(Stmt.Repeat stmt) {
+        Stmt enclosingNext = next;
+        int base = depth;
+        nested++;
+        try {
+            push(stmt, tiers.profile(stmt), 0, 0, 0);
+            run(base, stmt.head);
+        } finally {
+            nested--;
+            depth = base;
+            next = enclosingNext;
+        }
+    }
+
     @Override
     public Void visitReturnStmt(Stmt.Return stmt) {
         throw new ReturnException();
@@ -371,7 +523,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             input = userInput.nextInt();
         } while(input <= 0 || input > stmt.options.size());
 
-        throw new GotoException(stmt.labels.get(input - 1));
+        Stmt.Label target = stmt.targets == null ? null : stmt.targets[input - 1];
+        if (target == null || nested > 0) throw new GotoException(stmt.labels.get(input - 1), target);
+
+        next = jump(target);
+        return null;
     }
 
     private void printMenu(Stmt.Menu stmt) {
@@ -389,6 +545,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         } while (input.length() == 0);
 
         Expr expression = new Parser(new Lexer(input).lexTokens()).expression();
+        resolver.resolve(expression);
+        numericMarker.mark(expression);
         environment.assign(name, evaluate(expression));
     }
 
@@ -402,57 +560,302 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
      * @param expr The expr to evaluate
      * @return The evaluated value of the expression
      */
-    private Object evaluate(Expr expr) {
+    Object evaluate(Expr expr) {
         return expr.accept(this);
     }
 
-    private void executeAllStatements(Stmt stmt) {
-        Stmt curStmt = stmt;
-        while (curStmt != null) {
-            curStmt.accept(this);
-            curStmt = curStmt.next();
-        }
+    /**
+     * Evaluates an expression that is marked as numeric without boxing any intermediate results.
+     * @param expr The numeric expr to evaluate
+     * @return The evaluated value of the expression
+     */
+    private double evaluateDouble(Expr expr) {
+        return expr.accept(doubleEvaluator);
     }
 
-    private void executeSingleStatement(Stmt stmt) {
-        stmt.accept(this);
+    /**
+     * Evaluates an expression that must produce a number, such as a loop condition or bound.
+     * Takes the unboxed path when possible.
+     * @param expr The expr to evaluate
+     * @return The evaluated value of the expression
+     */
+    public double evaluateCondition(Expr expr) {
+        if (expr.numeric) return evaluateDouble(expr);
+        return (double)evaluate(expr);
     }
 
-    // helper methods for type-checking at runtime
-    private boolean areNumbers(Object... objects) {
-        for (Object object : objects) {
-            if (!(object instanceof Double)) {
-                return false;
+    /**
+     * Runs statements until every block started above the base depth is done.
+     * @param base the depth to stop at
+     * @param statement the first statement to run
+     */
+    private void run(int base, Stmt statement) {
+        while (true) {
+            while (statement == null) {
+                if (depth == base) return;
+                statement = endOfBlock();
             }
+
+            next = statement.next();
+            statement.accept(this);
+            statement = next;
+        }
+    }
+
+    /**
+     * Runs a single statement, including any block it starts, for compiled code that leaves a statement to the
+     * interpreter.
+     * @param stmt The statement to run
+     */
+    public void execute(Stmt stmt) {
+        Stmt enclosingNext = next;
+        int base = depth;
+        nested++;
+        try {
+            next = null;
+            stmt.accept(this);
+            run(base, next);
+        } finally {
+            nested--;
+            // a Goto or an error can leave blocks behind
+            depth = base;
+            next = enclosingNext;
         }
-        return true;
     }
 
-    private boolean areStrings(Object... objects) {
-        for (Object object : objects) {
-            if (!(object instanceof String)) {
-                return false;
+    /**
+     * Decides what runs once the innermost block is done: the block again for a loop that goes on, otherwise
+     * whatever comes after the statement that started the block.
+     * @return the next statement, or null if the enclosing block is done too
+     */
+    private Stmt endOfBlock() {
+        int top = depth - 1;
+        Stmt owner = blocks[top];
+
+        if (owner instanceof Stmt.While) {
+            CompiledLoop compiled = tiers.countIteration(profiles[top]);
+            if (compiled != null) {
+                depth--;
+                compiled.resume();
+                return owner.next();
+            }
+            Stmt.While loop = (Stmt.While) owner;
+            if (isTrue(evaluateCondition(loop.condition))) return loop.head;
+        } else if (owner instanceof Stmt.For) {
+            Stmt.For loop = (Stmt.For) owner;
+            double counter = counters[top] + steps[top];
+            CompiledLoop compiled = tiers.countIteration(profiles[top]);
+            if (compiled != null) {
+                depth--;
+                compiled.resumeFor(counter, ends[top], steps[top]);
+                return owner.next();
+            }
+            if (inForRange(counter, ends[top], steps[top])) {
+                counters[top] = counter;
+                environment.assignNumber(loop.slot, counter);
+                return loop.head;
+            }
+        } else if (owner instanceof Stmt.Repeat) {
+            Stmt.Repeat loop = (Stmt.Repeat) owner;
+            // execute code until condition is true
+            if (evaluateCondition(loop.condition) == FALSE) {
+                CompiledLoop compiled = tiers.countIteration(profiles[top]);
+                if (compiled != null) {
+                    depth--;
+                    compiled.resume();
+                    return owner.next();
+                }
+                return loop.head;
             }
         }
-        return true;
+
+        depth--;
+        return owner.next();
+    }
+
+    /**
+     * Moves execution to a label the way TI-OS does:
+     * - blocks around both the jump and the label keep running, so a Goto to a label in the same loop body stays
+     *   in the loop
+     * - blocks that are jumped out of are left (TI-OS keeps them around until the program ends, leaking memory)
+     * - blocks that are jumped into are entered as if they had been run from the top: their End goes back to the
+     *   condition of a loop, and a For loop counts on from the current value of its variable, with its end and step
+     *   evaluated at the jump
+     * @param label the label to jump to
+     * @return the statement to continue at
+     */
+    private Stmt jump(Stmt.Label label) {
+        Stmt[] path = label.path;
+        int kept = 0;
+        while (kept < depth && kept < path.length && blocks[kept] == path[kept]) {
+            kept++;
+        }
+        depth = kept;
+        enterBlocks(label, kept);
+        return label;
     }
 
-    private boolean areLists(Object... objects) {
-        for (Object object : objects) {
-            if (!(object instanceof TiList)) {
-                return false;
+    /**
+     * Runs the rest of the body of a compiled loop from a label inside it, for a jump that stays in the loop.
+     * @param level the position in the path of the label of the block just inside the loop
+     */
+    public void resumeAt(Stmt.Label label, int level) {
+        Stmt enclosingNext = next;
+        int base = depth;
+        nested++;
+        try {
+            enterBlocks(label, level);
+            run(base, label);
+        } finally {
+            nested--;
+            depth = base;
+            next = enclosingNext;
+        }
+    }
+
+    // enters the blocks on the path of a label from level on, as a jump to the label does
+    private void enterBlocks(Stmt.Label label, int level) {
+        Stmt[] path = label.path;
+        for (int i = level; i < path.length; i++) {
+            Stmt block = path[i];
+            if (block instanceof Stmt.If) {
+                push(block, null, 0, 0, 0);
+            } else if (block instanceof Stmt.For) {
+                Stmt.For loop = (Stmt.For) block;
+                double end = evaluateCondition(loop.end);
+                double step = evaluateCondition(loop.step);
+                push(loop, tiers.profile(loop), environment.getNumber(loop.slot), end, step);
+            } else {
+                push(block, tiers.profile(block), 0, 0, 0);
             }
         }
-        return true;
     }
 
-    private boolean areMatrices(Object... objects) {
-        for (Object object : objects) {
-            if (!(object instanceof TiMatrix)) {
-                return false;
+    private void push(Stmt owner, TieredCompilation.LoopProfile profile, double counter, double end, double step) {
+        if (depth == blocks.length) {
+            int capacity = blocks.length * 2;
+            blocks = Arrays.copyOf(blocks, capacity);
+            profiles = Arrays.copyOf(profiles, capacity);
+            counters = Arrays.copyOf(counters, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            steps = Arrays.copyOf(steps, capacity);
+        }
+
+        blocks[depth] = owner;
+        profiles[depth] = profile;
+        counters[depth] = counter;
+        ends[depth] = end;
+        steps[depth] = step;
+        depth++;
+    }
+
+    private static boolean inForRange(double counter, double end, double step) {
+        if (step > 0) return counter <= end;
+        return step < 0 && counter >= end;
+    }
+
+    /**
+     * Evaluates numeric expressions to unboxed doubles.
+     * Mirrors the numeric cases of the Expr.Visitor methods above.
+     */
+    private class DoubleEvaluator implements Expr.DoubleVisitor {
+
+        @Override
+        public double visitBinaryExpr(Expr.Binary expr) {
+            double left = evaluateDouble(expr.left);
+            double right = evaluateDouble(expr.right);
+
+            switch (expr.operator.type) {
+                case PLUS: return left + right;
+                case MINUS: return left - right;
+                case MUL: return left * right;
+                case DIV: return left / right;
+                case POW: return Math.pow(left, right);
+                case GT: return (left > right) ? TRUE : FALSE;
+                case GTOE: return (left >= right) ? TRUE : FALSE;
+                case LT: return (left < right) ? TRUE : FALSE;
+                case LTOE: return (left <= right) ? TRUE : FALSE;
+                case EQUAL: return (left == right) ? TRUE : FALSE;
+                case NOT_EQUAL: return (left != right) ? TRUE : FALSE;
             }
+
+            throw new RuntimeError(expr.operator, "Unexpected binary operator.");
+        }
+
+        @Override
+        public double visitGroupingExpr(Expr.Grouping expr) {
+            return evaluateDouble(expr.inside);
+        }
+
+        @Override
+        public double visitLiteralExpr(Expr.Literal expr) {
+            return (double)expr.value;
+        }
+
+        @Override
+        public double visitUnaryExpr(Expr.Unary expr) {
+            double right = evaluateDouble(expr.right);
+            return expr.operator.type == MINUS ? -right : right;
+        }
+
+        @Override
+        public double visitVariableExpr(Expr.Variable expr) {
+            if (expr.listIndex != null) {
+                return environment.getListIndex(expr.name, expr.slot, evaluateIndex(expr.name, expr.listIndex));
+            } else if (expr.matrixIndex != null) {
+                return environment.getMatrixIndex(expr.name, expr.slot,
+                        evaluateIndex(expr.name, expr.matrixIndex.first), evaluateIndex(expr.name, expr.matrixIndex.second));
+            }
+
+            return environment.getNumber(expr.slot);
+        }
+
+        @Override
+        public double visitLogicalExpr(Expr.Logical expr) {
+            double left = evaluateDouble(expr.left);
+            double right = evaluateDouble(expr.right);
+
+            if (expr.operator.type == AND) {
+                return (left != FALSE && right != FALSE) ? TRUE : FALSE;
+            } else if (expr.operator.type == OR) {
+                return (left != FALSE || right != FALSE) ? TRUE : FALSE;
+            }
+
+            throw new RuntimeError(expr.operator, "Unexpected logical operator.");
+        }
+
+        @Override
+        public double visitCallExpr(Expr.Call expr) {
+            if (expr.numeric) {
+                // the arguments are numbers and the function is numeric, so it is applied without a list or boxing
+                NumericFunction function = (NumericFunction)expr.function;
+                List<Expr> arguments = expr.arguments;
+                switch (arguments.size()) {
+                    case 1: return function.unary().applyAsDouble(evaluateDouble(arguments.get(0)));
+                    case 2: return function.binary().applyAsDouble(evaluateDouble(arguments.get(0)),
+                            evaluateDouble(arguments.get(1)));
+                    default: return function.ternary().applyAsDouble(evaluateDouble(arguments.get(0)),
+                            evaluateDouble(arguments.get(1)), evaluateDouble(arguments.get(2)));
+                }
+            }
+
+            Object value = evaluate(expr);
+            if (!(value instanceof Double)) throw new RuntimeError(expr.callee, "Expect a number.");
+            return (double)value;
+        }
+
+        @Override
+        public double visitSequenceExpr(Expr.Sequence expr) {
+            throw new RuntimeError(expr.keyword, "Expect a number.");
+        }
+
+        private double evaluateIndex(Token name, Expr index) {
+            if (index.numeric) return evaluateDouble(index);
+
+            Object value = evaluate(index);
+            if (!(value instanceof Double)) throw new RuntimeError(name, "Index must be a number.");
+            return (double)value;
         }
-        return true;
     }
 
 }
@@ -3,18 +3,37 @@ package com.patrickfeltes.interpreter.visitors;
 import com.patrickfeltes.interpreter.ast.Expr;
 import com.patrickfeltes.interpreter.ast.Stmt;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
- * Label marker is a class that walks an AST to find where all Lbl commands are located
+ * Label marker is a class that walks an AST to find where all Lbl commands are located.
+ * Every label is given the path of blocks around it, and every Goto and Menu is given the labels it jumps to,
+ * so that jumps need no lookups while the program runs.
  */
 public class LabelMarker implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     private Map<String, Stmt> labels = new HashMap<>();
 
+    // the blocks around the statement being marked, outermost first
+    private final List<Stmt> enclosing = new ArrayList<>();
+    private final List<Stmt.Goto> gotos = new ArrayList<>();
+    private final List<Stmt.Menu> menus = new ArrayList<>();
+
     public Map<String, Stmt> getLabels(Stmt head) {
         markAll(head);
+
+        for (Stmt.Goto stmt : gotos) {
+            stmt.target = (Stmt.Label) labels.get(stmt.label);
+        }
+        for (Stmt.Menu stmt : menus) {
+            stmt.targets = new Stmt.Label[stmt.labels.size()];
+            for (int i = 0; i < stmt.targets.length; i++) {
+                stmt.targets[i] = (Stmt.Label) labels.get(stmt.labels.get(i));
+            }
+        }
         return labels;
     }
 
@@ -53,6 +72,11 @@ public class LabelMarker implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitSequenceExpr(Expr.Sequence expr) {
+        return null;
+    }
+
     @Override
     public Void visitExpressionStmt(Stmt.Expression stmt) {
         return null;
@@ -80,20 +104,22 @@ public class LabelMarker implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitIfStmt(Stmt.If stmt) {
+        enclosing.add(stmt);
         markAll(stmt.thenHead);
         markAll(stmt.elseHead);
+        enclosing.remove(enclosing.size() - 1);
         return null;
     }
 
     @Override
     public Void visitWhileStmt(Stmt.While stmt) {
-        markAll(stmt.head);
+        markBlock(stmt, stmt.head);
         return null;
     }
 
     @Override
     public Void visitForStmt(Stmt.For stmt) {
-        markAll(stmt.head);
+        markBlock(stmt, stmt.head);
         return null;
     }
 
@@ -102,18 +128,20 @@ public class LabelMarker implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         if (!labels.containsKey(stmt.label)) {
             labels.put(stmt.label, stmt);
         }
+        stmt.path = enclosing.toArray(new Stmt[0]);
 
         return null;
     }
 
     @Override
     public Void visitGotoStmt(Stmt.Goto stmt) {
+        gotos.add(stmt);
         return null;
     }
 
     @Override
     public Void visitRepeatStmt(Stmt.Repeat stmt) {
-        markAll(stmt.head);
+        markBlock(stmt, stmt.head);
         return null;
     }
 
@@ -129,9 +157,16 @@ public class LabelMarker implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitMenuStmt(Stmt.Menu stmt) {
+        menus.add(stmt);
         return null;
     }
 
+    private void markBlock(Stmt owner, Stmt head) {
+        enclosing.add(owner);
+        markAll(head);
+        enclosing.remove(enclosing.size() - 1);
+    }
+
     private void markSingle(Stmt stmt) {
         stmt.accept(this);
     }
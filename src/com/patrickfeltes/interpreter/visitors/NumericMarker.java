@@ -0,0 +1,203 @@
+package com.patrickfeltes.interpreter.visitors;
+
+import com.patrickfeltes.interpreter.ast.Expr;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.functions.NumericFunction;
+
+import java.util.List;
+
+/**
+ * Numeric marker is a class that walks an AST and marks every expression that is guaranteed to evaluate to a number.
+ * Those expressions can then be evaluated without boxing by the interpreter.
+ * Variables and calls must be resolved by the VariableResolver before this pass is run.
+ */
+public class NumericMarker implements Expr.Visitor<Boolean>, Stmt.Visitor<Void> {
+
+    public void markAll(Stmt head) {
+        Stmt statement = head;
+        while (statement != null) {
+            statement.accept(this);
+            statement = statement.next();
+        }
+    }
+
+    /**
+     * Marks a single expression. Also used on expressions that are parsed while the program is running.
+     * @param expr the expression to mark
+     * @return true if the expression is numeric
+     */
+    public boolean mark(Expr expr) {
+        expr.numeric = expr.accept(this);
+        return expr.numeric;
+    }
+
+    @Override
+    public Boolean visitBinaryExpr(Expr.Binary expr) {
+        boolean left = mark(expr.left);
+        boolean right = mark(expr.right);
+        return left && right;
+    }
+
+    @Override
+    public Boolean visitGroupingExpr(Expr.Grouping expr) {
+        return mark(expr.inside);
+    }
+
+    @Override
+    public Boolean visitLiteralExpr(Expr.Literal expr) {
+        if (expr.type == Expr.Literal.LiteralType.LIST) {
+            mark((List<Expr>)expr.value);
+        } else if (expr.type == Expr.Literal.LiteralType.MATRIX) {
+            for (List<Expr> row : (List<List<Expr>>)expr.value) {
+                mark(row);
+            }
+        }
+
+        return expr.type == Expr.Literal.LiteralType.DOUBLE;
+    }
+
+    @Override
+    public Boolean visitUnaryExpr(Expr.Unary expr) {
+        return mark(expr.right);
+    }
+
+    @Override
+    public Boolean visitVariableExpr(Expr.Variable expr) {
+        if (expr.listIndex != null) {
+            mark(expr.listIndex);
+            return true;
+        } else if (expr.matrixIndex != null) {
+            mark(expr.matrixIndex.first);
+            mark(expr.matrixIndex.second);
+            return true;
+        }
+
+        return Environment.isNumberSlot(expr.slot);
+    }
+
+    @Override
+    public Boolean visitLogicalExpr(Expr.Logical expr) {
+        boolean left = mark(expr.left);
+        boolean right = mark(expr.right);
+        return left && right;
+    }
+
+    @Override
+    public Boolean visitCallExpr(Expr.Call expr) {
+        boolean numbers = true;
+        for (Expr argument : expr.arguments) {
+            numbers &= mark(argument);
+        }
+
+        // the result type of most functions depends on their arguments, but a numeric function of the right number
+        // of numbers always gives a number
+        return numbers && expr.function instanceof NumericFunction
+                && ((NumericFunction)expr.function).hasArity(expr.arguments.size());
+    }
+
+    @Override
+    public Boolean visitSequenceExpr(Expr.Sequence expr) {
+        mark(expr.expression);
+        mark(expr.start);
+        mark(expr.end);
+        mark(expr.step);
+        // a list
+        return false;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        mark(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitDispStmt(Stmt.Disp stmt) {
+        mark(stmt.expressions);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignStmt(Stmt.Assign stmt) {
+        mark(stmt.expression);
+        if (stmt.listIndex != null) {
+            mark(stmt.listIndex);
+        } else if (stmt.matrixIndex != null) {
+            mark(stmt.matrixIndex.first);
+            mark(stmt.matrixIndex.second);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitPromptStmt(Stmt.Prompt stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitInputStmt(Stmt.Input stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        mark(stmt.condition);
+        markAll(stmt.thenHead);
+        markAll(stmt.elseHead);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        mark(stmt.condition);
+        markAll(stmt.head);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        mark(stmt.start);
+        mark(stmt.end);
+        mark(stmt.step);
+        markAll(stmt.head);
+        return null;
+    }
+
+    @Override
+    public Void visitLabelStmt(Stmt.Label stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitGotoStmt(Stmt.Goto stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitRepeatStmt(Stmt.Repeat stmt) {
+        mark(stmt.condition);
+        markAll(stmt.head);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitStopStmt(Stmt.Stop stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitMenuStmt(Stmt.Menu stmt) {
+        return null;
+    }
+
+    private void mark(List<Expr> expressions) {
+        for (Expr expression : expressions) {
+            mark(expression);
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package com.patrickfeltes.interpreter.visitors;
+
+import com.patrickfeltes.interpreter.ast.Expr;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.data_types.TiList;
+import com.patrickfeltes.interpreter.data_types.TiMatrix;
+import com.patrickfeltes.interpreter.data_types.TiString;
+import com.patrickfeltes.interpreter.errors.RuntimeError;
+import com.patrickfeltes.interpreter.util.Pair;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.patrickfeltes.interpreter.tokens.TokenType.AND;
+import static com.patrickfeltes.interpreter.tokens.TokenType.MINUS;
+import static com.patrickfeltes.interpreter.tokens.TokenType.OR;
+
+/**
+ * The optimizer is an optional pass that rewrites an AST before the LabelMarker and the other passes see it:
+ * - expressions made only of numbers, strings, lists and matrices are folded into literals, and list and matrix
+ *   literals with constant elements get their value computed once instead of on every evaluation
+ * - If statements with a constant condition are replaced by the branch that is taken, and While loops that never
+ *   run are removed
+ * - statements after a Goto, Menu, Return or Stop are removed, up to the next label a jump can reach, and so are
+ *   statements that only evaluate a constant, like the strings programs use as comments
+ * Code holding a label that a Goto or Menu still jumps to is always kept.
+ */
+public class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+    private static final double TRUE = 1.0;
+    private static final double FALSE = 0.0;
+
+    // the labels that a Goto or Menu of the program jumps to
+    private Set<String> targets;
+
+    private int foldedExpressions = 0;
+    private int removedBranches = 0;
+    // unreachable statements and statements that do nothing
+    private int removedStatements = 0;
+
+    /**
+     * Optimizes a whole program.
+     * @param head the first statement of the program
+     * @return the first statement of the optimized program, which is null if nothing is left
+     */
+    public Stmt optimize(Stmt head) {
+        // removing code can remove the last jump to a label, after which the code around that label can go too
+        while (true) {
+            targets = new HashSet<>();
+            collectTargets(head);
+
+            int changes = foldedExpressions + removedBranches + removedStatements;
+            head = optimizeAll(head);
+            if (foldedExpressions + removedBranches + removedStatements == changes) return head;
+        }
+    }
+
+    public int getFoldedExpressions() {
+        return foldedExpressions;
+    }
+
+    public int getRemovedBranches() {
+        return removedBranches;
+    }
+
+    public int getRemovedStatements() {
+        return removedStatements;
+    }
+
+    public void printReport() {
+        System.out.println("Optimizer: " + foldedExpressions + " constant expressions folded, "
+                + removedBranches + " constant branches removed, "
+                + removedStatements + " dead statements removed");
+    }
+
+    /**
+     * Optimizes a block, linking the new statements together.
+     * @return the first statement of the optimized block
+     */
+    private Stmt optimizeAll(Stmt head) {
+        List<Stmt> statements = new ArrayList<>();
+        boolean reachable = true;
+
+        Stmt statement = head;
+        while (statement != null) {
+            Stmt following = statement.next();
+            // statements that are kept as they are get linked again below
+            statement.setNext(null);
+
+            if (!reachable && !containsTarget(statement)) {
+                removedStatements++;
+            } else {
+                reachable = true;
+                int count = statements.size();
+                for (Stmt replacement = statement.accept(this); replacement != null; replacement = replacement.next()) {
+                    statements.add(replacement);
+                }
+                if (statements.size() > count && endsFlow(statements.get(statements.size() - 1))) {
+                    reachable = false;
+                }
+            }
+
+            statement = following;
+        }
+
+        for (int i = 0; i + 1 < statements.size(); i++) {
+            statements.get(i).setNext(statements.get(i + 1));
+        }
+        return statements.isEmpty() ? null : statements.get(0);
+    }
+
+    private static boolean endsFlow(Stmt stmt) {
+        return stmt instanceof Stmt.Goto || stmt instanceof Stmt.Menu
+                || stmt instanceof Stmt.Return || stmt instanceof Stmt.Stop;
+    }
+
+    private void collectTargets(Stmt stmt) {
+        for (; stmt != null; stmt = stmt.next()) {
+            if (stmt instanceof Stmt.Goto) {
+                targets.add(((Stmt.Goto) stmt).label);
+            } else if (stmt instanceof Stmt.Menu) {
+                targets.addAll(((Stmt.Menu) stmt).labels);
+            }
+
+            for (Stmt block : blocksOf(stmt)) {
+                collectTargets(block);
+            }
+        }
+    }
+
+    /**
+     * @return true if the statement is, or has inside of it, a label that is jumped to
+     */
+    private boolean containsTarget(Stmt stmt) {
+        if (stmt instanceof Stmt.Label) return targets.contains(((Stmt.Label) stmt).label);
+
+        for (Stmt block : blocksOf(stmt)) {
+            if (anyContainsTarget(block)) return true;
+        }
+        return false;
+    }
+
+    private boolean anyContainsTarget(Stmt head) {
+        for (Stmt stmt = head; stmt != null; stmt = stmt.next()) {
+            if (containsTarget(stmt)) return true;
+        }
+        return false;
+    }
+
+    private static Stmt[] blocksOf(Stmt stmt) {
+        if (stmt instanceof Stmt.If) return new Stmt[] { ((Stmt.If) stmt).thenHead, ((Stmt.If) stmt).elseHead };
+        if (stmt instanceof Stmt.While) return new Stmt[] { ((Stmt.While) stmt).head };
+        if (stmt instanceof Stmt.For) return new Stmt[] { ((Stmt.For) stmt).head };
+        if (stmt instanceof Stmt.Repeat) return new Stmt[] { ((Stmt.Repeat) stmt).head };
+        return new Stmt[0];
+    }
+
+    private Expr fold(Expr expr) {
+        return expr == null ? null : expr.accept(this);
+    }
+
+    private List<Expr> foldAll(List<Expr> expressions) {
+        List<Expr> folded = new ArrayList<>(expressions.size());
+        for (Expr expression : expressions) {
+            folded.add(fold(expression));
+        }
+        return folded;
+    }
+
+    /**
+     * @return the value of an expression that has been folded into a literal, or null if it isn't constant
+     */
+    private static Object constantValue(Expr expr) {
+        if (!(expr instanceof Expr.Literal)) return null;
+
+        Expr.Literal literal = (Expr.Literal) expr;
+        switch (literal.type) {
+            case DOUBLE:
+            case STRING:
+                return literal.value;
+        }
+        return literal.constant;
+    }
+
+    /**
+     * Turns the value of a folded expression back into a literal.
+     */
+    private Expr literalOf(Object value) {
+        foldedExpressions++;
+
+        if (value instanceof TiList) {
+            TiList list = (TiList) value;
+            List<Expr> elements = new ArrayList<>(list.size());
+            for (int i = 1; i <= list.size(); i++) {
+                elements.add(new Expr.Literal(list.get(i), Expr.Literal.LiteralType.DOUBLE));
+            }
+            return new Expr.Literal(elements, Expr.Literal.LiteralType.LIST, list);
+        } else if (value instanceof TiMatrix) {
+            TiMatrix matrix = (TiMatrix) value;
+            List<List<Expr>> rows = new ArrayList<>(matrix.getRows());
+            for (int r = 1; r <= matrix.getRows(); r++) {
+                List<Expr> row = new ArrayList<>(matrix.getCols());
+                for (int c = 1; c <= matrix.getCols(); c++) {
+                    row.add(new Expr.Literal(matrix.get(r, c), Expr.Literal.LiteralType.DOUBLE));
+                }
+                rows.add(row);
+            }
+            return new Expr.Literal(rows, Expr.Literal.LiteralType.MATRIX, matrix);
+        } else if (value instanceof TiString) {
+            return new Expr.Literal(value, Expr.Literal.LiteralType.STRING);
+        }
+
+        return new Expr.Literal(value, Expr.Literal.LiteralType.DOUBLE);
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = fold(expr.left);
+        Expr right = fold(expr.right);
+
+        Object leftValue = constantValue(left);
+        Object rightValue = constantValue(right);
+        if (leftValue != null && rightValue != null) {
+            Expr.BinaryOperation operation = BinaryOperations.specialize(expr.operator, leftValue, rightValue);
+            if (operation != null) {
+                try {
+                    return literalOf(operation.apply(leftValue, rightValue));
+                } catch (RuntimeError error) {
+                    // left for the program to report when it gets here
+                }
+            }
+        }
+
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        Expr inside = fold(expr.inside);
+        if (constantValue(inside) != null) return inside;
+
+        return new Expr.Grouping(inside);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        if (expr.constant != null) return expr;
+
+        if (expr.type == Expr.Literal.LiteralType.LIST) {
+            List<Expr> elements = foldAll((List<Expr>) expr.value);
+            List<Double> values = numbersOf(elements);
+            if (values == null) return new Expr.Literal(elements, Expr.Literal.LiteralType.LIST);
+
+            foldedExpressions++;
+            return new Expr.Literal(elements, Expr.Literal.LiteralType.LIST, new TiList(values));
+        } else if (expr.type == Expr.Literal.LiteralType.MATRIX) {
+            List<List<Expr>> rows = new ArrayList<>();
+            List<List<Double>> entries = new ArrayList<>();
+            for (List<Expr> row : (List<List<Expr>>) expr.value) {
+                List<Expr> folded = foldAll(row);
+                rows.add(folded);
+                // only rectangular matrices are folded, anything else is left to fail when it runs
+                List<Double> values = numbersOf(folded);
+                if (entries != null && values != null && values.size() == rows.get(0).size()) {
+                    entries.add(values);
+                } else {
+                    entries = null;
+                }
+            }
+            if (entries == null || entries.isEmpty() || entries.get(0).isEmpty()) {
+                return new Expr.Literal(rows, Expr.Literal.LiteralType.MATRIX);
+            }
+
+            foldedExpressions++;
+            return new Expr.Literal(rows, Expr.Literal.LiteralType.MATRIX, new TiMatrix(entries));
+        }
+
+        return expr;
+    }
+
+    /**
+     * @return the numbers of a list of folded expressions, or null if any of them is not a constant number
+     */
+    private static List<Double> numbersOf(List<Expr> expressions) {
+        List<Double> values = new ArrayList<>(expressions.size());
+        for (Expr expression : expressions) {
+            Object value = constantValue(expression);
+            if (!(value instanceof Double)) return null;
+            values.add((Double) value);
+        }
+        return values;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = fold(expr.right);
+
+        Object value = constantValue(right);
+        if (value instanceof Double) {
+            return literalOf(expr.operator.type == MINUS ? -(double) value : (double) value);
+        }
+
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        Pair<Expr, Expr> matrixIndex = expr.matrixIndex == null ? null
+                : new Pair<>(fold(expr.matrixIndex.first), fold(expr.matrixIndex.second));
+
+        return new Expr.Variable(expr.name, fold(expr.listIndex), matrixIndex);
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = fold(expr.left);
+        Expr right = fold(expr.right);
+
+        Object leftValue = constantValue(left);
+        Object rightValue = constantValue(right);
+        if (leftValue instanceof Double && rightValue instanceof Double) {
+            boolean leftTrue = (double) leftValue != FALSE;
+            boolean rightTrue = (double) rightValue != FALSE;
+            if (expr.operator.type == AND) {
+                return literalOf(leftTrue && rightTrue ? TRUE : FALSE);
+            } else if (expr.operator.type == OR) {
+                return literalOf(leftTrue || rightTrue ? TRUE : FALSE);
+            }
+        }
+
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        return new Expr.Call(expr.callee, foldAll(expr.arguments));
+    }
+
+    @Override
+    public Expr visitSequenceExpr(Expr.Sequence expr) {
+        return new Expr.Sequence(expr.keyword, fold(expr.expression), expr.name, fold(expr.start), fold(expr.end),
+                fold(expr.step));
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = fold(stmt.expression);
+        // a constant on its own line does nothing
+        if (constantValue(expression) != null) {
+            removedStatements++;
+            return null;
+        }
+
+        return new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitDispStmt(Stmt.Disp stmt) {
+        return new Stmt.Disp(foldAll(stmt.expressions));
+    }
+
+    @Override
+    public Stmt visitAssignStmt(Stmt.Assign stmt) {
+        Pair<Expr, Expr> matrixIndex = stmt.matrixIndex == null ? null
+                : new Pair<>(fold(stmt.matrixIndex.first), fold(stmt.matrixIndex.second));
+
+        return new Stmt.Assign(fold(stmt.expression), stmt.name, fold(stmt.listIndex), matrixIndex);
+    }
+
+    @Override
+    public Stmt visitPromptStmt(Stmt.Prompt stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitInputStmt(Stmt.Input stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = fold(stmt.condition);
+        Stmt thenHead = optimizeAll(stmt.thenHead);
+        Stmt elseHead = optimizeAll(stmt.elseHead);
+
+        Object value = constantValue(condition);
+        if (value instanceof Double) {
+            boolean taken = (double) value != FALSE;
+            if (!anyContainsTarget(taken ? elseHead : thenHead)) {
+                removedBranches++;
+                return taken ? thenHead : elseHead;
+            }
+        }
+
+        return new Stmt.If(condition, thenHead, elseHead);
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = fold(stmt.condition);
+        Stmt head = optimizeAll(stmt.head);
+
+        Object value = constantValue(condition);
+        if (value instanceof Double && (double) value == FALSE && !anyContainsTarget(head)) {
+            removedBranches++;
+            return null;
+        }
+
+        return new Stmt.While(condition, head);
+    }
+
+    @Override
+    public Stmt visitForStmt(Stmt.For stmt) {
+        return new Stmt.For(stmt.name, fold(stmt.start), fold(stmt.end), fold(stmt.step), optimizeAll(stmt.head));
+    }
+
+    @Override
+    public Stmt visitLabelStmt(Stmt.Label stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitGotoStmt(Stmt.Goto stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitRepeatStmt(Stmt.Repeat stmt) {
+        return new Stmt.Repeat(fold(stmt.condition), optimizeAll(stmt.head));
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitStopStmt(Stmt.Stop stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitMenuStmt(Stmt.Menu stmt) {
+        return stmt;
+    }
+}
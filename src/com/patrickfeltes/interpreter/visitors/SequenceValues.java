@@ -0,0 +1,75 @@
+package com.patrickfeltes.interpreter.visitors;
+
+import com.patrickfeltes.interpreter.ast.Expr;
+import com.patrickfeltes.interpreter.data_types.TiList;
+import com.patrickfeltes.interpreter.errors.RuntimeError;
+
+import java.util.PrimitiveIterator;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The values of a seq(, made one at a time: its compiled expression for every value of its variable, from start to
+ * end by step. The variable is stored in its slot for every value the same way as the variable of a For loop, adding
+ * the step each time, and gets its old value back once the values are done, like on the calculator.
+ */
+public class SequenceValues implements PrimitiveIterator.OfDouble {
+
+    private final Environment environment;
+    private final int slot;
+    private final DoubleSupplier expression;
+    private final double end;
+    private final double step;
+    // the value of the variable before seq(
+    private final double saved;
+    private double counter;
+
+    public SequenceValues(Environment environment, Expr.Sequence sequence, DoubleSupplier expression,
+                          double start, double end, double step) {
+        if (!(step > 0) && !(step < 0)) {
+            throw new RuntimeError(sequence.keyword, "The step of seq( must not be 0.");
+        }
+
+        this.environment = environment;
+        this.slot = sequence.slot;
+        this.expression = expression;
+        this.end = end;
+        this.step = step;
+        this.saved = environment.getNumber(slot);
+        this.counter = start;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return step > 0 ? counter <= end : counter >= end;
+    }
+
+    @Override
+    public double nextDouble() {
+        environment.assignNumber(slot, counter);
+        double value = expression.getAsDouble();
+        counter += step;
+        return value;
+    }
+
+    /**
+     * Gives the variable back its value from before seq(.
+     */
+    public void close() {
+        environment.assignNumber(slot, saved);
+    }
+
+    /**
+     * Makes the list of every value.
+     */
+    public TiList toList() {
+        try {
+            TiList list = new TiList();
+            while (hasNext()) {
+                list.add(nextDouble());
+            }
+            return list;
+        } finally {
+            close();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.patrickfeltes.interpreter.visitors;
+
+import com.patrickfeltes.interpreter.ast.Expr;
+import com.patrickfeltes.interpreter.ast.Stmt;
+
+import java.util.List;
+
+/**
+ * Variable resolver is a class that walks an AST and binds every variable reference to its storage slot
+ * in the Environment, and every call to its function, so that nothing has to be looked up by name while the program
+ * is running.
+ */
+public class VariableResolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    public void resolve(Stmt head) {
+        resolveAll(head);
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        resolve(expr.inside);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.type == Expr.Literal.LiteralType.LIST) {
+            resolve((List<Expr>)expr.value);
+        } else if (expr.type == Expr.Literal.LiteralType.MATRIX) {
+            for (List<Expr> row : (List<List<Expr>>)expr.value) {
+                resolve(row);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        expr.slot = Environment.slotOf(expr.name);
+        if (expr.listIndex != null) {
+            resolve(expr.listIndex);
+        } else if (expr.matrixIndex != null) {
+            resolve(expr.matrixIndex.first);
+            resolve(expr.matrixIndex.second);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        expr.function = Environment.functionOf(expr.callee);
+        resolve(expr.arguments);
+        return null;
+    }
+
+    @Override
+    public Void visitSequenceExpr(Expr.Sequence expr) {
+        expr.slot = Environment.slotOf(expr.name);
+        resolve(expr.expression);
+        resolve(expr.start);
+        resolve(expr.end);
+        resolve(expr.step);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitDispStmt(Stmt.Disp stmt) {
+        resolve(stmt.expressions);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignStmt(Stmt.Assign stmt) {
+        resolve(stmt.expression);
+        stmt.slot = Environment.slotOf(stmt.name);
+        if (stmt.listIndex != null) {
+            resolve(stmt.listIndex);
+        } else if (stmt.matrixIndex != null) {
+            resolve(stmt.matrixIndex.first);
+            resolve(stmt.matrixIndex.second);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitPromptStmt(Stmt.Prompt stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitInputStmt(Stmt.Input stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        resolve(stmt.condition);
+        resolveAll(stmt.thenHead);
+        resolveAll(stmt.elseHead);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        resolve(stmt.condition);
+        resolveAll(stmt.head);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        stmt.slot = Environment.slotOf(stmt.name);
+        resolve(stmt.start);
+        resolve(stmt.end);
+        resolve(stmt.step);
+        resolveAll(stmt.head);
+        return null;
+    }
+
+    @Override
+    public Void visitLabelStmt(Stmt.Label stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitGotoStmt(Stmt.Goto stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitRepeatStmt(Stmt.Repeat stmt) {
+        resolve(stmt.condition);
+        resolveAll(stmt.head);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitStopStmt(Stmt.Stop stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitMenuStmt(Stmt.Menu stmt) {
+        return null;
+    }
+
+    /**
+     * Resolves a single expression. Also used on expressions that are parsed while the program is running.
+     * @param expr the expression to resolve
+     */
+    public void resolve(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void resolve(List<Expr> expressions) {
+        for (Expr expression : expressions) {
+            resolve(expression);
+        }
+    }
+
+    private void resolveAll(Stmt stmt) {
+        Stmt statement = stmt;
+        while (statement != null) {
+            statement.accept(this);
+            statement = statement.next();
+        }
+    }
+}
@@ -56,6 +56,14 @@ public class LexerTest {
         assertEquals(expected, lexer.lexTokens());
     }
 
+    @Test
+    public void scanTokens_variableL() throws Exception {
+        String program = "L";
+        List<Token> expected = new ArrayList<>();
+        expected.add(new Token(IDENTIFIER, "L", null, 1));
+        expected.add(new Token(EOF, "", null, 1));
+        assertEquals(expected, new Lexer(program).lexTokens());
+    }
 
     // mixture
     @Test
@@ -69,6 +77,20 @@ public class LexerTest {
         assertEquals(expected, lexer.lexTokens());
     }
 
+    @Test
+    public void scanTokens_labelAndGoto() throws Exception {
+        String program = "Lbl A:Goto A";
+        Lexer lexer = new Lexer(program);
+        List<Token> expected = new ArrayList<>();
+        expected.add(new Token(LBL, "Lbl", null, 1));
+        expected.add(new Token(IDENTIFIER, "A", null, 1));
+        expected.add(new Token(EOL, ":", null, 1));
+        expected.add(new Token(GOTO, "Goto", null, 1));
+        expected.add(new Token(IDENTIFIER, "A", null, 1));
+        expected.add(new Token(EOF, "", null, 1));
+        assertEquals(expected, lexer.lexTokens());
+    }
+
     // new lines
     @Test
     public void scanTokens_multiline() throws Exception {
@@ -195,4 +217,74 @@ public class LexerTest {
         expected.add(new Token(EOF, "", null, 1));
         assertEquals(expected, lexer.lexTokens());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void scanTokens_matrixFunctionsAndPostfixOperators() {
+        String program = "det([A]⁻¹)ᵀ";
+        Lexer lexer = new Lexer(program);
+        List<Token> expected = new ArrayList<>();
+        expected.add(new Token(FUNCTION_IDENTIFIER, "det", null, 1));
+        expected.add(new Token(LPAREN, "(", null, 1));
+        expected.add(new Token(MATRIX_IDENTIFIER, "[A]", null, 1));
+        expected.add(new Token(INVERSE, "⁻¹", null, 1));
+        expected.add(new Token(RPAREN, ")", null, 1));
+        expected.add(new Token(TRANSPOSE, "ᵀ", null, 1));
+        expected.add(new Token(EOF, "", null, 1));
+        assertEquals(expected, lexer.lexTokens());
+    }
+
+    @Test
+    public void scanTokens_numericFunctionsAndProbabilityOperators() {
+        String program = "sin⁻¹(e^(1))+5nCr2!";
+        Lexer lexer = new Lexer(program);
+        List<Token> expected = new ArrayList<>();
+        expected.add(new Token(FUNCTION_IDENTIFIER, "sin⁻¹", null, 1));
+        expected.add(new Token(LPAREN, "(", null, 1));
+        expected.add(new Token(FUNCTION_IDENTIFIER, "e^", null, 1));
+        expected.add(new Token(LPAREN, "(", null, 1));
+        expected.add(new Token(NUMBER, "1", 1.0, 1));
+        expected.add(new Token(RPAREN, ")", null, 1));
+        expected.add(new Token(RPAREN, ")", null, 1));
+        expected.add(new Token(PLUS, "+", null, 1));
+        expected.add(new Token(NUMBER, "5", 5.0, 1));
+        expected.add(new Token(NCR, "nCr", null, 1));
+        expected.add(new Token(NUMBER, "2", 2.0, 1));
+        expected.add(new Token(EXCLAMATION, "!", null, 1));
+        expected.add(new Token(EOF, "", null, 1));
+        assertEquals(expected, lexer.lexTokens());
+    }
+
+    @Test
+    public void scanTokens_statisticsCommandsAndResults() {
+        String program = "2-Var Stats L₁,L₂:x̄+Σx²-Q₁*r²";
+        Lexer lexer = new Lexer(program);
+        List<Token> expected = new ArrayList<>();
+        expected.add(new Token(COMMAND_IDENTIFIER, "2-Var Stats", null, 1));
+        expected.add(new Token(LIST_IDENTIFIER, "L₁", null, 1));
+        expected.add(new Token(COMMA, ",", null, 1));
+        expected.add(new Token(LIST_IDENTIFIER, "L₂", null, 1));
+        expected.add(new Token(EOL, ":", null, 1));
+        expected.add(new Token(IDENTIFIER, "x̄", null, 1));
+        expected.add(new Token(PLUS, "+", null, 1));
+        expected.add(new Token(IDENTIFIER, "Σx²", null, 1));
+        expected.add(new Token(MINUS, "-", null, 1));
+        expected.add(new Token(IDENTIFIER, "Q₁", null, 1));
+        expected.add(new Token(MUL, "*", null, 1));
+        expected.add(new Token(IDENTIFIER, "r²", null, 1));
+        expected.add(new Token(EOF, "", null, 1));
+        assertEquals(expected, lexer.lexTokens());
+    }
+
+    @Test
+    public void scanTokens_squareAfterVariablesButNotInStatistics() {
+        String program = "I²+r²";
+        Lexer lexer = new Lexer(program);
+        List<Token> expected = new ArrayList<>();
+        expected.add(new Token(IDENTIFIER, "I", null, 1));
+        expected.add(new Token(SQUARE, "²", null, 1));
+        expected.add(new Token(PLUS, "+", null, 1));
+        expected.add(new Token(IDENTIFIER, "r²", null, 1));
+        expected.add(new Token(EOF, "", null, 1));
+        assertEquals(expected, lexer.lexTokens());
+    }
+}
@@ -0,0 +1,47 @@
+package com.patrickfeltes.interpreter;
+
+import com.patrickfeltes.interpreter.ast.Parser;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.compiler.ClosureCompiler;
+import com.patrickfeltes.interpreter.compiler.JvmCompiler;
+import com.patrickfeltes.interpreter.compiler.VirtualMachine;
+import com.patrickfeltes.interpreter.visitors.Environment;
+import com.patrickfeltes.interpreter.visitors.Interpreter;
+import com.patrickfeltes.interpreter.visitors.LabelMarker;
+import com.patrickfeltes.interpreter.visitors.NumericMarker;
+import com.patrickfeltes.interpreter.visitors.VariableResolver;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Runs programs in tests the way Main does, on any of the engines.
+ */
+public class Programs {
+
+    // the interpreter, without tiered compilation, and the compiled engines
+    public static final List<Supplier<Engine>> ENGINES = Arrays.asList(
+            () -> new Interpreter(0, false), ClosureCompiler::new, VirtualMachine::new, JvmCompiler::new);
+
+    public static Stmt parse(String program) {
+        return new Parser(new Lexer(program).lexTokens()).parse();
+    }
+
+    /**
+     * Marks the labels, variables and numeric expressions of a parsed program, then runs it.
+     * @return the environment the program ran in
+     */
+    public static Environment run(Engine engine, Stmt head) {
+        Map<String, Stmt> labels = new LabelMarker().getLabels(head);
+        new VariableResolver().resolve(head);
+        new NumericMarker().markAll(head);
+        engine.interpret(labels, head);
+        return engine.getEnvironment();
+    }
+
+    public static Environment run(Supplier<Engine> engine, String program) {
+        return run(engine.get(), parse(program));
+    }
+}
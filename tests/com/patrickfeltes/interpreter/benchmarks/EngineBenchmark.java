@@ -0,0 +1,79 @@
+package com.patrickfeltes.interpreter.benchmarks;
+
+import com.patrickfeltes.interpreter.Engine;
+import com.patrickfeltes.interpreter.Lexer;
+import com.patrickfeltes.interpreter.ast.Parser;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.compiler.ClosureCompiler;
+import com.patrickfeltes.interpreter.compiler.JvmCompiler;
+import com.patrickfeltes.interpreter.compiler.VirtualMachine;
+import com.patrickfeltes.interpreter.visitors.Interpreter;
+import com.patrickfeltes.interpreter.visitors.LabelMarker;
+import com.patrickfeltes.interpreter.visitors.NumericMarker;
+import com.patrickfeltes.interpreter.visitors.VariableResolver;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Compares how long each engine takes to run tight While, For and Lbl/Goto loops.
+ * Run the main method directly.
+ */
+public class EngineBenchmark {
+
+    private static final int ITERATIONS = 2_000_000;
+    private static final int RUNS = 7;
+
+    private static final String WHILE_LOOP =
+            "1->A\n0->P\nWhile A<=" + ITERATIONS + "\nP+A*2->P\nA+1->A\nEnd";
+
+    private static final String FOR_LOOP =
+            "0->S\nFor(I,1," + ITERATIONS + ")\nIf I>5 and S<1000000\nThen\nS+I/2->S\nElse\nS-1->S\nEnd\nEnd";
+
+    private static final String GOTO_LOOP =
+            "0->I\nLbl A\nI+1->I\nIf I<" + ITERATIONS + "\nThen\nGoto A\nEnd";
+
+    public static void main(String[] args) {
+        run("While", WHILE_LOOP);
+        run("For", FOR_LOOP);
+        run("Goto", GOTO_LOOP);
+    }
+
+    private static void run(String name, String program) {
+        // the interpreter on its own, without compiling hot loops
+        double interpreter = measure(program, () -> new Interpreter(0, false));
+        double tiered = measure(program, Interpreter::new);
+        double closure = measure(program, ClosureCompiler::new);
+        double bytecode = measure(program, VirtualMachine::new);
+        double jvm = measure(program, JvmCompiler::new);
+
+        System.out.printf("%-6s interpreter: %7.2f ms%n", name, interpreter);
+        System.out.printf("%-6s tiered:      %7.2f ms (%.1fx)%n", name, tiered, interpreter / tiered);
+        System.out.printf("%-6s closure:     %7.2f ms (%.1fx)%n", name, closure, interpreter / closure);
+        System.out.printf("%-6s bytecode:    %7.2f ms (%.1fx)%n", name, bytecode, interpreter / bytecode);
+        System.out.printf("%-6s jvm:         %7.2f ms (%.1fx)%n", name, jvm, interpreter / jvm);
+    }
+
+    /**
+     * Runs the program several times on fresh engines.
+     * @return the median run time in milliseconds
+     */
+    static double measure(String program, Supplier<Engine> engines) {
+        double[] times = new double[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            Stmt head = new Parser(new Lexer(program).lexTokens()).parse();
+            Map<String, Stmt> labels = new LabelMarker().getLabels(head);
+            new VariableResolver().resolve(head);
+            new NumericMarker().markAll(head);
+            Engine engine = engines.get();
+
+            long start = System.nanoTime();
+            engine.interpret(labels, head);
+            times[i] = (System.nanoTime() - start) / 1e6;
+        }
+
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+}
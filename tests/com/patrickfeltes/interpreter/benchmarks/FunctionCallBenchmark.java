@@ -0,0 +1,26 @@
+package com.patrickfeltes.interpreter.benchmarks;
+
+import com.patrickfeltes.interpreter.compiler.ClosureCompiler;
+import com.patrickfeltes.interpreter.compiler.JvmCompiler;
+import com.patrickfeltes.interpreter.compiler.VirtualMachine;
+import com.patrickfeltes.interpreter.visitors.Interpreter;
+
+/**
+ * Measures how long each engine takes to run a loop that calls a built-in function of numbers on every iteration.
+ * Run the main method directly.
+ */
+public class FunctionCallBenchmark {
+
+    private static final int ITERATIONS = 2_000_000;
+
+    private static final String CALL_LOOP =
+            "0->S\nFor(I,1," + ITERATIONS + ")\nS+abs(I-" + ITERATIONS / 2 + ")*abs(S-I)->S\nEnd";
+
+    public static void main(String[] args) {
+        System.out.printf("interpreter: %8.2f ms%n", EngineBenchmark.measure(CALL_LOOP, () -> new Interpreter(0, false)));
+        System.out.printf("tiered:      %8.2f ms%n", EngineBenchmark.measure(CALL_LOOP, Interpreter::new));
+        System.out.printf("closure:     %8.2f ms%n", EngineBenchmark.measure(CALL_LOOP, ClosureCompiler::new));
+        System.out.printf("bytecode:    %8.2f ms%n", EngineBenchmark.measure(CALL_LOOP, VirtualMachine::new));
+        System.out.printf("jvm:         %8.2f ms%n", EngineBenchmark.measure(CALL_LOOP, JvmCompiler::new));
+    }
+}
@@ -0,0 +1,45 @@
+package com.patrickfeltes.interpreter.benchmarks;
+
+import com.patrickfeltes.interpreter.Lexer;
+import com.patrickfeltes.interpreter.ast.Parser;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.visitors.Interpreter;
+import com.patrickfeltes.interpreter.visitors.LabelMarker;
+import com.patrickfeltes.interpreter.visitors.NumericMarker;
+import com.patrickfeltes.interpreter.visitors.VariableResolver;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Measures how many Goto jumps per second the interpreter makes in a Lbl/Goto loop.
+ * Run the main method directly.
+ */
+public class GotoBenchmark {
+
+    private static final int JUMPS = 2_000_000;
+    private static final int RUNS = 7;
+
+    // the Goto sits inside an If block, so every jump leaves a block
+    private static final String GOTO_LOOP =
+            "0->I\nLbl A\nI+1->I\nIf I<" + JUMPS + "\nThen\nGoto A\nEnd";
+
+    public static void main(String[] args) {
+        double[] times = new double[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            Stmt head = new Parser(new Lexer(GOTO_LOOP).lexTokens()).parse();
+            Map<String, Stmt> labels = new LabelMarker().getLabels(head);
+            new VariableResolver().resolve(head);
+            new NumericMarker().markAll(head);
+            Interpreter interpreter = new Interpreter(0, false);
+
+            long start = System.nanoTime();
+            interpreter.interpret(labels, head);
+            times[i] = (System.nanoTime() - start) / 1e9;
+        }
+
+        Arrays.sort(times);
+        double median = times[RUNS / 2];
+        System.out.printf("%d jumps in %.3f s: %.0f jumps/second%n", JUMPS, median, JUMPS / median);
+    }
+}
@@ -0,0 +1,109 @@
+package com.patrickfeltes.interpreter.benchmarks;
+
+import com.patrickfeltes.interpreter.data_types.Parallelism;
+import com.patrickfeltes.interpreter.data_types.TiList;
+import com.patrickfeltes.interpreter.data_types.TiMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Measures the throughput of the element-wise list and matrix operations across sizes, in millions of elements per
+ * second. Run the main method directly; to compare against scalar code, run it again with -XX:-UseSuperWord, which
+ * stops the JIT from turning the loops into SIMD instructions.
+ * The operations run on one thread, unless a parallelism is given as the first argument, in which case operations on
+ * 65536 elements or more are split into that many pieces.
+ */
+public class KernelBenchmark {
+
+    private static final int[] SIZES = { 16, 256, 4_096, 65_536, 1_048_576 };
+    // every measurement goes through about this many elements
+    private static final long ELEMENTS_PER_RUN = 50_000_000L;
+    private static final int RUNS = 5;
+
+    private interface Operation {
+        Object apply();
+    }
+
+    private static Object sink;
+
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            new Parallelism(Parallelism.DEFAULT_THRESHOLD, Integer.parseInt(args[0])).enter();
+        } else {
+            Parallelism.SERIAL.enter();
+        }
+
+        System.out.printf("%-12s", "size");
+        for (int size : SIZES) {
+            System.out.printf("%12d", size);
+        }
+        System.out.println();
+
+        for (String name : new String[] { "add", "sub", "mul", "div", "scale", "addScalar", "matrix add", "matrix scale" }) {
+            System.out.printf("%-12s", name);
+            for (int size : SIZES) {
+                System.out.printf("%12.0f", measure(operation(name, size), size));
+            }
+            System.out.println();
+        }
+    }
+
+    private static Operation operation(String name, int size) {
+        TiList left = list(size, 1);
+        TiList right = list(size, 2);
+        // matrices with rows of 64 elements
+        TiMatrix leftMatrix = matrix(size, 1);
+        TiMatrix rightMatrix = matrix(size, 2);
+
+        switch (name) {
+            case "add": return () -> TiList.add(left, right, null);
+            case "sub": return () -> TiList.sub(left, right, null);
+            case "mul": return () -> TiList.mul(left, right, null);
+            case "div": return () -> TiList.div(left, right, null);
+            case "scale": return () -> TiList.scale(left, 1.5);
+            case "addScalar": return () -> TiList.addScalar(left, 1.5);
+            case "matrix add": return () -> TiMatrix.add(leftMatrix, rightMatrix, null);
+            case "matrix scale": return () -> TiMatrix.scale(leftMatrix, 1.5);
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    /**
+     * @return millions of elements per second
+     */
+    private static double measure(Operation operation, int size) {
+        long repetitions = Math.max(1, ELEMENTS_PER_RUN / size);
+        double[] rates = new double[RUNS];
+        // the first run is a warm up
+        for (int run = -1; run < RUNS; run++) {
+            long start = System.nanoTime();
+            for (long i = 0; i < repetitions; i++) {
+                sink = operation.apply();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (run >= 0) rates[run] = repetitions * size / seconds / 1e6;
+        }
+
+        Arrays.sort(rates);
+        return rates[RUNS / 2];
+    }
+
+    private static TiList list(int size, double seed) {
+        double[] elements = new double[size];
+        for (int i = 0; i < size; i++) {
+            elements[i] = seed + i * 0.25;
+        }
+        return new TiList(elements);
+    }
+
+    private static TiMatrix matrix(int size, double seed) {
+        int cols = Math.min(size, 64);
+        double[][] entries = new double[size / cols][cols];
+        for (int r = 0; r < entries.length; r++) {
+            for (int c = 0; c < cols; c++) {
+                entries[r][c] = seed + (r * cols + c) * 0.25;
+            }
+        }
+        return new TiMatrix(entries);
+    }
+}
@@ -0,0 +1,105 @@
+package com.patrickfeltes.interpreter.benchmarks;
+
+import com.patrickfeltes.interpreter.Lexer;
+import com.patrickfeltes.interpreter.ast.Parser;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.visitors.Interpreter;
+import com.patrickfeltes.interpreter.visitors.LabelMarker;
+import com.patrickfeltes.interpreter.visitors.NumericMarker;
+import com.patrickfeltes.interpreter.visitors.VariableResolver;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Measures the time and the bytes allocated to build a large list one element at a time, to do element-wise
+ * arithmetic on it, to evaluate an element-wise expression with several operators, to store it from one list variable
+ * to another, and to update it in place.
+ * Run the main method directly.
+ */
+public class ListBenchmark {
+
+    private static final int ELEMENTS = 200_000;
+    private static final int OPERATIONS = 20;
+    private static final int RUNS = 7;
+
+    private static final String BUILD =
+            "{0}->L₁\nFor(I,1," + ELEMENTS + ")\nI->L₁(I)\nEnd";
+
+    private static final String ARITHMETIC =
+            BUILD + "\nFor(J,1," + OPERATIONS + ")\nL₁*2+1->L₂\nL₂/L₁->L₃\nEnd";
+
+    // each expression runs as one fused pass over the elements
+    private static final String FUSED =
+            BUILD + "\nL₁+1->L₂\nL₁+2->L₃\nFor(J,1," + OPERATIONS + ")\n(L₁-L₂)^2/L₃->L₄\nL₁*2+L₂*3-L₃->L₅\n(L₁+L₂)/(L₁-L₃)->L₆\nEnd";
+
+    private static final String STORES =
+            BUILD + "\nFor(J,1," + OPERATIONS + ")\nL₁->L₂\nL₂->L₃\nL₃->L₄\nEnd";
+
+    // stores an element-wise expression back into one of its operands, which the interpreter does in place
+    private static final String UPDATES =
+            BUILD + "\nFor(J,1," + OPERATIONS + ")\nL₁*2+1->L₁\n(L₁-1)/2->L₁\nL₁+L₁*0->L₁\nEnd";
+
+    public static void main(String[] args) {
+        double[] buildTimes = new double[RUNS];
+        double[] arithmeticTimes = new double[RUNS];
+        double[] fusedTimes = new double[RUNS];
+        double[] storeTimes = new double[RUNS];
+        double[] updateTimes = new double[RUNS];
+        long[] build = null;
+        long[] arithmetic = null;
+        long[] fused = null;
+        long[] stores = null;
+        long[] updates = null;
+        for (int i = 0; i < RUNS; i++) {
+            build = measure(BUILD);
+            arithmetic = measure(ARITHMETIC);
+            fused = measure(FUSED);
+            stores = measure(STORES);
+            updates = measure(UPDATES);
+            buildTimes[i] = build[0] / 1e6;
+            arithmeticTimes[i] = arithmetic[0] / 1e6;
+            fusedTimes[i] = fused[0] / 1e6;
+            storeTimes[i] = stores[0] / 1e6;
+            updateTimes[i] = updates[0] / 1e6;
+        }
+
+        double buildTime = median(buildTimes);
+        System.out.printf("append %d elements:  %8.2f ms, %10.2f MB allocated%n",
+                ELEMENTS, buildTime, build[1] / 1e6);
+        System.out.printf("%d element-wise ops: %8.2f ms, %10.2f MB allocated%n",
+                OPERATIONS * 3, median(arithmeticTimes) - buildTime, (arithmetic[1] - build[1]) / 1e6);
+        System.out.printf("%d fused expressions: %8.2f ms, %10.2f MB allocated%n",
+                OPERATIONS * 3, median(fusedTimes) - buildTime, (fused[1] - build[1]) / 1e6);
+        System.out.printf("%d list stores:      %8.2f ms, %10.2f MB allocated%n",
+                OPERATIONS * 3, median(storeTimes) - buildTime, (stores[1] - build[1]) / 1e6);
+        System.out.printf("%d in-place updates:  %8.2f ms, %10.2f MB allocated%n",
+                OPERATIONS * 3, median(updateTimes) - buildTime, (updates[1] - build[1]) / 1e6);
+    }
+
+    private static double median(double[] times) {
+        Arrays.sort(times);
+        return times[times.length / 2];
+    }
+
+    /**
+     * @return the time taken in nanoseconds and the bytes allocated
+     */
+    private static long[] measure(String program) {
+        Stmt head = new Parser(new Lexer(program).lexTokens()).parse();
+        Map<String, Stmt> labels = new LabelMarker().getLabels(head);
+        new VariableResolver().resolve(head);
+        new NumericMarker().markAll(head);
+        Interpreter interpreter = new Interpreter(0, false);
+
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long bytes = bean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        interpreter.interpret(labels, head);
+        long time = System.nanoTime() - start;
+        return new long[] { time, bean.getThreadAllocatedBytes(threadId) - bytes };
+    }
+}
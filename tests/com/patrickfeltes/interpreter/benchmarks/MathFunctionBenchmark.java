@@ -0,0 +1,83 @@
+package com.patrickfeltes.interpreter.benchmarks;
+
+import com.patrickfeltes.interpreter.compiler.ClosureCompiler;
+import com.patrickfeltes.interpreter.compiler.JvmCompiler;
+import com.patrickfeltes.interpreter.compiler.VirtualMachine;
+import com.patrickfeltes.interpreter.data_types.Parallelism;
+import com.patrickfeltes.interpreter.data_types.TiList;
+import com.patrickfeltes.interpreter.functions.Function;
+import com.patrickfeltes.interpreter.tokens.Token;
+import com.patrickfeltes.interpreter.tokens.TokenType;
+import com.patrickfeltes.interpreter.visitors.Environment;
+import com.patrickfeltes.interpreter.visitors.Interpreter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures the throughput of the built-in numeric functions: calls on numbers in a loop on each engine, and calls on
+ * a whole list, element by element, against calling the function once per boxed element.
+ * Run the main method directly.
+ */
+public class MathFunctionBenchmark {
+
+    private static final int ITERATIONS = 1_000_000;
+    private static final int LIST_SIZE = 1 << 22;
+    private static final int RUNS = 7;
+
+    private static final String CALL_LOOP = "0->S\nFor(I,1," + ITERATIONS + ")\n"
+            + "S+sqrt(I)+sin(I)*cos(I)+int(I/3)+remainder(I,7)+round(ln(I),2)+max(I,500)->S\nEnd";
+
+    private static Object sink;
+
+    public static void main(String[] args) {
+        System.out.println("Loop of " + ITERATIONS + " iterations, 7 function calls each, million calls per second:");
+        print("interpreter", EngineBenchmark.measure(CALL_LOOP, () -> new Interpreter(0, false)));
+        print("closure", EngineBenchmark.measure(CALL_LOOP, ClosureCompiler::new));
+        print("bytecode", EngineBenchmark.measure(CALL_LOOP, VirtualMachine::new));
+        print("jvm", EngineBenchmark.measure(CALL_LOOP, JvmCompiler::new));
+
+        System.out.println("sqrt( of a list of " + LIST_SIZE + " elements, million elements per second:");
+        Token callee = new Token(TokenType.FUNCTION_IDENTIFIER, "sqrt", null, 1);
+        Function sqrt = Environment.functionOf(callee);
+        double[] elements = new double[LIST_SIZE];
+        for (int i = 0; i < LIST_SIZE; i++) {
+            elements[i] = i;
+        }
+        TiList list = new TiList(elements);
+
+        Parallelism.SERIAL.enter();
+        System.out.printf("%-12s%10.1f%n", "boxed", LIST_SIZE / 1e3 / measure(() -> {
+            List<Double> results = new ArrayList<>(LIST_SIZE);
+            for (int i = 1; i <= LIST_SIZE; i++) {
+                results.add((Double)sqrt.call(callee, null, Collections.singletonList(list.get(i))));
+            }
+            sink = results;
+        }));
+        System.out.printf("%-12s%10.1f%n", "list", LIST_SIZE / 1e3 / measure(() ->
+                sink = sqrt.call(callee, null, Collections.singletonList(list))));
+        Parallelism.defaults().enter();
+        System.out.printf("%-12s%10.1f%n", "parallel", LIST_SIZE / 1e3 / measure(() ->
+                sink = sqrt.call(callee, null, Collections.singletonList(list))));
+    }
+
+    private static void print(String engine, double millis) {
+        System.out.printf("%-12s%10.1f%n", engine, 7 * ITERATIONS / 1e3 / millis);
+    }
+
+    /**
+     * @return the median time of a run in milliseconds
+     */
+    private static double measure(Runnable run) {
+        double[] times = new double[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            run.run();
+            times[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+}
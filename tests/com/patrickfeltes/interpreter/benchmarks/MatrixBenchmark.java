@@ -0,0 +1,60 @@
+package com.patrickfeltes.interpreter.benchmarks;
+
+import com.patrickfeltes.interpreter.data_types.Parallelism;
+import com.patrickfeltes.interpreter.data_types.TiMatrix;
+
+import java.util.Random;
+
+/**
+ * Measures the time to multiply two square matrices, from 3x3 up to 2000x2000, in microseconds per multiplication and
+ * in billions of multiply-adds per second. Run the main method directly; the multiplications run on one thread,
+ * unless a parallelism is given as the first argument.
+ */
+public class MatrixBenchmark {
+
+    private static final int[] SIZES = { 3, 10, 50, 100, 250, 500, 1000, 2000 };
+    // every size is multiplied for at least this long
+    private static final long NANOS_PER_SIZE = 1_000_000_000L;
+
+    private static Object sink;
+
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            new Parallelism(Parallelism.DEFAULT_THRESHOLD, Integer.parseInt(args[0])).enter();
+        } else {
+            Parallelism.SERIAL.enter();
+        }
+
+        System.out.printf("%-12s%16s%16s%n", "size", "us per mul", "G mul-adds/s");
+        for (int size : SIZES) {
+            TiMatrix left = random(size, 1);
+            TiMatrix right = random(size, 2);
+
+            // warm up
+            sink = TiMatrix.mul(left, right, null);
+
+            long multiplications = 0;
+            long start = System.nanoTime();
+            long time;
+            do {
+                sink = TiMatrix.mul(left, right, null);
+                multiplications++;
+                time = System.nanoTime() - start;
+            } while (time < NANOS_PER_SIZE);
+
+            double nanos = (double) time / multiplications;
+            System.out.printf("%-12s%16.1f%16.2f%n", size + "x" + size, nanos / 1e3, (double) size * size * size / nanos);
+        }
+    }
+
+    private static TiMatrix random(int size, long seed) {
+        Random random = new Random(seed);
+        double[][] entries = new double[size][size];
+        for (int r = 0; r < size; r++) {
+            for (int c = 0; c < size; c++) {
+                entries[r][c] = random.nextDouble();
+            }
+        }
+        return new TiMatrix(entries);
+    }
+}
@@ -0,0 +1,66 @@
+package com.patrickfeltes.interpreter.benchmarks;
+
+import com.patrickfeltes.interpreter.Lexer;
+import com.patrickfeltes.interpreter.ast.Parser;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.visitors.Interpreter;
+import com.patrickfeltes.interpreter.visitors.LabelMarker;
+import com.patrickfeltes.interpreter.visitors.NumericMarker;
+import com.patrickfeltes.interpreter.visitors.VariableResolver;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * Measures how many bytes the interpreter allocates per loop iteration, with and without the unboxed numeric path.
+ * Run the main method directly; the boxed numbers are what every expression cost before the NumericMarker existed.
+ */
+public class NumericAllocationBenchmark {
+
+    private static final int ITERATIONS = 1_000_000;
+
+    // the loop from Factorial.bas, without the prompt
+    private static final String WHILE_LOOP =
+            "1->A\n1->P\nWhile A<=" + ITERATIONS + "\nP*A->P\nA+1->A\nEnd";
+
+    private static final String FOR_LOOP =
+            "0->S\nFor(I,1," + ITERATIONS + ")\nS+I*2-1->S\nIf S>10 and I<5\nThen\n0->S\nEnd\nEnd";
+
+    public static void main(String[] args) {
+        run("While", WHILE_LOOP);
+        run("For", FOR_LOOP);
+    }
+
+    private static void run(String name, String program) {
+        // warm up both paths so that the measured runs are not dominated by class loading and compilation
+        for (int i = 0; i < 5; i++) {
+            execute(program, true);
+            execute(program, false);
+        }
+
+        System.out.printf("%-6s boxed:   %8.2f bytes/iteration%n", name, measure(program, false));
+        System.out.printf("%-6s unboxed: %8.2f bytes/iteration%n", name, measure(program, true));
+    }
+
+    private static double measure(String program, boolean unboxed) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long before = bean.getThreadAllocatedBytes(threadId);
+        execute(program, unboxed);
+        long after = bean.getThreadAllocatedBytes(threadId);
+
+        return (after - before) / (double) ITERATIONS;
+    }
+
+    private static void execute(String program, boolean unboxed) {
+        Stmt head = new Parser(new Lexer(program).lexTokens()).parse();
+        Map<String, Stmt> labels = new LabelMarker().getLabels(head);
+        new VariableResolver().resolve(head);
+        if (unboxed) {
+            new NumericMarker().markAll(head);
+        }
+        // loops are never compiled, so that only the interpreter is measured
+        new Interpreter(0, false).interpret(labels, head);
+    }
+}
@@ -0,0 +1,71 @@
+package com.patrickfeltes.interpreter.benchmarks;
+
+import com.patrickfeltes.interpreter.data_types.OffHeapDoubles;
+import com.patrickfeltes.interpreter.data_types.Parallelism;
+import com.patrickfeltes.interpreter.data_types.TiList;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Measures element-wise operations on a list of 16 million elements stored on the heap and off the heap: the time
+ * per operation, the time spent collecting garbage, and the heap in use while the lists are alive. Run the main
+ * method directly, with a heap of at least 2 GB.
+ */
+public class OffHeapBenchmark {
+
+    private static final int SIZE = 1 << 24;
+    private static final int OPERATIONS = 20;
+
+    private static Object sink;
+
+    public static void main(String[] args) {
+        Parallelism.SERIAL.enter();
+
+        System.out.printf("%-10s%14s%14s%14s%n", "storage", "ms per op", "GC ms", "heap MB");
+        run("heap", Integer.MAX_VALUE);
+        run("off-heap", 1);
+    }
+
+    private static void run(String name, long threshold) {
+        OffHeapDoubles.setThreshold(threshold);
+        TiList list = random();
+        TiList other = random();
+
+        // warm up
+        sink = TiList.add(TiList.scale(list, 2), other, null);
+
+        long collections = gcMillis();
+        long start = System.nanoTime();
+        TiList result = list;
+        for (int i = 0; i < OPERATIONS; i++) {
+            result = TiList.add(TiList.scale(list, 2), other, null);
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / OPERATIONS;
+        long gc = gcMillis() - collections;
+
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        double heap = (runtime.totalMemory() - runtime.freeMemory()) / 1e6;
+        sink = result;
+        System.out.printf("%-10s%14.1f%14d%14.1f%n", name, millis, gc, heap);
+    }
+
+    private static TiList random() {
+        Random random = new Random(SIZE);
+        TiList list = new TiList();
+        for (int i = 0; i < SIZE; i++) {
+            list.add(random.nextDouble());
+        }
+        return list;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += bean.getCollectionTime();
+        }
+        return millis;
+    }
+}
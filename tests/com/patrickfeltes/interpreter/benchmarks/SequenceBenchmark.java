@@ -0,0 +1,66 @@
+package com.patrickfeltes.interpreter.benchmarks;
+
+import com.patrickfeltes.interpreter.Engine;
+import com.patrickfeltes.interpreter.Lexer;
+import com.patrickfeltes.interpreter.ast.Parser;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.compiler.ClosureCompiler;
+import com.patrickfeltes.interpreter.visitors.Interpreter;
+import com.patrickfeltes.interpreter.visitors.LabelMarker;
+import com.patrickfeltes.interpreter.visitors.NumericMarker;
+import com.patrickfeltes.interpreter.visitors.VariableResolver;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Measures sum(seq( with the values of the seq( going straight into sum(, against storing the seq( in a list first
+ * and adding that up, and against the For loop that adds the values up itself. Run the main method directly.
+ */
+public class SequenceBenchmark {
+
+    private static final int VALUES = 1_000_000;
+
+    private static final String FUSED = "sum(seq(I²,I,1," + VALUES + "))->S";
+    private static final String STORED = "seq(I²,I,1," + VALUES + ")->L₁\nsum(L₁)->S";
+    private static final String FOR_LOOP = "0->S\nFor(I,1," + VALUES + ")\nS+I²->S\nEnd";
+
+    public static void main(String[] args) {
+        run("interpreter", () -> new Interpreter(0, false));
+        run("closure", ClosureCompiler::new);
+    }
+
+    private static void run(String name, Supplier<Engine> engine) {
+        for (int i = 0; i < 5; i++) {
+            execute(FUSED, engine);
+            execute(STORED, engine);
+            execute(FOR_LOOP, engine);
+        }
+
+        measure(name + " sum(seq(", FUSED, engine);
+        measure(name + " seq(->L1, sum(L1)", STORED, engine);
+        measure(name + " For loop", FOR_LOOP, engine);
+    }
+
+    private static void measure(String name, String program, Supplier<Engine> engine) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long bytes = bean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        execute(program, engine);
+        long time = System.nanoTime() - start;
+        bytes = bean.getThreadAllocatedBytes(threadId) - bytes;
+
+        System.out.printf("%-36s %7.1f ms %10.2f bytes/value%n", name, time / 1e6, bytes / (double) VALUES);
+    }
+
+    private static void execute(String program, Supplier<Engine> engine) {
+        Stmt head = new Parser(new Lexer(program).lexTokens()).parse();
+        Map<String, Stmt> labels = new LabelMarker().getLabels(head);
+        new VariableResolver().resolve(head);
+        new NumericMarker().markAll(head);
+        engine.get().interpret(labels, head);
+    }
+}
@@ -0,0 +1,78 @@
+package com.patrickfeltes.interpreter.benchmarks;
+
+import com.patrickfeltes.interpreter.Lexer;
+import com.patrickfeltes.interpreter.ast.Parser;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.data_types.Parallelism;
+import com.patrickfeltes.interpreter.data_types.TiList;
+import com.patrickfeltes.interpreter.visitors.Interpreter;
+import com.patrickfeltes.interpreter.visitors.LabelMarker;
+import com.patrickfeltes.interpreter.visitors.NumericMarker;
+import com.patrickfeltes.interpreter.visitors.VariableResolver;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures SortA( against the bubble sort programs had to write without it, and sorting large lists with and
+ * without splitting across threads, on their own and with a companion list. Run the main method directly.
+ */
+public class SortBenchmark {
+
+    private static final int BUBBLE_SIZE = 300;
+    private static final int LARGE_SIZE = 1 << 21;
+
+    private static final String FILL = "{0}->L₁\nFor(I,1," + BUBBLE_SIZE + ")\nremainder(I*7919," + BUBBLE_SIZE
+            + ")->L₁(I)\nEnd\n";
+    private static final String BUBBLE_SORT = FILL + "For(I,1," + (BUBBLE_SIZE - 1) + ")\nFor(J,1," + BUBBLE_SIZE
+            + "-I)\nIf L₁(J)>L₁(J+1)\nThen\nL₁(J)->T\nL₁(J+1)->L₁(J)\nT->L₁(J+1)\nEnd\nEnd\nEnd";
+    private static final String SORT_A = FILL + "SortA(L₁)";
+
+    public static void main(String[] args) {
+        for (int i = 0; i < 3; i++) {
+            execute(BUBBLE_SORT);
+            execute(SORT_A);
+        }
+        System.out.printf("bubble sort of %d elements: %8.2f ms%n", BUBBLE_SIZE, time(() -> execute(BUBBLE_SORT)));
+        System.out.printf("SortA( of %d elements:      %8.2f ms%n", BUBBLE_SIZE, time(() -> execute(SORT_A)));
+
+        double[] values = new double[LARGE_SIZE];
+        Random random = new Random(1);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian();
+        }
+        sortLarge("serial", Parallelism.SERIAL, values);
+        sortLarge("split", Parallelism.defaults(), values);
+    }
+
+    private static void sortLarge(String name, Parallelism parallelism, double[] values) {
+        Parallelism previous = parallelism.enter();
+        try {
+            for (int i = 0; i < 3; i++) {
+                new TiList(values.clone()).sort(false);
+            }
+            System.out.printf("%-6s SortA( of %d elements:              %8.2f ms%n", name, LARGE_SIZE,
+                    time(() -> new TiList(values.clone()).sort(false)));
+            System.out.printf("%-6s SortA( of %d elements, one companion: %8.2f ms%n", name, LARGE_SIZE,
+                    time(() -> TiList.sort(new TiList(values.clone()),
+                            Collections.singletonList(new TiList(values.clone())), false, null)));
+        } finally {
+            Parallelism.restore(previous);
+        }
+    }
+
+    private static double time(Runnable operation) {
+        long start = System.nanoTime();
+        operation.run();
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    private static void execute(String program) {
+        Stmt head = new Parser(new Lexer(program).lexTokens()).parse();
+        Map<String, Stmt> labels = new LabelMarker().getLabels(head);
+        new VariableResolver().resolve(head);
+        new NumericMarker().markAll(head);
+        new Interpreter(0, false).interpret(labels, head);
+    }
+}
@@ -0,0 +1,79 @@
+package com.patrickfeltes.interpreter.benchmarks;
+
+import com.patrickfeltes.interpreter.data_types.Parallelism;
+import com.patrickfeltes.interpreter.data_types.TiMatrix;
+
+import java.util.Random;
+
+/**
+ * Measures multiplying square matrices that are 99% zeros, like the adjacency matrix of a sparse graph, by
+ * themselves and by a dense matrix, in milliseconds per multiplication, and the heap they take up.
+ * Run the main method directly, with a heap of at least 2 GB; the multiplications run on one thread.
+ */
+public class SparseMatrixBenchmark {
+
+    private static final int[] SIZES = { 250, 500, 1000, 2000 };
+    private static final long NANOS_PER_CASE = 1_000_000_000L;
+
+    private static Object sink;
+
+    public static void main(String[] args) {
+        Parallelism.SERIAL.enter();
+
+        System.out.printf("%-12s%18s%18s%14s%n", "size", "sparse*sparse ms", "sparse*dense ms", "heap MB");
+        for (int size : SIZES) {
+            long before = usedHeap();
+            TiMatrix adjacency = adjacency(size);
+            double heap = (usedHeap() - before) / 1e6;
+            TiMatrix dense = dense(size);
+
+            System.out.printf("%-12s%18.2f%18.2f%14.1f%n", size + "x" + size,
+                    millisPerMul(adjacency, adjacency), millisPerMul(adjacency, dense), heap);
+        }
+    }
+
+    private static double millisPerMul(TiMatrix left, TiMatrix right) {
+        // warm up
+        sink = TiMatrix.mul(left, right, null);
+
+        long multiplications = 0;
+        long start = System.nanoTime();
+        long time;
+        do {
+            sink = TiMatrix.mul(left, right, null);
+            multiplications++;
+            time = System.nanoTime() - start;
+        } while (time < NANOS_PER_CASE);
+        return time / 1e6 / multiplications;
+    }
+
+    private static TiMatrix adjacency(int size) {
+        Random random = new Random(size);
+        double[][] entries = new double[size][size];
+        for (int r = 0; r < size; r++) {
+            for (int edge = 0; edge < size / 100; edge++) {
+                entries[r][random.nextInt(size)] = 1;
+            }
+        }
+        TiMatrix matrix = new TiMatrix(entries);
+        entries = null;
+        return matrix;
+    }
+
+    private static TiMatrix dense(int size) {
+        Random random = new Random(-size);
+        double[][] entries = new double[size][size];
+        for (int r = 0; r < size; r++) {
+            for (int c = 0; c < size; c++) {
+                entries[r][c] = random.nextDouble();
+            }
+        }
+        return new TiMatrix(entries);
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
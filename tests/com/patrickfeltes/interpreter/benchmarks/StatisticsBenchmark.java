@@ -0,0 +1,65 @@
+package com.patrickfeltes.interpreter.benchmarks;
+
+import com.patrickfeltes.interpreter.data_types.Parallelism;
+import com.patrickfeltes.interpreter.data_types.Statistics;
+import com.patrickfeltes.interpreter.data_types.TiList;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Measures the one-pass moments of a large list with and without splitting across threads, and the median found by
+ * selection against the median found by sorting a copy of the list. Run the main method directly.
+ */
+public class StatisticsBenchmark {
+
+    private static final int SIZE = 1 << 22;
+
+    public static void main(String[] args) {
+        double[] values = new double[SIZE];
+        Random random = new Random(1);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1e6 + random.nextGaussian();
+        }
+        TiList list = new TiList(values);
+
+        moments("serial", Parallelism.SERIAL, list);
+        moments("split", Parallelism.defaults(), list);
+
+        DoubleSupplier selection = () -> Statistics.median(list, null, null);
+        DoubleSupplier sorting = () -> {
+            double[] sorted = values.clone();
+            Arrays.sort(sorted);
+            return (sorted[SIZE / 2 - 1] + sorted[SIZE / 2]) / 2;
+        };
+        for (int i = 0; i < 3; i++) {
+            selection.getAsDouble();
+            sorting.getAsDouble();
+        }
+        System.out.printf("median( of %d elements by selection: %8.2f ms%n", SIZE, time(selection));
+        System.out.printf("median( of %d elements by sorting:   %8.2f ms%n", SIZE, time(sorting));
+    }
+
+    private static void moments(String name, Parallelism parallelism, TiList list) {
+        Parallelism previous = parallelism.enter();
+        try {
+            DoubleSupplier oneVariable = () -> Statistics.moments(list, null, null).sampleStdDev();
+            DoubleSupplier twoVariable = () -> Statistics.coMoments(list, list, null, null).slope();
+            for (int i = 0; i < 3; i++) {
+                oneVariable.getAsDouble();
+                twoVariable.getAsDouble();
+            }
+            System.out.printf("%-6s 1-Var Stats moments of %d elements: %8.2f ms%n", name, SIZE, time(oneVariable));
+            System.out.printf("%-6s 2-Var Stats moments of %d elements: %8.2f ms%n", name, SIZE, time(twoVariable));
+        } finally {
+            Parallelism.restore(previous);
+        }
+    }
+
+    private static double time(DoubleSupplier operation) {
+        long start = System.nanoTime();
+        operation.getAsDouble();
+        return (System.nanoTime() - start) / 1e6;
+    }
+}
@@ -0,0 +1,63 @@
+package com.patrickfeltes.interpreter.benchmarks;
+
+import com.patrickfeltes.interpreter.Lexer;
+import com.patrickfeltes.interpreter.ast.Parser;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.visitors.Interpreter;
+import com.patrickfeltes.interpreter.visitors.LabelMarker;
+import com.patrickfeltes.interpreter.visitors.NumericMarker;
+import com.patrickfeltes.interpreter.visitors.VariableResolver;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * Measures the time and the bytes allocated to build a string one piece at a time with Str1+"XY"→Str1, for strings
+ * of growing length, and to search the longest one with inString( and sub(.
+ * Run the main method directly.
+ */
+public class StringBenchmark {
+
+    private static final int[] APPENDS = { 5_000, 10_000, 20_000, 40_000 };
+
+    public static void main(String[] args) {
+        // warm up
+        measure(build(APPENDS[0]));
+
+        for (int appends : APPENDS) {
+            long[] result = measure(build(appends));
+            System.out.printf("%6d appends:    %8.2f ms, %10.2f MB allocated%n",
+                    appends, result[0] / 1e6, result[1] / 1e6);
+        }
+
+        int appends = APPENDS[APPENDS.length - 1];
+        long[] build = measure(build(appends));
+        long[] search = measure(build(appends) + "\nFor(J,1,1000)\ninString(Str1,\"Z\",J)→A\nsub(Str1,J,100)→Str2\nEnd");
+        System.out.printf("1000 searches:   %8.2f ms, %10.2f MB allocated%n",
+                (search[0] - build[0]) / 1e6, (search[1] - build[1]) / 1e6);
+    }
+
+    private static String build(int appends) {
+        return "\"\"->Str1\nFor(I,1," + appends + ")\nStr1+\"XY\"->Str1\nEnd";
+    }
+
+    /**
+     * @return the time taken in nanoseconds and the bytes allocated
+     */
+    private static long[] measure(String program) {
+        Stmt head = new Parser(new Lexer(program).lexTokens()).parse();
+        Map<String, Stmt> labels = new LabelMarker().getLabels(head);
+        new VariableResolver().resolve(head);
+        new NumericMarker().markAll(head);
+        Interpreter interpreter = new Interpreter(0, false);
+
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long bytes = bean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        interpreter.interpret(labels, head);
+        long time = System.nanoTime() - start;
+        return new long[] { time, bean.getThreadAllocatedBytes(threadId) - bytes };
+    }
+}
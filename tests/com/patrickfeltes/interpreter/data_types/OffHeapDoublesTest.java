@@ -0,0 +1,74 @@
+package com.patrickfeltes.interpreter.data_types;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.patrickfeltes.interpreter.data_types.TestValues.*;
+import static org.junit.Assert.*;
+
+public class OffHeapDoublesTest {
+
+    @Test
+    public void listOperations_matchListsOnTheHeap() throws Exception {
+        double[] left = wideRange(5000, 1);
+        double[] right = wideRange(5000, 2);
+
+        String heap = TiList.powScalar(TiList.div(TiList.add(new TiList(left), new TiList(right), null),
+                TiList.scale(new TiList(right), 3), null), 2).toString();
+        String offHeap = TiList.powScalar(TiList.div(TiList.add(offHeap(left), new TiList(right), null),
+                TiList.scale(offHeap(right), 3), null), 2).toString();
+
+        assertEquals(heap, offHeap);
+    }
+
+    @Test
+    public void add_movesAGrowingListOffTheHeap() throws Exception {
+        long threshold = OffHeapDoubles.getThreshold();
+        OffHeapDoubles.setThreshold(100);
+        try {
+            TiList list = new TiList();
+            for (int i = 0; i < 300; i++) {
+                list.add(i);
+            }
+
+            assertTrue(list.isOffHeap());
+            assertEquals(300, list.size());
+            assertEquals(299.0, list.get(300), 0);
+        } finally {
+            OffHeapDoubles.setThreshold(threshold);
+        }
+    }
+
+    @Test
+    public void map_givesTheSameStorageForTheSameFile() throws Exception {
+        Path file = Files.createTempFile("doubles", ".bin");
+        try {
+            OffHeapDoubles.save(file, new double[] { 1.5, -2, 3 }, 3);
+
+            OffHeapDoubles mapped = OffHeapDoubles.map(file);
+            assertSame(mapped, OffHeapDoubles.map(file));
+            assertTrue(mapped.isReadOnly());
+            assertEquals("{1.5,-2.0,3.0}", new TiList(mapped).toString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void setIndex_copiesAMappedFile() throws Exception {
+        Path file = Files.createTempFile("doubles", ".bin");
+        try {
+            OffHeapDoubles.save(file, new double[] { 1, 2, 3 }, 3);
+            TiList list = new TiList(OffHeapDoubles.map(file));
+
+            list.setIndex(2, 9);
+
+            assertEquals("{1.0,9.0,3.0}", list.toString());
+            assertEquals("{1.0,2.0,3.0}", new TiList(OffHeapDoubles.map(file)).toString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
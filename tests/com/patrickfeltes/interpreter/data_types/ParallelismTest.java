@@ -0,0 +1,103 @@
+package com.patrickfeltes.interpreter.data_types;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import static com.patrickfeltes.interpreter.data_types.TestValues.*;
+import static org.junit.Assert.*;
+
+public class ParallelismTest {
+
+    private static final Parallelism SPLIT = new Parallelism(1, 7);
+
+    private static <T> T using(Parallelism parallelism, Supplier<T> operation) {
+        Parallelism previous = parallelism.enter();
+        try {
+            return operation.get();
+        } finally {
+            Parallelism.restore(previous);
+        }
+    }
+
+    @Test
+    public void pieces_splitsOnlyFromTheThreshold() throws Exception {
+        Parallelism parallelism = new Parallelism(1000, 4);
+
+        assertEquals(1, parallelism.pieces(999, 999));
+        assertEquals(4, parallelism.pieces(1000, 1000));
+        assertEquals(2, parallelism.pieces(1000, 2));
+        assertEquals(1, new Parallelism(1, 1).pieces(1_000_000, 1_000_000));
+    }
+
+    @Test
+    public void forEach_coversEveryUnitOnce() throws Exception {
+        int[] counts = new int[1001];
+        SPLIT.forEach(counts.length, counts.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                counts[i]++;
+            }
+        });
+
+        for (int count : counts) {
+            assertEquals(1, count);
+        }
+    }
+
+    @Test
+    public void listOperations_matchSerialExactly() throws Exception {
+        TiList left = new TiList(wideRange(100_003, 1));
+        TiList right = new TiList(wideRange(100_003, 2));
+
+        String serial = using(Parallelism.SERIAL, () ->
+                TiList.powScalar(TiList.div(TiList.add(left, right, null), TiList.scale(right, 3), null), 2).toString());
+        String split = using(SPLIT, () ->
+                TiList.powScalar(TiList.div(TiList.add(left, right, null), TiList.scale(right, 3), null), 2).toString());
+
+        assertEquals(serial, split);
+    }
+
+    @Test
+    public void matrixOperations_matchSerialExactly() throws Exception {
+        double[][] entries = new double[50][];
+        for (int r = 0; r < entries.length; r++) {
+            entries[r] = wideRange(40, r);
+        }
+        TiMatrix matrix = new TiMatrix(entries);
+
+        String serial = using(Parallelism.SERIAL, () -> TiMatrix.sub(TiMatrix.scale(matrix, 0.1), matrix, null).toString());
+        String split = using(SPLIT, () -> TiMatrix.sub(TiMatrix.scale(matrix, 0.1), matrix, null).toString());
+
+        assertEquals(serial, split);
+    }
+
+    @Test
+    public void sum_isTheSameForAnyParallelism() throws Exception {
+        double[] values = wideRange(1_000_000, 3);
+
+        double serial = Parallelism.SERIAL.sum(values, values.length);
+        for (int parallelism = 2; parallelism <= 9; parallelism++) {
+            assertEquals(Double.doubleToLongBits(serial),
+                    Double.doubleToLongBits(new Parallelism(1, parallelism).sum(values, values.length)));
+        }
+    }
+
+    @Test
+    public void sum_ofOneBlockAddsInOrder() throws Exception {
+        double[] values = { 1e16, 1, -1e16, 1 };
+
+        assertEquals(1.0, Parallelism.SERIAL.sum(values, values.length), 0);
+        assertEquals(0.0, Parallelism.SERIAL.sum(values, 0), 0);
+    }
+
+    @Test
+    public void sum_ofValuesOneAtATimeMatchesTheArray() throws Exception {
+        double[] values = wideRange(100_003, 4);
+
+        assertEquals(Double.doubleToLongBits(SPLIT.sum(values, values.length)),
+                Double.doubleToLongBits(Parallelism.sum(Arrays.stream(values).iterator())));
+        assertEquals(Double.doubleToLongBits(SPLIT.sum(values, 5, 90_000)),
+                Double.doubleToLongBits(TiList.sum(new TiList(values), 5, 90_000)));
+    }
+}
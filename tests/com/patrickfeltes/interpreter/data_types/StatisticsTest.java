@@ -0,0 +1,109 @@
+package com.patrickfeltes.interpreter.data_types;
+
+import com.patrickfeltes.interpreter.errors.RuntimeError;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.patrickfeltes.interpreter.data_types.TestValues.*;
+import static org.junit.Assert.*;
+
+public class StatisticsTest {
+
+    private static final Parallelism SPLIT = new Parallelism(1, 7);
+
+    @Test
+    public void moments_stayAccurateFarFromZero() throws Exception {
+        // Σx² - (Σx)²/n gives nothing useful here, as the squares need more digits than a double has
+        TiList list = new TiList(new double[] { 1e9 + 4, 1e9 + 7, 1e9 + 13, 1e9 + 16 });
+        Statistics.Moments moments = Statistics.moments(list, null, null);
+
+        assertEquals(1e9 + 10, moments.mean, 0);
+        assertEquals(30.0, moments.sampleStdDev() * moments.sampleStdDev(), 1e-9);
+        assertEquals(4.0, moments.n, 0);
+    }
+
+    @Test
+    public void moments_areTheSameForAnyParallelism() throws Exception {
+        Random random = new Random(1);
+        double[] xValues = new double[100_003];
+        double[] yValues = new double[xValues.length];
+        for (int i = 0; i < xValues.length; i++) {
+            xValues[i] = random.nextGaussian() * 1000 + 1e6;
+            yValues[i] = xValues[i] * 3 + random.nextGaussian();
+        }
+        TiList x = new TiList(xValues);
+        TiList y = new TiList(yValues);
+
+        Statistics.CoMoments serial = Statistics.coMoments(x, y, null, null);
+        Parallelism previous = SPLIT.enter();
+        Statistics.CoMoments split;
+        try {
+            split = Statistics.coMoments(x, y, null, null);
+        } finally {
+            Parallelism.restore(previous);
+        }
+
+        assertEquals(Double.doubleToLongBits(serial.x.deviations), Double.doubleToLongBits(split.x.deviations));
+        assertEquals(Double.doubleToLongBits(serial.slope()), Double.doubleToLongBits(split.slope()));
+        assertEquals(3.0, serial.slope(), 1e-3);
+        assertEquals(1.0, serial.correlation(), 1e-6);
+    }
+
+    @Test
+    public void frequencies_countLikeRepeatedElements() throws Exception {
+        TiList list = new TiList(new double[] { 4, 1, 9, 2 });
+        TiList frequencies = new TiList(new double[] { 2, 0, 3, 1 });
+        TiList expanded = new TiList(new double[] { 4, 4, 9, 9, 9, 2 });
+
+        Statistics.Moments weighted = Statistics.moments(list, frequencies, null);
+        Statistics.Moments repeated = Statistics.moments(expanded, null, null);
+        assertEquals(repeated.n, weighted.n, 0);
+        assertEquals(repeated.mean, weighted.mean, 1e-12);
+        assertEquals(repeated.sampleStdDev(), weighted.sampleStdDev(), 1e-12);
+        assertEquals(2.0, weighted.min, 0);
+        assertTrue(Arrays.equals(Statistics.quartiles(expanded, null, null),
+                Statistics.quartiles(list, frequencies, null)));
+    }
+
+    @Test
+    public void quartiles_leaveTheMedianOutOfOddHalves() throws Exception {
+        assertTrue(Arrays.equals(new double[] { 2, 4, 6 },
+                Statistics.quartiles(new TiList(new double[] { 7, 1, 4, 3, 5 }), null, null)));
+        assertTrue(Arrays.equals(new double[] { 2, 3.5, 5 },
+                Statistics.quartiles(new TiList(new double[] { 6, 1, 5, 2, 4, 3 }), null, null)));
+        assertTrue(Arrays.equals(new double[] { 8, 8, 8 },
+                Statistics.quartiles(new TiList(new double[] { 8 }), null, null)));
+    }
+
+    @Test
+    public void select_findsWhatSortingWould() throws Exception {
+        double[] values = duplicates(10_007, 2);
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        for (int k : new int[] { 0, 17, 5003, 5004, 10_006 }) {
+            double[] selected = values.clone();
+            Statistics.select(selected, 0, selected.length, k);
+            assertEquals(Double.doubleToLongBits(sorted[k]), Double.doubleToLongBits(selected[k]));
+        }
+
+        // an even number of values, where the median is halfway between the two in the middle
+        double[] even = Arrays.copyOf(values, 10_006);
+        double[] sortedEven = even.clone();
+        Arrays.sort(sortedEven);
+        double expected = (sortedEven[5002] + sortedEven[5003]) / 2;
+        assertEquals(expected, Statistics.median(new TiList(even), null, null), 0);
+    }
+
+    @Test(expected = RuntimeError.class)
+    public void median_ofAnEmptyList() throws Exception {
+        Statistics.median(new TiList(new double[0]), null, null);
+    }
+
+    @Test(expected = RuntimeError.class)
+    public void moments_negativeFrequency() throws Exception {
+        Statistics.moments(new TiList(new double[] { 1, 2 }), new TiList(new double[] { 1, -1 }), null);
+    }
+}
@@ -0,0 +1,44 @@
+package com.patrickfeltes.interpreter.data_types;
+
+import java.util.Random;
+
+/**
+ * Seeded values for the data type tests, so that every run checks the same elements.
+ */
+public class TestValues {
+
+    /**
+     * @return values with many duplicates, a NaN and both zeros, the cases where orders can differ
+     */
+    public static double[] duplicates(int size, long seed) {
+        Random random = new Random(seed);
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = random.nextInt(100) - 50;
+        }
+        values[size / 2] = Double.NaN;
+        values[size / 3] = -0.0;
+        return values;
+    }
+
+    /**
+     * @return values spread over twelve orders of magnitude, so that sums round differently in different orders
+     */
+    public static double[] wideRange(int size, long seed) {
+        Random random = new Random(seed);
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = random.nextGaussian() * Math.pow(10, random.nextInt(12) - 6);
+        }
+        return values;
+    }
+
+    /**
+     * @return a list of the values stored off the heap, whatever the threshold
+     */
+    public static TiList offHeap(double[] values) {
+        OffHeapDoubles storage = OffHeapDoubles.allocate(values.length);
+        storage.write(0, values, 0, values.length);
+        return new TiList(storage);
+    }
+}
@@ -0,0 +1,103 @@
+package com.patrickfeltes.interpreter.data_types;
+
+import com.patrickfeltes.interpreter.errors.RuntimeError;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.patrickfeltes.interpreter.data_types.TestValues.*;
+import static org.junit.Assert.*;
+
+public class TiListTest {
+
+    private static final Parallelism SPLIT = new Parallelism(1, 7);
+
+    @Test
+    public void sort_matchesArraysSort() throws Exception {
+        double[] values = duplicates(10_007, 1);
+        double[] expected = values.clone();
+        Arrays.sort(expected);
+
+        TiList list = new TiList(values.clone());
+        list.sort(false);
+        assertEquals(new TiList(expected).toString(), list.toString());
+
+        TiList offHeap = offHeap(values);
+        offHeap.sort(false);
+        assertEquals(list.toString(), offHeap.toString());
+    }
+
+    @Test
+    public void sort_descendingIsAscendingReversed() throws Exception {
+        TiList list = new TiList(new double[] { 2, Double.NaN, -1, 0.0, -0.0, 2 });
+        list.sort(true);
+        assertEquals("{NaN,2.0,2.0,0.0,-0.0,-1.0}", list.toString());
+    }
+
+    @Test
+    public void sort_doesNotChangeCopies() throws Exception {
+        TiList list = new TiList(new double[] { 3, 1, 2 });
+        TiList copy = new TiList(list);
+        list.sort(false);
+
+        assertEquals("{1.0,2.0,3.0}", list.toString());
+        assertEquals("{3.0,1.0,2.0}", copy.toString());
+    }
+
+    @Test
+    public void sortedOrder_isStableAndTheSameForAnyParallelism() throws Exception {
+        double[] keys = duplicates(100_003, 2);
+        for (boolean descending : new boolean[] { false, true }) {
+            int[] serial = TiList.sortedOrder(keys, keys.length, descending);
+            Parallelism previous = SPLIT.enter();
+            int[] split;
+            try {
+                split = TiList.sortedOrder(keys, keys.length, descending);
+            } finally {
+                Parallelism.restore(previous);
+            }
+            assertTrue(Arrays.equals(serial, split));
+
+            for (int i = 1; i < serial.length; i++) {
+                int comparison = Double.compare(keys[serial[i - 1]], keys[serial[i]]);
+                if (descending) comparison = -comparison;
+                assertTrue(comparison < 0 || comparison == 0 && serial[i - 1] < serial[i]);
+            }
+        }
+    }
+
+    @Test
+    public void sort_putsCompanionsInTheSameOrder() throws Exception {
+        TiList keys = new TiList(new double[] { 5, 3, 9, 1, 3 });
+        TiList companion = offHeap(new double[] { 1, 2, 3, 4, 5 });
+        TiList.sort(keys, Arrays.asList(companion, companion), false, null);
+
+        assertEquals("{1.0,3.0,3.0,5.0,9.0}", keys.toString());
+        assertEquals("{4.0,2.0,5.0,1.0,3.0}", companion.toString());
+    }
+
+    @Test(expected = RuntimeError.class)
+    public void sort_companionOfAnotherSize() throws Exception {
+        TiList.sort(new TiList(new double[] { 2, 1 }), Collections.singletonList(new TiList(new double[] { 1 })),
+                false, null);
+    }
+
+    @Test
+    public void fillAugmentAndDeltaList() throws Exception {
+        double[] values = duplicates(3000, 3);
+        TiList heap = new TiList(values.clone());
+        TiList offHeap = offHeap(values);
+
+        assertEquals(TiList.deltaList(heap).toString(), TiList.deltaList(offHeap).toString());
+        assertEquals(TiList.augment(heap, heap).toString(), TiList.augment(offHeap, heap).toString());
+        assertEquals("{1.0,2.0,4.0,8.0}", TiList.augment(new TiList(new double[] { 1, 2 }),
+                new TiList(new double[] { 4, 8 })).toString());
+        assertEquals("{1.0,2.0,4.0}", TiList.deltaList(new TiList(new double[] { 1, 2, 4, 8 })).toString());
+
+        offHeap.fill(7);
+        heap.fill(7);
+        assertEquals(heap.toString(), offHeap.toString());
+        assertEquals(7.0, offHeap.get(3000), 0);
+    }
+}
@@ -0,0 +1,236 @@
+package com.patrickfeltes.interpreter.data_types;
+
+import com.patrickfeltes.interpreter.errors.RuntimeError;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TiMatrixTest {
+
+    private static double[][] random(int rows, int cols, long seed) {
+        Random random = new Random(seed);
+        double[][] entries = new double[rows][cols];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                entries[r][c] = random.nextGaussian() * Math.pow(10, random.nextInt(8) - 4);
+            }
+        }
+        return entries;
+    }
+
+    // a matrix with about one entry in fifty not 0
+    private static double[][] sparse(int rows, int cols, long seed) {
+        Random random = new Random(seed);
+        double[][] entries = new double[rows][cols];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                if (random.nextInt(50) == 0) entries[r][c] = random.nextGaussian();
+            }
+        }
+        return entries;
+    }
+
+    // the row-times-column loop the multiplication has to match
+    private static double[][] textbook(double[][] left, double[][] right) {
+        double[][] product = new double[left.length][right[0].length];
+        for (int i = 0; i < left.length; i++) {
+            for (int j = 0; j < right[0].length; j++) {
+                double sum = 0;
+                for (int k = 0; k < right.length; k++) {
+                    sum += left[i][k] * right[k][j];
+                }
+                product[i][j] = sum;
+            }
+        }
+        return product;
+    }
+
+    private static void assertSameEntries(double[][] expected, TiMatrix actual) {
+        assertEquals(expected.length, actual.getRows());
+        assertEquals(expected[0].length, actual.getCols());
+        for (int r = 0; r < expected.length; r++) {
+            for (int c = 0; c < expected[0].length; c++) {
+                assertEquals(Double.doubleToLongBits(expected[r][c]), Double.doubleToLongBits(actual.get(r + 1, c + 1)));
+            }
+        }
+    }
+
+    @Test
+    public void mul_smallMatrices() throws Exception {
+        TiMatrix left = new TiMatrix(new double[][] { { 1, 2, 3 }, { 4, 5, 6 } });
+        TiMatrix right = new TiMatrix(new double[][] { { 7, 8 }, { 9, 10 }, { 11, 12 } });
+
+        assertEquals("[[58.0 64.0]\n[139.0 154.0]]", TiMatrix.mul(left, right, null).toString());
+    }
+
+    @Test
+    public void mul_matchesTextbookLoopAcrossPanelsAndBlocks() throws Exception {
+        double[][] left = random(37, 300, 1);
+        double[][] right = random(300, 530, 2);
+
+        assertSameEntries(textbook(left, right), TiMatrix.mul(new TiMatrix(left), new TiMatrix(right), null));
+    }
+
+    @Test
+    public void mul_splitAcrossThreadsMatchesTextbookLoop() throws Exception {
+        double[][] left = random(61, 40, 3);
+        double[][] right = random(40, 45, 4);
+
+        Parallelism previous = new Parallelism(1, 5).enter();
+        try {
+            assertSameEntries(textbook(left, right), TiMatrix.mul(new TiMatrix(left), new TiMatrix(right), null));
+        } finally {
+            Parallelism.restore(previous);
+        }
+    }
+
+    @Test(expected = RuntimeError.class)
+    public void mul_checksDimensions() throws Exception {
+        TiMatrix.mul(new TiMatrix(random(2, 3, 5)), new TiMatrix(random(2, 3, 6)), null);
+    }
+
+    @Test
+    public void setIndex_doesNotChangeCopies() throws Exception {
+        TiMatrix matrix = new TiMatrix(new double[][] { { 1, 2 }, { 3, 4 } });
+        TiMatrix copy = new TiMatrix(matrix);
+
+        copy.setIndex(2, 1, 9);
+
+        assertEquals(3.0, matrix.get(2, 1), 0);
+        assertEquals(9.0, copy.get(2, 1), 0);
+    }
+
+    @Test
+    public void det_usesPartialPivoting() throws Exception {
+        TiMatrix matrix = new TiMatrix(new double[][] { { 0, 2, 1 }, { 1, 1, 0 }, { 3, 0, 4 } });
+
+        assertEquals(-11.0, TiMatrix.det(matrix, null), 1e-12);
+        assertEquals(0.0, TiMatrix.det(new TiMatrix(new double[][] { { 1, 2, 3 }, { 4, 5, 6 }, { 7, 8, 9 } }), null), 0);
+    }
+
+    @Test
+    public void inverse_timesMatrixIsIdentity() throws Exception {
+        double[][] entries = random(20, 20, 7);
+        TiMatrix matrix = new TiMatrix(entries);
+
+        TiMatrix product = TiMatrix.mul(matrix, TiMatrix.inverse(matrix, null), null);
+
+        for (int r = 1; r <= 20; r++) {
+            for (int c = 1; c <= 20; c++) {
+                assertEquals(r == c ? 1 : 0, product.get(r, c), 1e-9);
+            }
+        }
+    }
+
+    @Test(expected = RuntimeError.class)
+    public void inverse_ofSingularMatrixFails() throws Exception {
+        TiMatrix.inverse(new TiMatrix(new double[][] { { 1, 2 }, { 2, 4 } }), null);
+    }
+
+    @Test
+    public void inverse_isKeptUntilTheMatrixChanges() throws Exception {
+        TiMatrix matrix = new TiMatrix(new double[][] { { 4, 7 }, { 2, 6 } });
+
+        TiMatrix inverse = TiMatrix.inverse(matrix, null);
+        assertSame(inverse.entries(), TiMatrix.inverse(matrix, null).entries());
+
+        // writing to the inverse it gave must not change the one it keeps
+        inverse.setIndex(1, 1, 100);
+        assertEquals(0.6, TiMatrix.inverse(matrix, null).get(1, 1), 1e-12);
+
+        matrix.setIndex(1, 1, 5);
+        assertEquals(0.375, TiMatrix.inverse(matrix, null).get(1, 1), 1e-12);
+        assertEquals(16.0, TiMatrix.det(matrix, null), 1e-12);
+    }
+
+    @Test
+    public void rref_reducesEveryPivotColumn() throws Exception {
+        TiMatrix matrix = new TiMatrix(new double[][] { { 1, 2, 3 }, { 2, 4, 7 }, { 1, 1, 1 } });
+
+        assertEquals("[[1.0 0.0 0.0]\n[0.0 1.0 0.0]\n[0.0 0.0 1.0]]", TiMatrix.rref(matrix).toString());
+        assertEquals("[[1.0 2.0 3.0]\n[0.0 0.0 0.0]]",
+                TiMatrix.rref(new TiMatrix(new double[][] { { 2, 4, 6 }, { 1, 2, 3 } })).toString());
+    }
+
+    @Test
+    public void ref_leavesEntriesAbovePivots() throws Exception {
+        TiMatrix matrix = new TiMatrix(new double[][] { { 1, 2 }, { 3, 4 } });
+
+        assertEquals("[[1.0 1.3333333333333333]\n[0.0 1.0]]", TiMatrix.ref(matrix).toString());
+    }
+
+    @Test
+    public void transpose_swapsRowsAndColumns() throws Exception {
+        TiMatrix matrix = new TiMatrix(new double[][] { { 1, 2, 3 }, { 4, 5, 6 } });
+
+        assertEquals("[[1.0 4.0]\n[2.0 5.0]\n[3.0 6.0]]", TiMatrix.transpose(matrix).toString());
+    }
+
+    @Test
+    public void sparse_isChosenByDensity() throws Exception {
+        assertTrue(new TiMatrix(sparse(100, 100, 8)).isSparse());
+        assertFalse(new TiMatrix(random(100, 100, 9)).isSparse());
+        // small matrices are always dense
+        assertFalse(TiMatrix.identity(10).isSparse());
+        assertTrue(TiMatrix.identity(100).isSparse());
+    }
+
+    @Test
+    public void setIndex_switchesASparseMatrixBackToDense() throws Exception {
+        TiMatrix matrix = TiMatrix.identity(100);
+        TiMatrix copy = new TiMatrix(matrix);
+
+        for (int r = 1; r <= 100; r++) {
+            for (int c = 1; c <= 40; c++) {
+                matrix.setIndex(r, c, r + c);
+            }
+        }
+
+        assertFalse(matrix.isSparse());
+        assertEquals(7.0, matrix.get(3, 4), 0);
+        assertEquals(1.0, matrix.get(50, 50), 0);
+        assertEquals(0.0, copy.get(3, 4), 0);
+        assertTrue(copy.isSparse());
+    }
+
+    @Test
+    public void mul_ofSparseMatricesMatchesTextbookLoop() throws Exception {
+        double[][] sparse = sparse(120, 90, 10);
+        double[][] otherSparse = sparse(90, 110, 11);
+        double[][] dense = random(90, 70, 12);
+        double[][] denseLeft = random(60, 120, 13);
+
+        assertSameEntries(textbook(sparse, otherSparse),
+                TiMatrix.mul(new TiMatrix(sparse), new TiMatrix(otherSparse), null));
+        assertSameEntries(textbook(sparse, dense), TiMatrix.mul(new TiMatrix(sparse), new TiMatrix(dense), null));
+        assertSameEntries(textbook(denseLeft, sparse),
+                TiMatrix.mul(new TiMatrix(denseLeft), new TiMatrix(sparse), null));
+    }
+
+    @Test
+    public void mul_ofSparseMatrixKeepsProductsOfZeroWithInfinity() throws Exception {
+        double[][] sparse = sparse(80, 80, 14);
+        double[][] dense = random(80, 80, 15);
+        dense[5][7] = Double.POSITIVE_INFINITY;
+
+        assertSameEntries(textbook(sparse, dense), TiMatrix.mul(new TiMatrix(sparse), new TiMatrix(dense), null));
+    }
+
+    @Test
+    public void addAndScale_ofSparseMatrices() throws Exception {
+        TiMatrix left = new TiMatrix(sparse(100, 100, 16));
+        TiMatrix right = new TiMatrix(sparse(100, 100, 17));
+
+        TiMatrix sum = TiMatrix.add(left, TiMatrix.scale(right, 2), null);
+
+        assertTrue(sum.isSparse());
+        for (int r = 1; r <= 100; r++) {
+            for (int c = 1; c <= 100; c++) {
+                assertEquals(left.get(r, c) + 2 * right.get(r, c), sum.get(r, c), 0);
+            }
+        }
+        assertEquals(0, TiMatrix.sub(left, left, null).toString().indexOf("[[0.0 0.0"));
+    }
+}
@@ -0,0 +1,52 @@
+package com.patrickfeltes.interpreter.data_types;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TiStringTest {
+
+    @Test
+    public void concat_leavesEarlierStringsAsTheyWere() throws Exception {
+        TiString start = new TiString("AB");
+        TiString longer = TiString.concat(start, new TiString("CD"));
+        TiString longest = TiString.concat(longer, new TiString("EF"));
+        // longer no longer ends where its buffer does, so this one is copied
+        TiString branch = TiString.concat(longer, new TiString("GH"));
+
+        assertEquals("AB", start.toString());
+        assertEquals("ABCD", longer.toString());
+        assertEquals("ABCDEF", longest.toString());
+        assertEquals("ABCDGH", branch.toString());
+    }
+
+    @Test
+    public void concat_ofAStringWithItself() throws Exception {
+        TiString string = new TiString("XY");
+        for (int i = 0; i < 5; i++) {
+            string = TiString.concat(string, string);
+        }
+
+        assertEquals(64, string.length());
+        assertEquals(new TiString(new String(new char[32]).replace("\0", "XY")), string);
+    }
+
+    @Test
+    public void sub_isOneIndexed() throws Exception {
+        TiString string = TiString.concat(new TiString("HEL"), new TiString("LO"));
+
+        assertEquals("ELL", string.sub(2, 3).toString());
+        assertEquals("", string.sub(6, 0).toString());
+        assertEquals('O', string.charAt(5));
+    }
+
+    @Test
+    public void indexOf_findsFromAPosition() throws Exception {
+        TiString string = new TiString("ABCABC").sub(2, 5);
+
+        assertEquals(2, string.indexOf(new TiString("CA"), 1));
+        assertEquals(4, string.indexOf(new TiString("BC"), 2));
+        assertEquals(0, string.indexOf(new TiString("A"), 4));
+        assertEquals(0, string.indexOf(new TiString("BCABCX"), 1));
+    }
+}
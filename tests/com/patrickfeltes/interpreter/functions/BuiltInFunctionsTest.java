@@ -0,0 +1,142 @@
+package com.patrickfeltes.interpreter.functions;
+
+import com.patrickfeltes.interpreter.Engine;
+import com.patrickfeltes.interpreter.data_types.TiList;
+import com.patrickfeltes.interpreter.errors.RuntimeError;
+import com.patrickfeltes.interpreter.tokens.Token;
+import com.patrickfeltes.interpreter.tokens.TokenType;
+import com.patrickfeltes.interpreter.visitors.Environment;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import static com.patrickfeltes.interpreter.Programs.*;
+import static org.junit.Assert.*;
+
+public class BuiltInFunctionsTest {
+
+    private static final Token X = new Token(TokenType.IDENTIFIER, "X", null, 1);
+    private static final Token L1 = new Token(TokenType.LIST_IDENTIFIER, "L₁", null, 1);
+
+    // expressions and what they are on the calculator
+    private static final Object[][] golden = {
+            { "abs(-4)", 4.0 },
+            { "sqrt(16)", 4.0 },
+            { "√(2)", 1.4142135623730951 },
+            { "sin(0)", 0.0 },
+            { "cos(0)", 1.0 },
+            { "tan(0)", 0.0 },
+            { "sin⁻¹(1)", Math.PI / 2 },
+            { "cos⁻¹(1)", 0.0 },
+            { "tan⁻¹(1)", Math.PI / 4 },
+            { "ln(1)", 0.0 },
+            { "log(1000)", 3.0 },
+            { "log(8,2)", 3.0 },
+            { "e^(1)", Math.E },
+            { "int(-2.5)", -3.0 },
+            { "int(2.5)", 2.0 },
+            { "iPart(-2.5)", -2.0 },
+            { "fPart(-2.5)", -0.5 },
+            { "fPart(3.75)", 0.75 },
+            { "round(1.005,2)", 1.01 },
+            { "round(2.675,2)", 2.68 },
+            { "round(-3.14159,3)", -3.142 },
+            { "round(2.5,0)", 3.0 },
+            { "round(-2.5,0)", -3.0 },
+            { "round(2/3)", 0.666666667 },
+            { "min(3,-1)", -1.0 },
+            { "max(3,-1)", 3.0 },
+            { "remainder(17,5)", 2.0 },
+            { "remainder(-7,3)", -1.0 },
+            { "remainder(5,0)", 5.0 },
+            { "gcd(12,18)", 6.0 },
+            { "gcd(0,7)", 7.0 },
+            { "gcd(2.5,5)", Double.NaN },
+            { "lcm(4,6)", 12.0 },
+            { "lcm(0,5)", 0.0 },
+            { "5 nPr 2", 20.0 },
+            { "5nCr2", 10.0 },
+            { "52 nCr 5", 2598960.0 },
+            { "10 nCr 0", 1.0 },
+            { "3 nCr 5", 0.0 },
+            { "-5 nCr 2", -10.0 },
+            { "0!", 1.0 },
+            { "5!", 120.0 },
+            { "20!", 2432902008176640000.0 },
+            { "171!", Double.POSITIVE_INFINITY },
+            { "(-1)!", Double.NaN },
+            { "2^3!", 64.0 },
+            { "mean({1,2,3,6})", 3.0 },
+            { "mean({1,2,3},{1,1,2})", 2.25 },
+            { "median({5,1,3,2})", 2.5 },
+            { "median({5,1,3},{1,0,1})", 4.0 },
+            { "stdDev({2,4,4,4,5,5,7,9})", Math.sqrt(32.0 / 7) },
+    };
+
+    @Test
+    public void functions_giveTheGoldenValuesOnEveryEngine() throws Exception {
+        for (Object[] test : golden) {
+            for (Supplier<Engine> engine : ENGINES) {
+                Object value = run(engine, test[0] + "->X").get(X);
+                assertEquals((String)test[0], (double)test[1], (double)value, 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void functions_workOnListsElementByElement() throws Exception {
+        assertEquals("{1.0,2.0,3.0}", run(ENGINES.get(0), "sqrt({1,4,9})->L₁").get(L1).toString());
+        assertEquals("{1.0,3.0}", run(ENGINES.get(0), "round({1.25,2.5},0)->L₁").get(L1).toString());
+        assertEquals("{3.0,5.0}", run(ENGINES.get(0), "max({1,5},3)->L₁").get(L1).toString());
+        assertEquals("{1.0,2.0}", run(ENGINES.get(0), "min({1,5},{3,2})->L₁").get(L1).toString());
+        assertEquals("{10.0,15.0}", run(ENGINES.get(0), "{5,6} nCr 2->L₁").get(L1).toString());
+        assertEquals("{6.0,2.0}", run(ENGINES.get(0), "{3,2}!->L₁").get(L1).toString());
+    }
+
+    @Test
+    public void minAndMax_ofOneListGiveAnElement() throws Exception {
+        assertEquals(2.0, (double)run(ENGINES.get(0), "min({4,2,8})->X").get(X), 0);
+        assertEquals(8.0, (double)run(ENGINES.get(0), "max({4,2,8})->X").get(X), 0);
+    }
+
+    @Test
+    public void listCommands_changeTheListVariables() throws Exception {
+        Token l2 = new Token(TokenType.LIST_IDENTIFIER, "L₂", null, 1);
+        for (Supplier<Engine> engine : ENGINES) {
+            Environment environment = run(engine, "{3,1,2}->L₁\n{1,2,3}->L₂\nSortD(L₁,L₂)\ndim(L₁)->X");
+            assertEquals("{3.0,2.0,1.0}", environment.get(L1).toString());
+            assertEquals("{1.0,3.0,2.0}", environment.get(l2).toString());
+            assertEquals(3.0, (double)environment.get(X), 0);
+
+            environment = run(engine, "{3,1,2}->L₁\nFill(0,L₁)\nΔList(augment({1},L₁))->L₂");
+            assertEquals("{0.0,0.0,0.0}", environment.get(L1).toString());
+            assertEquals("{-1.0,0.0,0.0}", environment.get(l2).toString());
+        }
+    }
+
+    @Test(expected = RuntimeError.class)
+    public void call_listsOfDifferentSizes() throws Exception {
+        Token callee = new Token(TokenType.FUNCTION_IDENTIFIER, "gcd", null, 1);
+        Environment.functionOf(callee).call(callee, null,
+                Arrays.asList(new TiList(new double[] { 1, 2 }), new TiList(new double[] { 3 })));
+    }
+
+    @Test
+    public void statisticsCommands_storeTheirResults() throws Exception {
+        Token slope = new Token(TokenType.IDENTIFIER, "a", null, 1);
+        Token median = new Token(TokenType.IDENTIFIER, "Med", null, 1);
+        for (Supplier<Engine> engine : ENGINES) {
+            Environment environment = run(engine, "{1,2,3,4}->L₁\n{3,5,7,9}->L₂\n1-Var Stats\nx̄+Q₃->X\n"
+                    + "LinReg(ax+b) L₁,L₂");
+            assertEquals(6.0, (double)environment.get(X), 0);
+            assertEquals(2.5, (double)environment.get(median), 0);
+            assertEquals(2.0, (double)environment.get(slope), 1e-12);
+        }
+    }
+
+    @Test(expected = RuntimeError.class)
+    public void statisticsResults_cannotBeAssigned() throws Exception {
+        new Environment().assign(new Token(TokenType.IDENTIFIER, "Σx", null, 1), 5.0);
+    }
+}
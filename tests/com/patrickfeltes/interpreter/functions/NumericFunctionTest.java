@@ -0,0 +1,52 @@
+package com.patrickfeltes.interpreter.functions;
+
+import com.patrickfeltes.interpreter.Lexer;
+import com.patrickfeltes.interpreter.ast.Expr;
+import com.patrickfeltes.interpreter.ast.Parser;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.errors.RuntimeError;
+import com.patrickfeltes.interpreter.tokens.Token;
+import com.patrickfeltes.interpreter.tokens.TokenType;
+import com.patrickfeltes.interpreter.visitors.NumericMarker;
+import com.patrickfeltes.interpreter.visitors.VariableResolver;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class NumericFunctionTest {
+
+    private static final Token CALLEE = new Token(TokenType.FUNCTION_IDENTIFIER, "f", null, 1);
+
+    private Expr parse(String expression) {
+        Stmt head = new Parser(new Lexer(expression + "->X").lexTokens()).parse();
+        new VariableResolver().resolve(head);
+        new NumericMarker().markAll(head);
+        return ((Stmt.Assign)head).expression;
+    }
+
+    @Test
+    public void call_appliesTheOperatorOfItsArity() throws Exception {
+        NumericFunction function = NumericFunction.ternary((a, b, c) -> a * b + c);
+
+        assertTrue(function.hasArity(3));
+        assertFalse(function.hasArity(2));
+        assertEquals(7.0, function.call(CALLEE, null, Arrays.asList(2.0, 3.0, 1.0)));
+    }
+
+    @Test(expected = RuntimeError.class)
+    public void call_wrongNumberOfArguments() throws Exception {
+        NumericFunction.binary(Math::max).call(CALLEE, null, Arrays.asList(2.0));
+    }
+
+    @Test
+    public void resolve_bindsCallsAndMarksCallsOfNumbers() throws Exception {
+        Expr.Call numbers = (Expr.Call)parse("abs(A-2)");
+        Expr.Call list = (Expr.Call)parse("abs(L₁)");
+
+        assertTrue(numbers.function instanceof NumericFunction);
+        assertTrue(numbers.numeric);
+        assertFalse(list.numeric);
+    }
+}
@@ -0,0 +1,88 @@
+package com.patrickfeltes.interpreter.functions;
+
+import com.patrickfeltes.interpreter.Engine;
+import com.patrickfeltes.interpreter.ast.Expr;
+import com.patrickfeltes.interpreter.data_types.TiList;
+import com.patrickfeltes.interpreter.errors.RuntimeError;
+import com.patrickfeltes.interpreter.tokens.Token;
+import com.patrickfeltes.interpreter.tokens.TokenType;
+import com.patrickfeltes.interpreter.visitors.Environment;
+import com.patrickfeltes.interpreter.visitors.SequenceValues;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import static com.patrickfeltes.interpreter.Programs.*;
+import static org.junit.Assert.*;
+
+public class SequenceFunctionsTest {
+
+    private static final Token I = new Token(TokenType.IDENTIFIER, "I", null, 1);
+    private static final Token X = new Token(TokenType.IDENTIFIER, "X", null, 1);
+    private static final Token Y = new Token(TokenType.IDENTIFIER, "Y", null, 1);
+    private static final Token L1 = new Token(TokenType.LIST_IDENTIFIER, "L₁", null, 1);
+
+    @Test
+    public void seq_givesTheExpressionForEveryValueOfTheVariable() throws Exception {
+        for (Supplier<Engine> engine : ENGINES) {
+            assertEquals("{1.0,4.0,9.0,16.0}", run(engine, "seq(I^2,I,1,4)->L₁").get(L1).toString());
+            assertEquals("{10.0,7.0,4.0,1.0}", run(engine, "seq(I,I,10,0,-3)->L₁").get(L1).toString());
+            assertEquals("{0.0,0.5,1.0}", run(engine, "2->X\nseq(I/X,I,0,2)->L₁").get(L1).toString());
+        }
+    }
+
+    @Test
+    public void square_isAPowerOfTwo() throws Exception {
+        for (Supplier<Engine> engine : ENGINES) {
+            assertEquals(30.0, (double)run(engine, "sum(seq(I²,I,1,4))->X").get(X), 0);
+            assertEquals(-9.0, (double)run(engine, "3->Y\n-Y²->X").get(X), 0);
+            assertEquals("{1.0,4.0,9.0}", run(engine, "{1,2,3}²->L₁").get(L1).toString());
+        }
+    }
+
+    @Test
+    public void seq_givesTheVariableBackItsValue() throws Exception {
+        for (Supplier<Engine> engine : ENGINES) {
+            assertEquals(7.0, (double)run(engine, "7->I\nseq(I,I,1,3)->L₁").get(I), 0);
+        }
+    }
+
+    @Test
+    public void sumProdAndCumSum_ofLists() throws Exception {
+        for (Supplier<Engine> engine : ENGINES) {
+            Environment environment = run(engine, "sum({1,2,3,4})->X\nprod({1,2,3,4},2,3)->Y\ncumSum({1,2,3})->L₁");
+            assertEquals(10.0, (double)environment.get(X), 0);
+            assertEquals(6.0, (double)environment.get(Y), 0);
+            assertEquals("{1.0,3.0,6.0}", environment.get(L1).toString());
+            assertEquals(9.0, (double)run(engine, "sum({1,2,3,4},2)->X").get(X), 0);
+        }
+    }
+
+    @Test
+    public void sumProdAndCumSum_ofSeqMatchTheList() throws Exception {
+        for (Supplier<Engine> engine : ENGINES) {
+            Environment environment = run(engine, "seq(1/I,I,1,20000)->L₁\nsum(L₁)->X\nsum(seq(1/I,I,1,20000))->Y");
+            assertEquals(Double.doubleToLongBits((double)environment.get(X)),
+                    Double.doubleToLongBits((double)environment.get(Y)));
+
+            environment = run(engine, "prod(seq(I,I,1,10))->X\ncumSum(seq(I,I,1,4))->L₁");
+            assertEquals(3628800.0, (double)environment.get(X), 0);
+            assertEquals("{1.0,3.0,6.0,10.0}", environment.get(L1).toString());
+        }
+    }
+
+    @Test(expected = RuntimeError.class)
+    public void seq_stepOfZero() throws Exception {
+        Expr.Sequence sequence = new Expr.Sequence(new Token(TokenType.SEQ, "seq", null, 1), null, I, null, null, null);
+        sequence.slot = Environment.slotOf(I);
+        new SequenceValues(new Environment(), sequence, () -> 1, 1, 10, 0);
+    }
+
+    @Test(expected = RuntimeError.class)
+    public void sum_rangeOutsideTheList() throws Exception {
+        Token callee = new Token(TokenType.FUNCTION_IDENTIFIER, "sum", null, 1);
+        Environment.functionOf(callee).call(callee, null,
+                Arrays.asList(new TiList(new double[] { 1, 2 }), 2.0, 3.0));
+    }
+}
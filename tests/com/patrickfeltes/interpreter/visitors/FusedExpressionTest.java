@@ -0,0 +1,120 @@
+package com.patrickfeltes.interpreter.visitors;
+
+import com.patrickfeltes.interpreter.Lexer;
+import com.patrickfeltes.interpreter.ast.Expr;
+import com.patrickfeltes.interpreter.ast.Parser;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.data_types.TiList;
+import com.patrickfeltes.interpreter.data_types.TiMatrix;
+import com.patrickfeltes.interpreter.errors.RuntimeError;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FusedExpressionTest {
+
+    private final Map<String, Object> variables = new HashMap<>();
+
+    private Expr parse(String expression) {
+        Stmt head = new Parser(new Lexer(expression + "->L₆").lexTokens()).parse();
+        new VariableResolver().resolve(head);
+        new NumericMarker().markAll(head);
+        return ((Stmt.Assign)head).expression;
+    }
+
+    private Object evaluate(FusedExpression fused) {
+        List<Expr> leaves = fused.getLeaves();
+        return fused.evaluate(leaf -> {
+            Expr expr = leaves.get(leaf);
+            return expr instanceof Expr.Variable ? variables.get(((Expr.Variable)expr).name.lexeme)
+                    : ((Expr.Literal)expr).value;
+        });
+    }
+
+    @Test
+    public void evaluate_matchesOneOperatorAtATime() throws Exception {
+        variables.put("L₁", new TiList(new double[] { 1, 5, 9, -2 }));
+        variables.put("L₂", new TiList(new double[] { 4, 2, 0.5, 3 }));
+        variables.put("L₃", new TiList(new double[] { 3, 7, 2, 0 }));
+        TiList l1 = (TiList)variables.get("L₁");
+        TiList l2 = (TiList)variables.get("L₂");
+        TiList l3 = (TiList)variables.get("L₃");
+
+        FusedExpression fused = FusedExpression.of(parse("(L₁-L₂)^2/L₃"), false);
+        TiList expected = TiList.div(TiList.powScalar(TiList.sub(l1, l2, null), 2), l3, null);
+
+        assertEquals(3, fused.getOperations());
+        assertEquals(expected.toString(), evaluate(fused).toString());
+    }
+
+    @Test
+    public void evaluate_numbersOnEitherSide() throws Exception {
+        variables.put("L₁", new TiList(new double[] { 1, 2, 4 }));
+
+        FusedExpression fused = FusedExpression.of(parse("1-L₁/8+2/L₁"), false);
+
+        assertEquals("{2.875,1.75,1.0}", evaluate(fused).toString());
+    }
+
+    @Test
+    public void evaluate_longerThanOneChunk() throws Exception {
+        double[] elements = new double[1000];
+        Arrays.fill(elements, 3);
+        variables.put("L₁", new TiList(elements));
+
+        TiList result = (TiList)evaluate(FusedExpression.of(parse("L₁*L₁+1"), false));
+
+        assertEquals(1000, result.size());
+        assertEquals(10.0, result.get(1000), 0);
+    }
+
+    @Test
+    public void evaluate_matrices() throws Exception {
+        variables.put("[A]", new TiMatrix(new double[][] { { 1, 2 }, { 3, 4 } }));
+        variables.put("[B]", new TiMatrix(new double[][] { { 1, 1 }, { 1, 1 } }));
+
+        FusedExpression fused = FusedExpression.of(parse("2*[A]-[B]"), true);
+
+        assertNull(FusedExpression.of(parse("2*[A]-[B]"), false));
+        assertEquals("[[1.0 3.0]\n[5.0 7.0]]", evaluate(fused).toString());
+    }
+
+    @Test
+    public void evaluate_reportsDimensionsAtTheSameOperator() throws Exception {
+        variables.put("L₁", new TiList(new double[] { 1, 2 }));
+        variables.put("L₂", new TiList(new double[] { 1, 2, 3 }));
+
+        Expr.Binary expr = (Expr.Binary)parse("L₁*2+L₂");
+        try {
+            evaluate(FusedExpression.of(expr, false));
+            fail();
+        } catch (RuntimeError error) {
+            assertSame(expr.operator, error.token);
+            assertEquals("The dimensions of these lists are not the same.", error.getMessage());
+        }
+    }
+
+    @Test
+    public void evaluate_reportsUndefinedOperands() throws Exception {
+        variables.put("L₂", new TiList(new double[] { 1, 2 }));
+
+        try {
+            evaluate(FusedExpression.of(parse("L₁+L₂*2"), false));
+            fail();
+        } catch (RuntimeError error) {
+            assertEquals("'+' is not defined for these types.", error.getMessage());
+        }
+    }
+
+    @Test
+    public void of_rejectsIndexedAndNumericExpressions() throws Exception {
+        assertNull(FusedExpression.of(parse("L₁(1)+2"), false));
+        assertNull(FusedExpression.of(parse("L₁"), false));
+        assertNull(FusedExpression.of(parse("[A]*[B]"), true));
+    }
+}
@@ -0,0 +1,52 @@
+package com.patrickfeltes.interpreter.visitors;
+
+import com.patrickfeltes.interpreter.Engine;
+import com.patrickfeltes.interpreter.tokens.Token;
+import com.patrickfeltes.interpreter.tokens.TokenType;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static com.patrickfeltes.interpreter.Programs.*;
+import static org.junit.Assert.*;
+
+public class InPlaceUpdateTest {
+
+    private static final Token L1 = new Token(TokenType.LIST_IDENTIFIER, "L₁", null, 1);
+
+    // the engines, and the interpreter with every loop compiled after its first iteration
+    private static final List<Supplier<Engine>> engines = new ArrayList<>(ENGINES);
+
+    static {
+        engines.add(() -> new Interpreter(1, false));
+    }
+
+    // the --in-place-stats output of an engine
+    private static String stats(Engine engine) {
+        PrintStream out = System.out;
+        ByteArrayOutputStream stats = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(stats));
+        try {
+            engine.printInPlaceStats();
+        } finally {
+            System.setOut(out);
+        }
+        return stats.toString().trim();
+    }
+
+    @Test
+    public void updatesInLoops_runInPlaceOnEveryEngine() throws Exception {
+        String program = "seq(I,I,1,4)->L₁\nFor(K,1,3)\nL₁*2+1->L₁\nEnd\nL₁*2->L₂";
+        for (Supplier<Engine> supplier : engines) {
+            Engine engine = supplier.get();
+            run(engine, parse(program));
+
+            assertEquals("{15.0,23.0,31.0,39.0}", engine.getEnvironment().get(L1).toString());
+            assertEquals("In-place updates: 1 of 3 list and matrix assignments, run in place 3 times", stats(engine));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.patrickfeltes.interpreter.visitors;
+
+import com.patrickfeltes.interpreter.Engine;
+import com.patrickfeltes.interpreter.tokens.Token;
+import com.patrickfeltes.interpreter.tokens.TokenType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static com.patrickfeltes.interpreter.Programs.*;
+import static org.junit.Assert.*;
+
+public class JumpTest {
+
+    private static final Token L1 = new Token(TokenType.LIST_IDENTIFIER, "L₁", null, 1);
+
+    // the engines, and the interpreter with every loop compiled after its first iteration
+    private static final List<Supplier<Engine>> engines = new ArrayList<>(ENGINES);
+
+    static {
+        engines.add(() -> new Interpreter(1, false));
+    }
+
+    // every value the program records is appended to L₁
+    private static String recorded(Supplier<Engine> engine, String program) {
+        return run(engine, "{0}->L₁\n" + program).get(L1).toString();
+    }
+
+    @Test
+    public void gotoIntoNestedLoops_isTheSameOnEveryEngine() throws Exception {
+        // jumps into the inner loop of two, then out of it to the end of the outer loop's body
+        String program = "1->I\nGoto A\nFor(I,1,3)\nI->L₁(dim(L₁)+1)\nFor(J,1,2)\nLbl A\n100*I+J->L₁(dim(L₁)+1)\n"
+                + "If J=1 and I=2\nThen\nGoto B\nEnd\nEnd\n-I->L₁(dim(L₁)+1)\nLbl B\nEnd";
+        String expected = "{0.0,100.0,101.0,102.0,-1.0,2.0,201.0,3.0,301.0,302.0,-3.0}";
+        for (Supplier<Engine> engine : engines) {
+            assertEquals(expected, recorded(engine, program));
+        }
+    }
+
+    @Test
+    public void gotoInsideLoops_keepsThemRunning() throws Exception {
+        // a Goto to a label in the same body, into a Repeat from a While, and out of a For counting down
+        String program = "0->K\nGoto W\nWhile K<3\nK->L₁(dim(L₁)+1)\nLbl W\nK+1->K\nRepeat K>6\nIf K=5\nThen\n"
+                + "Goto R\nElse\n50+K->L₁(dim(L₁)+1)\nLbl R\nEnd\nK+1->K\nEnd\nEnd\n"
+                + "For(N,10,1,-3)\nN->L₁(dim(L₁)+1)\nIf N=4\nThen\nGoto Q\nEnd\nEnd\nLbl Q\nN->L₁(dim(L₁)+1)";
+        String expected = "{0.0,51.0,52.0,53.0,54.0,56.0,10.0,7.0,4.0,4.0}";
+        for (Supplier<Engine> engine : engines) {
+            assertEquals(expected, recorded(engine, program));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.patrickfeltes.interpreter.visitors;
+
+import com.patrickfeltes.interpreter.Lexer;
+import com.patrickfeltes.interpreter.ast.Expr;
+import com.patrickfeltes.interpreter.ast.Parser;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.data_types.TiList;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OptimizerTest {
+
+    private Optimizer optimizer = new Optimizer();
+
+    private Stmt optimize(String program) {
+        return optimizer.optimize(new Parser(new Lexer(program).lexTokens()).parse());
+    }
+
+    @Test
+    public void optimize_foldsConstantSubexpression() throws Exception {
+        Stmt head = optimize("2*3->A\n2*3*R->B");
+
+        Expr.Literal product = (Expr.Literal)((Stmt.Assign)head).expression;
+        assertEquals(6.0, product.value);
+
+        Expr.Binary scaled = (Expr.Binary)((Stmt.Assign)head.next()).expression;
+        assertEquals(6.0, ((Expr.Literal)scaled.left).value);
+        assertTrue(scaled.right instanceof Expr.Variable);
+        assertEquals(2, optimizer.getFoldedExpressions());
+    }
+
+    @Test
+    public void optimize_precomputesListLiterals() throws Exception {
+        Stmt head = optimize("{1,2,3}*2->L₁");
+
+        Expr.Literal list = (Expr.Literal)((Stmt.Assign)head).expression;
+        assertEquals(Expr.Literal.LiteralType.LIST, list.type);
+        assertEquals("{2.0,4.0,6.0}", list.constant.toString());
+        assertTrue(list.constant instanceof TiList);
+    }
+
+    @Test
+    public void optimize_leavesDimensionErrorsForRuntime() throws Exception {
+        Stmt head = optimize("{1,2}+{1,2,3}->L₁");
+
+        assertTrue(((Stmt.Assign)head).expression instanceof Expr.Binary);
+    }
+
+    @Test
+    public void optimize_removesUntakenBranch() throws Exception {
+        Stmt head = optimize("If 0\nThen\nDisp 1\nEnd\nIf 1\nThen\nDisp 2\nElse\nDisp 3\nEnd");
+
+        assertTrue(head instanceof Stmt.Disp);
+        assertEquals(2.0, ((Expr.Literal)((Stmt.Disp)head).expressions.get(0)).value);
+        assertNull(head.next());
+        assertEquals(2, optimizer.getRemovedBranches());
+    }
+
+    @Test
+    public void optimize_removesUnreachableStatements() throws Exception {
+        Stmt head = optimize("Goto A\nDisp 1\nDisp 2\nLbl A\nDisp 3");
+
+        assertTrue(head instanceof Stmt.Goto);
+        assertTrue(head.next() instanceof Stmt.Label);
+        assertTrue(head.next().next() instanceof Stmt.Disp);
+        assertEquals(2, optimizer.getRemovedStatements());
+    }
+
+    @Test
+    public void optimize_keepsBranchWithReachableLabel() throws Exception {
+        Stmt head = optimize("Goto A\nIf 0\nThen\nLbl A\nDisp 1\nEnd");
+
+        assertTrue(head.next() instanceof Stmt.If);
+        assertEquals(0, optimizer.getRemovedBranches());
+    }
+
+    @Test
+    public void optimize_removesLabelsOnlyReachedFromDeadCode() throws Exception {
+        Stmt head = optimize("If 0\nThen\nGoto A\nEnd\nStop\nLbl A\nDisp 1");
+
+        assertTrue(head instanceof Stmt.Stop);
+        assertNull(head.next());
+    }
+}
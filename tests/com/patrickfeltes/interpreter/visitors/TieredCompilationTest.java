@@ -0,0 +1,127 @@
+package com.patrickfeltes.interpreter.visitors;
+
+import com.patrickfeltes.interpreter.Programs;
+import com.patrickfeltes.interpreter.ast.Expr;
+import com.patrickfeltes.interpreter.ast.Stmt;
+import com.patrickfeltes.interpreter.compiler.TieredCompilation;
+import com.patrickfeltes.interpreter.data_types.TiList;
+import com.patrickfeltes.interpreter.tokens.Token;
+import com.patrickfeltes.interpreter.tokens.TokenType;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class TieredCompilationTest {
+
+    private static final Token S = new Token(TokenType.IDENTIFIER, "S", null, 1);
+    private static final Token I = new Token(TokenType.IDENTIFIER, "I", null, 1);
+    // the end of the body of the loops that deoptimize
+    private static final String SUM = "If I>1500\nThen\nS+dim(L₁)->S\nEnd\n";
+
+    private Interpreter interpreter;
+
+    // the --tier-stats output of the program
+    private String run(Stmt head) {
+        interpreter = new Interpreter(TieredCompilation.DEFAULT_THRESHOLD, true);
+
+        PrintStream out = System.out;
+        ByteArrayOutputStream stats = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(stats));
+        try {
+            Programs.run(interpreter, head);
+        } finally {
+            System.setOut(out);
+        }
+        return stats.toString();
+    }
+
+    private String run(String program) {
+        return run(Programs.parse(program));
+    }
+
+    // a counter of the first loop, such as "promotions" or "deoptimizations"
+    private static int count(String stats, String counter) {
+        Matcher matcher = Pattern.compile("(\\d+) " + counter).matcher(stats);
+        assertTrue(stats, matcher.find());
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    /**
+     * Runs a program whose only loop ends with SUM, with the sum specialized to a list and a
+     * number. The compiled loop takes that for granted until the If is first taken, after which the interpreter has
+     * to finish the loop with the same result it gets without tiering.
+     */
+    private void assertDeoptimizesOnce(String program) {
+        Stmt head = Programs.parse(program);
+        Expr.Binary sum = lastSum(head);
+        sum.specialization = BinaryOperations.specialize(sum.operator, TiList.class, Double.class);
+
+        String stats = run(head);
+        Environment interpreted = Programs.run(() -> new Interpreter(0, false), program);
+
+        assertEquals(interpreted.get(S), interpreter.getEnvironment().get(S));
+        assertEquals(interpreted.get(I), interpreter.getEnvironment().get(I));
+        assertTrue(sum.generic);
+        assertEquals(stats, 1, count(stats, "deoptimizations"));
+    }
+
+    private static Expr.Binary lastSum(Stmt head) {
+        Stmt statement = head;
+        while (true) {
+            if (statement instanceof Stmt.While) {
+                statement = ((Stmt.While) statement).head;
+                break;
+            } else if (statement instanceof Stmt.For) {
+                statement = ((Stmt.For) statement).head;
+                break;
+            } else if (statement instanceof Stmt.Repeat) {
+                statement = ((Stmt.Repeat) statement).head;
+                break;
+            }
+            statement = statement.next();
+        }
+        while (statement.next() != null) {
+            statement = statement.next();
+        }
+        return (Expr.Binary) ((Stmt.Assign) ((Stmt.If) statement).thenHead).expression;
+    }
+
+    @Test
+    public void gotoInsideCompiledLoop_promotesItOnce() throws Exception {
+        // every other iteration jumps over the sum to a label in the same body
+        String stats = run("0->S\nFor(I,1,200000)\nIf remainder(I,2)=0\nThen\nGoto A\nEnd\nS+I->S\nLbl A\nEnd");
+
+        assertEquals(1.0E10, interpreter.getEnvironment().get(S));
+        assertEquals(1, count(stats, "promotions"));
+    }
+
+    @Test
+    public void gotoOutOfCompiledLoop_doesNotPromoteItAgainAtOnce() throws Exception {
+        // every 1000th iteration leaves the loop and jumps back into it
+        String stats = run("0->S\nFor(I,1,200000)\nS+I->S\nIf remainder(I,1000)=0\nThen\nGoto B\nEnd\nLbl A\nEnd\n"
+                + "Goto C\nLbl B\nGoto A\nLbl C");
+
+        assertEquals(20000100000.0, interpreter.getEnvironment().get(S));
+        assertTrue(stats, count(stats, "promotions") <= 2);
+    }
+
+    @Test
+    public void brokenSpecialization_deoptimizesWhile() throws Exception {
+        assertDeoptimizesOnce("0->S\n{1,2}->L₁\n0->I\nWhile I<3000\nI+1->I\n" + SUM + "End");
+    }
+
+    @Test
+    public void brokenSpecialization_deoptimizesFor() throws Exception {
+        assertDeoptimizesOnce("0->S\n{1,2}->L₁\nFor(I,1,3000)\n" + SUM + "End");
+    }
+
+    @Test
+    public void brokenSpecialization_deoptimizesRepeat() throws Exception {
+        assertDeoptimizesOnce("0->S\n{1,2}->L₁\n0->I\nRepeat I=3000\nI+1->I\n" + SUM + "End");
+    }
+}